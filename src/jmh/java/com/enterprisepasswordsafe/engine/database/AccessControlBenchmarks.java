@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the two level encryption used for all stored objects.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccessControlBenchmarks {
+
+    /**
+     * The number of characters in the data being encrypted.
+     */
+
+    @Param({"64", "1024"})
+    public int dataSize;
+
+    private AccessControl accessControl;
+
+    private String data;
+
+    private byte[] encrypted;
+
+    @Setup
+    public void setup() throws Exception {
+        Password password = new Password("user", "password", "location", "notes");
+        accessControl = new UserAccessControl("benchmark", password.getId(), password.getModifyKey(), password.getReadKey());
+
+        StringBuilder builder = new StringBuilder(dataSize);
+        for (int i = 0; i < dataSize; i++) {
+            builder.append((char) ('a' + (i % 26)));
+        }
+        data = builder.toString();
+        encrypted = accessControl.encrypt(data);
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return accessControl.encrypt(data);
+    }
+
+    @Benchmark
+    public String decrypt() throws Exception {
+        return accessControl.decrypt(encrypted);
+    }
+}
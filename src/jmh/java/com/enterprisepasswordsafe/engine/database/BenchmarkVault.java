@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.enterprisepasswordsafe.engine.configuration.TestJDBCConfiguration;
+
+/**
+ * An embedded database holding a folder of passwords the admin user can access.
+ * Each fork starts with a new in-memory database, so the vault only holds the
+ * passwords created for the parameters being measured.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkVault {
+
+    /**
+     * The number of passwords in the vault.
+     */
+
+    @Param({"100", "1000", "10000"})
+    public int vaultSize;
+
+    User adminUser;
+
+    HierarchyNode folder;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        TestJDBCConfiguration.forceTestingConfiguration();
+
+        adminUser = UserDAO.getInstance().getByName("admin");
+        adminUser.decryptAccessKey("admin");
+
+        HierarchyNodeDAO hnDAO = HierarchyNodeDAO.getInstance();
+        folder = new HierarchyNode("Benchmark vault " + vaultSize, HierarchyNode.ROOT_NODE_ID, HierarchyNode.CONTAINER_NODE);
+        hnDAO.store(folder);
+
+        PasswordDAO pDAO = PasswordDAO.getInstance();
+        for (int i = 0; i < vaultSize; i++) {
+            Password password = new Password("user" + i, "password" + i, "system" + i + ".example.com", "Notes " + i);
+            pDAO.storeNewPassword(password, adminUser);
+            hnDAO.store(new HierarchyNode(password.getId(), folder.getNodeId(), HierarchyNode.OBJECT_NODE));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BOMFactory.closeCurrent();
+    }
+}
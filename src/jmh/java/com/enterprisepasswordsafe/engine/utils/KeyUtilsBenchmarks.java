@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.utils;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.enterprisepasswordsafe.engine.database.Password;
+import com.enterprisepasswordsafe.engine.database.User;
+import com.enterprisepasswordsafe.engine.users.UserAccessKeyEncryptionHandler;
+
+/**
+ * Throughput of decrypting the keys held in access controls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyUtilsBenchmarks {
+
+    private UserAccessKeyEncryptionHandler keyHandler;
+
+    private PrivateKey privateKey;
+
+    private byte[] encryptedPrivateKey;
+
+    private byte[] encryptedPublicKey;
+
+    @Setup
+    public void setup() throws Exception {
+        KeyGenerator generator = KeyGenerator.getInstance(User.USER_KEY_ALGORITHM);
+        generator.init(User.USER_KEY_SIZE);
+        keyHandler = new UserAccessKeyEncryptionHandler(generator.generateKey());
+
+        Password password = new Password("user", "password", "location", "notes");
+        privateKey = password.getModifyKey();
+        encryptedPrivateKey = KeyUtils.encryptKey(privateKey, keyHandler);
+        encryptedPublicKey = KeyUtils.encryptKey(password.getReadKey(), keyHandler);
+    }
+
+    @Benchmark
+    public byte[] encryptKey() throws Exception {
+        return KeyUtils.encryptKey(privateKey, keyHandler);
+    }
+
+    @Benchmark
+    public PrivateKey decryptPrivateKey() throws Exception {
+        return KeyUtils.decryptPrivateKey(encryptedPrivateKey, keyHandler);
+    }
+
+    @Benchmark
+    public PublicKey decryptPublicKey() throws Exception {
+        return KeyUtils.decryptPublicKey(encryptedPublicKey, keyHandler);
+    }
+}
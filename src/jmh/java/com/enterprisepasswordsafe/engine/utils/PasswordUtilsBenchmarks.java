@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.utils;
+
+import java.io.StringWriter;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.enterprisepasswordsafe.engine.database.AccessControl;
+import com.enterprisepasswordsafe.engine.database.Password;
+import com.enterprisepasswordsafe.engine.database.PasswordBase;
+import com.enterprisepasswordsafe.engine.database.UserAccessControl;
+
+/**
+ * Throughput of encrypting and decrypting passwords, including decrypting data held
+ * in the original java.util.Properties format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordUtilsBenchmarks {
+
+    private Password password;
+
+    private AccessControl accessControl;
+
+    private byte[] encrypted;
+
+    private byte[] encryptedProperties;
+
+    @Setup
+    public void setup() throws Exception {
+        password = new Password("benchmark-user", "S3cr3t!Passw0rd", "db01.example.com",
+                "Notes about the database server and who to contact about it.");
+        password.setCustomField("Port", "5432");
+        accessControl = new UserAccessControl("benchmark", password.getId(), password.getModifyKey(), password.getReadKey());
+        encrypted = PasswordUtils.encrypt(password, accessControl);
+
+        Properties properties = new Properties();
+        properties.setProperty(PasswordUtils.ENABLED_PROPERTY, "true");
+        properties.setProperty(PasswordUtils.USERNAME_PROPERTY, password.getUsername());
+        properties.setProperty(PasswordUtils.LOCATION_PROPERTY, password.getLocation());
+        properties.setProperty(PasswordUtils.PASSWORD_PROPERTY, password.getPassword());
+        properties.setProperty(PasswordUtils.NOTES_PROPERTY, password.getNotes());
+        properties.setProperty("Port", "5432");
+        StringWriter writer = new StringWriter();
+        properties.store(writer, null);
+        encryptedProperties = accessControl.encrypt(writer.toString());
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return PasswordUtils.encrypt(password, accessControl);
+    }
+
+    @Benchmark
+    public PasswordBase decrypt() throws Exception {
+        return PasswordUtils.decrypt(accessControl, encrypted);
+    }
+
+    @Benchmark
+    public PasswordBase decryptPropertiesFormat() throws Exception {
+        return PasswordUtils.decrypt(accessControl, encryptedProperties);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.configuration;
+
+import com.enterprisepasswordsafe.engine.database.schema.SchemaVersion;
+import com.enterprisepasswordsafe.engine.dbpool.DatabasePool;
+import com.enterprisepasswordsafe.engine.dbpool.DatabasePoolFactory;
+
+/**
+ * Points the engine at the database a synthetic vault is being generated in.
+ */
+public final class LoadTestJDBCConfiguration {
+
+    private LoadTestJDBCConfiguration() {
+        super();
+    }
+
+    /**
+     * Use a database for all subsequent DAO calls in this JVM.
+     *
+     * @param databaseType The type of database (e.g. "Apache Derby" or "HSQLDB").
+     * @param driver The JDBC driver class.
+     * @param url The JDBC URL for the database.
+     * @param username The username to connect with.
+     * @param password The password to connect with.
+     * @param poolSize The maximum number of connections the pool should hold.
+     * @param initialise true if the schema and default admin user should be created.
+     *
+     * @throws Exception Thrown if the database can not be set up.
+     */
+
+    public static void use(final String databaseType, final String driver, final String url,
+                           final String username, final String password, final int poolSize,
+                           final boolean initialise)
+            throws Exception {
+        JDBCConfiguration configuration = new JDBCConfiguration();
+        configuration.setDatabaseType(databaseType);
+        configuration.setDriver(driver);
+        configuration.setURL(url);
+        configuration.setUsername(username);
+        configuration.setPassword(password);
+        configuration.setPoolMaxTotal(poolSize);
+        configuration.setPoolMaxIdle(poolSize);
+
+        JDBCConfiguration.force(configuration);
+
+        DatabasePoolFactory.setConfiguration(JDBCConfiguration.getConfiguration());
+        DatabasePool pool = DatabasePoolFactory.getInstance();
+        if (initialise) {
+            pool.initialiseDatabase();
+        } else {
+            new SchemaVersion().update();
+        }
+    }
+}
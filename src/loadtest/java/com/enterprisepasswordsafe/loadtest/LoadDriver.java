@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.enterprisepasswordsafe.engine.utils.LatencyHistogram;
+
+/**
+ * Drives a running server holding a vault created by VaultGenerator with a mix of
+ * browsing, searching, viewing and raw API requests from concurrent simulated
+ * users, and reports the latency percentiles for each endpoint.
+ *
+ * Arguments are given as --name=value, e.g.
+ * <pre>
+ * --baseUrl=http://localhost:8080/passwordsafe --clients=50 --duration=300 --seed=1 --users=5000
+ * </pre>
+ * The seed and number of users must match those the vault was generated with.
+ */
+public final class LoadDriver {
+
+    /**
+     * The endpoints exercised by the driver.
+     */
+
+    enum Endpoint {
+        LOGIN("/VerifyLogin"),
+        EXPLORER("/system/Explorer"),
+        SEARCH("/system/Search"),
+        VIEW_PASSWORD("/system/ViewPassword"),
+        API_FIND_IDS("/api/FindIds"),
+        API_GET_PASSWORD("/api/GetPassword");
+
+        private final String path;
+
+        Endpoint(final String path) {
+            this.path = path;
+        }
+    }
+
+    private static final Pattern SESSION_COOKIE = Pattern.compile("(JSESSIONID=[^;]+)");
+
+    private static final Pattern NODE_LINK = Pattern.compile("nodeId=([0-9a-fA-F]+)");
+
+    private static final Pattern PASSWORD_LINK = Pattern.compile("ViewPassword\\?id=([0-9a-fA-F]+)");
+
+    private static final Pattern OTID = Pattern.compile("otid=([0-9a-fA-F]+)");
+
+    /**
+     * The most password IDs each client remembers to view later.
+     */
+
+    private static final int MAX_KNOWN_PASSWORDS = 200;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+
+    private static final int READ_TIMEOUT_MILLIS = 60000;
+
+    private final String baseUrl;
+
+    private final long seed;
+
+    private final int userCount;
+
+    private final int passwordCount;
+
+    private final int clients;
+
+    private final long durationMillis;
+
+    private final Map<Endpoint, LatencyHistogram> latencies = new EnumMap<>(Endpoint.class);
+
+    private final Map<Endpoint, AtomicLong> failures = new EnumMap<>(Endpoint.class);
+
+    LoadDriver(final Arguments arguments) {
+        baseUrl = arguments.get("baseUrl", "http://localhost:8080/passwordsafe");
+        seed = arguments.getLong("seed", 1);
+        userCount = arguments.getInt("users", 5000);
+        passwordCount = arguments.getInt("passwords", 100000);
+        clients = arguments.getInt("clients", 20);
+        durationMillis = TimeUnit.SECONDS.toMillis(arguments.getInt("duration", 60));
+        for (Endpoint endpoint : Endpoint.values()) {
+            latencies.put(endpoint, new LatencyHistogram());
+            failures.put(endpoint, new AtomicLong());
+        }
+    }
+
+    public void run()
+            throws Exception {
+        long deadline = System.currentTimeMillis() + durationMillis;
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<?>> running = new ArrayList<>(clients);
+            for (int client = 0; client < clients; client++) {
+                final Client thisClient = new Client(new Random(seed * 31 + client));
+                running.add(executor.submit(() -> {
+                    thisClient.run(deadline);
+                    return null;
+                }));
+            }
+            for (Future<?> client : running) {
+                client.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        report();
+    }
+
+    private void report() {
+        System.out.println(String.format("%-18s %8s %8s %9s %7s %7s %7s %9s",
+                "Endpoint", "Requests", "Failures", "Mean(ms)", "p50", "p90", "p99", "Max(ms)"));
+        for (Endpoint endpoint : Endpoint.values()) {
+            LatencyHistogram histogram = latencies.get(endpoint);
+            System.out.println(String.format("%-18s %8d %8d %9.2f %7d %7d %7d %9.2f",
+                    endpoint.path, histogram.getCount(), failures.get(endpoint).get(),
+                    histogram.getMeanMillis(), histogram.getPercentileMillis(50),
+                    histogram.getPercentileMillis(90), histogram.getPercentileMillis(99),
+                    histogram.getMaxMillis()));
+        }
+    }
+
+    /**
+     * A simulated user working through the application with their own session.
+     */
+
+    private final class Client {
+
+        private final Random random;
+
+        private final int userIndex;
+
+        private String sessionCookie;
+
+        private String otid;
+
+        private String currentNodeId;
+
+        private final List<String> knownPasswords = new ArrayList<>();
+
+        Client(final Random random) {
+            this.random = random;
+            userIndex = random.nextInt(userCount);
+        }
+
+        void run(final long deadline)
+                throws IOException {
+            login();
+            while (System.currentTimeMillis() < deadline) {
+                int action = random.nextInt(100);
+                if (action < 35) {
+                    browse();
+                } else if (action < 55) {
+                    search();
+                } else if (action < 70) {
+                    viewPassword();
+                } else if (action < 85) {
+                    findIds();
+                } else {
+                    getPassword();
+                }
+            }
+        }
+
+        private void login()
+                throws IOException {
+            sessionCookie = null;
+            request(Endpoint.LOGIN, "", "username=" + encode(VaultGenerator.getUserName(userIndex))
+                    + "&password=" + encode(VaultGenerator.getUserPassword(seed, userIndex)));
+        }
+
+        /**
+         * Move to a random child of the current folder, or back to the top level
+         * if the current folder has no children or the user decides to start again.
+         */
+
+        private void browse()
+                throws IOException {
+            String query = currentNodeId == null ? "" : "?nodeId=" + currentNodeId;
+            String page = request(Endpoint.EXPLORER, query, null);
+            rememberPasswords(PASSWORD_LINK.matcher(page));
+
+            List<String> children = new ArrayList<>();
+            Matcher nodes = NODE_LINK.matcher(page);
+            while (nodes.find()) {
+                if (!nodes.group(1).equals(currentNodeId)) {
+                    children.add(nodes.group(1));
+                }
+            }
+            currentNodeId = children.isEmpty() || random.nextInt(10) == 0 ?
+                    null : children.get(random.nextInt(children.size()));
+        }
+
+        private void search()
+                throws IOException {
+            String page = request(Endpoint.SEARCH, "",
+                    "system=" + encode(VaultGenerator.LOCATION_PREFIX + random.nextInt(passwordCount))
+                    + "&searchall=Y");
+            rememberPasswords(PASSWORD_LINK.matcher(page));
+        }
+
+        private void viewPassword()
+                throws IOException {
+            if (knownPasswords.isEmpty()) {
+                search();
+                return;
+            }
+            String id = knownPasswords.get(random.nextInt(knownPasswords.size()));
+            request(Endpoint.VIEW_PASSWORD, "?id=" + id + (otid == null ? "" : "&otid=" + otid), null);
+        }
+
+        private void findIds()
+                throws IOException {
+            int passwordIndex = random.nextInt(passwordCount);
+            String ids = request(Endpoint.API_FIND_IDS, "", getAPICredentials()
+                    + "&searchUsername=" + encode(VaultGenerator.getPasswordUsername(passwordIndex))
+                    + "&searchSystem=" + encode(VaultGenerator.getLocation(passwordIndex)));
+            for (String id : ids.trim().split(",")) {
+                if (!id.isEmpty() && knownPasswords.size() < MAX_KNOWN_PASSWORDS) {
+                    knownPasswords.add(id);
+                }
+            }
+        }
+
+        private void getPassword()
+                throws IOException {
+            if (knownPasswords.isEmpty()) {
+                findIds();
+                return;
+            }
+            String id = knownPasswords.get(random.nextInt(knownPasswords.size()));
+            request(Endpoint.API_GET_PASSWORD, "", getAPICredentials() + "&id=" + id);
+        }
+
+        private String getAPICredentials() {
+            return "username=" + encode(VaultGenerator.getUserName(userIndex))
+                    + "&password=" + encode(VaultGenerator.getUserPassword(seed, userIndex));
+        }
+
+        private void rememberPasswords(final Matcher passwordLinks) {
+            while (passwordLinks.find() && knownPasswords.size() < MAX_KNOWN_PASSWORDS) {
+                String id = passwordLinks.group(1);
+                if (!knownPasswords.contains(id)) {
+                    knownPasswords.add(id);
+                }
+            }
+        }
+
+        /**
+         * Make a request and record how long it took to get the full response.
+         *
+         * @param endpoint The endpoint to request.
+         * @param query The query string, including the leading ?, if any.
+         * @param form The URL encoded form to POST, or null for a GET.
+         *
+         * @return The body of the response.
+         */
+
+        private String request(final Endpoint endpoint, final String query, final String form)
+                throws IOException {
+            long start = System.nanoTime();
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + endpoint.path + query).openConnection();
+            try {
+                connection.setInstanceFollowRedirects(false);
+                connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+                connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+                if (sessionCookie != null) {
+                    connection.setRequestProperty("Cookie", sessionCookie);
+                }
+                if (form != null) {
+                    connection.setDoOutput(true);
+                    connection.setRequestMethod("POST");
+                    connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+                    try (OutputStream out = connection.getOutputStream()) {
+                        out.write(form.getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+
+                int status = connection.getResponseCode();
+                String body = readFully(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+                latencies.get(endpoint).record(System.nanoTime() - start);
+
+                String setCookie = connection.getHeaderField("Set-Cookie");
+                if (setCookie != null) {
+                    Matcher cookie = SESSION_COOKIE.matcher(setCookie);
+                    if (cookie.find()) {
+                        sessionCookie = cookie.group(1);
+                    }
+                }
+                Matcher nextOtid = OTID.matcher(body);
+                if (nextOtid.find()) {
+                    otid = nextOtid.group(1);
+                }
+
+                if (isLoginRedirect(endpoint, connection)) {
+                    failures.get(endpoint).incrementAndGet();
+                    login();
+                } else if (status >= 400) {
+                    failures.get(endpoint).incrementAndGet();
+                }
+                return body;
+            } catch (IOException e) {
+                latencies.get(endpoint).record(System.nanoTime() - start);
+                failures.get(endpoint).incrementAndGet();
+                return "";
+            } finally {
+                connection.disconnect();
+            }
+        }
+
+        /**
+         * Requests from a session which has expired are redirected to the login page.
+         */
+
+        private boolean isLoginRedirect(final Endpoint endpoint, final HttpURLConnection connection) {
+            String location = connection.getHeaderField("Location");
+            return endpoint != Endpoint.LOGIN && location != null && location.contains("Login");
+        }
+    }
+
+    private static String readFully(final InputStream in)
+            throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try (InputStream stream = in) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = stream.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+            }
+            return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String encode(final String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static void main(final String[] args)
+            throws Exception {
+        new LoadDriver(new Arguments(args)).run();
+    }
+}
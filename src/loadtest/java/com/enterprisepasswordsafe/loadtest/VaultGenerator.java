@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.loadtest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.enterprisepasswordsafe.engine.configuration.LoadTestJDBCConfiguration;
+import com.enterprisepasswordsafe.engine.database.BOMFactory;
+import com.enterprisepasswordsafe.engine.database.Group;
+import com.enterprisepasswordsafe.engine.database.GroupAccessControlDAO;
+import com.enterprisepasswordsafe.engine.database.GroupDAO;
+import com.enterprisepasswordsafe.engine.database.HierarchyNode;
+import com.enterprisepasswordsafe.engine.database.HierarchyNodeDAO;
+import com.enterprisepasswordsafe.engine.database.MembershipDAO;
+import com.enterprisepasswordsafe.engine.database.Password;
+import com.enterprisepasswordsafe.engine.database.PasswordDAO;
+import com.enterprisepasswordsafe.engine.database.User;
+import com.enterprisepasswordsafe.engine.database.UserDAO;
+import com.enterprisepasswordsafe.engine.database.derived.UserSummary;
+import com.enterprisepasswordsafe.engine.dbabstraction.SupportedDatabase;
+
+/**
+ * Generates a synthetic vault of users, groups, folders and passwords using the
+ * same DAOs as the web application.
+ *
+ * The names, passwords, memberships, folder placement and access rights of every
+ * object are derived from the seed and the objects index, so two runs with the
+ * same seed produce the same vault however the work is scheduled across threads.
+ * Database IDs are still allocated by IDGenerator, so they will differ between runs.
+ *
+ * Arguments are given as --name=value, e.g.
+ * <pre>
+ * --url=jdbc:derby:/tmp/eps-load;create=true --passwords=100000 --users=5000
+ * </pre>
+ * Without a --url the vault is written to an embedded Derby database in eps-load under
+ * the temporary directory, so it is still there for the load driver to run against.
+ */
+public final class VaultGenerator {
+
+    /**
+     * The prefix for the names of generated users.
+     */
+
+    static final String USER_NAME_PREFIX = "loaduser";
+
+    /**
+     * The prefix for the locations of generated passwords.
+     */
+
+    static final String LOCATION_PREFIX = "host";
+
+    /**
+     * The domain all generated password locations are in.
+     */
+
+    static final String LOCATION_DOMAIN = ".load.example.com";
+
+    /**
+     * Separate sequences of random numbers for each type of object.
+     */
+
+    private static final long GROUP_SEQUENCE = 1, FOLDER_SEQUENCE = 2, USER_SEQUENCE = 3, PASSWORD_SEQUENCE = 4;
+
+    private static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final long seed;
+
+    private final int groupCount;
+
+    private final int userCount;
+
+    private final int passwordCount;
+
+    private final int folderDepth;
+
+    private final int foldersPerLevel;
+
+    private final int membershipsPerUser;
+
+    private final int groupsPerPassword;
+
+    private final int threads;
+
+    private final String adminPassword;
+
+    /**
+     * The admin user and admin group for each worker thread. Each worker works
+     * through its own database connection, so it needs its own copies.
+     */
+
+    private final ThreadLocal<User> workerAdminUser = new ThreadLocal<>();
+
+    private final ThreadLocal<Group> workerAdminGroup = new ThreadLocal<>();
+
+    private final Group[] groups;
+
+    /**
+     * The IDs of the folders created at each level of the hierarchy, in index order.
+     */
+
+    private final String[][] folders;
+
+    VaultGenerator(final Arguments arguments) {
+        seed = arguments.getLong("seed", 1);
+        groupCount = arguments.getInt("groups", 500);
+        userCount = arguments.getInt("users", 5000);
+        passwordCount = arguments.getInt("passwords", 100000);
+        folderDepth = arguments.getInt("depth", 10);
+        foldersPerLevel = arguments.getInt("foldersPerLevel", 50);
+        membershipsPerUser = arguments.getInt("membershipsPerUser", 3);
+        groupsPerPassword = arguments.getInt("groupsPerPassword", 2);
+        threads = arguments.getInt("threads", Runtime.getRuntime().availableProcessors());
+        adminPassword = arguments.get("adminPassword", "admin");
+        groups = new Group[groupCount];
+        folders = new String[folderDepth][foldersPerLevel];
+    }
+
+    /**
+     * Get the login password for a generated user.
+     *
+     * @param seed The seed the vault was generated with.
+     * @param userIndex The index of the user.
+     *
+     * @return The users login password.
+     */
+
+    static String getUserPassword(final long seed, final int userIndex) {
+        return "Load-" + Long.toHexString(seed) + "-" + userIndex;
+    }
+
+    static String getUserName(final int userIndex) {
+        return USER_NAME_PREFIX + userIndex;
+    }
+
+    static String getPasswordUsername(final int passwordIndex) {
+        return "svc" + passwordIndex % 1000;
+    }
+
+    static String getLocation(final int passwordIndex) {
+        return LOCATION_PREFIX + passwordIndex + LOCATION_DOMAIN;
+    }
+
+    /**
+     * Get a random number generator for a single object. Mixing the object index
+     * into the seed means the object is the same whichever thread creates it.
+     */
+
+    private Random getRandom(final long sequence, final int index) {
+        return new Random(seed * 0x9E3779B97F4A7C15L + (sequence << 40) + index);
+    }
+
+    public void generate()
+            throws Exception {
+        long start = System.currentTimeMillis();
+        runInParallel("groups", groupCount, this::createGroup);
+        for (int level = 0; level < folderDepth; level++) {
+            final int thisLevel = level;
+            runInParallel("folders at level " + (level + 1), foldersPerLevel, index -> createFolder(thisLevel, index));
+        }
+        runInParallel("users", userCount, this::createUser);
+        runInParallel("passwords", passwordCount, this::createPassword);
+        System.out.println("Generated vault in " + (System.currentTimeMillis() - start) / 1000 + "s");
+    }
+
+    private void createGroup(final int index)
+            throws Exception {
+        groups[index] = GroupDAO.getInstance().create(getAdminUser(), String.format("Load Group %04d", index));
+    }
+
+    private void createFolder(final int level, final int index)
+            throws Exception {
+        String parentId = HierarchyNode.ROOT_NODE_ID;
+        if (level > 0) {
+            String[] parents = folders[level - 1];
+            parentId = parents[getRandom(FOLDER_SEQUENCE, level * foldersPerLevel + index).nextInt(parents.length)];
+        }
+        HierarchyNode folder = HierarchyNodeDAO.getInstance().create(
+                "Level " + (level + 1) + " folder " + index, parentId, HierarchyNode.CONTAINER_NODE);
+        folders[level][index] = folder.getNodeId();
+    }
+
+    private void createUser(final int index)
+            throws Exception {
+        Random random = getRandom(USER_SEQUENCE, index);
+        String name = getUserName(index);
+        User user = UserDAO.getInstance().createUser(getAdminUser(),
+                new UserSummary(name, "Load Test User " + index), getUserPassword(seed, index),
+                name + "@load.example.com");
+
+        MembershipDAO mDAO = MembershipDAO.getInstance();
+        for (int groupIndex : pick(random, groups.length, membershipsPerUser)) {
+            mDAO.create(user, groups[groupIndex]);
+        }
+    }
+
+    private void createPassword(final int index)
+            throws Exception {
+        Random random = getRandom(PASSWORD_SEQUENCE, index);
+        String[] level = folders[random.nextInt(folders.length)];
+        String folderId = level[random.nextInt(level.length)];
+        long expiry = random.nextInt(10) == 0 ?
+                System.currentTimeMillis() + random.nextInt(90) * DAY_IN_MILLIS : Long.MAX_VALUE;
+
+        Password password = PasswordDAO.getInstance().create(getAdminUser(), getAdminGroup(),
+                getPasswordUsername(index), Long.toHexString(random.nextLong()), getLocation(index),
+                "Generated password " + index, Password.AUDITING_LOG_ONLY, false, expiry, folderId,
+                null, false, 0, 0, Password.TYPE_SYSTEM, Collections.emptyMap());
+
+        GroupAccessControlDAO gacDAO = GroupAccessControlDAO.getInstance();
+        for (int groupIndex : pick(random, groups.length, groupsPerPassword)) {
+            gacDAO.create(groups[groupIndex], password, true, false);
+        }
+    }
+
+    /**
+     * Pick a number of distinct indexes.
+     */
+
+    private static List<Integer> pick(final Random random, final int range, final int count) {
+        List<Integer> picked = new ArrayList<>(count);
+        while (picked.size() < Math.min(count, range)) {
+            int candidate = random.nextInt(range);
+            if (!picked.contains(candidate)) {
+                picked.add(candidate);
+            }
+        }
+        return picked;
+    }
+
+    private User getAdminUser()
+            throws Exception {
+        User adminUser = workerAdminUser.get();
+        if (adminUser == null) {
+            adminUser = UserDAO.getInstance().getByName("admin");
+            adminUser.decryptAccessKey(adminPassword);
+            workerAdminUser.set(adminUser);
+        }
+        return adminUser;
+    }
+
+    private Group getAdminGroup()
+            throws Exception {
+        Group adminGroup = workerAdminGroup.get();
+        if (adminGroup == null) {
+            adminGroup = GroupDAO.getInstance().getAdminGroup(getAdminUser());
+            workerAdminGroup.set(adminGroup);
+        }
+        return adminGroup;
+    }
+
+    /**
+     * Create a set of objects, splitting the indexes between the worker threads.
+     * Each worker closes its database connection when its share is complete.
+     */
+
+    private void runInParallel(final String description, final int count, final IndexedTask task)
+            throws Exception {
+        long start = System.currentTimeMillis();
+        AtomicInteger completed = new AtomicInteger();
+        int reportEvery = Math.max(1, count / 10);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>(threads);
+            for (int worker = 0; worker < threads; worker++) {
+                final int firstIndex = worker;
+                workers.add(executor.submit(() -> {
+                    try {
+                        for (int index = firstIndex; index < count; index += threads) {
+                            task.create(index);
+                            int done = completed.incrementAndGet();
+                            if (done % reportEvery == 0) {
+                                System.out.println("Created " + done + " of " + count + " " + description);
+                            }
+                        }
+                    } finally {
+                        workerAdminUser.remove();
+                        workerAdminGroup.remove();
+                        BOMFactory.closeCurrent();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        System.out.println("Created " + count + " " + description + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private interface IndexedTask {
+        void create(int index) throws Exception;
+    }
+
+    public static void main(final String[] args)
+            throws Exception {
+        Arguments arguments = new Arguments(args);
+        int threads = arguments.getInt("threads", Runtime.getRuntime().availableProcessors());
+        String url = arguments.get("url",
+                "jdbc:derby:" + new File(System.getProperty("java.io.tmpdir"), "eps-load").getAbsolutePath() + ";create=true");
+        System.out.println("Generating the vault in " + url);
+        LoadTestJDBCConfiguration.use(
+                arguments.get("dbType", SupportedDatabase.APACHE_DERBY.getType()),
+                arguments.get("driver", "org.apache.derby.jdbc.EmbeddedDriver"),
+                url,
+                arguments.get("username", ""),
+                arguments.get("password", ""),
+                threads + 2,
+                arguments.getBoolean("initialise", true));
+        BOMFactory.closeCurrent();
+
+        new VaultGenerator(arguments).generate();
+    }
+}
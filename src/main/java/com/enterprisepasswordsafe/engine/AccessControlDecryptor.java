@@ -19,6 +19,7 @@ package com.enterprisepasswordsafe.engine;
 import java.io.UnsupportedEncodingException;
 import java.security.GeneralSecurityException;
 
+import com.enterprisepasswordsafe.engine.database.AccessControlKeyCache;
 import com.enterprisepasswordsafe.engine.database.Decrypter;
 import com.enterprisepasswordsafe.engine.database.Encrypter;
 import com.enterprisepasswordsafe.proguard.ExternalInterface;
@@ -41,4 +42,11 @@ public interface AccessControlDecryptor extends ExternalInterface {
 
     Encrypter getKeyEncrypter();
 
+    /**
+     * Gets the cache of decoded access control keys to use, or null if keys
+     * should always be decrypted.
+     */
+
+    AccessControlKeyCache getAccessControlKeyCache();
+
 }
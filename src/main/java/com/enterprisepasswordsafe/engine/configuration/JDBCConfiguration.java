@@ -100,6 +100,54 @@ public class JDBCConfiguration implements ExternalInterface {
 
 	private String password;
 
+	/**
+	 * The maximum number of connections the pool will open.
+	 */
+
+	private int poolMaxTotal = DEFAULT_POOL_MAX_TOTAL;
+
+	/**
+	 * The maximum number of idle connections the pool will keep.
+	 */
+
+	private int poolMaxIdle = DEFAULT_POOL_MAX_IDLE;
+
+	/**
+	 * The number of idle connections the pool will try to keep ready.
+	 */
+
+	private int poolMinIdle = DEFAULT_POOL_MIN_IDLE;
+
+	/**
+	 * The time a request will wait for a connection before failing.
+	 */
+
+	private long poolMaxWaitMillis = DEFAULT_POOL_MAX_WAIT_MILLIS;
+
+	/**
+	 * The query used to validate connections, null to use the drivers own check.
+	 */
+
+	private String poolValidationQuery = null;
+
+	/**
+	 * The time allowed for a connection to validate.
+	 */
+
+	private int poolValidationTimeoutSeconds = DEFAULT_POOL_VALIDATION_TIMEOUT_SECONDS;
+
+	/**
+	 * The interval between runs of the idle connection evictor.
+	 */
+
+	private long poolEvictionIntervalMillis = DEFAULT_POOL_EVICTION_INTERVAL_MILLIS;
+
+	/**
+	 * The time a connection can be idle before it is eligible for eviction.
+	 */
+
+	private long poolMinEvictableIdleMillis = DEFAULT_POOL_MIN_EVICTABLE_IDLE_MILLIS;
+
 	/**
 	 * The name of the parameter used to store the database type.
 	 */
@@ -142,6 +190,33 @@ public class JDBCConfiguration implements ExternalInterface {
 
 	private static final String AUTO_INIT = "eps_jdbc.autoinit";
 
+	/**
+	 * The parameter names and defaults for the connection pool settings.
+	 */
+
+	private static final String POOL_MAX_TOTAL_PARAMETER = "eps_jdbc.pool.maxTotal";
+	private static final int DEFAULT_POOL_MAX_TOTAL = 50;
+
+	private static final String POOL_MAX_IDLE_PARAMETER = "eps_jdbc.pool.maxIdle";
+	private static final int DEFAULT_POOL_MAX_IDLE = 20;
+
+	private static final String POOL_MIN_IDLE_PARAMETER = "eps_jdbc.pool.minIdle";
+	private static final int DEFAULT_POOL_MIN_IDLE = 2;
+
+	private static final String POOL_MAX_WAIT_PARAMETER = "eps_jdbc.pool.maxWaitMillis";
+	private static final long DEFAULT_POOL_MAX_WAIT_MILLIS = 10000;
+
+	private static final String POOL_VALIDATION_QUERY_PARAMETER = "eps_jdbc.pool.validationQuery";
+
+	private static final String POOL_VALIDATION_TIMEOUT_PARAMETER = "eps_jdbc.pool.validationTimeoutSeconds";
+	private static final int DEFAULT_POOL_VALIDATION_TIMEOUT_SECONDS = 5;
+
+	private static final String POOL_EVICTION_INTERVAL_PARAMETER = "eps_jdbc.pool.evictionIntervalMillis";
+	private static final long DEFAULT_POOL_EVICTION_INTERVAL_MILLIS = 60000;
+
+	private static final String POOL_MIN_EVICTABLE_IDLE_PARAMETER = "eps_jdbc.pool.minEvictableIdleMillis";
+	private static final long DEFAULT_POOL_MIN_EVICTABLE_IDLE_MILLIS = 300000;
+
 	/**
 	 * The preferences for the system
 	 */
@@ -177,6 +252,18 @@ public class JDBCConfiguration implements ExternalInterface {
 		} else {
 			password = decryptPasswordText(passwordBytes);
 		}
+
+		poolMaxTotal = prefs.getInt(POOL_MAX_TOTAL_PARAMETER, DEFAULT_POOL_MAX_TOTAL);
+		poolMaxIdle = prefs.getInt(POOL_MAX_IDLE_PARAMETER, DEFAULT_POOL_MAX_IDLE);
+		poolMinIdle = prefs.getInt(POOL_MIN_IDLE_PARAMETER, DEFAULT_POOL_MIN_IDLE);
+		poolMaxWaitMillis = prefs.getLong(POOL_MAX_WAIT_PARAMETER, DEFAULT_POOL_MAX_WAIT_MILLIS);
+		poolValidationQuery = prefs.get(POOL_VALIDATION_QUERY_PARAMETER, null);
+		poolValidationTimeoutSeconds =
+				prefs.getInt(POOL_VALIDATION_TIMEOUT_PARAMETER, DEFAULT_POOL_VALIDATION_TIMEOUT_SECONDS);
+		poolEvictionIntervalMillis =
+				prefs.getLong(POOL_EVICTION_INTERVAL_PARAMETER, DEFAULT_POOL_EVICTION_INTERVAL_MILLIS);
+		poolMinEvictableIdleMillis =
+				prefs.getLong(POOL_MIN_EVICTABLE_IDLE_PARAMETER, DEFAULT_POOL_MIN_EVICTABLE_IDLE_MILLIS);
 	}
 
 	/**
@@ -195,6 +282,18 @@ public class JDBCConfiguration implements ExternalInterface {
 		prefs.put(USERNAME_PARAMETER, username);
 		prefs.putByteArray(ENCRYPTED_PASSWORD_PARAMETER,
 				encryptPasswordText(password));
+		prefs.putInt(POOL_MAX_TOTAL_PARAMETER, poolMaxTotal);
+		prefs.putInt(POOL_MAX_IDLE_PARAMETER, poolMaxIdle);
+		prefs.putInt(POOL_MIN_IDLE_PARAMETER, poolMinIdle);
+		prefs.putLong(POOL_MAX_WAIT_PARAMETER, poolMaxWaitMillis);
+		if (poolValidationQuery == null) {
+			prefs.remove(POOL_VALIDATION_QUERY_PARAMETER);
+		} else {
+			prefs.put(POOL_VALIDATION_QUERY_PARAMETER, poolValidationQuery);
+		}
+		prefs.putInt(POOL_VALIDATION_TIMEOUT_PARAMETER, poolValidationTimeoutSeconds);
+		prefs.putLong(POOL_EVICTION_INTERVAL_PARAMETER, poolEvictionIntervalMillis);
+		prefs.putLong(POOL_MIN_EVICTABLE_IDLE_PARAMETER, poolMinEvictableIdleMillis);
 		prefs.flush();
 	}
 
@@ -462,6 +561,106 @@ public class JDBCConfiguration implements ExternalInterface {
 		return password;
 	}
 
+	/**
+	 * Get the maximum number of connections the pool will open.
+	 *
+	 * @return The maximum number of pooled connections.
+	 */
+
+	public int getPoolMaxTotal() {
+		return poolMaxTotal;
+	}
+
+	public void setPoolMaxTotal(final int newPoolMaxTotal) {
+		poolMaxTotal = newPoolMaxTotal;
+	}
+
+	/**
+	 * Get the maximum number of idle connections the pool will keep.
+	 *
+	 * @return The maximum number of idle connections.
+	 */
+
+	public int getPoolMaxIdle() {
+		return poolMaxIdle;
+	}
+
+	public void setPoolMaxIdle(final int newPoolMaxIdle) {
+		poolMaxIdle = newPoolMaxIdle;
+	}
+
+	/**
+	 * Get the number of idle connections the pool will try to keep available.
+	 *
+	 * @return The minimum number of idle connections.
+	 */
+
+	public int getPoolMinIdle() {
+		return poolMinIdle;
+	}
+
+	public void setPoolMinIdle(final int newPoolMinIdle) {
+		poolMinIdle = newPoolMinIdle;
+	}
+
+	/**
+	 * Get the time a request will wait for a connection before failing.
+	 *
+	 * @return The maximum wait in milliseconds.
+	 */
+
+	public long getPoolMaxWaitMillis() {
+		return poolMaxWaitMillis;
+	}
+
+	public void setPoolMaxWaitMillis(final long newPoolMaxWaitMillis) {
+		poolMaxWaitMillis = newPoolMaxWaitMillis;
+	}
+
+	/**
+	 * Get the query used to validate connections when they are borrowed.
+	 *
+	 * @return The validation query, or null if the drivers own validity check should be used.
+	 */
+
+	public String getPoolValidationQuery() {
+		return poolValidationQuery;
+	}
+
+	public void setPoolValidationQuery(final String newPoolValidationQuery) {
+		poolValidationQuery = newPoolValidationQuery;
+	}
+
+	public int getPoolValidationTimeoutSeconds() {
+		return poolValidationTimeoutSeconds;
+	}
+
+	public void setPoolValidationTimeoutSeconds(final int newPoolValidationTimeoutSeconds) {
+		poolValidationTimeoutSeconds = newPoolValidationTimeoutSeconds;
+	}
+
+	/**
+	 * Get the interval between checks for idle connections which can be closed.
+	 *
+	 * @return The eviction interval in milliseconds.
+	 */
+
+	public long getPoolEvictionIntervalMillis() {
+		return poolEvictionIntervalMillis;
+	}
+
+	public void setPoolEvictionIntervalMillis(final long newPoolEvictionIntervalMillis) {
+		poolEvictionIntervalMillis = newPoolEvictionIntervalMillis;
+	}
+
+	public long getPoolMinEvictableIdleMillis() {
+		return poolMinEvictableIdleMillis;
+	}
+
+	public void setPoolMinEvictableIdleMillis(final long newPoolMinEvictableIdleMillis) {
+		poolMinEvictableIdleMillis = newPoolMinEvictableIdleMillis;
+	}
+
 	/**
 	 * Factory method to instanciate the correct JDBC configuration object.
 	 *
@@ -19,7 +19,6 @@ package com.enterprisepasswordsafe.engine.database;
 import java.io.UnsupportedEncodingException;
 import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.sql.Connection;
@@ -27,18 +26,21 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
 import com.enterprisepasswordsafe.engine.AccessControlDecryptor;
+import com.enterprisepasswordsafe.engine.utils.CryptoPrimitives;
 import com.enterprisepasswordsafe.engine.utils.Constants;
 import com.enterprisepasswordsafe.engine.utils.DatabaseConnectionUtils;
 import com.enterprisepasswordsafe.engine.utils.KeyUtils;
+import com.enterprisepasswordsafe.engine.utils.RequestMetrics;
 import com.enterprisepasswordsafe.proguard.JavaBean;
 
 /**
@@ -93,14 +95,32 @@ public abstract class AccessControl
 
     private static final String GET_GAC_ACCESSIBLE_ITEMS =
         "SELECT gac.item_id "
-        + "  FROM   group_access_control gac, "
-        + "         membership mem, "
-        + "         group g "
+        + "  FROM group_access_control gac, "
+        + "       membership mem, "
+        + "       groups g "
         + " WHERE mem.user_id = ? "
-        + " AND mem.group_id = g.group_id "
-        + " AND (g.enabled is null OR g.enabled = 'Y') "
+        + "   AND g.group_id = mem.group_id AND g.status = " + Group.STATUS_ENABLED
         + "   AND gac.group_id = mem.group_id "
-        + " AND gac.rkey IS NOT NULL";
+        + "   AND gac.rkey IS NOT NULL";
+
+    /**
+     * SQL to get the IDs of the users who can access an item via a uac or a gac.
+     */
+
+    private static final String GET_USERS_WITH_ACCESS =
+        "SELECT uac.user_id "
+        + "  FROM user_access_control uac "
+        + " WHERE uac.item_id = ? "
+        + "   AND uac.rkey IS NOT NULL "
+        + "UNION "
+        + "SELECT mem.user_id "
+        + "  FROM group_access_control gac, "
+        + "       membership mem, "
+        + "       groups g "
+        + " WHERE gac.item_id = ? "
+        + "   AND g.group_id = gac.group_id AND g.status = " + Group.STATUS_ENABLED
+        + "   AND mem.group_id = gac.group_id "
+        + "   AND gac.rkey IS NOT NULL";
 
     public static final String READ_PERMISSION = "R";
     public static final String MODIFY_PERMISSION = "RM";
@@ -167,15 +187,20 @@ public abstract class AccessControl
         throws SQLException, GeneralSecurityException, UnsupportedEncodingException {
         int currentIdx = startIdx;
         itemId = rs.getString(currentIdx++);
+        accessorId = rs.getString(startIdx + ACCESS_CONTROL_FIELD_COUNT);
+        AccessControlKeyCache keyCache = decryptor.getAccessControlKeyCache();
         byte[] keyBytes = rs.getBytes(currentIdx++);
         if(!rs.wasNull()) {
-        	modifyKey = KeyUtils.decryptPrivateKey(keyBytes, decryptor.getKeyDecrypter());
+            modifyKey = keyCache == null ?
+                    KeyUtils.decryptPrivateKey(keyBytes, decryptor.getKeyDecrypter()) :
+                    keyCache.getModifyKey(accessorId, itemId, keyBytes, decryptor.getKeyDecrypter());
         }
-        keyBytes = rs.getBytes(currentIdx++);
+        keyBytes = rs.getBytes(currentIdx);
         if(!rs.wasNull()) {
-        	readKey = KeyUtils.decryptPublicKey(keyBytes, decryptor.getKeyDecrypter());
+            readKey = keyCache == null ?
+                    KeyUtils.decryptPublicKey(keyBytes, decryptor.getKeyDecrypter()) :
+                    keyCache.getReadKey(accessorId, itemId, keyBytes, decryptor.getKeyDecrypter());
         }
-        accessorId = rs.getString(currentIdx);
     }
 
     /**
@@ -210,17 +235,33 @@ public abstract class AccessControl
 
     public final byte[] encryptToBinary(final String data)
     throws GeneralSecurityException, UnsupportedEncodingException {
+        return encrypt(data.getBytes(Constants.STRING_CODING_FORMAT));
+    }
+
+    /**
+     * Encodes some binary data using the modify key.
+     *
+     * @param data The data to encrypt.
+     *
+     * @return The encrypted data.
+     *
+     * @throws GeneralSecurityException Thrown if there is a problem during encryption.
+     */
+
+    public final byte[] encrypt(final byte[] data)
+    throws GeneralSecurityException {
         if (modifyKey == null) {
             throw new GeneralSecurityException("Illegal attempt to update an object");
         }
 
         // Decrypt the data
-        Cipher cipher = Cipher.getInstance(FIRST_LEVEL_ENCRYPTION_ALGORITHM);
+        Cipher cipher = CryptoPrimitives.getCipher(FIRST_LEVEL_ENCRYPTION_ALGORITHM);
         cipher.init(Cipher.ENCRYPT_MODE, modifyKey);
 
         // Convert it into a string
         byte[] secondLevelKey = generateSecondLevelKey();
         byte[] encryptedKey = cipher.doFinal(secondLevelKey);
+        RequestMetrics.recordRsaOperation();
 
         // Encrypt the data.
         byte[] encryptedData = secondLevelEncrypt(secondLevelKey, data);
@@ -243,7 +284,7 @@ public abstract class AccessControl
 
     private byte[] generateSecondLevelKey()
     throws NoSuchAlgorithmException {
-        KeyGenerator kgen = KeyGenerator.getInstance(SECOND_LEVEL_ENCRYPTION_ALGORITHM);
+        KeyGenerator kgen = CryptoPrimitives.getKeyGenerator(SECOND_LEVEL_ENCRYPTION_ALGORITHM);
         kgen.init(AES_KEY_SIZE_IN_BITS);             // 192 and 256 bits may not be available
         SecretKey skey = kgen.generateKey();
         return skey.getEncoded();
@@ -261,17 +302,18 @@ public abstract class AccessControl
      * @throws UnsupportedEncodingException
      */
 
-    private byte[] secondLevelEncrypt(final byte[] accessKey, final String data)
-        throws GeneralSecurityException, UnsupportedEncodingException {
+    private byte[] secondLevelEncrypt(final byte[] accessKey, final byte[] data)
+        throws GeneralSecurityException {
         if (data == null) {
             return null;
         }
 
         SecretKeySpec skeySpec = new SecretKeySpec(accessKey, SECOND_LEVEL_ENCRYPTION_ALGORITHM);
-        Cipher cipher = Cipher.getInstance(SECOND_LEVEL_ENCRYPTION_ALGORITHM);
+        Cipher cipher = CryptoPrimitives.getCipher(SECOND_LEVEL_ENCRYPTION_ALGORITHM);
         cipher.init(Cipher.ENCRYPT_MODE, skeySpec);
 
-        byte[] encrypted = cipher.doFinal(data.getBytes(Constants.STRING_CODING_FORMAT));
+        byte[] encrypted = cipher.doFinal(data);
+        RequestMetrics.recordAesOperation();
         return encrypted;
     }
 
@@ -312,6 +354,25 @@ public abstract class AccessControl
 	    return new String(decryptedData, Constants.STRING_CODING_FORMAT);
     }
 
+    /**
+     * Decrypts some binary data using the read key.
+     *
+     * @param data The data to decrypt.
+     *
+     * @return The decrypted data.
+     *
+     * @throws GeneralSecurityException Thrown if there is a problem during decryption.
+     */
+
+    public final byte[] decryptToBinary(final byte[] data)
+        throws GeneralSecurityException {
+        if( data == null) {
+            return null;
+        }
+
+        return decryptVersionTwoData(data);
+    }
+
     /**
      * Decrypts some data using the read key.
      *
@@ -347,9 +408,11 @@ public abstract class AccessControl
         SecretKeySpec skeySpec = new SecretKeySpec(keyData, SECOND_LEVEL_ENCRYPTION_ALGORITHM);
 
         // Decrypt the remaining data
-        Cipher cipher = AccessControl.getVersionTwoCipher();
+        Cipher cipher = CryptoPrimitives.getCipher(SECOND_LEVEL_ENCRYPTION_ALGORITHM);
         cipher.init(Cipher.DECRYPT_MODE, skeySpec);
-        return cipher.doFinal(data, AES_KEY_SIZE_IN_BITS, (data.length - AES_KEY_SIZE_IN_BITS));
+        byte[] decrypted = cipher.doFinal(data, AES_KEY_SIZE_IN_BITS, (data.length - AES_KEY_SIZE_IN_BITS));
+        RequestMetrics.recordAesOperation();
+        return decrypted;
     }
 
     /**
@@ -371,11 +434,12 @@ public abstract class AccessControl
         }
 
         // Decrypt the data
-        Cipher cipher = AccessControl.getVersionOneCipher();
+        Cipher cipher = CryptoPrimitives.getCipher(FIRST_LEVEL_ENCRYPTION_ALGORITHM);
         cipher.init(Cipher.DECRYPT_MODE, readKey);
 
         // Convert it into a string
         byte[] original = cipher.doFinal(data, start, length);
+        RequestMetrics.recordRsaOperation();
         return original;
     }
 
@@ -398,6 +462,36 @@ public abstract class AccessControl
         return ids;
     }
 
+    /**
+     * Gets the IDs of the users who have access to an item.
+     *
+     * @param conn The connection to the database.
+     * @param itemId The ID of the item.
+     *
+     * @return The IDs of the users.
+     *
+     * @throws SQLException Thrown if there is a problem accessing the database.
+     */
+
+    public static Set<String> getUserIDsWithAccess(final Connection conn, final String itemId)
+        throws SQLException {
+        Set<String> ids = new HashSet<String>();
+        PreparedStatement ps = conn.prepareStatement(GET_USERS_WITH_ACCESS);
+        ResultSet rs = null;
+        try {
+            ps.setString(1, itemId);
+            ps.setString(2, itemId);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                ids.add(rs.getString(1));
+            }
+        } finally {
+            DatabaseConnectionUtils.close(rs);
+            DatabaseConnectionUtils.close(ps);
+        }
+        return ids;
+    }
+
     /**
      * Adds the IDs of the items returned by the specified query to a
      * specified List.
@@ -525,34 +619,4 @@ public abstract class AccessControl
 	public void setItemId(String itemId) {
 		this.itemId = itemId;
 	}
-
-	/**
-	 * ThreadLocal storing cipher instance for version two decryption.
-	 */
-
-	private static ThreadLocal<Cipher> versionTwoCipher = new ThreadLocal<Cipher>();
-
-	protected static Cipher getVersionTwoCipher() throws NoSuchAlgorithmException, NoSuchProviderException, NoSuchPaddingException {
-		Cipher cipher = versionTwoCipher.get();
-		if( cipher == null ) {
-			cipher = Cipher.getInstance(SECOND_LEVEL_ENCRYPTION_ALGORITHM);
-			versionTwoCipher.set(cipher);
-		}
-		return cipher;
-	}
-
-	/**
-	 * ThreadLocal storing cipher instance for version one decryption.
-	 */
-
-	private static ThreadLocal<Cipher> versionOneCipher = new ThreadLocal<Cipher>();
-
-	protected static Cipher getVersionOneCipher() throws NoSuchAlgorithmException, NoSuchProviderException, NoSuchPaddingException {
-		Cipher cipher = versionOneCipher.get();
-		if( cipher == null ) {
-			cipher = Cipher.getInstance(FIRST_LEVEL_ENCRYPTION_ALGORITHM);
-			versionOneCipher.set(cipher);
-		}
-		return cipher;
-	}
 }
@@ -21,10 +21,20 @@ import com.enterprisepasswordsafe.proguard.ExternalInterface;
 import java.io.UnsupportedEncodingException;
 import java.security.GeneralSecurityException;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 public abstract class AccessControlDAO
 	implements ExternalInterface {
 
+    /**
+     * The maximum number of item IDs included in a single query when access
+     * controls are fetched in bulk.
+     */
+
+    static final int MAXIMUM_ITEMS_PER_QUERY = 250;
+
     /**
      * Checks to see if a user has explicit access rights, if they don't
      * check if they have access via a group.
@@ -101,6 +111,51 @@ public abstract class AccessControlDAO
     public abstract AccessControl getAccessControlEvenIfDisabled(final User user, final String itemId)
         throws GeneralSecurityException, SQLException, UnsupportedEncodingException;
 
+    /**
+     * Gets the access controls for a user and a set of items, using the same precedence
+     * between user and group access controls as {@link #getAccessControl(User, String)}.
+     *
+     * @param user The user to get the access rights for.
+     * @param itemIds The IDs of the items to get the rights for.
+     *
+     * @return The access controls, keyed on item ID. Items the user can't access are not included.
+     *
+     * @throws GeneralSecurityException Thrown if there is a problem decrypting
+     *  the access control data.
+     * @throws SQLException Thrown if there is a problem getting the access control
+     *  data from the database.
+     * @throws UnsupportedEncodingException
+     */
+
+    public Map<String, AccessControl> getAccessControls(final User user, final Collection<String> itemIds)
+        throws GeneralSecurityException, SQLException, UnsupportedEncodingException {
+        return getAccessControls(user, itemIds, new HashMap<String, Group>());
+    }
+
+    /**
+     * Gets the access controls for a user and a set of items, using the same precedence
+     * between user and group access controls as {@link #getAccessControl(User, String)}.
+     * The access controls are fetched with one query per type of access control, and each
+     * group is only decrypted once.
+     *
+     * @param user The user to get the access rights for.
+     * @param itemIds The IDs of the items to get the rights for.
+     * @param decryptedGroups The groups already decrypted for the user, keyed on group ID.
+     *  Any groups decrypted are added so callers working in batches can reuse them.
+     *
+     * @return The access controls, keyed on item ID. Items the user can't access are not included.
+     *
+     * @throws GeneralSecurityException Thrown if there is a problem decrypting
+     *  the access control data.
+     * @throws SQLException Thrown if there is a problem getting the access control
+     *  data from the database.
+     * @throws UnsupportedEncodingException
+     */
+
+    public abstract Map<String, AccessControl> getAccessControls(final User user, final Collection<String> itemIds,
+                                                                 final Map<String, Group> decryptedGroups)
+        throws GeneralSecurityException, SQLException, UnsupportedEncodingException;
+
     /**
      * Delete all the access controls for an item except for the admin group access control.
      *
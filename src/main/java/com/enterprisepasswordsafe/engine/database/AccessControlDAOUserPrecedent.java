@@ -19,6 +19,11 @@ package com.enterprisepasswordsafe.engine.database;
 import java.io.UnsupportedEncodingException;
 import java.security.GeneralSecurityException;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Data access object for the user access control.
@@ -132,6 +137,38 @@ public final class AccessControlDAOUserPrecedent
         return ac;
     }
 
+    /**
+     * Gets the access controls for a user and a set of items.
+     *
+     * @param theUser The user to get the access rights for.
+     * @param itemIds The IDs of the items to get the rights for.
+     * @param decryptedGroups The groups already decrypted for the user.
+     *
+     * @return The access controls, keyed on item ID.
+     *
+     * @throws GeneralSecurityException Thrown if there is a problem decrypting
+     *  the access control data.
+     * @throws SQLException Thrown if there is a problem getting the access control
+     *  data from the database.
+     * @throws UnsupportedEncodingException
+     */
+
+    @Override
+	public Map<String, AccessControl> getAccessControls(final User theUser, final Collection<String> itemIds,
+                                                        final Map<String, Group> decryptedGroups)
+        throws GeneralSecurityException, SQLException, UnsupportedEncodingException {
+        Map<String, AccessControl> results = new HashMap<>();
+        results.putAll(UserAccessControlDAO.getInstance().getUacs(theUser, itemIds));
+
+        Set<String> remainingItemIds = new HashSet<>(itemIds);
+        remainingItemIds.removeAll(results.keySet());
+        if (!remainingItemIds.isEmpty()) {
+            results.putAll(GroupAccessControlDAO.getInstance().getGacs(theUser, remainingItemIds, decryptedGroups));
+        }
+
+        return results;
+    }
+
     /**
      * Delete all the access controls for an item except for the admin group access control.
      *
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.enterprisepasswordsafe.engine.database;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import com.enterprisepasswordsafe.engine.utils.KeyUtils;
+
+/**
+ * Size bounded cache of the decoded RSA keys from access controls.
+ *
+ * Decoding an access control key requires a symmetric decryption followed by
+ * a PKCS8/X509 parse, so a cache is held alongside the logged in user (and
+ * shared with the groups decrypted on their behalf) to avoid repeating the work
+ * for every listing. Entries are keyed on the accessor and item and only
+ * returned if the encrypted key from the database matches the one the cached key
+ * was decoded from, so an updated access control is never served a stale key.
+ */
+public final class AccessControlKeyCache {
+
+    /**
+     * The default maximum number of access controls to hold keys for.
+     */
+
+    private static final int DEFAULT_MAXIMUM_ENTRIES = 2000;
+
+    /**
+     * All the live caches, used to invalidate entries when access controls change.
+     */
+
+    private static final Set<AccessControlKeyCache> ALL_CACHES =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<AccessControlKeyCache, Boolean>()));
+
+    /**
+     * The cached keys, least recently used first.
+     */
+
+    private final Map<String, CachedKeys> entries;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    public AccessControlKeyCache() {
+        this(DEFAULT_MAXIMUM_ENTRIES);
+    }
+
+    public AccessControlKeyCache(final int maximumEntries) {
+        entries = new LinkedHashMap<String, CachedKeys>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedKeys> eldest) {
+                return size() > maximumEntries;
+            }
+        };
+        ALL_CACHES.add(this);
+    }
+
+    /**
+     * Get the modify key for an access control, decrypting and caching it if needed.
+     *
+     * @param accessorId The ID of the user or group the access control is for.
+     * @param itemId The ID of the item the access control is for.
+     * @param encryptedKey The encrypted key from the database.
+     * @param keyDecrypter The decrypter to use if the key is not cached.
+     *
+     * @return The modify key.
+     */
+
+    PrivateKey getModifyKey(final String accessorId, final String itemId, final byte[] encryptedKey,
+                            final Decrypter keyDecrypter)
+            throws SQLException, GeneralSecurityException {
+        String cacheKey = createCacheKey(accessorId, itemId);
+        synchronized (this) {
+            CachedKeys cached = entries.get(cacheKey);
+            if (cached != null && cached.modifyKey != null && Arrays.equals(cached.encryptedModifyKey, encryptedKey)) {
+                hits++;
+                return cached.modifyKey;
+            }
+            misses++;
+        }
+
+        PrivateKey key = KeyUtils.decryptPrivateKey(encryptedKey, keyDecrypter);
+        synchronized (this) {
+            CachedKeys cached = getOrCreate(cacheKey);
+            cached.encryptedModifyKey = encryptedKey.clone();
+            cached.modifyKey = key;
+        }
+        return key;
+    }
+
+    /**
+     * Get the read key for an access control, decrypting and caching it if needed.
+     *
+     * @param accessorId The ID of the user or group the access control is for.
+     * @param itemId The ID of the item the access control is for.
+     * @param encryptedKey The encrypted key from the database.
+     * @param keyDecrypter The decrypter to use if the key is not cached.
+     *
+     * @return The read key.
+     */
+
+    PublicKey getReadKey(final String accessorId, final String itemId, final byte[] encryptedKey,
+                         final Decrypter keyDecrypter)
+            throws SQLException, GeneralSecurityException {
+        String cacheKey = createCacheKey(accessorId, itemId);
+        synchronized (this) {
+            CachedKeys cached = entries.get(cacheKey);
+            if (cached != null && cached.readKey != null && Arrays.equals(cached.encryptedReadKey, encryptedKey)) {
+                hits++;
+                return cached.readKey;
+            }
+            misses++;
+        }
+
+        PublicKey key = KeyUtils.decryptPublicKey(encryptedKey, keyDecrypter);
+        synchronized (this) {
+            CachedKeys cached = getOrCreate(cacheKey);
+            cached.encryptedReadKey = encryptedKey.clone();
+            cached.readKey = key;
+        }
+        return key;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Remove all the entries from this cache.
+     */
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Remove any cached keys for a specific access control from all caches.
+     *
+     * @param accessorId The ID of the user or group the access control is for.
+     * @param itemId The ID of the item the access control is for.
+     */
+
+    static void invalidate(final String accessorId, final String itemId) {
+        String cacheKey = createCacheKey(accessorId, itemId);
+        for (AccessControlKeyCache cache : getAllCaches()) {
+            synchronized (cache) {
+                cache.entries.remove(cacheKey);
+            }
+        }
+    }
+
+    /**
+     * Remove any cached keys for access controls on an item from all caches.
+     *
+     * @param itemId The ID of the item.
+     */
+
+    static void invalidateItem(final String itemId) {
+        String suffix = '\u0000' + itemId;
+        removeMatching(suffix, false);
+    }
+
+    /**
+     * Remove any cached keys for access controls held by a user or group from all caches.
+     *
+     * @param accessorId The ID of the user or group.
+     */
+
+    static void invalidateAccessor(final String accessorId) {
+        String prefix = accessorId + '\u0000';
+        removeMatching(prefix, true);
+    }
+
+    private static void removeMatching(final String match, final boolean isPrefix) {
+        for (AccessControlKeyCache cache : getAllCaches()) {
+            synchronized (cache) {
+                for (Iterator<String> iter = cache.entries.keySet().iterator(); iter.hasNext(); ) {
+                    String key = iter.next();
+                    if (isPrefix ? key.startsWith(match) : key.endsWith(match)) {
+                        iter.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    private static AccessControlKeyCache[] getAllCaches() {
+        synchronized (ALL_CACHES) {
+            return ALL_CACHES.toArray(new AccessControlKeyCache[ALL_CACHES.size()]);
+        }
+    }
+
+    private CachedKeys getOrCreate(final String cacheKey) {
+        CachedKeys cached = entries.get(cacheKey);
+        if (cached == null) {
+            cached = new CachedKeys();
+            entries.put(cacheKey, cached);
+        }
+        return cached;
+    }
+
+    private static String createCacheKey(final String accessorId, final String itemId) {
+        return accessorId + '\u0000' + itemId;
+    }
+
+    /**
+     * The decoded keys for an access control and the encrypted forms they were decoded from.
+     */
+
+    private static final class CachedKeys {
+        private byte[] encryptedModifyKey;
+        private PrivateKey modifyKey;
+        private byte[] encryptedReadKey;
+        private PublicKey readKey;
+    }
+}
@@ -16,17 +16,44 @@
 
 package com.enterprisepasswordsafe.engine.database;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.enterprisepasswordsafe.proguard.ExternalInterface;
 
 public final class ConfigurationDAO implements ExternalInterface {
 
+    /**
+     * The property which holds a token which is changed every time the configuration is
+     * altered. This allows servers sharing a database to spot changes made by each other
+     * without re-reading the whole table.
+     */
+
+    static final String VERSION_PROPERTY = "configuration.version";
+
+    /**
+     * The minimum time between checks for changes made by other servers.
+     */
+
+    private static final long VERSION_CHECK_INTERVAL = 30 * 1000;	// 30s
+
+    private static final String GET_ALL_SQL =
+            "SELECT property_name, property_value FROM configuration";
+
     private static final String GET_SQL =
             "SELECT property_value FROM configuration WHERE property_name = ?";
 
@@ -39,7 +66,24 @@ public final class ConfigurationDAO implements ExternalInterface {
     private static final String DELETE_SQL =
             "DELETE FROM configuration WHERE property_name = ?";
 
-	private static final Map<String,CachedValue> cache = new HashMap<>();
+    /**
+     * The current view of the configuration table. Readers only ever see a complete,
+     * unmodifiable snapshot so no locking is needed to read a value.
+     */
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+    /**
+     * The time after which the next reader should check for changes made elsewhere.
+     */
+
+    private final AtomicLong nextVersionCheck = new AtomicLong();
+
+    /**
+     * The lock held while the snapshot is being replaced.
+     */
+
+    private final Object updateLock = new Object();
 
 	private ConfigurationDAO() {
 		super();
@@ -60,48 +104,8 @@ public final class ConfigurationDAO implements ExternalInterface {
             return null;
         }
 
-        String cachedValue = getValueFromCache(name);
-        if(cachedValue != null) {
-            return cachedValue;
-        }
-
-        try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(GET_SQL)) {
-            ps.setString(1, name);
-            ps.setMaxRows(1);
-
-            try(ResultSet rs = ps.executeQuery()) {
-                if (!rs.next()) {
-                    return defaultValue;
-                }
-
-                String value = rs.getString(1);
-                if(rs.wasNull()) {
-                    return defaultValue;
-                }
-
-                synchronized(cache) {
-                    cache.put(name, new CachedValue(value));
-                }
-
-                return value;
-            }
-        }
-    }
-
-    private boolean exists(final String name)
-            throws SQLException {
-        if (name == null) {
-            return false;
-        }
-
-        try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(GET_SQL)) {
-            ps.setString(1, name);
-            ps.setMaxRows(1);
-
-            try(ResultSet rs = ps.executeQuery()) {
-                return rs.next();
-            }
-        }
+        String value = getSnapshot().get(name);
+        return value == null ? defaultValue : value;
     }
 
     public void delete(final ConfigurationOption configurationOption)
@@ -119,13 +123,8 @@ public final class ConfigurationDAO implements ExternalInterface {
             return;
         }
 
-        try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(DELETE_SQL)) {
-            ps.setString(1, name);
-            ps.executeUpdate();
-        }
-
-        synchronized (cache) {
-            cache.remove(name);
+        if (store(name, null, true)) {
+            notifyListeners(name, null);
         }
     }
 
@@ -136,100 +135,265 @@ public final class ConfigurationDAO implements ExternalInterface {
 
     public void set(final String name, final String value)
         throws SQLException {
-        String sqlStatement = exists(name) ? UPDATE_SQL : INSERT_SQL;
+        if (store(name, value, false)) {
+            notifyListeners(name, value);
+        }
+    }
+
+    /**
+     * Discards the current snapshot so the next read reloads the whole configuration.
+     */
 
-        try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(sqlStatement)) {
+    public void invalidate() {
+        synchronized (updateLock) {
+            snapshot.set(null);
+        }
+    }
+
+    /**
+     * Writes a change along with a new version token, so other servers know the
+     * configuration has changed, and publishes the new snapshot once the change has
+     * been committed.
+     *
+     * If the caller already has a transaction open the change is left for the caller
+     * to commit and nothing is published, because the transaction could still be rolled
+     * back. The change is then picked up by the periodic version check once committed.
+     *
+     * @return true if the new snapshot was published, false if it was left to the caller's transaction.
+     */
+
+    private boolean store(final String name, final String value, final boolean delete)
+            throws SQLException {
+        synchronized (updateLock) {
+            Snapshot current = getSnapshot();
+            String version = UUID.randomUUID().toString();
+            Connection connection = BOMFactory.getCurrentConntection();
+            boolean ownTransaction = connection.getAutoCommit();
+            if (ownTransaction) {
+                connection.setAutoCommit(false);
+            }
+            try {
+                if (delete) {
+                    try(PreparedStatement ps = connection.prepareStatement(DELETE_SQL)) {
+                        ps.setString(1, name);
+                        ps.executeUpdate();
+                    }
+                    write(connection, VERSION_PROPERTY, version, null, null);
+                } else {
+                    write(connection, name, value, VERSION_PROPERTY, version);
+                }
+
+                if (!ownTransaction) {
+                    return false;
+                }
+                connection.commit();
+                snapshot.set(current.with(name, value, version));
+                return true;
+            } catch (SQLException e) {
+                if (ownTransaction) {
+                    try {
+                        connection.rollback();
+                    } catch (SQLException rollbackException) {
+                        e.addSuppressed(rollbackException);
+                    }
+                }
+                // The database may be part way through the change, so re-read it next time.
+                snapshot.set(null);
+                throw e;
+            } finally {
+                if (ownTransaction) {
+                    connection.setAutoCommit(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates one or two properties in a single batch, inserting any which don't exist yet.
+     */
+
+    private void write(final Connection connection, final String name, final String value,
+                       final String secondName, final String secondValue)
+            throws SQLException {
+        int[] updated;
+        try(PreparedStatement ps = connection.prepareStatement(UPDATE_SQL)) {
+            ps.setString(1, value);
+            ps.setString(2, name);
+            ps.addBatch();
+            if (secondName != null) {
+                ps.setString(1, secondValue);
+                ps.setString(2, secondName);
+                ps.addBatch();
+            }
+            updated = ps.executeBatch();
+        }
+
+        if (updated[0] == 0) {
+            insert(connection, name, value);
+        }
+        if (secondName != null && updated[1] == 0) {
+            insert(connection, secondName, secondValue);
+        }
+    }
+
+    private void insert(final Connection connection, final String name, final String value)
+            throws SQLException {
+        try(PreparedStatement ps = connection.prepareStatement(INSERT_SQL)) {
             ps.setString(1, value);
             ps.setString(2, name);
             ps.executeUpdate();
         }
+    }
 
-        putValueInCache(name, value);
+    /**
+     * Gets the current snapshot, loading it if this is the first read and periodically
+     * checking whether another server has changed the configuration. Only one reader
+     * performs each check; all other readers carry on with the current snapshot.
+     */
 
-        final List<ConfigurationListenersDAO.ConfigurationListener> listeners =
-        	ConfigurationListenersDAO.getListenersForProperty(name);
-        if( listeners != null )
-        {
-        	for(ConfigurationListenersDAO.ConfigurationListener thisListener: listeners) {
-	        	thisListener.configurationChange(name, value);
-	        }
+    private Snapshot getSnapshot()
+            throws SQLException {
+        Snapshot current = snapshot.get();
+        if (current == null) {
+            synchronized (updateLock) {
+                current = snapshot.get();
+                if (current == null) {
+                    current = load();
+                    snapshot.set(current);
+                    nextVersionCheck.set(System.currentTimeMillis() + VERSION_CHECK_INTERVAL);
+                }
+            }
+            return current;
+        }
+
+        long now = System.currentTimeMillis();
+        long due = nextVersionCheck.get();
+        if (now >= due && nextVersionCheck.compareAndSet(due, now + VERSION_CHECK_INTERVAL)) {
+            try {
+                refreshIfChanged(current);
+            } catch (SQLException e) {
+                Logger.getAnonymousLogger().log(Level.WARNING, "Unable to check for configuration changes", e);
+            }
+            Snapshot latest = snapshot.get();
+            return latest == null ? current : latest;
         }
+
+        return current;
     }
 
-    private void putValueInCache(final String name, final String value) {
-        synchronized(cache) {
-            if (value == null) {
-                cache.remove(name);
+    private void refreshIfChanged(final Snapshot current)
+            throws SQLException {
+        String storedVersion;
+        try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(GET_SQL)) {
+            ps.setString(1, VERSION_PROPERTY);
+            ps.setMaxRows(1);
+            try(ResultSet rs = ps.executeQuery()) {
+                storedVersion = rs.next() ? rs.getString(1) : null;
+            }
+        }
+
+        if (Objects.equals(storedVersion, current.version)) {
+            return;
+        }
+
+        Snapshot previous;
+        Snapshot reloaded;
+        synchronized (updateLock) {
+            previous = snapshot.get();
+            if (previous != null && Objects.equals(storedVersion, previous.version)) {
                 return;
             }
-            cache.put(name, new CachedValue(value));
+            reloaded = load();
+            snapshot.set(reloaded);
         }
-    }
 
-    private String getValueFromCache(final String name) {
-        synchronized(cache) {
-            CachedValue cachedValue = cache.get(name);
-            if( cachedValue != null ) {
-                if( cachedValue.hasExpired() ) {
-                    cache.remove(name);
-                } else {
-                    return cachedValue.getValue();
+        if (previous != null) {
+            Set<String> names = new HashSet<>(previous.values.keySet());
+            names.addAll(reloaded.values.keySet());
+            for (String name : names) {
+                String newValue = reloaded.values.get(name);
+                if (!VERSION_PROPERTY.equals(name) && !Objects.equals(previous.values.get(name), newValue)) {
+                    notifyListeners(name, newValue);
                 }
             }
         }
-
-        return null;
     }
 
+    private Snapshot load()
+            throws SQLException {
+        Map<String, String> values = new HashMap<>();
+        try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(GET_ALL_SQL)) {
+            try(ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String value = rs.getString(2);
+                    if (!rs.wasNull()) {
+                        values.put(rs.getString(1), value);
+                    }
+                }
+            }
+        }
+        return new Snapshot(values, values.get(VERSION_PROPERTY));
+    }
 
+    private void notifyListeners(final String name, final String value) {
+        final List<ConfigurationListenersDAO.ConfigurationListener> listeners =
+        	ConfigurationListenersDAO.getListenersForProperty(name);
+        if( listeners != null )
+        {
+        	for(ConfigurationListenersDAO.ConfigurationListener thisListener: listeners) {
+        		try {
+        			thisListener.configurationChange(name, value);
+        		} catch (RuntimeException e) {
+        			Logger.getAnonymousLogger().log(Level.WARNING, "Configuration listener failed for "+name, e);
+        		}
+	        }
+        }
+    }
 
     /**
-     * Class holding a cached configuration value.
+     * An immutable copy of the configuration table.
      */
 
-    private class CachedValue {
-    	/**
-    	 * The maximum life of a cached entry.
-    	 */
-
-    	private static final long CACHE_LIFETIME = 30 * 1000;	// 30s
+    private static final class Snapshot {
 
     	/**
-    	 * The time the record was inserted into the cache.
+    	 * The non-null values in the configuration table, keyed on property name.
     	 */
 
-    	private final long insertTime;
+    	private final Map<String, String> values;
 
     	/**
-    	 * The value.
+    	 * The version token the values were read with.
     	 */
 
-    	private final String value;
+    	private final String version;
 
-    	/**
-    	 * Constructor. Stores data.
-    	 *
-    	 * @param newValue The value to be cached.
-    	 */
-    	private CachedValue( String newValue ) {
-    		insertTime = System.currentTimeMillis();
-    		value = newValue;
+    	private Snapshot(final Map<String, String> newValues, final String newVersion) {
+    		values = Collections.unmodifiableMap(newValues);
+    		version = newVersion;
     	}
 
-    	/**
-    	 * Check to see if this entry has expired.
-    	 */
-
-    	boolean hasExpired() {
-    		return System.currentTimeMillis() > (insertTime + CACHE_LIFETIME);
+    	String get(final String name) {
+    		return values.get(name);
     	}
 
     	/**
-    	 * Gets the value.
+    	 * Creates a copy of this snapshot with a single value changed.
+    	 *
+    	 * @param name The name of the property to change.
+    	 * @param value The new value, or null if the property has been removed.
+    	 * @param newVersion The version token for the new snapshot.
     	 */
 
-    	String getValue() {
-    		return value;
+    	Snapshot with(final String name, final String value, final String newVersion) {
+    		Map<String, String> newValues = new HashMap<>(values);
+    		if (value == null) {
+    			newValues.remove(name);
+    		} else {
+    			newValues.put(name, value);
+    		}
+    		newValues.put(VERSION_PROPERTY, newVersion);
+    		return new Snapshot(newValues, newVersion);
     	}
     }
 
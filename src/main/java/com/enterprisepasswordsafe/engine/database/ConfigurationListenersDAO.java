@@ -18,34 +18,25 @@ package com.enterprisepasswordsafe.engine.database;
 
 import com.enterprisepasswordsafe.proguard.ExternalInterface;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public final class ConfigurationListenersDAO implements ExternalInterface {
 
-    private static final Map<String, List<ConfigurationListener>> listeners = new HashMap<>();
+    private static final Map<String, List<ConfigurationListener>> listeners = new ConcurrentHashMap<>();
 
     private ConfigurationListenersDAO() {
     	super();
     }
     
     public static void addListener( String propertyName, ConfigurationListener listener ) {
-    	synchronized( listeners ) {
-    		List<ConfigurationListener> listenerList = listeners.get(propertyName);
-    		if( listenerList == null ) {
-    			listenerList = new ArrayList<>();
-    			listeners.put(propertyName, listenerList);
-    		}
-    		listenerList.add( listener );
-    	}
+    	listeners.computeIfAbsent(propertyName, name -> new CopyOnWriteArrayList<>()).add( listener );
     }
     
     public static List<ConfigurationListener> getListenersForProperty( String propertyName ) {
-    	synchronized(listeners) {
-    		return listeners.get(propertyName);
-    	}
+    	return listeners.get(propertyName);
     }
     
     public interface ConfigurationListener extends ExternalInterface {
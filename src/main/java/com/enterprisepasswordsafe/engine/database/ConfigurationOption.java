@@ -26,12 +26,16 @@ public enum ConfigurationOption implements ExternalInterface {
     DEFAULT_LOGIN_ACCESS("user.login_access", UserIPZoneRestriction.ALLOW_STRING),
     DEFAULT_HIERARCHY_ACCESS_RULE("hierarchy.default_rule", Configuration.HIERARCHY_ACCESS_ALLOW),
     EDIT_USER_MINIMUM_USER_LEVEL("hierarchy.edit_userlevel", "A"),
+    EVENT_LOG_HASH_CHAIN("eventlog.hash_chain", "N"),
+    EVENT_LOG_PAGE_SIZE("eventlog.page_size", "500"),
+    EVENT_LOG_RETENTION_DAYS("eventlog.retention_days", "0"),
     HIDDEN_PASSWORD_ENTRY("password.entry_hidden", "true"),
     HIDE_EMPTY_FOLDERS("hierarchy.hide_empty", Configuration.HIDE_EMPTY_FOLDERS_ON),
     MAX_FUTURE_EXPIRY_DISTANCE("expiry.max_distance", "0"),
     INCLUDE_USER_ON_AUDIT_EMAIL("audit.email_user", "n"),
     LOGIN_ATTEMPTS("user.login_attempts", "3"),
     PASSWORD_AUDIT_LEVEL("password.audit", Password.SYSTEM_AUDIT_CREATOR_CHOOSE),
+    PASSWORD_DATA_REENCODE("password.reencode", "N"),
     PASSWORD_DISPLAY("password.defaultdisplay", "s"),
     PASSWORD_DISPLAY_TYPE("password.displaytype", "i"),
     PASSWORD_HIDE_SYSTEM_SELECTOR("password.hidesystems", "n"),
@@ -43,7 +47,10 @@ public enum ConfigurationOption implements ExternalInterface {
     REPORT_SEPARATOR("report.separator",","),
     REJECT_HISTORICAL_EXPIRY_DATES("expiry.allow_historical", "N"),
     SCHEMA_VERSION("schema.id", null),
+    SEARCH_INDEX_ENABLED("search.index_enabled", "N"),
     SESSION_TIMEOUT("session.timeout", "30"),
+    SMTP_BATCH_RECIPIENTS("smtp.batch_recipients", "Y"),
+    SMTP_DIGEST_WINDOW("smtp.digest_window", "60"),
     SMTP_ENABLED("smtp.enabled", null),
     SMTP_HOST("smtphost", null),
     SMTP_TO_PROPERTY("smtpto", null),
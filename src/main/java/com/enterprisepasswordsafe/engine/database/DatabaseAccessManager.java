@@ -18,7 +18,6 @@ package com.enterprisepasswordsafe.engine.database;
 
 import java.security.GeneralSecurityException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -31,7 +30,9 @@ import com.enterprisepasswordsafe.engine.configuration.JDBCConfiguration;
 import com.enterprisepasswordsafe.engine.database.exceptions.DatabaseUnavailableException;
 import com.enterprisepasswordsafe.engine.dbabstraction.DALFactory;
 import com.enterprisepasswordsafe.engine.dbabstraction.DALInterface;
+import com.enterprisepasswordsafe.engine.dbpool.DatabasePoolFactory;
 import com.enterprisepasswordsafe.engine.utils.DatabaseConnectionUtils;
+import com.enterprisepasswordsafe.engine.utils.RequestMetrics;
 
 
 /**
@@ -51,6 +52,12 @@ public class DatabaseAccessManager {
 
 	private Connection connection;
 
+	/**
+	 * The cache of prepared statements for the current connection.
+	 */
+
+	private PreparedStatementCache statementCache;
+
 	/**
 	 * The database abstraction layer in use
 	 */
@@ -85,6 +92,7 @@ public class DatabaseAccessManager {
 		}
 
 		connection = null;
+		statementCache = null;
 	}
 
 	private void commitAndCloseConnection() {
@@ -110,14 +118,21 @@ public class DatabaseAccessManager {
 	}
 
 	/**
-	 * Get the connection object used
+	 * Get the connection object used. If metrics are being collected for the
+	 * current request the connection is instrumented to record the work done
+	 * through it.
+	 *
 	 * @throws SQLException
 	 */
 
 	public Connection getConnection() throws SQLException {
 		if(connection == null || connection.isClosed()) {
 			try {
-				connection = DriverManager.getConnection("jdbc:apache:commons:dbcp:pwsafe");
+				statementCache = PreparedStatementCache.wrap(DatabasePoolFactory.getConnection());
+				connection = statementCache.getConnection();
+				if (RequestMetrics.isCollecting()) {
+					connection = InstrumentedConnection.wrap(connection);
+				}
 			} catch(SQLException e) {
 				Logger.getAnonymousLogger().log(Level.WARNING, "Error attempting to get database connection", e);
 				throw new DatabaseUnavailableException(e);
@@ -127,6 +142,40 @@ public class DatabaseAccessManager {
 	}
 
 
+	/**
+	 * Get the number of prepared statements served from the statement cache
+	 * for the current connection.
+	 */
+
+	public long getStatementCacheHits() {
+		return statementCache == null ? 0 : statementCache.getHits();
+	}
+
+	/**
+	 * Get the number of prepared statements which had to be prepared by
+	 * the database for the current connection.
+	 */
+
+	public long getStatementCacheMisses() {
+		return statementCache == null ? 0 : statementCache.getMisses();
+	}
+
+	/**
+	 * Get the number of statement cache hits across all connections.
+	 */
+
+	public static long getTotalStatementCacheHits() {
+		return PreparedStatementCache.getTotalHits();
+	}
+
+	/**
+	 * Get the number of statement cache misses across all connections.
+	 */
+
+	public static long getTotalStatementCacheMisses() {
+		return PreparedStatementCache.getTotalMisses();
+	}
+
 	/**
 	 * Gets a Database Abstraction Layer object for direct database manipulation.
 	 *
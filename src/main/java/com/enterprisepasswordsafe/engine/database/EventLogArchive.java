@@ -0,0 +1,881 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+import com.enterprisepasswordsafe.engine.logging.EventLogChainKey;
+import com.enterprisepasswordsafe.engine.logging.LogEventHasher;
+import com.enterprisepasswordsafe.engine.utils.CryptoPrimitives;
+import com.enterprisepasswordsafe.proguard.JavaBean;
+
+/**
+ * The archive of old event log entries.
+ *
+ * Entries are moved out of the event_log table, oldest first, into compressed segments
+ * held in the event_log_archive table. Each segment covers a range of times which does
+ * not overlap any other segment, and holds at most MAX_SEGMENT_ENTRIES entries unless
+ * more than that were logged in the same millisecond. The time range of each segment is
+ * indexed so readers only decompress the segments covering the times they need.
+ *
+ * Each segment is sealed with an HMAC, under the server audit key, of the previous
+ * segment's seal and the segment's contents, so segments can not be altered, removed or
+ * reordered without the change being detected when the archive is verified.
+ */
+
+public final class EventLogArchive {
+
+    /**
+     * The maximum number of entries in a segment.
+     */
+
+    static final int MAX_SEGMENT_ENTRIES = 2000;
+
+    /**
+     * The version of the segment data format.
+     */
+
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The maximum number of problems reported by a verification.
+     */
+
+    private static final int MAX_REPORTED_PROBLEMS = 100;
+
+    /**
+     * The value mixed into segment seals so they can't be confused with other HMACs
+     * made with the server audit key.
+     */
+
+    private static final byte[] SEAL_LABEL = "eventlog.archive_segment".getBytes(StandardCharsets.UTF_8);
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final String ENTRY_FIELDS = "dt_l, user_id, item_id, event, stamp_b, chain_seq_l, chain_b";
+
+    private static final String GET_ENTRIES_TO_ARCHIVE_SQL =
+            "SELECT " + ENTRY_FIELDS + " FROM event_log WHERE dt_l >= ? AND dt_l < ? ORDER BY dt_l";
+
+    private static final String GET_ENTRIES_AT_SQL =
+            "SELECT " + ENTRY_FIELDS + " FROM event_log WHERE dt_l = ?";
+
+    private static final String COUNT_LIVE_LINKS_SQL =
+            "SELECT COUNT(*) FROM event_log WHERE chain_seq_l >= ? AND chain_seq_l < ?";
+
+    private static final String DELETE_ARCHIVED_ENTRIES_SQL =
+            "DELETE FROM event_log WHERE dt_l >= ? AND dt_l <= ?";
+
+    private static final String INSERT_SEGMENT_SQL =
+            "INSERT INTO event_log_archive(segment_l, start_dt_l, end_dt_l, entry_count, data_b, chain_seq_l, chain_b, seal_b) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SEGMENT_FIELDS =
+            "segment_l, start_dt_l, end_dt_l, entry_count, chain_seq_l, chain_b, seal_b";
+
+    private static final String GET_LAST_SEGMENT_SQL =
+            "SELECT " + SEGMENT_FIELDS + " FROM event_log_archive "
+            + " WHERE segment_l = (SELECT MAX(segment_l) FROM event_log_archive)";
+
+    private static final String GET_SEGMENTS_FOR_RANGE_SQL =
+            "SELECT segment_l FROM event_log_archive WHERE end_dt_l >= ? AND start_dt_l <= ? ORDER BY segment_l";
+
+    private static final String GET_SEGMENT_DATA_SQL =
+            "SELECT data_b FROM event_log_archive WHERE segment_l = ?";
+
+    private static final String GET_ALL_SEGMENTS_SQL =
+            "SELECT " + SEGMENT_FIELDS + ", data_b FROM event_log_archive ORDER BY segment_l";
+
+    private static final String GET_SUMMARY_SQL =
+            "SELECT COUNT(*), SUM(entry_count), MIN(start_dt_l), MAX(end_dt_l) FROM event_log_archive";
+
+    private EventLogArchive() {
+        super();
+    }
+
+    /**
+     * Moves the oldest entries logged before a time which have not yet been archived
+     * into a new segment. The segment is stored and the entries removed in a single
+     * transaction, which is rolled back if entries are logged in the segment's time
+     * range while it is being written.
+     *
+     * @param before The time entries must be logged before to be archived.
+     *
+     * @return The new segment, or null if there were no entries to archive.
+     */
+
+    public Segment archiveSegment(final long before)
+            throws SQLException, GeneralSecurityException {
+        Connection connection = BOMFactory.getCurrentConntection();
+        Segment previous = getLastSegment(connection);
+        long from = previous == null ? Long.MIN_VALUE : previous.getEndDate() + 1;
+
+        List<Entry> entries = checkChain(connection, previous, getEntriesToArchive(connection, from, before));
+        if (entries.isEmpty()) {
+            return null;
+        }
+
+        Long chainSequence = previous == null ? null : previous.chainSequence;
+        byte[] chainLink = previous == null ? null : previous.chainLink;
+        for (Entry entry : entries) {
+            if (entry.chainSequence != null && (chainSequence == null || entry.chainSequence > chainSequence)) {
+                chainSequence = entry.chainSequence;
+                chainLink = entry.chainLink;
+            }
+        }
+
+        long startDate = entries.get(0).getDateTime();
+        long endDate = entries.get(entries.size() - 1).getDateTime();
+        byte[] data = encode(entries);
+        Segment segment = new Segment(previous == null ? 0 : previous.getNumber() + 1, startDate, endDate,
+                entries.size(), chainSequence, chainLink, null);
+        segment.seal = seal(EventLogChainKey.get(), previous == null ? LogEventHasher.getChainStart() : previous.seal,
+                segment, data);
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        boolean committed = false;
+        try {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SEGMENT_SQL)) {
+                int idx = 1;
+                ps.setLong(idx++, segment.getNumber());
+                ps.setLong(idx++, startDate);
+                ps.setLong(idx++, endDate);
+                ps.setInt(idx++, segment.getEntryCount());
+                ps.setBytes(idx++, data);
+                if (chainSequence == null) {
+                    ps.setNull(idx++, Types.BIGINT);
+                    ps.setNull(idx++, Types.BLOB);
+                } else {
+                    ps.setLong(idx++, chainSequence);
+                    ps.setBytes(idx++, chainLink);
+                }
+                ps.setBytes(idx, segment.seal);
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = connection.prepareStatement(DELETE_ARCHIVED_ENTRIES_SQL)) {
+                ps.setLong(1, from);
+                ps.setLong(2, endDate);
+                int deleted = ps.executeUpdate();
+                if (deleted != entries.size()) {
+                    throw new SQLException("The event log changed while entries were being archived.");
+                }
+            }
+            connection.commit();
+            committed = true;
+        } finally {
+            if (!committed) {
+                connection.rollback();
+            }
+            connection.setAutoCommit(autoCommit);
+        }
+        return segment;
+    }
+
+    /**
+     * Recomputes the chain link of each chained entry being archived, in sequence order,
+     * starting from the chain head held by the previous segment, so altered or removed
+     * entries are not sealed into the archive.
+     *
+     * Entries are linked in the order they are written, which can differ from the order
+     * of their times when they are logged at almost the same time. If an entry is linked
+     * after one which is still waiting to be archived, it and the entries logged after it
+     * are left for a later segment.
+     *
+     * @return The entries which can be archived.
+     *
+     * @throws GeneralSecurityException If the entries do not match the chain.
+     */
+
+    private List<Entry> checkChain(final Connection connection, final Segment previous, final List<Entry> entries)
+            throws SQLException, GeneralSecurityException {
+        List<Entry> chained = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.chainSequence != null) {
+                chained.add(entry);
+            }
+        }
+        if (chained.isEmpty()) {
+            return entries;
+        }
+        chained.sort(Comparator.comparingLong((Entry entry) -> entry.chainSequence));
+
+        SecretKey key = EventLogChainKey.get();
+        EventLogChain chain = EventLogChain.getInstance();
+        boolean hasPrevious = previous != null && previous.chainSequence != null;
+        long expected = hasPrevious ? previous.chainSequence + 1 : 0;
+        byte[] previousLink = hasPrevious ? previous.chainLink : LogEventHasher.getChainStart();
+        for (Entry entry : chained) {
+            long sequence = entry.chainSequence;
+            if (sequence > expected && countLiveLinks(connection, expected, sequence) == sequence - expected) {
+                return getEntriesBefore(entries, entry, chained);
+            }
+            if (sequence != expected) {
+                throw new GeneralSecurityException("The event log entry at position " + expected
+                        + " in the chain is missing or duplicated, so the event log has not been archived.");
+            }
+            byte[] calculated = chain.createLink(key, previousLink, sequence, entry.dateTime, entry.event,
+                    entry.itemId, entry.storedUserId, entry.tamperStamp);
+            if (!MessageDigest.isEqual(calculated, entry.chainLink)) {
+                throw new GeneralSecurityException("The event log entry at position " + sequence
+                        + " in the chain has been altered, so the event log has not been archived.");
+            }
+            previousLink = entry.chainLink;
+            expected++;
+        }
+        return entries;
+    }
+
+    /**
+     * Gets the number of entries still in the event log with a chain position in a range.
+     */
+
+    private int countLiveLinks(final Connection connection, final long from, final long to)
+            throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(COUNT_LIVE_LINKS_SQL)) {
+            ps.setLong(1, from);
+            ps.setLong(2, to);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Gets the entries logged before the first entry linked at or after a position in
+     * the chain.
+     */
+
+    private List<Entry> getEntriesBefore(final List<Entry> entries, final Entry firstLeft,
+                                         final List<Entry> chained) {
+        long cutoff = firstLeft.dateTime;
+        for (Entry entry : chained) {
+            if (entry.chainSequence >= firstLeft.chainSequence) {
+                cutoff = Math.min(cutoff, entry.dateTime);
+            }
+        }
+        List<Entry> archivable = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.dateTime < cutoff) {
+                archivable.add(entry);
+            }
+        }
+        return archivable;
+    }
+
+    /**
+     * Reads the entries to archive. Entries logged in the same millisecond are kept in
+     * the same segment so the range of times each segment covers can be deleted exactly.
+     */
+
+    private List<Entry> getEntriesToArchive(final Connection connection, final long from, final long before)
+            throws SQLException {
+        List<Entry> entries = new ArrayList<>();
+        boolean moreEntries = false;
+        try (PreparedStatement ps = connection.prepareStatement(GET_ENTRIES_TO_ARCHIVE_SQL)) {
+            ps.setMaxRows(MAX_SEGMENT_ENTRIES + 1);
+            ps.setFetchSize(MAX_SEGMENT_ENTRIES + 1);
+            ps.setLong(1, from);
+            ps.setLong(2, before);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (entries.size() == MAX_SEGMENT_ENTRIES) {
+                        moreEntries = true;
+                        break;
+                    }
+                    entries.add(new Entry(rs));
+                }
+            }
+        }
+
+        if (moreEntries) {
+            long lastDate = entries.get(entries.size() - 1).getDateTime();
+            while (!entries.isEmpty() && entries.get(entries.size() - 1).getDateTime() == lastDate) {
+                entries.remove(entries.size() - 1);
+            }
+            if (entries.isEmpty()) {
+                try (PreparedStatement ps = connection.prepareStatement(GET_ENTRIES_AT_SQL)) {
+                    ps.setLong(1, lastDate);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            entries.add(new Entry(rs));
+                        }
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Opens a reader for the archived entries in a time range.
+     *
+     * @param from The start of the range.
+     * @param to The end of the range.
+     * @param userIdLimit The user to limit the entries to, or null for all users.
+     * @param itemIdLimit The item to limit the entries to, or null for all items.
+     *
+     * @return The reader.
+     */
+
+    public Reader openReader(final long from, final long to, final String userIdLimit, final String itemIdLimit)
+            throws SQLException {
+        List<Long> segments = new ArrayList<>();
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(GET_SEGMENTS_FOR_RANGE_SQL)) {
+            ps.setLong(1, from);
+            ps.setLong(2, to);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    segments.add(rs.getLong(1));
+                }
+            }
+        }
+        return new Reader(segments, from, to, userIdLimit, itemIdLimit);
+    }
+
+    /**
+     * Gets the last link in the event log hash chain which has been archived.
+     *
+     * @param connection The connection to use.
+     *
+     * @return The link, or null if no chained entries have been archived.
+     */
+
+    EventLogChain.Link getChainHead(final Connection connection)
+            throws SQLException {
+        Segment last = getLastSegment(connection);
+        if (last == null || last.chainSequence == null) {
+            return null;
+        }
+        return new EventLogChain.Link(last.chainSequence, last.chainLink);
+    }
+
+    /**
+     * Checks the seal, size and time range of every segment in order.
+     *
+     * @return The result of the verification.
+     */
+
+    public VerificationResult verify()
+            throws SQLException, GeneralSecurityException {
+        SecretKey key = EventLogChainKey.get();
+        VerificationResult result = new VerificationResult();
+        byte[] previousSeal = LogEventHasher.getChainStart();
+        long expectedSegment = 0;
+        long previousEnd = Long.MIN_VALUE;
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(GET_ALL_SEGMENTS_SQL)) {
+            ps.setFetchSize(1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Segment segment = new Segment(rs);
+                    byte[] data = rs.getBytes(8);
+                    result.segmentCount++;
+                    if (segment.getNumber() != expectedSegment) {
+                        result.addProblem("Segments " + expectedSegment + " to " + (segment.getNumber() - 1)
+                                + " have been removed");
+                    }
+                    if (segment.seal == null || data == null
+                            || !MessageDigest.isEqual(segment.seal, seal(key, previousSeal, segment, data))) {
+                        result.addProblem("Segment " + segment.getNumber() + " has been altered");
+                    } else if (segment.getStartDate() <= previousEnd) {
+                        result.addProblem("Segment " + segment.getNumber() + " overlaps the previous segment");
+                    } else {
+                        try {
+                            List<Entry> entries = decode(data);
+                            if (entries.size() != segment.getEntryCount()) {
+                                result.addProblem("Segment " + segment.getNumber() + " has the wrong number of entries");
+                            }
+                            result.entryCount += entries.size();
+                        } catch (IOException e) {
+                            result.addProblem("Segment " + segment.getNumber() + " can not be read");
+                        }
+                    }
+                    previousSeal = segment.seal == null ? LogEventHasher.getChainStart() : segment.seal;
+                    previousEnd = segment.getEndDate();
+                    expectedSegment = segment.getNumber() + 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets a summary of the archive.
+     *
+     * @return The summary.
+     */
+
+    public Summary getSummary()
+            throws SQLException {
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(GET_SUMMARY_SQL)) {
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next() || rs.getLong(1) == 0) {
+                    return new Summary(0, 0, 0, 0);
+                }
+                return new Summary(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4));
+            }
+        }
+    }
+
+    private Segment getLastSegment(final Connection connection)
+            throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(GET_LAST_SEGMENT_SQL)) {
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new Segment(rs) : null;
+            }
+        }
+    }
+
+    private List<Entry> getSegmentEntries(final long segment)
+            throws SQLException {
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(GET_SEGMENT_DATA_SQL)) {
+            ps.setLong(1, segment);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return Collections.emptyList();
+                }
+                return decode(rs.getBytes(1));
+            }
+        } catch (IOException e) {
+            throw new SQLException("Unable to read event log archive segment " + segment, e);
+        }
+    }
+
+    private byte[] seal(final SecretKey key, final byte[] previousSeal, final Segment segment, final byte[] data)
+            throws GeneralSecurityException {
+        MessageDigest digester = CryptoPrimitives.getMessageDigest(DIGEST_ALGORITHM);
+        byte[] dataDigest = digester.digest(data);
+
+        Mac mac = CryptoPrimitives.getMac(EventLogChainKey.ALGORITHM);
+        mac.init(key);
+        mac.update(SEAL_LABEL);
+        mac.update(previousSeal);
+        mac.update(ByteBuffer.allocate(Long.BYTES * 4 + Integer.BYTES)
+                .putLong(segment.getNumber())
+                .putLong(segment.getStartDate())
+                .putLong(segment.getEndDate())
+                .putInt(segment.getEntryCount())
+                .putLong(segment.chainSequence == null ? -1 : segment.chainSequence)
+                .array());
+        if (segment.chainLink != null) {
+            mac.update(segment.chainLink);
+        }
+        mac.update(dataDigest);
+        return mac.doFinal();
+    }
+
+    static byte[] encode(final List<Entry> entries)
+            throws SQLException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(buffer))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeLong(entry.dateTime);
+                writeBytes(out, toBytes(entry.storedUserId));
+                writeBytes(out, toBytes(entry.itemId));
+                writeBytes(out, toBytes(entry.event));
+                writeBytes(out, entry.tamperStamp);
+                out.writeBoolean(entry.chainSequence != null);
+                if (entry.chainSequence != null) {
+                    out.writeLong(entry.chainSequence);
+                    writeBytes(out, entry.chainLink);
+                }
+            }
+        } catch (IOException e) {
+            throw new SQLException("Unable to create event log archive segment", e);
+        }
+        return buffer.toByteArray();
+    }
+
+    static List<Entry> decode(final byte[] data)
+            throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data)))) {
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unknown event log archive format " + version);
+            }
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long dateTime = in.readLong();
+                String userId = toString(readBytes(in));
+                String itemId = toString(readBytes(in));
+                String event = toString(readBytes(in));
+                byte[] tamperStamp = readBytes(in);
+                Long chainSequence = null;
+                byte[] chainLink = null;
+                if (in.readBoolean()) {
+                    chainSequence = in.readLong();
+                    chainLink = readBytes(in);
+                }
+                entries.add(new Entry(dateTime, userId, itemId, event, tamperStamp, chainSequence, chainLink));
+            }
+            return entries;
+        }
+    }
+
+    private static void writeBytes(final DataOutputStream out, final byte[] value)
+            throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(final DataInputStream in)
+            throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+
+    private static byte[] toBytes(final String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String toString(final byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * An archived event log entry.
+     */
+
+    public static final class Entry {
+
+        private final long dateTime;
+
+        private final String storedUserId;
+
+        private final String itemId;
+
+        private final String event;
+
+        private final byte[] tamperStamp;
+
+        private final Long chainSequence;
+
+        private final byte[] chainLink;
+
+        private Entry(final ResultSet rs)
+                throws SQLException {
+            int idx = 1;
+            dateTime = rs.getLong(idx++);
+            storedUserId = rs.getString(idx++);
+            itemId = rs.getString(idx++);
+            event = rs.getString(idx++);
+            tamperStamp = rs.getBytes(idx++);
+            long sequence = rs.getLong(idx++);
+            chainSequence = rs.wasNull() ? null : sequence;
+            chainLink = rs.getBytes(idx);
+        }
+
+        Entry(final long newDateTime, final String newStoredUserId, final String newItemId, final String newEvent,
+              final byte[] newTamperStamp, final Long newChainSequence, final byte[] newChainLink) {
+            dateTime = newDateTime;
+            storedUserId = newStoredUserId;
+            itemId = newItemId;
+            event = newEvent;
+            tamperStamp = newTamperStamp;
+            chainSequence = newChainSequence;
+            chainLink = newChainLink;
+        }
+
+        public long getDateTime() {
+            return dateTime;
+        }
+
+        /**
+         * Get the user ID as it was stored, which is the dummy user ID if no user was involved.
+         */
+
+        public String getStoredUserId() {
+            return storedUserId;
+        }
+
+        public String getItemId() {
+            return itemId;
+        }
+
+        public String getEvent() {
+            return event;
+        }
+
+        public byte[] getTamperStamp() {
+            return tamperStamp;
+        }
+
+        public TamperproofEventLog toEventLog() {
+            return new TamperproofEventLog(dateTime, storedUserId, itemId, event, tamperStamp);
+        }
+    }
+
+    /**
+     * Reads the archived entries in a time range in the order they were logged. Only
+     * one segment is decompressed at a time.
+     */
+
+    public final class Reader {
+
+        private final List<Long> segments;
+
+        private final long from;
+
+        private final long to;
+
+        private final String userIdLimit;
+
+        private final String itemIdLimit;
+
+        private int nextSegment = 0;
+
+        private List<Entry> entries = Collections.emptyList();
+
+        private int nextEntry = 0;
+
+        private Reader(final List<Long> newSegments, final long newFrom, final long newTo,
+                       final String newUserIdLimit, final String newItemIdLimit) {
+            segments = newSegments;
+            from = newFrom;
+            to = newTo;
+            userIdLimit = newUserIdLimit;
+            itemIdLimit = newItemIdLimit;
+        }
+
+        /**
+         * Get the next entry.
+         *
+         * @return The entry, or null if there are no more entries.
+         */
+
+        public Entry next()
+                throws SQLException {
+            while (true) {
+                while (nextEntry < entries.size()) {
+                    Entry entry = entries.get(nextEntry++);
+                    if (entry.dateTime >= from && entry.dateTime <= to
+                            && (userIdLimit == null || userIdLimit.equals(entry.storedUserId))
+                            && (itemIdLimit == null || itemIdLimit.equals(entry.itemId))) {
+                        return entry;
+                    }
+                }
+                if (nextSegment >= segments.size()) {
+                    return null;
+                }
+                entries = getSegmentEntries(segments.get(nextSegment++));
+                nextEntry = 0;
+            }
+        }
+    }
+
+    /**
+     * The details of a segment.
+     */
+
+    public static final class Segment
+        implements JavaBean {
+
+        private final long number;
+
+        private final long startDate;
+
+        private final long endDate;
+
+        private final int entryCount;
+
+        private final Long chainSequence;
+
+        private final byte[] chainLink;
+
+        private byte[] seal;
+
+        private Segment(final long newNumber, final long newStartDate, final long newEndDate, final int newEntryCount,
+                        final Long newChainSequence, final byte[] newChainLink, final byte[] newSeal) {
+            number = newNumber;
+            startDate = newStartDate;
+            endDate = newEndDate;
+            entryCount = newEntryCount;
+            chainSequence = newChainSequence;
+            chainLink = newChainLink;
+            seal = newSeal;
+        }
+
+        private Segment(final ResultSet rs)
+                throws SQLException {
+            int idx = 1;
+            number = rs.getLong(idx++);
+            startDate = rs.getLong(idx++);
+            endDate = rs.getLong(idx++);
+            entryCount = rs.getInt(idx++);
+            long sequence = rs.getLong(idx++);
+            chainSequence = rs.wasNull() ? null : sequence;
+            chainLink = rs.getBytes(idx++);
+            seal = rs.getBytes(idx);
+        }
+
+        public long getNumber() {
+            return number;
+        }
+
+        public long getStartDate() {
+            return startDate;
+        }
+
+        public long getEndDate() {
+            return endDate;
+        }
+
+        public int getEntryCount() {
+            return entryCount;
+        }
+    }
+
+    /**
+     * A summary of the archive.
+     */
+
+    public static final class Summary
+        implements JavaBean {
+
+        private final long segmentCount;
+
+        private final long entryCount;
+
+        private final long oldestEntry;
+
+        private final long newestEntry;
+
+        private Summary(final long newSegmentCount, final long newEntryCount, final long newOldestEntry,
+                        final long newNewestEntry) {
+            segmentCount = newSegmentCount;
+            entryCount = newEntryCount;
+            oldestEntry = newOldestEntry;
+            newestEntry = newNewestEntry;
+        }
+
+        public long getSegmentCount() {
+            return segmentCount;
+        }
+
+        public long getEntryCount() {
+            return entryCount;
+        }
+
+        /**
+         * Get the time of the oldest archived entry, or 0 if the archive is empty.
+         */
+
+        public long getOldestEntry() {
+            return oldestEntry;
+        }
+
+        /**
+         * Get the time of the newest archived entry, or 0 if the archive is empty.
+         */
+
+        public long getNewestEntry() {
+            return newestEntry;
+        }
+    }
+
+    /**
+     * The result of verifying the archive.
+     */
+
+    public static final class VerificationResult
+        implements JavaBean {
+
+        private long segmentCount = 0;
+
+        private long entryCount = 0;
+
+        private final List<String> problems = new ArrayList<>();
+
+        private int problemCount = 0;
+
+        private void addProblem(final String problem) {
+            problemCount++;
+            if (problems.size() < MAX_REPORTED_PROBLEMS) {
+                problems.add(problem);
+            }
+        }
+
+        public long getSegmentCount() {
+            return segmentCount;
+        }
+
+        public long getEntryCount() {
+            return entryCount;
+        }
+
+        public int getProblemCount() {
+            return problemCount;
+        }
+
+        /**
+         * Get the problems found, up to the first MAX_REPORTED_PROBLEMS.
+         */
+
+        public List<String> getProblems() {
+            return Collections.unmodifiableList(problems);
+        }
+
+        public boolean isValid() {
+            return problemCount == 0;
+        }
+    }
+
+    //------------------------
+
+    private static final class InstanceHolder {
+        static final EventLogArchive INSTANCE = new EventLogArchive();
+    }
+
+    public static EventLogArchive getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+}
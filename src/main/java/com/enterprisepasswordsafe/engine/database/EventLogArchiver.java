@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import java.util.Calendar;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moves event log entries older than the configured number of days into the
+ * event log archive from a background thread.
+ *
+ * A run archives whole segments until there are no entries left before the
+ * start of the day the retention period ends on, and reports its progress so
+ * it can be followed from the administration pages.
+ */
+
+public final class EventLogArchiver {
+
+    /**
+     * The time between scheduled runs.
+     */
+
+    private static final long RUN_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * The delay before the first scheduled run, which lets the server finish starting up.
+     */
+
+    private static final long INITIAL_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * The maximum time to wait for a segment being archived when shutting down.
+     */
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+    private volatile ScheduledThreadPoolExecutor executor;
+
+    private volatile boolean running = false;
+
+    private volatile long archivingUpTo = 0;
+
+    private volatile long currentRunEntries = 0;
+
+    private volatile long currentRunSegments = 0;
+
+    private volatile long lastRunTime = 0;
+
+    private volatile long lastRunEntries = 0;
+
+    private volatile String lastError = null;
+
+    private EventLogArchiver() {
+        super();
+    }
+
+    /**
+     * Starts the scheduled runs if they have not already been started.
+     */
+
+    public void start() {
+        if (executor != null) {
+            return;
+        }
+        synchronized (this) {
+            if (executor == null) {
+                executor = createExecutor();
+            }
+        }
+    }
+
+    private ScheduledThreadPoolExecutor createExecutor() {
+        ScheduledThreadPoolExecutor newExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "EPS-EventLogArchiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        newExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        newExecutor.scheduleWithFixedDelay(this::archive, INITIAL_DELAY_MILLIS, RUN_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+        return newExecutor;
+    }
+
+    /**
+     * Queues a run to start as soon as any current run has finished.
+     *
+     * @return true if the run was queued, false if the archiver has not been started or has been shut down.
+     */
+
+    public boolean runNow() {
+        ScheduledThreadPoolExecutor current = executor;
+        if (current == null) {
+            return false;
+        }
+        try {
+            current.execute(this::archive);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stops any further runs and waits for the segment being archived to be finished.
+     */
+
+    public void shutdown() {
+        ScheduledThreadPoolExecutor current = executor;
+        if (current == null) {
+            return;
+        }
+        current.shutdown();
+        try {
+            current.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the time entries must be logged before to be archived.
+     *
+     * @return The time, or null if archiving is disabled.
+     */
+
+    public static Long getCutoff() {
+        Long retentionDays = ConfigurationDAO.getLongValue(ConfigurationOption.EVENT_LOG_RETENTION_DAYS);
+        if (retentionDays == null || retentionDays <= 0) {
+            return null;
+        }
+
+        Calendar cutoff = Calendar.getInstance();
+        cutoff.set(Calendar.HOUR_OF_DAY, 0);
+        cutoff.set(Calendar.MINUTE, 0);
+        cutoff.set(Calendar.SECOND, 0);
+        cutoff.set(Calendar.MILLISECOND, 0);
+        cutoff.add(Calendar.DAY_OF_MONTH, -retentionDays.intValue());
+        return cutoff.getTimeInMillis();
+    }
+
+    private void archive() {
+        try {
+            Long cutoff = getCutoff();
+            if (cutoff == null) {
+                return;
+            }
+
+            running = true;
+            archivingUpTo = cutoff;
+            currentRunEntries = 0;
+            currentRunSegments = 0;
+            lastError = null;
+
+            EventLogArchive archive = EventLogArchive.getInstance();
+            EventLogArchive.Segment segment;
+            while (!executor.isShutdown() && (segment = archive.archiveSegment(cutoff)) != null) {
+                currentRunEntries += segment.getEntryCount();
+                currentRunSegments++;
+            }
+
+            lastRunTime = System.currentTimeMillis();
+            lastRunEntries = currentRunEntries;
+        } catch (Exception e) {
+            lastError = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+            Logger.getAnonymousLogger().log(Level.SEVERE, "Problem archiving the event log", e);
+        } finally {
+            running = false;
+            BOMFactory.closeCurrent();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Get the time entries are being archived up to in the current or latest run.
+     */
+
+    public long getArchivingUpTo() {
+        return archivingUpTo;
+    }
+
+    public long getCurrentRunEntries() {
+        return currentRunEntries;
+    }
+
+    public long getCurrentRunSegments() {
+        return currentRunSegments;
+    }
+
+    /**
+     * Get the time the last successful run finished, or 0 if there hasn't been one.
+     */
+
+    public long getLastRunTime() {
+        return lastRunTime;
+    }
+
+    public long getLastRunEntries() {
+        return lastRunEntries;
+    }
+
+    /**
+     * Get the error which stopped the latest run, or null if it wasn't stopped by an error.
+     */
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    //------------------------
+
+    private static final class InstanceHolder {
+        static final EventLogArchiver INSTANCE = new EventLogArchiver();
+    }
+
+    public static EventLogArchiver getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import java.security.GeneralSecurityException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.SecretKey;
+
+import com.enterprisepasswordsafe.engine.logging.EventLogChainKey;
+import com.enterprisepasswordsafe.engine.logging.LogEventHasher;
+
+/**
+ * The head of the event log hash chain.
+ *
+ * When the chain is enabled each new entry stores its position in the chain and the
+ * HMAC, under the server audit key, of the previous entry's link and its own contents.
+ * The whole log can then be verified in a single pass in sequence order without
+ * decrypting any user keys.
+ *
+ * Writers must hold the lock on this object from creating the links for their entries
+ * until the entries have been committed, so entries are chained in the order they are
+ * stored. The chain assumes a single server is writing to the event log.
+ */
+
+public final class EventLogChain {
+
+    private static final String GET_HEAD_SQL =
+            "SELECT chain_seq_l, chain_b FROM event_log "
+            + " WHERE chain_seq_l = (SELECT MAX(chain_seq_l) FROM event_log)";
+
+    private final LogEventHasher hasher = new LogEventHasher();
+
+    /**
+     * The link for the last entry committed, or null if it has not been loaded yet.
+     */
+
+    private Link head;
+
+    private EventLogChain() {
+        super();
+    }
+
+    /**
+     * Whether new entries should be added to the chain.
+     *
+     * @return true if the chain is enabled.
+     */
+
+    public static boolean isEnabled() {
+        try {
+            return "Y".equalsIgnoreCase(ConfigurationDAO.getValue(ConfigurationOption.EVENT_LOG_HASH_CHAIN));
+        } catch (SQLException e) {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Unable to determine if the event log chain is enabled", e);
+            return false;
+        }
+    }
+
+    /**
+     * Creates the links for entries which are about to be written. The head of the chain
+     * is not moved until advance is called once the entries have been committed.
+     *
+     * @param connection The connection the entries will be written with.
+     * @param entries The entries, in the order they will be written.
+     *
+     * @return The link for each entry.
+     */
+
+    synchronized List<Link> createLinks(final Connection connection, final List<TamperproofEventLog> entries)
+            throws SQLException, GeneralSecurityException {
+        SecretKey key = EventLogChainKey.get();
+        Link previous = getHead(connection);
+        List<Link> links = new ArrayList<>(entries.size());
+        for (TamperproofEventLog entry : entries) {
+            long sequence = previous.getSequence() + 1;
+            byte[] hash = createLink(key, previous.getHash(), sequence, entry.getDateTime(), entry.getEvent(),
+                    entry.getItemId(), TamperproofEventLogDAO.getStoredUserId(entry), entry.getTamperStamp());
+            previous = new Link(sequence, hash);
+            links.add(previous);
+        }
+        return links;
+    }
+
+    /**
+     * Moves the head of the chain to the last of a set of committed entries.
+     *
+     * @param links The links of the committed entries.
+     */
+
+    synchronized void advance(final List<Link> links) {
+        if (!links.isEmpty()) {
+            head = links.get(links.size() - 1);
+        }
+    }
+
+    /**
+     * Gets the link for the last entry this server has committed to the chain.
+     *
+     * @return The link, or null if this server has not used the chain since it started.
+     */
+
+    synchronized Link getKnownHead() {
+        return head;
+    }
+
+    byte[] createLink(final SecretKey key, final byte[] previousHash, final long sequence,
+                      final long datetime, final String event, final String itemId,
+                      final String userId, final byte[] tamperstamp)
+            throws GeneralSecurityException {
+        return hasher.createChainLink(key, previousHash, sequence, datetime, event, itemId, userId, tamperstamp);
+    }
+
+    private Link getHead(final Connection connection)
+            throws SQLException {
+        if (head == null) {
+            Link storedHead = new Link(-1, LogEventHasher.getChainStart());
+            try (PreparedStatement ps = connection.prepareStatement(GET_HEAD_SQL)) {
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        storedHead = new Link(rs.getLong(1), rs.getBytes(2));
+                    } else {
+                        // Every chained entry may have been moved to the archive.
+                        Link archivedHead = EventLogArchive.getInstance().getChainHead(connection);
+                        if (archivedHead != null) {
+                            storedHead = archivedHead;
+                        }
+                    }
+                }
+            }
+            head = storedHead;
+        }
+        return head;
+    }
+
+    /**
+     * An entry's position in the chain and its link.
+     */
+
+    public static final class Link {
+
+        private final long sequence;
+
+        private final byte[] hash;
+
+        Link(final long newSequence, final byte[] newHash) {
+            sequence = newSequence;
+            hash = newHash;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public byte[] getHash() {
+            return hash;
+        }
+    }
+
+    //------------------------
+
+    private static final class InstanceHolder {
+        static final EventLogChain INSTANCE = new EventLogChain();
+    }
+
+    public static EventLogChain getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+}
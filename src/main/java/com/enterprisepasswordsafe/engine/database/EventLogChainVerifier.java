@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+import com.enterprisepasswordsafe.engine.logging.EventLogChainKey;
+import com.enterprisepasswordsafe.engine.logging.LogEventHasher;
+import com.enterprisepasswordsafe.engine.utils.CryptoPrimitives;
+import com.enterprisepasswordsafe.engine.utils.HexConverter;
+import com.enterprisepasswordsafe.proguard.JavaBean;
+
+/**
+ * Verifies the event log hash chain in a single pass over the chained entries in
+ * sequence order.
+ *
+ * Each entry's link is recomputed from the previous entry's stored link, so an altered
+ * entry, an entry removed from the middle of the chain, or an entry inserted with a
+ * duplicate sequence number is reported. Entries removed from the end of the chain
+ * are only detected when this server knows the head of the chain from writing to it.
+ *
+ * When the whole chain verifies a checkpoint is stored holding the last entry's
+ * sequence and link, sealed with the server audit key. Later runs can start from the
+ * checkpoint after confirming the checkpointed entry is unchanged. Entries which have
+ * been archived are checked by verifying the archive, so verification starts after the
+ * last archived entry.
+ */
+
+public final class EventLogChainVerifier {
+
+    /**
+     * The number of rows fetched from the database at a time.
+     */
+
+    private static final int FETCH_SIZE = 500;
+
+    /**
+     * The maximum time to wait for queued events to be written before verifying.
+     */
+
+    private static final long FLUSH_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * The configuration property holding the checkpoint.
+     */
+
+    private static final String CHECKPOINT_PROPERTY = "eventlog.chain_checkpoint";
+
+    /**
+     * The value mixed into the checkpoint seal so it can't be confused with an entry link.
+     */
+
+    private static final byte[] CHECKPOINT_LABEL = "eventlog.chain_checkpoint".getBytes(StandardCharsets.UTF_8);
+
+    private static final String GET_ENTRIES_SQL =
+            "SELECT chain_seq_l, dt_l, event, item_id, user_id, stamp_b, chain_b FROM event_log "
+            + " WHERE chain_seq_l > ? ORDER BY chain_seq_l";
+
+    private static final String GET_LINK_SQL =
+            "SELECT chain_b FROM event_log WHERE chain_seq_l = ?";
+
+    /**
+     * Receives each problem found as it is found.
+     */
+
+    public interface ProblemListener {
+        void problemFound(Problem problem) throws Exception;
+    }
+
+    private EventLogChainVerifier() {
+        super();
+    }
+
+    /**
+     * Verifies the chain.
+     *
+     * @param fromCheckpoint true to start from the last checkpoint, false to verify the whole chain.
+     * @param listener The listener to pass problems to, or null.
+     *
+     * @return A summary of the verification.
+     */
+
+    public Result verify(final boolean fromCheckpoint, final ProblemListener listener)
+            throws Exception {
+        TamperproofEventLogWriter.getInstance().flush(FLUSH_TIMEOUT_MILLIS);
+
+        SecretKey key = EventLogChainKey.get();
+        Connection connection = BOMFactory.getCurrentConntection();
+        Result result = new Result();
+
+        // Archived entries are protected by the archive's segment seals, so verification
+        // starts from the last archived link.
+        EventLogChain.Link archivedHead = EventLogArchive.getInstance().getChainHead(connection);
+        EventLogChain.Link start = null;
+        if (fromCheckpoint) {
+            start = getCheckpoint(key);
+            if (start != null && archivedHead != null && start.getSequence() <= archivedHead.getSequence()) {
+                start = null;
+            } else if (start != null && !isUnchanged(connection, start)) {
+                report(result, listener, new Problem(start.getSequence(), 0,
+                        "The entry verified by the last checkpoint has been altered or removed"));
+                start = null;
+            }
+        }
+        if (start == null) {
+            start = archivedHead == null ? new EventLogChain.Link(-1, LogEventHasher.getChainStart()) : archivedHead;
+        }
+        if (start.getSequence() >= 0) {
+            result.checkpointSequence = start.getSequence();
+        }
+
+        EventLogChain chain = EventLogChain.getInstance();
+        EventLogChain.Link knownHead = chain.getKnownHead();
+        long expected = start.getSequence() + 1;
+        byte[] previous = start.getHash();
+        try (PreparedStatement ps = connection.prepareStatement(GET_ENTRIES_SQL)) {
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setLong(1, start.getSequence());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int idx = 1;
+                    long sequence = rs.getLong(idx++);
+                    long datetime = rs.getLong(idx++);
+                    String event = rs.getString(idx++);
+                    String itemId = rs.getString(idx++);
+                    String userId = rs.getString(idx++);
+                    byte[] tamperstamp = rs.getBytes(idx++);
+                    byte[] link = rs.getBytes(idx);
+
+                    if (sequence < expected) {
+                        report(result, listener, new Problem(sequence, datetime,
+                                "An extra entry has been inserted with a duplicate sequence number"));
+                        continue;
+                    }
+                    if (sequence > expected) {
+                        report(result, listener, new Problem(expected, datetime,
+                                (sequence - expected) + " entries have been removed before entry " + sequence));
+                    } else {
+                        byte[] calculated = chain.createLink(key, previous, sequence, datetime, event, itemId,
+                                userId, tamperstamp);
+                        if (link != null && MessageDigest.isEqual(calculated, link)) {
+                            result.verifiedCount++;
+                        } else {
+                            report(result, listener, new Problem(sequence, datetime, "The entry has been altered"));
+                        }
+                    }
+                    result.lastSequence = sequence;
+                    previous = link;
+                    expected = sequence + 1;
+                }
+            }
+        }
+
+        if (knownHead != null && knownHead.getSequence() >= expected) {
+            report(result, listener, new Problem(expected, 0,
+                    (knownHead.getSequence() - expected + 1) + " entries have been removed from the end of the log"));
+        }
+
+        if (result.problemCount == 0 && result.lastSequence > start.getSequence()) {
+            storeCheckpoint(key, new EventLogChain.Link(result.lastSequence, previous));
+        }
+        return result;
+    }
+
+    private void report(final Result result, final ProblemListener listener, final Problem problem)
+            throws Exception {
+        result.problemCount++;
+        if (listener != null) {
+            listener.problemFound(problem);
+        }
+    }
+
+    private boolean isUnchanged(final Connection connection, final EventLogChain.Link checkpoint)
+            throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(GET_LINK_SQL)) {
+            ps.setLong(1, checkpoint.getSequence());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                byte[] link = rs.getBytes(1);
+                return link != null && MessageDigest.isEqual(link, checkpoint.getHash()) && !rs.next();
+            }
+        }
+    }
+
+    /**
+     * Gets the stored checkpoint, ignoring it if its seal does not match.
+     */
+
+    private EventLogChain.Link getCheckpoint(final SecretKey key)
+            throws SQLException, GeneralSecurityException {
+        String value = ConfigurationDAO.getValue(CHECKPOINT_PROPERTY, null);
+        if (value == null) {
+            return null;
+        }
+
+        String[] parts = value.split(":");
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            EventLogChain.Link checkpoint = new EventLogChain.Link(Long.parseLong(parts[0]), HexConverter.toBytes(parts[1]));
+            if (!MessageDigest.isEqual(seal(key, checkpoint), HexConverter.toBytes(parts[2]))) {
+                return null;
+            }
+            return checkpoint;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void storeCheckpoint(final SecretKey key, final EventLogChain.Link checkpoint)
+            throws SQLException, GeneralSecurityException {
+        String value = checkpoint.getSequence() + ":" + HexConverter.fromBytes(checkpoint.getHash())
+                + ":" + HexConverter.fromBytes(seal(key, checkpoint));
+        ConfigurationDAO.getInstance().set(CHECKPOINT_PROPERTY, value);
+    }
+
+    private byte[] seal(final SecretKey key, final EventLogChain.Link checkpoint)
+            throws GeneralSecurityException {
+        Mac mac = CryptoPrimitives.getMac(EventLogChainKey.ALGORITHM);
+        mac.init(key);
+        mac.update(CHECKPOINT_LABEL);
+        mac.update(ByteBuffer.allocate(Long.BYTES).putLong(checkpoint.getSequence()).array());
+        mac.update(checkpoint.getHash());
+        return mac.doFinal();
+    }
+
+    /**
+     * A problem found in the chain.
+     */
+
+    public static final class Problem
+        implements JavaBean {
+
+        private final long sequence;
+
+        private final long datetime;
+
+        private final String description;
+
+        private Problem(final long newSequence, final long newDatetime, final String newDescription) {
+            sequence = newSequence;
+            datetime = newDatetime;
+            description = newDescription;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Get the time of the entry involved, or 0 if it is not known.
+         */
+
+        public long getDateTime() {
+            return datetime;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    /**
+     * The summary of a verification run.
+     */
+
+    public static final class Result
+        implements JavaBean {
+
+        private long checkpointSequence = -1;
+
+        private long lastSequence = -1;
+
+        private long verifiedCount = 0;
+
+        private long problemCount = 0;
+
+        /**
+         * Get the sequence number of the checkpoint or last archived entry verification
+         * started after, or -1 if the whole chain was verified.
+         */
+
+        public long getCheckpointSequence() {
+            return checkpointSequence;
+        }
+
+        public long getLastSequence() {
+            return lastSequence;
+        }
+
+        public long getVerifiedCount() {
+            return verifiedCount;
+        }
+
+        public long getProblemCount() {
+            return problemCount;
+        }
+
+        public boolean isValid() {
+            return problemCount == 0;
+        }
+    }
+
+    //------------------------
+
+    private static final class InstanceHolder {
+        static final EventLogChainVerifier INSTANCE = new EventLogChainVerifier();
+    }
+
+    public static EventLogChainVerifier getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+}
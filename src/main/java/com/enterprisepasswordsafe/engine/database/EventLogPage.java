@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import java.util.List;
+
+import com.enterprisepasswordsafe.engine.database.TamperproofEventLogDAO.EventsForDay;
+import com.enterprisepasswordsafe.proguard.JavaBean;
+
+/**
+ * A page of entries from the event log.
+ */
+
+public final class EventLogPage
+    implements JavaBean {
+
+    private final List<EventsForDay> days;
+
+    private final String nextCursor;
+
+    EventLogPage(final List<EventsForDay> newDays, final String newNextCursor) {
+        days = newDays;
+        nextCursor = newNextCursor;
+    }
+
+    /**
+     * Get the entries on the page, grouped by day. A day can be split over more than one page.
+     */
+
+    public List<EventsForDay> getDays() {
+        return days;
+    }
+
+    /**
+     * Get the cursor to pass when fetching the next page.
+     *
+     * @return The cursor, or null if this is the last page.
+     */
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean isLastPage() {
+        return nextCursor == null;
+    }
+}
@@ -25,16 +25,15 @@ package com.enterprisepasswordsafe.engine.database;
 import com.enterprisepasswordsafe.engine.logging.LogEventHasher;
 import com.enterprisepasswordsafe.engine.logging.LogEventParser;
 import com.enterprisepasswordsafe.engine.users.UserClassifier;
-import com.enterprisepasswordsafe.engine.utils.PasswordUtils;
 import com.enterprisepasswordsafe.proguard.JavaBean;
 
 import java.io.UnsupportedEncodingException;
 import java.security.GeneralSecurityException;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Map;
 
 /**
  * Object representing an entry in the event log.
@@ -66,41 +65,49 @@ public final class ExpandedTamperproofEventLogEntry
 
 	private final UserClassifier userClassifier = new UserClassifier();
 
-	public ExpandedTamperproofEventLogEntry( final ResultSet rs, final User validatingUser,
-			final Group adminGroup, boolean validateTamperstamp)
+	/**
+	 * Constructor. The item involved is not described until setItem is called, so the
+	 * descriptions for a set of entries can be looked up together.
+	 *
+	 * @param decryptedUsers The users whose keys have already been decrypted, keyed on user ID.
+	 *  Users decrypted to validate this entry are added so they can be reused for later entries.
+	 */
+
+	ExpandedTamperproofEventLogEntry( final long dateTime, final String userId, final String newItemId,
+			final String newEvent, final byte[] newTamperstamp, final String newUsername, final Group adminGroup,
+			boolean validateTamperstamp, final Map<String, User> decryptedUsers)
 		throws SQLException, UnsupportedEncodingException, GeneralSecurityException
 	{
-		long dateTime = rs.getLong(1);
         timestamp = Calendar.getInstance();
         timestamp.setTimeInMillis(dateTime);
-		String userId = rs.getString(2);
-		itemId = rs.getString(3);
-		event = rs.getString(4);
-		tamperstamp = rs.getBytes(5);
-		username = rs.getString(6);
+		itemId = newItemId;
+		event = newEvent;
+		tamperstamp = newTamperstamp;
+		username = newUsername;
 		humanReadableMessage = new LogEventParser().getParsedMessage(event);
 
 		if( validateTamperstamp && userId != null ) {
-			testTamperstamp(UserDAO.getInstance().getByIdDecrypted(userId, adminGroup), dateTime, itemId);
+			User logUser;
+			if (decryptedUsers.containsKey(userId)) {
+				logUser = decryptedUsers.get(userId);
+			} else {
+				logUser = UserDAO.getInstance().getByIdDecrypted(userId, adminGroup);
+				decryptedUsers.put(userId, logUser);
+			}
+			testTamperstamp(logUser, dateTime, itemId);
 		}
+	}
 
-		if(itemId != null ) {
-            AccessControlDAO acDAO = AccessControlDAO.getInstance();
-            AccessControl ac = acDAO.getReadAccessControl(validatingUser, itemId);
-            if (ac != null) {
-                Password pass = new Password();
-                try {
-                    PasswordUtils.decrypt(pass, ac, rs.getBytes(7));
-                    item = pass.getUsername() + " @ " + pass.getLocation();
-                } catch (Exception ioe) {
-                    item = "";
-                }
-
-                String booleanFlag = rs.getString(8);
-                historyStored = (booleanFlag != null && booleanFlag.equals("Y"));
-            }
-		}
+	/**
+	 * Set the description of the item involved in the event.
+	 *
+	 * @param newItem The description of the item.
+	 * @param newHistoryStored Whether the history of the item is stored.
+	 */
 
+	void setItem(final String newItem, final boolean newHistoryStored) {
+		item = newItem;
+		historyStored = newHistoryStored;
 	}
 
 	/**
@@ -25,10 +25,10 @@ import java.sql.SQLException;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 
 import com.enterprisepasswordsafe.engine.GroupAccessControlDecryptor;
+import com.enterprisepasswordsafe.engine.utils.CryptoPrimitives;
 import com.enterprisepasswordsafe.engine.utils.IDGenerator;
 import com.enterprisepasswordsafe.proguard.ExternalInterface;
 
@@ -119,7 +119,11 @@ public final class Group
 
     private int status;
 
-    private static ThreadLocal<Cipher> sEncryptionCipherThreadLocal = new ThreadLocal<Cipher>();
+    /**
+     * The cache of decoded access control keys, shared with the user the group was decrypted for.
+     */
+
+    private AccessControlKeyCache accessControlKeyCache;
 
     /**
      * Creates a new instance of Group using the specified values.
@@ -186,16 +190,6 @@ public final class Group
         status = rs.getInt(startIdx+2);
     }
 
-    private Cipher getEncryptionCipher()
-            throws NoSuchPaddingException, NoSuchAlgorithmException {
-        Cipher cipher = sEncryptionCipherThreadLocal.get();
-        if(cipher == null) {
-            cipher = Cipher.getInstance(GROUP_KEY_ALGORITHM);
-            sEncryptionCipherThreadLocal.set(cipher);
-        }
-        return cipher;
-    }
-
     /**
      * Generates the read and modify keys.
      *
@@ -204,7 +198,7 @@ public final class Group
      */
 
     public void generateKey() throws NoSuchAlgorithmException {
-        KeyGenerator kgen = KeyGenerator.getInstance(GROUP_KEY_ALGORITHM);
+        KeyGenerator kgen = CryptoPrimitives.getKeyGenerator(GROUP_KEY_ALGORITHM);
         kgen.init(GROUP_KEY_SIZE); // 192 and 256 bits may not be available
         accessKey = kgen.generateKey();
     }
@@ -238,7 +232,7 @@ public final class Group
         }
 
         // Update to method
-        Cipher cipher = getEncryptionCipher();
+        Cipher cipher = CryptoPrimitives.getCipher(GROUP_KEY_ALGORITHM);
         cipher.init(Cipher.ENCRYPT_MODE, accessKey);
 
         return cipher.doFinal(data);
@@ -261,7 +255,7 @@ public final class Group
             return null;
         }
 
-        Cipher cipher = getEncryptionCipher();
+        Cipher cipher = CryptoPrimitives.getCipher(GROUP_KEY_ALGORITHM);
         cipher.init(Cipher.DECRYPT_MODE, accessKey);
 
         return cipher.doFinal(data);
@@ -386,6 +380,18 @@ public final class Group
         accessKey = newAccessKey;
     }
 
+    @Override
+    public AccessControlKeyCache getAccessControlKeyCache() {
+        return accessControlKeyCache;
+    }
+
+    /**
+     * @param newCache The cache of decoded access control keys to use.
+     */
+    public void setAccessControlKeyCache(final AccessControlKeyCache newCache) {
+        accessControlKeyCache = newCache;
+    }
+
     /**
      * Gets the encrypter for this group.
      *
@@ -445,7 +451,7 @@ public final class Group
 	            return null;
 	        }
 
-	        Cipher cipher = getEncryptionCipher();
+	        Cipher cipher = CryptoPrimitives.getCipher(GROUP_KEY_ALGORITHM);
 	        cipher.init(Cipher.ENCRYPT_MODE, encryptionKey);
 	        return cipher.doFinal(data);
 		}
@@ -488,7 +494,7 @@ public final class Group
 	            return null;
 	        }
 
-	        Cipher cipher = getEncryptionCipher();
+	        Cipher cipher = CryptoPrimitives.getCipher(GROUP_KEY_ALGORITHM);
 	        cipher.init(Cipher.DECRYPT_MODE, encryptionKey);
 	        return cipher.doFinal(data);
 		}
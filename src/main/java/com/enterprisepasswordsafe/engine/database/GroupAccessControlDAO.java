@@ -17,6 +17,7 @@
 package com.enterprisepasswordsafe.engine.database;
 
 import com.enterprisepasswordsafe.engine.database.schema.AccessControlDAOInterface;
+import com.enterprisepasswordsafe.engine.utils.DatabaseConnectionUtils;
 import com.enterprisepasswordsafe.engine.utils.KeyUtils;
 import com.enterprisepasswordsafe.proguard.ExternalInterface;
 
@@ -27,6 +28,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -98,6 +105,16 @@ public class GroupAccessControlDAO
             + "WHERE mem.user_id = ? AND gac.item_id = ? AND gac.group_id = mem.group_id AND gac.rkey IS NOT NULL "
             + "  AND gac.mkey IS NULL ";
 
+    /**
+     * SQL To get the GACs allowing a user access to a set of items. The placeholders
+     * for the item IDs are added when the statement is prepared.
+     */
+
+    private static final String GET_GACS_FOR_ITEMS_SQL =
+            "SELECT " + GAC_FIELDS + "  FROM group_access_control gac, membership mem "
+            + " WHERE mem.user_id = ? AND mem.group_id = gac.group_id AND gac.rkey IS NOT NULL "
+            + "   AND gac.item_id IN (";
+
     /**
      * SQL To get the GAC for a specific user and specific group.
      */
@@ -229,6 +246,70 @@ public class GroupAccessControlDAO
     }
 
 
+    /**
+     * Gets the group access controls giving a user access to a set of items. Where
+     * several groups give access to an item a GAC allowing modification is preferred,
+     * as it is in {@link #getGac(User, String)}.
+     *
+     * @param theUser The user to get the GACs for.
+     * @param itemIds The IDs of the items.
+     * @param decryptedGroups The groups already decrypted for the user, keyed on group ID.
+     *  Any groups decrypted are added so they can be reused by later calls.
+     *
+     * @return The group access controls, keyed on item ID. Items the user has no GAC for are not included.
+     */
+
+    public Map<String, GroupAccessControl> getGacs(final User theUser, final Collection<String> itemIds,
+                                                   final Map<String, Group> decryptedGroups)
+            throws SQLException, GeneralSecurityException, UnsupportedEncodingException {
+        Map<String, GroupAccessControl> results = new HashMap<>();
+        if (theUser == null || itemIds.isEmpty()) {
+            return results;
+        }
+
+        Set<String> readOnlyItemIds = new HashSet<>();
+        List<String> ids = new ArrayList<>(itemIds);
+        for (int start = 0; start < ids.size(); start += AccessControlDAO.MAXIMUM_ITEMS_PER_QUERY) {
+            List<String> batch = ids.subList(start, Math.min(ids.size(), start + AccessControlDAO.MAXIMUM_ITEMS_PER_QUERY));
+            String sql = GET_GACS_FOR_ITEMS_SQL + DatabaseConnectionUtils.createParameterList(batch.size())
+                    + ") ORDER BY gac.group_id";
+            try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(sql)) {
+                int idx = 1;
+                ps.setString(idx++, theUser.getUserId());
+                for (String itemId : batch) {
+                    ps.setString(idx++, itemId);
+                }
+                try(ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        String itemId = rs.getString(1);
+                        boolean readOnly = rs.getBytes(2) == null;
+                        if (results.containsKey(itemId) && (readOnly || !readOnlyItemIds.contains(itemId))) {
+                            continue;
+                        }
+
+                        String groupId = rs.getString(4);
+                        Group group = decryptedGroups.get(groupId);
+                        if (group == null && !decryptedGroups.containsKey(groupId)) {
+                            group = GroupDAO.getInstance().getByIdDecrypted(groupId, theUser);
+                            decryptedGroups.put(groupId, group);
+                        }
+                        if (group == null) {
+                            continue;
+                        }
+
+                        results.put(itemId, new GroupAccessControl(rs, 1, group));
+                        if (readOnly) {
+                            readOnlyItemIds.add(itemId);
+                        } else {
+                            readOnlyItemIds.remove(itemId);
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
     public GroupAccessControl getGac(final Group group, final String passwordId)
             throws SQLException, GeneralSecurityException, UnsupportedEncodingException {
     	if(group == null || passwordId == null) {
@@ -260,6 +341,8 @@ public class GroupAccessControlDAO
             ps.setString(2, gac.getItemId());
             ps.executeUpdate();
         }
+        AccessControlKeyCache.invalidate(gac.getGroupId(), gac.getItemId());
+        HierarchyAccessibilityCache.getInstance().invalidateFolderContents();
     }
 
     public void deleteAllForItem(AccessControledObject aco)
@@ -268,6 +351,8 @@ public class GroupAccessControlDAO
             ps.setString(1, aco.getId());
             ps.executeUpdate();
         }
+        AccessControlKeyCache.invalidateItem(aco.getId());
+        HierarchyAccessibilityCache.getInstance().invalidateFolderContents();
     }
 
     public GroupAccessControl create(Group group, AccessControledObject item,
@@ -298,6 +383,8 @@ public class GroupAccessControlDAO
             ps.setBytes(4, 	KeyUtils.encryptKey(gac.getModifyKey(), group.getKeyEncrypter()));
             ps.executeUpdate();
         }
+        AccessControlKeyCache.invalidate(gac.getGroupId(), gac.getItemId());
+        HierarchyAccessibilityCache.getInstance().invalidateFolderContents();
     }
 
     public Set<AccessSummary> getSummaries(final AccessControledObject item)
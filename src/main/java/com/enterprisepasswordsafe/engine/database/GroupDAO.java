@@ -197,6 +197,7 @@ public class GroupDAO extends GroupStoreManipulator implements ExternalInterface
     	}
 
     	theGroup.updateAccessKey(mem);
+    	theGroup.setAccessControlKeyCache(user.getAccessControlKeyCache());
 
     	return theGroup;
     }
@@ -41,6 +41,7 @@ public abstract class GroupStoreManipulator extends StoredObjectManipulator<Grou
         } finally {
             DatabaseConnectionUtils.close(ps);
         }
+        HierarchyAccessibilityCache.getInstance().invalidateAll();
     }
 
     public void delete( final Group group )
@@ -55,5 +56,6 @@ public abstract class GroupStoreManipulator extends StoredObjectManipulator<Grou
                 DatabaseConnectionUtils.close(ps);
             }
         }
+        HierarchyAccessibilityCache.getInstance().invalidateAll();
     }
 }
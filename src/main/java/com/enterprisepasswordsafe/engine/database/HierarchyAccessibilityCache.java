@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the effective accessibility of hierarchy nodes for each user.
+ *
+ * Working out whether a user can see a node can walk up the tree querying the user
+ * and group rules at every level, and may decrypt the user's rules, so results are
+ * held per user and node. A user's results are discarded when their rules or group
+ * memberships change, and every result is discarded when a group rule, the shape of
+ * the tree, or the precedence configuration changes. Results also expire after a short
+ * time so changes made through another server are picked up.
+ *
+ * The set of folders holding objects each user can access is also held here. It is
+ * discarded for every user whenever an access control or an object's position in the
+ * tree changes, because a single password can be visible to many users via groups.
+ *
+ * The results are only ever held in memory because user rules are encrypted with
+ * the user's key, and storing the decoded values would expose them.
+ */
+
+final class HierarchyAccessibilityCache {
+
+    /**
+     * The maximum time a user's results are used for.
+     */
+
+    private static final long LIFETIME_MILLIS = 60 * 1000;	// 60s
+
+    /**
+     * The cached results, keyed on user ID.
+     */
+
+    private final Map<String, UserAccessibility> users = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented every time all results are discarded, so results being calculated
+     * at the time are not stored.
+     */
+
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Incremented every time the folder contents are discarded.
+     */
+
+    private final AtomicLong contentsGeneration = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private HierarchyAccessibilityCache() {
+        ConfigurationListenersDAO.ConfigurationListener listener = (propertyName, propertyValue) -> invalidateAll();
+        ConfigurationListenersDAO.addListener(ConfigurationOption.PERMISSION_PRECEDENCE.getPropertyName(), listener);
+        ConfigurationListenersDAO.addListener(ConfigurationOption.DEFAULT_HIERARCHY_ACCESS_RULE.getPropertyName(), listener);
+    }
+
+    /**
+     * Get the results for a user, creating a new, empty set if needed.
+     *
+     * @param userId The ID of the user.
+     *
+     * @return The results for the user.
+     */
+
+    UserAccessibility getForUser(final String userId) {
+        long now = System.currentTimeMillis();
+        long currentGeneration = generation.get();
+        UserAccessibility accessibility = users.get(userId);
+        if (accessibility == null || accessibility.isStale(currentGeneration, now)) {
+            UserAccessibility fresh = new UserAccessibility(currentGeneration, now);
+            if (accessibility == null) {
+                accessibility = users.putIfAbsent(userId, fresh);
+            } else {
+                accessibility = users.replace(userId, accessibility, fresh) ? null : users.get(userId);
+            }
+            if (accessibility == null) {
+                accessibility = fresh;
+            }
+        }
+        return accessibility;
+    }
+
+    /**
+     * Discard the results for a user.
+     *
+     * @param userId The ID of the user whose rules or memberships have changed.
+     */
+
+    void invalidateUser(final String userId) {
+        UserAccessibility accessibility = users.remove(userId);
+        if (accessibility != null) {
+            accessibility.discarded = true;
+        }
+    }
+
+    /**
+     * Discard the results for every user.
+     */
+
+    void invalidateAll() {
+        generation.incrementAndGet();
+        for (UserAccessibility accessibility : users.values()) {
+            accessibility.discarded = true;
+        }
+        users.clear();
+    }
+
+    /**
+     * Discard the folder contents for every user.
+     */
+
+    void invalidateFolderContents() {
+        contentsGeneration.incrementAndGet();
+    }
+
+    long getContentsGeneration() {
+        return contentsGeneration.get();
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * The results for a single user.
+     */
+
+    final class UserAccessibility {
+
+        private final long createdGeneration;
+
+        private final long createdTime;
+
+        private final Map<String, Byte> recursiveResults = new ConcurrentHashMap<>();
+
+        private final Map<String, Byte> nodeOnlyResults = new ConcurrentHashMap<>();
+
+        private volatile FolderContents folderContents;
+
+        private volatile boolean discarded = false;
+
+        private UserAccessibility(final long newGeneration, final long newCreatedTime) {
+            createdGeneration = newGeneration;
+            createdTime = newCreatedTime;
+        }
+
+        private boolean isStale(final long currentGeneration, final long now) {
+            return discarded || createdGeneration != currentGeneration || now - createdTime > LIFETIME_MILLIS;
+        }
+
+        Byte get(final String nodeId, final boolean recurse) {
+            Byte result = (recurse ? recursiveResults : nodeOnlyResults).get(nodeId);
+            (result == null ? misses : hits).incrementAndGet();
+            return result;
+        }
+
+        void put(final String nodeId, final boolean recurse, final byte accessibility) {
+            if (discarded || createdGeneration != generation.get()) {
+                return;
+            }
+            (recurse ? recursiveResults : nodeOnlyResults).put(nodeId, accessibility);
+        }
+
+        /**
+         * Get the IDs of the folders which hold, or have a folder beneath them which holds,
+         * an object the user can access.
+         *
+         * @param treeVersion The version of the tree the IDs must have been calculated from.
+         *
+         * @return The IDs, or null if they need to be calculated.
+         */
+
+        Set<String> getFoldersWithContent(final long treeVersion) {
+            FolderContents contents = folderContents;
+            if (contents == null || contents.generation != contentsGeneration.get()
+            ||  contents.treeVersion != treeVersion) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return contents.folderIds;
+        }
+
+        /**
+         * Store the folders holding objects the user can access.
+         *
+         * @param calculatedGeneration The contents generation when the calculation started.
+         * @param treeVersion The version of the tree used in the calculation.
+         * @param folderIds The IDs of the folders.
+         */
+
+        void putFoldersWithContent(final long calculatedGeneration, final long treeVersion,
+                                   final Set<String> folderIds) {
+            if (discarded || createdGeneration != generation.get()
+            ||  calculatedGeneration != contentsGeneration.get()) {
+                return;
+            }
+            folderContents = new FolderContents(calculatedGeneration, treeVersion, folderIds);
+        }
+    }
+
+    /**
+     * The folders holding objects a user can access.
+     */
+
+    private static final class FolderContents {
+
+        private final long generation;
+
+        private final long treeVersion;
+
+        private final Set<String> folderIds;
+
+        private FolderContents(final long newGeneration, final long newTreeVersion, final Set<String> newFolderIds) {
+            generation = newGeneration;
+            treeVersion = newTreeVersion;
+            folderIds = newFolderIds;
+        }
+    }
+
+    //------------------------
+
+    private static final class InstanceHolder {
+        static final HierarchyAccessibilityCache INSTANCE = new HierarchyAccessibilityCache();
+    }
+
+    static HierarchyAccessibilityCache getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+}
@@ -116,6 +116,23 @@ public final class HierarchyNode
         }
     }
 
+    /**
+     * Creates a node instance for an existing node.
+     *
+     * @param existingNodeId The ID of the node.
+     * @param existingName The name of the node.
+     * @param existingParentId The ID of the parent of the node.
+     * @param existingType The type of node this is.
+     */
+
+    HierarchyNode(final String existingNodeId, final String existingName,
+            final String existingParentId, final int existingType) {
+        nodeId = existingNodeId;
+        name = existingName;
+        parentId = existingParentId;
+        type = existingType;
+    }
+
     /**
      * Extracts the information about this node from the JDBC ResultSet.
      *
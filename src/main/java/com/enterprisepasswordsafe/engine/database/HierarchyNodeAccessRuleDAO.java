@@ -133,7 +133,35 @@ public abstract class HierarchyNodeAccessRuleDAO implements ExternalInterface {
         	return getAccessibilityForUser( nodeId, user, true);
 	}
 
-    public abstract byte getAccessibilityForUser( final String nodeId, final User user, boolean recurse)
+    /**
+     * Check if a node is usable by a specific user, using the cached result if there is one.
+     *
+     * @param nodeId The ID of the node to check.
+     * @param user The user to check for.
+     * @param recurse Whether the accessibility of the node's parents should be taken into account.
+     *
+     * @return The accessibility of the node.
+     */
+
+    public byte getAccessibilityForUser( final String nodeId, final User user, boolean recurse)
+        throws SQLException, GeneralSecurityException {
+    	if(nodeId == null || nodeId.equals(HierarchyNode.ROOT_NODE_ID)) {
+    		return ACCESIBILITY_ALLOWED;
+    	}
+
+    	HierarchyAccessibilityCache.UserAccessibility cached =
+    			HierarchyAccessibilityCache.getInstance().getForUser(user.getUserId());
+    	Byte accessibility = cached.get(nodeId, recurse);
+    	if (accessibility != null) {
+    		return accessibility;
+    	}
+
+    	byte calculatedAccessibility = calculateAccessibilityForUser(nodeId, user, recurse);
+    	cached.put(nodeId, recurse, calculatedAccessibility);
+    	return calculatedAccessibility;
+    }
+
+    protected abstract byte calculateAccessibilityForUser( final String nodeId, final User user, boolean recurse)
         throws SQLException, GeneralSecurityException;
 
     protected byte[] getUserAccessibilityRule( final String nodeId, final User user)
@@ -251,6 +279,8 @@ public abstract class HierarchyNodeAccessRuleDAO implements ExternalInterface {
             ps.setString(idx,   user.getUserId());
             ps.executeUpdate();
         }
+
+        HierarchyAccessibilityCache.getInstance().invalidateUser(user.getUserId());
     }
 
     public void setAccessibleByGroup( final HierarchyNode node, final String groupId, final byte accessibility)
@@ -277,6 +307,8 @@ public abstract class HierarchyNodeAccessRuleDAO implements ExternalInterface {
             ps.setString(idx,   groupId);
             ps.executeUpdate();
         }
+
+        HierarchyAccessibilityCache.getInstance().invalidateAll();
     }
 
     //------------------------
@@ -29,11 +29,8 @@ public class HierarchyNodeAccessRuleDAOGroupPrecedent
 	extends HierarchyNodeAccessRuleDAO {
 
     @Override
-	public byte getAccessibilityForUser( final String nodeId, final User user, boolean recurse)
+	protected byte calculateAccessibilityForUser( final String nodeId, final User user, boolean recurse)
         throws SQLException, GeneralSecurityException {
-    	if(nodeId == null || nodeId.equals(HierarchyNode.ROOT_NODE_ID)) {
-    		return ACCESIBILITY_ALLOWED;
-    	}
 
 	    boolean allowed = false;
     	List<byte[]> rules = getUsersGroupAccessibilityRules(nodeId, user);
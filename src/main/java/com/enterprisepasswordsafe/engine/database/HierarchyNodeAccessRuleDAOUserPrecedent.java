@@ -38,11 +38,8 @@ public class HierarchyNodeAccessRuleDAOUserPrecedent
      */
 
     @Override
-	public byte getAccessibilityForUser( final String nodeId, final User user, boolean recurse)
+	protected byte calculateAccessibilityForUser( final String nodeId, final User user, boolean recurse)
         throws SQLException, GeneralSecurityException {
-    	if(nodeId == null || nodeId.equals(HierarchyNode.ROOT_NODE_ID)) {
-    		return ACCESIBILITY_ALLOWED;
-    	}
 
     	byte[] rule = getUserAccessibilityRule(nodeId, user);
 	    if( rule != null ) {
@@ -23,6 +23,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,7 +34,6 @@ import com.enterprisepasswordsafe.engine.database.derived.HierarchyNodeChildren;
 import com.enterprisepasswordsafe.engine.database.derived.HierarchyNodeSummary;
 import com.enterprisepasswordsafe.engine.database.derived.UserSummary;
 import com.enterprisepasswordsafe.engine.users.UserClassifier;
-import com.enterprisepasswordsafe.engine.utils.Cache;
 import com.enterprisepasswordsafe.engine.utils.DatabaseConnectionUtils;
 import com.enterprisepasswordsafe.proguard.ExternalInterface;
 import com.enterprisepasswordsafe.proguard.JavaBean;
@@ -49,6 +51,13 @@ public final class HierarchyNodeDAO
 
     private static final HierarchyNode ROOT_NODE = new HierarchyNode();
 
+    /**
+     * The interval between reloads of the in memory tree, which picks up changes made
+     * through other servers.
+     */
+
+    private static final long TREE_REFRESH_INTERVAL = 60 * 1000;	// 60s
+
     private static final String NODE_FIELDS = "node_id, name, parent_id, type";
 
     /**
@@ -108,6 +117,22 @@ public final class HierarchyNodeDAO
             + "   AND gac.rkey is not null AND m.group_id = gac.group_id AND m.user_id = ? "
             + "   AND g.group_id = gac.group_id AND g.status = " + Group.STATUS_ENABLED;
 
+    /**
+     * The SQL statement to get the IDs of the folders which directly hold an object
+     * the user can access, via either a user or group access control.
+     */
+
+    private static final String GET_FOLDERS_HOLDING_ACCESSIBLE_OBJECTS_SQL =
+            "SELECT   h.parent_id FROM hierarchy h, user_access_control uac "
+            + " WHERE h.type = " + HierarchyNode.OBJECT_NODE + " AND uac.item_id = h.name "
+            + "   AND uac.rkey is not null AND uac.user_id = ? "
+            + "UNION "
+            + "SELECT   h.parent_id "
+            + "  FROM hierarchy h, group_access_control gac, membership m, groups g "
+            + " WHERE h.type = " + HierarchyNode.OBJECT_NODE + " AND gac.item_id = h.name "
+            + "   AND gac.rkey is not null AND m.group_id = gac.group_id AND m.user_id = ? "
+            + "   AND g.group_id = gac.group_id AND g.status = " + Group.STATUS_ENABLED;
+
     /**
      * The SQL statement to get the all child object node ids.
      */
@@ -188,10 +213,22 @@ public final class HierarchyNodeDAO
     private static final String DELETE_SQL = "DELETE FROM hierarchy WHERE node_id = ?";
 
     /**
-     * Cache for node summaries.
+     * The in memory copy of the folders in the hierarchy, or null if it needs to be loaded.
      */
 
-    private final Cache<String,HierarchyNodeSummary> summaryCache = new Cache<String,HierarchyNodeSummary>();
+    private final AtomicReference<HierarchyTree> tree = new AtomicReference<>();
+
+    /**
+     * The time at which the tree should next be reloaded.
+     */
+
+    private final AtomicLong nextTreeRefresh = new AtomicLong();
+
+    /**
+     * Lock held while the tree is loaded or changed so changes are not lost.
+     */
+
+    private final Object treeLock = new Object();
 
 	private UserClassifier userClassifier = new UserClassifier();
 
@@ -233,7 +270,8 @@ public final class HierarchyNodeDAO
 
     public void store(final HierarchyNode node)
         throws SQLException {
-        String statementSQL = getById(node.getNodeId()) == null ? INSERT_NODE_SQL : UPDATE_NODE_SQL;
+        HierarchyNode existingNode = getById(node.getNodeId());
+        String statementSQL = existingNode == null ? INSERT_NODE_SQL : UPDATE_NODE_SQL;
         try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(statementSQL)) {
             ps.setString(1, node.getName());
             ps.setString(2, node.getParentId());
@@ -241,6 +279,17 @@ public final class HierarchyNodeDAO
             ps.setString(4, node.getNodeId());
             ps.executeUpdate();
         }
+
+        if (node.getType() == HierarchyNode.OBJECT_NODE) {
+            HierarchyAccessibilityCache.getInstance().invalidateFolderContents();
+        } else {
+            updateTree(current -> current.with(node));
+        }
+
+        // Moving a node changes which rules apply to it and everything below it.
+        if (existingNode != null && !Objects.equals(existingNode.getParentId(), node.getParentId())) {
+            HierarchyAccessibilityCache.getInstance().invalidateAll();
+        }
     }
 
     /**
@@ -255,7 +304,12 @@ public final class HierarchyNodeDAO
 
     public HierarchyNode getById(final String nodeId)
             throws SQLException {
-        return (nodeId == null || nodeId.equals(HierarchyNode.ROOT_NODE_ID)) ? ROOT_NODE : super.getById(nodeId);
+        if (nodeId == null || nodeId.equals(HierarchyNode.ROOT_NODE_ID)) {
+            return ROOT_NODE;
+        }
+
+        HierarchyNode node = getTree().getNode(nodeId);
+        return node == null ? super.getById(nodeId) : node;
     }
 
 
@@ -275,8 +329,13 @@ public final class HierarchyNodeDAO
             return null;
         }
 
+        HierarchyTree currentTree = getTree();
+        if (currentTree.contains(nodeId)) {
+            return currentTree.getParentId(nodeId);
+        }
+
         HierarchyNode node = fetchObjectIfExists(GET_NODE_PARENT_ID_SQL, nodeId);
-        return node == null ? null : node.getNodeId();
+        return node == null ? null : node.getParentId();
     }
 
     /**
@@ -315,6 +374,12 @@ public final class HierarchyNodeDAO
 
         runResultlessParameterisedSQL(DELETE_SQL, node.getNodeId());
 
+        if (node.getType() == HierarchyNode.OBJECT_NODE) {
+            HierarchyAccessibilityCache.getInstance().invalidateFolderContents();
+        } else {
+            updateTree(current -> current.without(node.getNodeId()));
+        }
+
         if (node.getType()== HierarchyNode.OBJECT_NODE) {
             deleteOrphanedPasswords(node, deletingUser);
         }
@@ -356,6 +421,11 @@ public final class HierarchyNodeDAO
 
     public List<HierarchyNode> getParentage(final HierarchyNode node)
         throws SQLException {
+        List<HierarchyNode> path = getTree().getPath(node.getParentId());
+        if (path != null) {
+            return path;
+        }
+
         final List<HierarchyNode> parentage = new ArrayList<HierarchyNode>();
         String currentNodeId = node.getParentId();
         while (currentNodeId != null ) {
@@ -379,6 +449,13 @@ public final class HierarchyNodeDAO
 
     public String getParentageAsText(final HierarchyNode node)
     	throws SQLException {
+        if (node.getType() != HierarchyNode.OBJECT_NODE) {
+            String text = getTree().getParentageText(node.getNodeId());
+            if (text != null) {
+                return text;
+            }
+        }
+
 		StringBuilder parentageText = new StringBuilder();
 
 		for( HierarchyNode thisNode : getParentage(node) ) {
@@ -398,14 +475,7 @@ public final class HierarchyNodeDAO
 
     public HierarchyNodeSummary getSummary( final HierarchyNode node )
     	throws SQLException {
-    	String nodeId = node.getNodeId();
-
-    	HierarchyNodeSummary summary = summaryCache.get(nodeId);
-    	if( summary == null ) {
-    		summary = new HierarchyNodeSummary(nodeId, getParentageAsText(node));
-    		summaryCache.put(nodeId, summary);
-    	}
-    	return summary;
+    	return new HierarchyNodeSummary(node.getNodeId(), getParentageAsText(node));
     }
 
     /**
@@ -427,15 +497,38 @@ public final class HierarchyNodeDAO
 
     public Set<Password> getAllChildrenObjects(final HierarchyNode node, final User user, final Comparator<Password> comparator)
             throws SQLException, GeneralSecurityException, UnsupportedEncodingException {
+        Set<Password> results = comparator == null ? new TreeSet<Password>() : new TreeSet<Password>(comparator);
+
+        // Sorting reads the username and location, so this is where the passwords are decrypted.
+        for (Password password : getAllChildrenObjectsUnsorted(node, user)) {
+            try {
+                results.add(password);
+            } catch (Password.DeferredDecryptionException e) {
+                Logger.getAnonymousLogger().log(Level.SEVERE, e.getMessage(), e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Gets the objects in a node which a user can access without sorting them. The
+     * passwords returned are only decrypted when their values are first read, which
+     * allows callers processing them in parallel to spread the decryption work.
+     *
+     * @param node The node to get the objects from.
+     * @param user The user accessing the objects.
+     *
+     * @return The objects the user can access.
+     */
+
+    public Collection<Password> getAllChildrenObjectsUnsorted(final HierarchyNode node, final User user)
+            throws SQLException, GeneralSecurityException, UnsupportedEncodingException {
         Map<String, Password> resultMap = new HashMap<>();
 
         addUserAccessControlAccessibleObjects(node, user, resultMap);
         addGroupAccessControlAccessibleObjects(node, user, resultMap);
 
-        Set<Password> results = comparator == null ? new TreeSet<Password>() : new TreeSet<Password>(comparator);
-
-        results.addAll(resultMap.values());
-        return results;
+        return resultMap.values();
     }
 
     private void addUserAccessControlAccessibleObjects(final HierarchyNode node, final User user,
@@ -459,7 +552,7 @@ public final class HierarchyNodeDAO
 
                     UserAccessControl ac = new UserAccessControl(rs, 1, user);
                     try {
-                        Password password = new Password(passwordId, rs.getBytes(UserAccessControlDAO.UAC_FIELD_COUNT + 2), ac);
+                        Password password = new Password(passwordId, rs.getBytes(UserAccessControlDAO.UAC_FIELD_COUNT + 2), ac, false);
                         results.put(passwordId, password);
                     } catch (IOException e) {
                         Logger.getAnonymousLogger().log(Level.SEVERE, "Unable to decrypt password " + passwordId, e);
@@ -499,7 +592,7 @@ public final class HierarchyNodeDAO
         Group group =  GroupDAO.getInstance().getByIdDecrypted(rs.getString(4), user);
         GroupAccessControl ac = new GroupAccessControl(rs, 1, group);
         try {
-            Password password = new Password(passwordId, rs.getBytes(GroupAccessControlDAO.GAC_FIELD_COUNT + 2), ac);
+            Password password = new Password(passwordId, rs.getBytes(GroupAccessControlDAO.GAC_FIELD_COUNT + 2), ac, false);
             results.put(passwordId, password);
         } catch (IOException e) {
             Logger.getAnonymousLogger().log(Level.SEVERE, "Unable to decrypt password " + passwordId, e);
@@ -509,7 +602,10 @@ public final class HierarchyNodeDAO
     public Collection<HierarchyNode> getChildrenContainerNodesForUser(final HierarchyNode node,
             final User theUser, boolean includeEmpty, final Comparator<HierarchyNode> comparator)
         throws SQLException, GeneralSecurityException {
-        List<HierarchyNode> children = getMultiple(GET_CHILD_CONTAINER_NODES_SQL, node.getNodeId());
+        List<HierarchyNode> children = getTree().getChildren(node.getNodeId(), HierarchyNode.CONTAINER_NODE);
+        if (children == null) {
+            children = getMultiple(GET_CHILD_CONTAINER_NODES_SQL, node.getNodeId());
+        }
         if( userClassifier.isAdministrator(theUser)) {
             return children;
         }
@@ -533,7 +629,7 @@ public final class HierarchyNodeDAO
                 blockedNodes.add(thisNode);
             }
         }
-
+        return blockedNodes;
     }
 
     /**
@@ -574,7 +670,15 @@ public final class HierarchyNodeDAO
 
     private boolean hasChildrenNodes(final String nodeId, final User theUser)
             throws GeneralSecurityException, SQLException {
-        List<String> childNodeIds = getFieldValues(GET_CHILDREN_NODE_IDS_SQL, nodeId);
+        List<String> childNodeIds = new ArrayList<>();
+        List<HierarchyNode> children = getTree().getChildren(nodeId, HierarchyNode.CONTAINER_NODE);
+        if (children == null) {
+            childNodeIds = getFieldValues(GET_CHILDREN_NODE_IDS_SQL, nodeId);
+        } else {
+            for (HierarchyNode child : children) {
+                childNodeIds.add(child.getNodeId());
+            }
+        }
         if(childNodeIds.isEmpty()) {
             return false;
         }
@@ -611,6 +715,64 @@ public final class HierarchyNodeDAO
 
     private boolean hasChildrenValidForUser(final String nodeId, final User theUser)
             throws SQLException, GeneralSecurityException {
+        HierarchyTree currentTree = getTree();
+        if (!currentTree.contains(nodeId)) {
+            return hasChildrenValidForUserInDatabase(nodeId, theUser);
+        }
+
+        if (userClassifier.isPriviledgedUser(theUser)
+        &&  currentTree.hasChildren(nodeId, HierarchyNode.CONTAINER_NODE)) {
+            return true;
+        }
+        return getFoldersWithContentForUser(theUser, currentTree).contains(nodeId);
+    }
+
+    /**
+     * Gets the folders which hold, or have a folder beneath them which holds, an object
+     * a user can access. The folders are worked out with a single query and a pass up the
+     * in memory tree, and are cached until an access control or the tree changes.
+     *
+     * @param theUser The user to get the folders for.
+     * @param currentTree The tree to work out the folders with.
+     *
+     * @return The IDs of the folders.
+     *
+     * @throws SQLException Thrown if there is a problem accessing the database.
+     */
+
+    private Set<String> getFoldersWithContentForUser(final User theUser, final HierarchyTree currentTree)
+            throws SQLException {
+        HierarchyAccessibilityCache cache = HierarchyAccessibilityCache.getInstance();
+        HierarchyAccessibilityCache.UserAccessibility cached = cache.getForUser(theUser.getUserId());
+        Set<String> folderIds = cached.getFoldersWithContent(currentTree.getVersion());
+        if (folderIds != null) {
+            return folderIds;
+        }
+
+        long contentsGeneration = cache.getContentsGeneration();
+        Set<String> holdingFolderIds = new HashSet<>();
+        try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(GET_FOLDERS_HOLDING_ACCESSIBLE_OBJECTS_SQL)) {
+            ps.setString(1, theUser.getUserId());
+            ps.setString(2, theUser.getUserId());
+            try(ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    holdingFolderIds.add(rs.getString(1));
+                }
+            }
+        }
+
+        folderIds = Collections.unmodifiableSet(currentTree.getFoldersWithContent(holdingFolderIds));
+        cached.putFoldersWithContent(contentsGeneration, currentTree.getVersion(), folderIds);
+        return folderIds;
+    }
+
+    /**
+     * Tests if a node which isn't in the in memory tree has children which a user can
+     * access by querying each level of the hierarchy.
+     */
+
+    private boolean hasChildrenValidForUserInDatabase(final String nodeId, final User theUser)
+            throws SQLException, GeneralSecurityException {
         return exists(GET_VALID_CHILD_OBJECT_IDS_VIA_UAC_SQL, nodeId, theUser.getUserId())
             || exists(GET_VALID_CHILD_OBJECT_IDS_VIA_GAC_SQL, nodeId, theUser.getUserId())
             || hasChildrenNodes(nodeId, theUser);
@@ -631,6 +793,49 @@ public final class HierarchyNodeDAO
         return getMultiple(GET_ALL_CHILDREN_NODES_SQL, node.getNodeId());
     }
 
+    /**
+     * Get the IDs of a folder and every folder beneath it, parents before children.
+     *
+     * @param node The folder to start from.
+     *
+     * @return The IDs of the folders, or an empty list if the node isn't a known folder.
+     *
+     * @throws SQLException If there is a problem loading the hierarchy.
+     */
+
+    public List<String> getSubtreeIds(final HierarchyNode node)
+        throws SQLException {
+        return getTree().getSubtreeIds(node.getNodeId());
+    }
+
+    /**
+     * Check if a folder is, or is above, another node.
+     *
+     * @param ancestorId The ID of the possible ancestor folder.
+     * @param nodeId The ID of the node to check.
+     *
+     * @return true if the ancestor is the node or one of its parents.
+     *
+     * @throws SQLException If there is a problem accessing the database.
+     */
+
+    public boolean isAncestor(final String ancestorId, final String nodeId)
+        throws SQLException {
+        HierarchyTree currentTree = getTree();
+        if (currentTree.contains(nodeId)) {
+            return currentTree.isAncestor(ancestorId, nodeId);
+        }
+
+        HierarchyNode node = getById(nodeId);
+        if (node == null) {
+            return false;
+        }
+        if (node.getNodeId().equals(ancestorId)) {
+            return true;
+        }
+        return node.getParentId() != null && currentTree.isAncestor(ancestorId, node.getParentId());
+    }
+
     /**
      * Perform an action on all the objects in this node, and optional recurse
      * into the child nodes..
@@ -649,7 +854,7 @@ public final class HierarchyNodeDAO
             }
         }
 
-        for(AccessControledObject aco: getAllChildrenObjects(node, theUser, null)) {
+        for(AccessControledObject aco: getAllChildrenObjectsUnsorted(node, theUser)) {
             action.process(node, aco);
         }
     }
@@ -685,6 +890,69 @@ public final class HierarchyNodeDAO
     	return result;
     }
 
+    /**
+     * Gets the in memory tree, loading it if needed. The tree is periodically reloaded
+     * by one reader while all other readers carry on with the current copy.
+     */
+
+    private HierarchyTree getTree()
+            throws SQLException {
+        HierarchyTree current = tree.get();
+        if (current == null) {
+            synchronized (treeLock) {
+                current = tree.get();
+                if (current == null) {
+                    current = HierarchyTree.load();
+                    tree.set(current);
+                    nextTreeRefresh.set(System.currentTimeMillis() + TREE_REFRESH_INTERVAL);
+                }
+            }
+            return current;
+        }
+
+        long now = System.currentTimeMillis();
+        long due = nextTreeRefresh.get();
+        if (now >= due && nextTreeRefresh.compareAndSet(due, now + TREE_REFRESH_INTERVAL)) {
+            try {
+                synchronized (treeLock) {
+                    current = HierarchyTree.load();
+                    tree.set(current);
+                }
+            } catch (SQLException e) {
+                Logger.getAnonymousLogger().log(Level.WARNING, "Unable to reload the hierarchy", e);
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Applies a change to the in memory tree. If the tree hasn't been loaded the change
+     * is ignored because it will be read from the database when the tree is loaded.
+     */
+
+    private void updateTree(final UnaryOperator<HierarchyTree> change) {
+        synchronized (treeLock) {
+            HierarchyTree current = tree.get();
+            if (current != null) {
+                try {
+                    tree.set(change.apply(current));
+                } catch (RuntimeException e) {
+                    tree.set(null);
+                    Logger.getAnonymousLogger().log(Level.WARNING, "Unable to update the hierarchy, it will be reloaded", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards the in memory tree so it is reloaded from the database when next used.
+     */
+
+    public void invalidateTree() {
+        tree.set(null);
+    }
+
     //------------------------
 
 
@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An immutable, in memory, copy of the folders in the hierarchy.
+ *
+ * Only container nodes are held; object nodes are far more numerous and are never
+ * the parent of anything, so they are still read from the database. Changes are made
+ * by creating a new copy of the tree, which means readers never need to lock and a
+ * reader always sees a consistent tree.
+ */
+
+final class HierarchyTree {
+
+    /**
+     * The SQL to read every folder in the hierarchy.
+     */
+
+    private static final String GET_ALL_CONTAINERS_SQL =
+            "SELECT node_id, name, parent_id, type FROM hierarchy WHERE type <> " + HierarchyNode.OBJECT_NODE;
+
+    private static final int FETCH_SIZE = 500;
+
+    private static final String[] NO_CHILDREN = new String[0];
+
+    /**
+     * The source of versions for every tree in this server, so a version is never
+     * reused, even by a tree loaded after the previous one was discarded.
+     */
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    /**
+     * The folders, keyed on node ID. The root node is always present.
+     */
+
+    private final Map<String, Entry> entries;
+
+    /**
+     * The version of this copy. Each copy made with a change, and each tree loaded or
+     * built, is given a new version.
+     */
+
+    private final long version;
+
+    /**
+     * The text form of the parentage of folders which has been requested from this copy.
+     */
+
+    private final Map<String, String> parentageText = new ConcurrentHashMap<>();
+
+    private HierarchyTree(final Map<String, Entry> newEntries, final long newVersion) {
+        entries = Collections.unmodifiableMap(newEntries);
+        version = newVersion;
+    }
+
+    /**
+     * Reads the folders in the hierarchy from the database.
+     *
+     * @return The tree.
+     *
+     * @throws SQLException Thrown if there is a problem accessing the database.
+     */
+
+    static HierarchyTree load()
+            throws SQLException {
+        List<HierarchyNode> nodes = new ArrayList<>();
+        try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(GET_ALL_CONTAINERS_SQL)) {
+            ps.setFetchSize(FETCH_SIZE);
+            try(ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    nodes.add(new HierarchyNode(rs, 1));
+                }
+            }
+        }
+        return build(nodes);
+    }
+
+    /**
+     * Builds a tree from a set of folders.
+     *
+     * @param nodes The folders, excluding the root node.
+     */
+
+    static HierarchyTree build(final List<HierarchyNode> nodes) {
+        Map<String, List<String>> children = new HashMap<>();
+        for (HierarchyNode node : nodes) {
+            if (node.getParentId() != null) {
+                children.computeIfAbsent(node.getParentId(), k -> new ArrayList<>()).add(node.getNodeId());
+            }
+        }
+
+        Map<String, Entry> newEntries = new HashMap<>(nodes.size() * 2);
+        HierarchyNode root = new HierarchyNode();
+        newEntries.put(root.getNodeId(), new Entry(root.getNodeId(), root.getName(), null, root.getType(),
+                toArray(children.get(root.getNodeId()))));
+        for (HierarchyNode node : nodes) {
+            if (node.getNodeId().equals(HierarchyNode.ROOT_NODE_ID)) {
+                continue;
+            }
+            newEntries.put(node.getNodeId(), new Entry(node.getNodeId(), node.getName(), node.getParentId(),
+                    node.getType(), toArray(children.get(node.getNodeId()))));
+        }
+        return new HierarchyTree(newEntries, VERSIONS.incrementAndGet());
+    }
+
+    private static String[] toArray(final List<String> ids) {
+        return ids == null ? NO_CHILDREN : ids.toArray(new String[ids.size()]);
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    boolean contains(final String nodeId) {
+        return nodeId != null && entries.containsKey(nodeId);
+    }
+
+    /**
+     * Gets a copy of a folder.
+     *
+     * @param nodeId The ID of the folder.
+     *
+     * @return A new instance representing the folder, or null if it isn't in the tree.
+     */
+
+    HierarchyNode getNode(final String nodeId) {
+        Entry entry = nodeId == null ? null : entries.get(nodeId);
+        return entry == null ? null : entry.toNode();
+    }
+
+    /**
+     * Gets the ID of the parent of a folder.
+     *
+     * @param nodeId The ID of the folder, which must be in the tree.
+     */
+
+    String getParentId(final String nodeId) {
+        Entry entry = entries.get(nodeId);
+        return entry == null ? null : entry.parentId;
+    }
+
+    /**
+     * Gets a folder and its ancestors in order (i.e. first is top level, last is
+     * the requested folder).
+     *
+     * @param nodeId The ID of the folder to start from.
+     *
+     * @return The folders, or null if the folder, or one of its ancestors, isn't in the tree.
+     */
+
+    List<HierarchyNode> getPath(final String nodeId) {
+        List<HierarchyNode> path = new ArrayList<>();
+        String currentId = nodeId;
+        while (currentId != null) {
+            Entry entry = entries.get(currentId);
+            if (entry == null || path.size() > entries.size()) {
+                return null;
+            }
+            path.add(entry.toNode());
+            currentId = entry.parentId;
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Gets the text form of the parentage of a folder, including the folder itself.
+     *
+     * @return The parentage, or null if the folder, or one of its ancestors, isn't in the tree.
+     */
+
+    String getParentageText(final String nodeId) {
+        String text = parentageText.get(nodeId);
+        if (text != null) {
+            return text;
+        }
+
+        List<HierarchyNode> path = getPath(nodeId);
+        if (path == null) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (HierarchyNode node : path) {
+            if (builder.length() > 0) {
+                builder.append(" \\ ");
+            }
+            builder.append(node.getName());
+        }
+        text = builder.toString();
+        parentageText.put(nodeId, text);
+        return text;
+    }
+
+    /**
+     * Gets the direct children of a folder which are of a given type.
+     *
+     * @param nodeId The ID of the parent folder.
+     * @param type The type of children to return.
+     *
+     * @return A new, modifiable, list of the children, or null if the folder isn't in the tree.
+     */
+
+    List<HierarchyNode> getChildren(final String nodeId, final int type) {
+        Entry entry = entries.get(nodeId);
+        if (entry == null) {
+            return null;
+        }
+        List<HierarchyNode> children = new ArrayList<>(entry.childIds.length);
+        for (String childId : entry.childIds) {
+            Entry child = entries.get(childId);
+            if (child != null && child.type == type) {
+                children.add(child.toNode());
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Tests if a folder has any direct children of a given type.
+     */
+
+    boolean hasChildren(final String nodeId, final int type) {
+        Entry entry = entries.get(nodeId);
+        if (entry == null) {
+            return false;
+        }
+        for (String childId : entry.childIds) {
+            Entry child = entries.get(childId);
+            if (child != null && child.type == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the folders which hold, or have a folder beneath them which holds, an object.
+     * Only container nodes pass their contents up to their parent, which matches how
+     * the children of a folder are listed.
+     *
+     * @param holdingFolderIds The IDs of the folders which directly hold objects.
+     *
+     * @return The IDs of the folders with content.
+     */
+
+    Set<String> getFoldersWithContent(final Collection<String> holdingFolderIds) {
+        Set<String> folderIds = new HashSet<>();
+        for (String holdingFolderId : holdingFolderIds) {
+            String currentId = holdingFolderId;
+            while (currentId != null && folderIds.add(currentId)) {
+                Entry entry = entries.get(currentId);
+                if (entry == null || entry.type != HierarchyNode.CONTAINER_NODE) {
+                    break;
+                }
+                currentId = entry.parentId;
+            }
+        }
+        return folderIds;
+    }
+
+    /**
+     * Gets the IDs of a folder and every folder beneath it, parents before children.
+     *
+     * @return The IDs, or an empty list if the folder isn't in the tree.
+     */
+
+    List<String> getSubtreeIds(final String nodeId) {
+        List<String> ids = new ArrayList<>();
+        if (!entries.containsKey(nodeId)) {
+            return ids;
+        }
+        ids.add(nodeId);
+        for (int i = 0; i < ids.size() && ids.size() <= entries.size(); i++) {
+            Entry entry = entries.get(ids.get(i));
+            if (entry != null) {
+                ids.addAll(Arrays.asList(entry.childIds));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Tests if one folder is above another in the tree.
+     *
+     * @param ancestorId The ID of the possible ancestor.
+     * @param nodeId The ID of the folder to check.
+     *
+     * @return true if the ancestor is the node, or is above it.
+     */
+
+    boolean isAncestor(final String ancestorId, final String nodeId) {
+        String currentId = nodeId;
+        for (int depth = 0; currentId != null && depth <= entries.size(); depth++) {
+            if (currentId.equals(ancestorId)) {
+                return true;
+            }
+            Entry entry = entries.get(currentId);
+            currentId = entry == null ? null : entry.parentId;
+        }
+        return false;
+    }
+
+    /**
+     * Creates a copy of this tree with a folder added, renamed, or moved.
+     *
+     * @param node The folder as it has been stored.
+     */
+
+    HierarchyTree with(final HierarchyNode node) {
+        String nodeId = node.getNodeId();
+        Map<String, Entry> newEntries = new HashMap<>(entries);
+        Entry existing = newEntries.get(nodeId);
+        String[] childIds = existing == null ? NO_CHILDREN : existing.childIds;
+
+        if (existing != null && !Objects.equals(existing.parentId, node.getParentId())) {
+            removeChild(newEntries, existing.parentId, nodeId);
+        }
+        if (existing == null || !Objects.equals(existing.parentId, node.getParentId())) {
+            addChild(newEntries, node.getParentId(), nodeId);
+        }
+        newEntries.put(nodeId, new Entry(nodeId, node.getName(), node.getParentId(), node.getType(), childIds));
+        return new HierarchyTree(newEntries, VERSIONS.incrementAndGet());
+    }
+
+    /**
+     * Creates a copy of this tree with a folder, and everything beneath it, removed.
+     *
+     * @param nodeId The ID of the folder which has been deleted.
+     */
+
+    HierarchyTree without(final String nodeId) {
+        Entry existing = entries.get(nodeId);
+        if (existing == null) {
+            return this;
+        }
+        Map<String, Entry> newEntries = new HashMap<>(entries);
+        for (String id : getSubtreeIds(nodeId)) {
+            newEntries.remove(id);
+        }
+        removeChild(newEntries, existing.parentId, nodeId);
+        return new HierarchyTree(newEntries, VERSIONS.incrementAndGet());
+    }
+
+    private static void addChild(final Map<String, Entry> newEntries, final String parentId, final String childId) {
+        Entry parent = parentId == null ? null : newEntries.get(parentId);
+        if (parent == null) {
+            return;
+        }
+        String[] childIds = Arrays.copyOf(parent.childIds, parent.childIds.length + 1);
+        childIds[parent.childIds.length] = childId;
+        newEntries.put(parentId, parent.withChildren(childIds));
+    }
+
+    private static void removeChild(final Map<String, Entry> newEntries, final String parentId, final String childId) {
+        Entry parent = parentId == null ? null : newEntries.get(parentId);
+        if (parent == null) {
+            return;
+        }
+        List<String> childIds = new ArrayList<>(Arrays.asList(parent.childIds));
+        if (childIds.remove(childId)) {
+            newEntries.put(parentId, parent.withChildren(toArray(childIds)));
+        }
+    }
+
+    /**
+     * The details of a single folder.
+     */
+
+    private static final class Entry {
+
+        private final String nodeId;
+
+        private final String name;
+
+        private final String parentId;
+
+        private final int type;
+
+        /**
+         * The IDs of the child folders. The array is never modified once the entry is created.
+         */
+
+        private final String[] childIds;
+
+        private Entry(final String nodeId, final String name, final String parentId, final int type,
+                      final String[] childIds) {
+            this.nodeId = nodeId;
+            this.name = name;
+            this.parentId = parentId;
+            this.type = type;
+            this.childIds = childIds;
+        }
+
+        Entry withChildren(final String[] newChildIds) {
+            return new Entry(nodeId, name, parentId, type, newChildIds);
+        }
+
+        HierarchyNode toNode() {
+            return new HierarchyNode(nodeId, name, parentId, type);
+        }
+    }
+}
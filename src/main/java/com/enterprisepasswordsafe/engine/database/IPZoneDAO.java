@@ -114,6 +114,7 @@ public class IPZoneDAO
         } finally {
             DatabaseConnectionUtils.close(ps);
         }
+        IPZoneRestrictionCache.getInstance().invalidate();
     }
 
     /**
@@ -135,6 +136,7 @@ public class IPZoneDAO
         } finally {
             DatabaseConnectionUtils.close(ps);
         }
+        IPZoneRestrictionCache.getInstance().invalidate();
     }
 
     /**
@@ -152,6 +154,7 @@ public class IPZoneDAO
         } finally {
             DatabaseConnectionUtils.close(ps);
         }
+        IPZoneRestrictionCache.getInstance().invalidate();
     }
 
     /**
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the login restrictions which apply to a user connecting from an address.
+ *
+ * The zones with restrictions are held for each IP version as an array sorted on the
+ * start of each zone's range, with addresses held as unsigned 128 bit numbers in two
+ * longs. Alongside each zone is the highest end address of it and every zone before
+ * it, so the zones containing an address are found with a binary search and a short
+ * scan back which stops once no earlier zone can reach the address, even when zones
+ * overlap. Instances are immutable so they can be shared between threads.
+ */
+
+final class IPZoneMatcher {
+
+    /**
+     * The number of characters used for each byte in the database representation of an address.
+     */
+
+    private static final int DB_DIGITS_PER_BYTE = 3;
+
+    private final Zones ipv4;
+
+    private final Zones ipv6;
+
+    private IPZoneMatcher(final Zones newIpv4, final Zones newIpv6) {
+        ipv4 = newIpv4;
+        ipv6 = newIpv6;
+    }
+
+    /**
+     * Gets the restrictions for a user from an address.
+     *
+     * @param userId The ID of the user.
+     * @param ip The textual representation of the address.
+     *
+     * @return The applicable restrictions, which is an empty list if there are none.
+     */
+
+    List<UserIPZoneRestriction> getApplicable(final String userId, final String ip)
+            throws UnknownHostException, GeneralSecurityException {
+        if (ip.indexOf(':') == -1) {
+            return ipv4.getApplicable(userId, 0, parseIPv4(ip));
+        }
+
+        byte[] address = InetAddress.getByName(ip).getAddress();
+        if (address.length == 4) {
+            // An IPv4 address mapped into IPv6.
+            return ipv4.getApplicable(userId, 0, toLow(address, 0, 4));
+        }
+        return ipv6.getApplicable(userId, toLow(address, 0, 8), toLow(address, 8, 16));
+    }
+
+    private static long parseIPv4(final String ip)
+            throws GeneralSecurityException {
+        long value = 0;
+        int sections = 0;
+        int section = -1;
+        for (int i = 0; i <= ip.length(); i++) {
+            char c = i == ip.length() ? '.' : ip.charAt(i);
+            if (c == '.') {
+                if (section < 0 || ++sections > 4) {
+                    throw new GeneralSecurityException("Invalid IPv4 Address (" + ip + ")");
+                }
+                value = (value << 8) | section;
+                section = -1;
+            } else if (c >= '0' && c <= '9') {
+                section = (section < 0 ? 0 : section * 10) + (c - '0');
+                if (section > 255) {
+                    throw new GeneralSecurityException("Invalid IPv4 Address (" + ip + ")");
+                }
+            } else {
+                throw new GeneralSecurityException("Invalid IPv4 Address (" + ip + ")");
+            }
+        }
+        if (sections != 4) {
+            throw new GeneralSecurityException("Invalid IPv4 Address (" + ip + ")");
+        }
+        return value;
+    }
+
+    private static long toLow(final byte[] address, final int from, final int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = (value << 8) | (address[i] & 0xff);
+        }
+        return value;
+    }
+
+    private static int compare(final long aHigh, final long aLow, final long bHigh, final long bLow) {
+        int result = Long.compareUnsigned(aHigh, bHigh);
+        return result != 0 ? result : Long.compareUnsigned(aLow, bLow);
+    }
+
+    /**
+     * Builds matchers from the zones and restrictions in the database.
+     */
+
+    static final class Builder {
+
+        private final Map<String, Zone> zones = new HashMap<>();
+
+        /**
+         * Adds a user's restriction for a zone.
+         *
+         * @param zoneId The ID of the zone.
+         * @param ipVersion The IP version of the zone (4 or 6).
+         * @param startIp The database representation of the start of the zone's range.
+         * @param endIp The database representation of the end of the zone's range.
+         * @param userId The ID of the user the restriction is for.
+         * @param rule The restriction rule.
+         *
+         * @return true if the restriction was added, false if the zone's range is not valid.
+         */
+
+        boolean add(final String zoneId, final int ipVersion, final String startIp, final String endIp,
+                    final String userId, final int rule) {
+            Zone zone = zones.get(zoneId);
+            if (zone == null) {
+                int length = ipVersion == 6 ? 16 : 4;
+                long[] start = parseDBString(startIp, length);
+                long[] end = parseDBString(endIp, length);
+                if (start == null || end == null || (ipVersion != 4 && ipVersion != 6)) {
+                    return false;
+                }
+                zone = new Zone(zoneId, ipVersion, start[0], start[1], end[0], end[1]);
+                zones.put(zoneId, zone);
+            }
+            zone.rules.put(userId, rule);
+            return true;
+        }
+
+        IPZoneMatcher build() {
+            List<Zone> ipv4 = new ArrayList<>();
+            List<Zone> ipv6 = new ArrayList<>();
+            for (Zone zone : zones.values()) {
+                (zone.ipVersion == 4 ? ipv4 : ipv6).add(zone);
+            }
+            return new IPZoneMatcher(new Zones(ipv4), new Zones(ipv6));
+        }
+
+        /**
+         * Converts the zero padded decimal representation used in the database into a
+         * number held as the high and low 64 bits.
+         */
+
+        private static long[] parseDBString(final String dbString, final int length) {
+            if (dbString == null || dbString.length() != length * DB_DIGITS_PER_BYTE) {
+                return null;
+            }
+            long high = 0;
+            long low = 0;
+            for (int i = 0; i < length; i++) {
+                int value = 0;
+                for (int j = i * DB_DIGITS_PER_BYTE; j < (i + 1) * DB_DIGITS_PER_BYTE; j++) {
+                    char c = dbString.charAt(j);
+                    if (c < '0' || c > '9') {
+                        return null;
+                    }
+                    value = value * 10 + (c - '0');
+                }
+                if (value > 255) {
+                    return null;
+                }
+                high = (high << 8) | (low >>> 56);
+                low = (low << 8) | value;
+            }
+            return new long[] { high, low };
+        }
+    }
+
+    /**
+     * A zone and the restrictions set for it, keyed on user ID.
+     */
+
+    private static final class Zone {
+
+        private final String zoneId;
+
+        private final int ipVersion;
+
+        private final long startHigh, startLow, endHigh, endLow;
+
+        private final Map<String, Integer> rules = new HashMap<>();
+
+        private Zone(final String newZoneId, final int newIpVersion, final long newStartHigh, final long newStartLow,
+                     final long newEndHigh, final long newEndLow) {
+            zoneId = newZoneId;
+            ipVersion = newIpVersion;
+            startHigh = newStartHigh;
+            startLow = newStartLow;
+            endHigh = newEndHigh;
+            endLow = newEndLow;
+        }
+    }
+
+    /**
+     * The zones for one IP version, sorted on the start of their ranges.
+     */
+
+    private static final class Zones {
+
+        private final Zone[] zones;
+
+        private final long[] maxEndHigh;
+
+        private final long[] maxEndLow;
+
+        private Zones(final List<Zone> unsorted) {
+            zones = unsorted.toArray(new Zone[0]);
+            Arrays.sort(zones, (a, b) -> compare(a.startHigh, a.startLow, b.startHigh, b.startLow));
+            maxEndHigh = new long[zones.length];
+            maxEndLow = new long[zones.length];
+            for (int i = 0; i < zones.length; i++) {
+                Zone zone = zones[i];
+                if (i == 0 || compare(zone.endHigh, zone.endLow, maxEndHigh[i - 1], maxEndLow[i - 1]) > 0) {
+                    maxEndHigh[i] = zone.endHigh;
+                    maxEndLow[i] = zone.endLow;
+                } else {
+                    maxEndHigh[i] = maxEndHigh[i - 1];
+                    maxEndLow[i] = maxEndLow[i - 1];
+                }
+            }
+        }
+
+        private List<UserIPZoneRestriction> getApplicable(final String userId, final long high, final long low) {
+            // Find the last zone starting at or before the address.
+            int lowIndex = 0;
+            int highIndex = zones.length - 1;
+            int last = -1;
+            while (lowIndex <= highIndex) {
+                int middle = (lowIndex + highIndex) >>> 1;
+                Zone zone = zones[middle];
+                if (compare(zone.startHigh, zone.startLow, high, low) <= 0) {
+                    last = middle;
+                    lowIndex = middle + 1;
+                } else {
+                    highIndex = middle - 1;
+                }
+            }
+
+            List<UserIPZoneRestriction> results = null;
+            for (int i = last; i >= 0 && compare(maxEndHigh[i], maxEndLow[i], high, low) >= 0; i--) {
+                Zone zone = zones[i];
+                if (compare(zone.endHigh, zone.endLow, high, low) >= 0) {
+                    Integer rule = zone.rules.get(userId);
+                    if (rule != null) {
+                        if (results == null) {
+                            results = new ArrayList<>(2);
+                        }
+                        results.add(new UserIPZoneRestriction(zone.zoneId, userId, rule));
+                    }
+                }
+            }
+            return results == null ? Collections.emptyList() : results;
+        }
+    }
+}
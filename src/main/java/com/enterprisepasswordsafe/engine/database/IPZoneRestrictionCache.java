@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of the IP zones which have login restrictions set for them.
+ *
+ * Every login checks the zones the user is connecting from, so the zones and restrictions
+ * are loaded together into an {@link IPZoneMatcher} rather than queried each time. The
+ * matcher is discarded whenever a zone or restriction is changed through this server, and
+ * is reloaded after a short time so changes made through another server are picked up.
+ */
+
+final class IPZoneRestrictionCache {
+
+    /**
+     * The maximum time a matcher is used for.
+     */
+
+    private static final long LIFETIME_MILLIS = 60 * 1000;	// 60s
+
+    /**
+     * The SQL to get every zone along with the restrictions set for it.
+     */
+
+    private static final String GET_ALL_SQL =
+            "SELECT ipz.ip_zone_id, ipz.ip_version, ipz.ip_start, ipz.ip_end, uipz.user_id, uipz.setting "
+          + "  FROM ip_zones ipz, "
+          + "       user_ip_zones uipz "
+          + " WHERE ipz.ip_zone_id = uipz.ip_zone_id";
+
+    /**
+     * Incremented every time the matcher is discarded, so a matcher being loaded at the
+     * time is not stored.
+     */
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile Loaded current;
+
+    private IPZoneRestrictionCache() {
+        super();
+    }
+
+    /**
+     * Get the current matcher, loading it if needed.
+     *
+     * @return The matcher.
+     *
+     * @throws SQLException Thrown if there is a problem loading the zones.
+     */
+
+    IPZoneMatcher getMatcher()
+            throws SQLException {
+        long now = System.currentTimeMillis();
+        long currentGeneration = generation.get();
+        Loaded loaded = current;
+        if (loaded == null || loaded.generation != currentGeneration || now - loaded.createdTime > LIFETIME_MILLIS) {
+            loaded = new Loaded(currentGeneration, now, load());
+            if (generation.get() == currentGeneration) {
+                current = loaded;
+            }
+        }
+        return loaded.matcher;
+    }
+
+    /**
+     * Discard the current matcher.
+     */
+
+    void invalidate() {
+        generation.incrementAndGet();
+        current = null;
+    }
+
+    private IPZoneMatcher load()
+            throws SQLException {
+        IPZoneMatcher.Builder builder = new IPZoneMatcher.Builder();
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(GET_ALL_SQL)) {
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String zoneId = rs.getString(1);
+                    int rule = rs.getInt(6);
+                    if (rs.wasNull()) {
+                        continue;
+                    }
+                    if (!builder.add(zoneId, rs.getInt(2), rs.getString(3), rs.getString(4), rs.getString(5), rule)) {
+                        Logger.getAnonymousLogger().log(Level.WARNING,
+                                "IP zone " + zoneId + " has an invalid range and will be ignored.");
+                    }
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * A matcher and when it was loaded.
+     */
+
+    private static final class Loaded {
+
+        private final long generation;
+
+        private final long createdTime;
+
+        private final IPZoneMatcher matcher;
+
+        private Loaded(final long newGeneration, final long newCreatedTime, final IPZoneMatcher newMatcher) {
+            generation = newGeneration;
+            createdTime = newCreatedTime;
+            matcher = newMatcher;
+        }
+    }
+
+    //------------------------
+
+    private static final class InstanceHolder {
+        static final IPZoneRestrictionCache INSTANCE = new IPZoneRestrictionCache();
+    }
+
+    static IPZoneRestrictionCache getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import com.enterprisepasswordsafe.engine.utils.RequestMetrics;
+
+/**
+ * Wraps a connection so the statements executed on it, the rows fetched, and the
+ * time spent doing both are recorded against the SQL in the {@link RequestMetrics}
+ * for the current request.
+ */
+final class InstrumentedConnection {
+
+    private InstrumentedConnection() {
+        super();
+    }
+
+    /**
+     * Wrap a connection so that work done through it is recorded.
+     *
+     * @param connection The connection to wrap.
+     *
+     * @return The instrumented connection.
+     */
+
+    static Connection wrap(final Connection connection) {
+        return (Connection) Proxy.newProxyInstance(
+                InstrumentedConnection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new ConnectionHandler(connection));
+    }
+
+    private static Object invoke(final Object target, final Method method, final Object[] args)
+            throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Object proxy(final Class<?> type, final InvocationHandler handler) {
+        return Proxy.newProxyInstance(InstrumentedConnection.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    /**
+     * Handler which instruments the statements created from the connection. The SQL
+     * for prepared statements is known when they're created, for plain statements it's
+     * taken from the execute call.
+     */
+
+    private static final class ConnectionHandler implements InvocationHandler {
+
+        private final Connection connection;
+
+        ConnectionHandler(final Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args)
+                throws Throwable {
+            String name = method.getName();
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+
+            Object result = InstrumentedConnection.invoke(connection, method, args);
+            if (result instanceof Statement) {
+                String sql = name.startsWith("prepare") ? (String) args[0] : null;
+                return proxy(method.getReturnType(), new StatementHandler((Connection) proxy, (Statement) result, sql));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Handler which times the execute methods of a statement and instruments any
+     * result sets it returns.
+     */
+
+    private static final class StatementHandler implements InvocationHandler {
+
+        private final Connection connection;
+
+        private final Statement statement;
+
+        private final String preparedSql;
+
+        private String lastSql;
+
+        StatementHandler(final Connection connection, final Statement statement, final String preparedSql) {
+            this.connection = connection;
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+            lastSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args)
+                throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "getConnection":
+                    return connection;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+
+            if (!name.startsWith("execute")) {
+                return instrumentResults(InstrumentedConnection.invoke(statement, method, args), proxy);
+            }
+
+            if (preparedSql == null && args != null && args.length > 0 && args[0] instanceof String) {
+                lastSql = (String) args[0];
+            }
+            long start = System.nanoTime();
+            try {
+                return instrumentResults(InstrumentedConnection.invoke(statement, method, args), proxy);
+            } finally {
+                RequestMetrics.recordExecution(lastSql, System.nanoTime() - start);
+            }
+        }
+
+        private Object instrumentResults(final Object result, final Object statementProxy) {
+            if (result instanceof ResultSet) {
+                return proxy(ResultSet.class, new ResultSetHandler((ResultSet) result, (Statement) statementProxy, lastSql));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Handler which counts and times the rows fetched from a result set.
+     */
+
+    private static final class ResultSetHandler implements InvocationHandler {
+
+        private final ResultSet resultSet;
+
+        private final Statement statement;
+
+        private final String sql;
+
+        ResultSetHandler(final ResultSet resultSet, final Statement statement, final String sql) {
+            this.resultSet = resultSet;
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args)
+                throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "next":
+                    long start = System.nanoTime();
+                    Boolean hasRow = (Boolean) InstrumentedConnection.invoke(resultSet, method, args);
+                    if (hasRow) {
+                        RequestMetrics.recordFetch(sql, System.nanoTime() - start);
+                    }
+                    return hasRow;
+                case "getStatement":
+                    return statement;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return InstrumentedConnection.invoke(resultSet, method, args);
+            }
+        }
+    }
+}
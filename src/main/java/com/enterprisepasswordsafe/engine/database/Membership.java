@@ -24,6 +24,7 @@ import java.sql.SQLException;
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 
+import com.enterprisepasswordsafe.engine.utils.CryptoPrimitives;
 import com.enterprisepasswordsafe.engine.utils.KeyUtils;
 import com.enterprisepasswordsafe.proguard.JavaBean;
 
@@ -124,7 +125,7 @@ public class Membership implements JavaBean {
             return null;
         }
 
-        Cipher cipher = Cipher.getInstance("AES");
+        Cipher cipher = CryptoPrimitives.getCipher("AES");
         cipher.init(Cipher.DECRYPT_MODE, accessKey);
 
         return cipher.doFinal(data);
@@ -164,6 +164,7 @@ public final class MembershipDAO implements ExternalInterface {
             ps.executeUpdate();
 
     		cache.put(generateCacheKey(membership), membership);
+    		HierarchyAccessibilityCache.getInstance().invalidateUser(membership.getUserId());
         } finally {
         	DatabaseConnectionUtils.close(ps);
         }
@@ -415,6 +416,8 @@ public final class MembershipDAO implements ExternalInterface {
         } finally {
             DatabaseConnectionUtils.close(ps);
         }
+
+        HierarchyAccessibilityCache.getInstance().invalidateUser(userId);
     }
 
     /**
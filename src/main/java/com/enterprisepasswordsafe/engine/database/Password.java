@@ -17,6 +17,7 @@
 package com.enterprisepasswordsafe.engine.database;
 
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
@@ -180,6 +181,27 @@ public final class Password
 
     private byte[] encryptedPasswordProperties;
 
+    /**
+     * The access control to decrypt the properties with when decryption has been
+     * deferred until the first time a value is read, or null if nothing is pending.
+     */
+
+    private transient AccessControl deferredAccessControl;
+
+    /**
+     * Whether or not a deferred decryption is still to be completed.
+     */
+
+    private transient volatile boolean decryptionPending = false;
+
+    /**
+     * The reason a deferred decryption failed, or null if it has not failed. Once set
+     * every read of a value throws, so an entry which could not be decrypted is never
+     * mistaken for one with empty values.
+     */
+
+    private transient volatile Exception decryptionFailure;
+
     public Password() throws NoSuchAlgorithmException, NoSuchProviderException {
     	super();
     }
@@ -311,8 +333,75 @@ public final class Password
         encryptedPasswordProperties = data;
     }
 
+    /**
+     * Creates a password whose properties are only decrypted the first time one of
+     * them is read. This allows lists of passwords to be built without paying for
+     * the decryption of entries which are never looked at.
+     *
+     * @param passwordId The ID of the password.
+     * @param data The encrypted password properties.
+     * @param ac The access control to use when the properties are decrypted.
+     * @param decryptNow true to decrypt the properties immediately, false to defer it.
+     */
+
+    public Password(final String passwordId, final byte[] data, final AccessControl ac, final boolean decryptNow)
+            throws IOException, GeneralSecurityException, SQLException {
+        super(passwordId);
+        encryptedPasswordProperties = data;
+        if (decryptNow) {
+            decryptPasswordProperties(ac);
+        } else {
+            deferredAccessControl = ac;
+            decryptionPending = true;
+        }
+    }
+
+    /**
+     * Performs any decryption which was deferred when the object was created.
+     *
+     * @throws DeferredDecryptionException if the properties could not be decrypted. The
+     *  exception is thrown again on every later read of a value.
+     */
+
+    @Override
+    protected void ensureDecrypted() {
+        if (decryptionPending) {
+            synchronized (this) {
+                // A null access control means either another thread has completed the
+                // decryption, or this thread is already performing it.
+                AccessControl ac = deferredAccessControl;
+                if (ac != null) {
+                    try {
+                        decryptPasswordProperties(ac);
+                    } catch (IOException | GeneralSecurityException | SQLException | RuntimeException e) {
+                        decryptionFailure = e;
+                    } finally {
+                        decryptionPending = false;
+                    }
+                }
+            }
+        }
+
+        Exception failure = decryptionFailure;
+        if (failure != null) {
+            throw new DeferredDecryptionException(getId(), failure);
+        }
+    }
+
+    /**
+     * Ensures any deferred decryption has been performed before the object is
+     * serialized because the access control needed for it is not serialized.
+     */
+
+    private void writeObject(final ObjectOutputStream out)
+            throws IOException {
+        ensureDecrypted();
+        out.defaultWriteObject();
+    }
+
     public void decryptPasswordProperties(AccessControl ac)
             throws IOException, GeneralSecurityException, SQLException {
+        deferredAccessControl = null;
         if (encryptedPasswordProperties == null) {
             // null indicates there's no work to be done to decrypt the properties.
             return;
@@ -370,6 +459,7 @@ public final class Password
      */
 
     public int getAuditLevel() {
+        ensureDecrypted();
         return auditLevel;
     }
 
@@ -380,6 +470,7 @@ public final class Password
      */
 
     public String getRestrictionId() {
+    	ensureDecrypted();
     	return restrictionId;
     }
 
@@ -389,6 +480,7 @@ public final class Password
      * @return Returns the isHistoryStored.
      */
     public boolean isHistoryStored() {
+        ensureDecrypted();
         return isHistoryStored;
     }
 
@@ -396,6 +488,7 @@ public final class Password
      * @param auditLevel The isAudited to set.
      */
     public void setAuditLevel(final int auditLevel) {
+        ensureDecrypted();
 
 
         this.auditLevel = auditLevel;
@@ -405,6 +498,7 @@ public final class Password
      * @param newIsHistoryStored The isHistoryStored to set.
      */
     public void setHistoryStored(final boolean newIsHistoryStored) {
+        ensureDecrypted();
         isHistoryStored = newIsHistoryStored;
     }
 
@@ -414,38 +508,47 @@ public final class Password
      * @param newRestrictionId The ID of the restriction to use.
      */
 	public void setRestrictionId(String newRestrictionId) {
+		ensureDecrypted();
 		restrictionId = newRestrictionId;
 	}
 
 	public int getRaApprovers() {
+		ensureDecrypted();
 		return raApprovers;
 	}
 
 	public void setRaApprovers(int raApprovers) {
+		ensureDecrypted();
 		this.raApprovers = raApprovers;
 	}
 
 	public int getRaBlockers() {
+		ensureDecrypted();
 		return raBlockers;
 	}
 
 	public void setRaBlockers(int raBlockers) {
+		ensureDecrypted();
 		this.raBlockers = raBlockers;
 	}
 
 	public boolean isRaEnabled() {
+		ensureDecrypted();
 		return raEnabled;
 	}
 
 	public void setRaEnabled(boolean raEnabled) {
+		ensureDecrypted();
 		this.raEnabled = raEnabled;
 	}
 
 	public int getPasswordType() {
+		ensureDecrypted();
 		return passwordType;
 	}
 
 	public void setPasswordType(int passwordType) {
+		ensureDecrypted();
 		this.passwordType = passwordType;
 	}
 
@@ -487,4 +590,14 @@ public final class Password
 		}
 	}
 
+    /**
+     * Exception thrown when the deferred decryption of a password fails.
+     */
+
+    public static class DeferredDecryptionException extends RuntimeException {
+        public DeferredDecryptionException(final String passwordId, final Exception cause) {
+            super("Unable to decrypt password " + passwordId, cause);
+        }
+    }
+
 }
@@ -275,7 +275,7 @@ public abstract class PasswordBase
 
     public PasswordBase(final String passwordId, final byte[] data, AccessControl ac)
             throws IOException, GeneralSecurityException {
-    	this(passwordId, data, ac, null);
+    	this(passwordId, data, ac, new Properties());
     }
 
     /**
@@ -377,6 +377,8 @@ public abstract class PasswordBase
 
     @Override
 	public final int compareTo(final PasswordBase otherPassword) {
+        ensureDecrypted();
+        otherPassword.ensureDecrypted();
         int compareValue = username.compareTo(otherPassword.username);
         if (compareValue == 0) {
             compareValue = location.compareTo(otherPassword.location);
@@ -442,6 +444,7 @@ public abstract class PasswordBase
      */
 
     public final String getUsername() {
+        ensureDecrypted();
         return username;
     }
 
@@ -452,6 +455,7 @@ public abstract class PasswordBase
      */
 
     public final String getPassword() {
+        ensureDecrypted();
         return password;
     }
 
@@ -462,6 +466,7 @@ public abstract class PasswordBase
      */
 
     public final String getNotes() {
+        ensureDecrypted();
         return notes;
     }
 
@@ -472,6 +477,7 @@ public abstract class PasswordBase
      */
 
     public final String getLocation() {
+        ensureDecrypted();
         return location;
     }
 
@@ -482,6 +488,7 @@ public abstract class PasswordBase
      */
 
     public final long getExpiry() {
+        ensureDecrypted();
         return expiry;
     }
 
@@ -492,6 +499,7 @@ public abstract class PasswordBase
      */
 
     public void setEnabled(final boolean enabled) {
+        ensureDecrypted();
         this.enabled = enabled;
     }
 
@@ -499,6 +507,7 @@ public abstract class PasswordBase
      * @return Returns the isEnabled.
      */
     public boolean isEnabled() {
+        ensureDecrypted();
         return enabled;
     }
 
@@ -518,6 +527,7 @@ public abstract class PasswordBase
 
     @Override
 	public final PrivateKey getModifyKey() {
+        ensureDecrypted();
         return modifyKey;
     }
 
@@ -529,6 +539,7 @@ public abstract class PasswordBase
 
     @Override
 	public final PublicKey getReadKey() {
+        ensureDecrypted();
         return readKey;
     }
 
@@ -536,6 +547,7 @@ public abstract class PasswordBase
      * @param newExpiry The expiry to set.
      */
     public final void setExpiry(final long newExpiry) {
+        ensureDecrypted();
         expiry = newExpiry;
     }
 
@@ -543,6 +555,7 @@ public abstract class PasswordBase
      * @param newLocation The location to set.
      */
     public final void setLocation(final String newLocation) {
+        ensureDecrypted();
     	if( newLocation != null ) {
     		location = newLocation;
     	} else {
@@ -555,6 +568,7 @@ public abstract class PasswordBase
      * @param newNotes The notes to set.
      */
     public final void setNotes(final String newNotes) {
+        ensureDecrypted();
         notes = newNotes;
     }
 
@@ -562,6 +576,7 @@ public abstract class PasswordBase
      * @param newPassword The password to set.
      */
     public final void setPassword(final String newPassword) {
+        ensureDecrypted();
         password = newPassword;
     }
 
@@ -569,6 +584,7 @@ public abstract class PasswordBase
      * @param newUsername The username to set.
      */
     public final void setUsername(final String newUsername) {
+        ensureDecrypted();
         username = newUsername;
     }
 
@@ -580,6 +596,7 @@ public abstract class PasswordBase
      */
 
     public final void setCustomField(final String name, final String value) {
+        ensureDecrypted();
     	synchronized(this) {
     		if(customFields == null) {
     			customFields = new HashMap<String, String>();
@@ -595,6 +612,7 @@ public abstract class PasswordBase
      */
 
     public final void deleteCustomField(final String name) {
+        ensureDecrypted();
         if(customFields != null) {
             customFields.remove(name);
         }
@@ -609,6 +627,7 @@ public abstract class PasswordBase
      */
 
     public final String getCustomField(final String name) {
+        ensureDecrypted();
     	synchronized(this) {
 	    	if(customFields == null) {
 	    		return null;
@@ -624,6 +643,7 @@ public abstract class PasswordBase
      */
 
     public Map<String,String> getAllCustomFields() {
+        ensureDecrypted();
     	return customFields;
     }
 
@@ -647,6 +667,7 @@ public abstract class PasswordBase
      */
 
     public final boolean expires() {
+        ensureDecrypted();
     	return (expiry != Long.MAX_VALUE);
     }
 
@@ -656,9 +677,20 @@ public abstract class PasswordBase
      * @return Returns the isModifiable.
      */
     public final boolean isModifiable() {
+        ensureDecrypted();
         return isModifiable;
     }
 
+    /**
+     * Hook called before any of the values held in the encrypted payload are read
+     * or altered. Subclasses which defer decryption of the payload until it is
+     * first needed override this to perform the decryption.
+     */
+
+    protected void ensureDecrypted() {
+        // Nothing to do, the values are populated when the object is constructed.
+    }
+
     /**
      * toString method, prepares the content of this object in a human readable
      * form.
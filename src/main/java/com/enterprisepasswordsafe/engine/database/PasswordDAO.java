@@ -17,6 +17,7 @@
 package com.enterprisepasswordsafe.engine.database;
 
 import com.enterprisepasswordsafe.engine.database.actions.password.ExpiringAccessiblePasswordsAction;
+import com.enterprisepasswordsafe.engine.database.actions.search.PasswordSearchIndex;
 import com.enterprisepasswordsafe.engine.database.derived.ExpiringAccessiblePasswords;
 import com.enterprisepasswordsafe.engine.database.schema.AccessControlDAOInterface;
 import com.enterprisepasswordsafe.engine.utils.InvalidLicenceException;
@@ -30,6 +31,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Data access object for passwords.
@@ -154,15 +157,39 @@ public final class PasswordDAO
     private static final String WRITE_PASSWORD_SQL =
             "INSERT INTO passwords"
             + "(password_id, enabled, audited, history_stored, restriction_id, ra_enabled, "
-            + "		ra_approvers, ra_blockers, ptype, location_id, password_data  )"
-            + " VALUES ( ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ? )";
+            + "		ra_approvers, ra_blockers, ptype, location_id, expiry_l, data_format, password_data  )"
+            + " VALUES ( ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ? )";
 
     /**
-     * SQL to fetch the id and expiry date for the passwords.
+     * SQL to check if a user can access any password expiring before a given date.
      */
 
-    private static final String GET_EXPIRY_DETAILS_SQL =
-    	"SELECT password_id, password_data FROM passwords";
+    private static final String HAS_EXPIRING_PASSWORDS_SQL =
+    	"SELECT pass.password_id FROM passwords pass "
+    	+ " WHERE pass.expiry_l < ? AND " + PasswordProcessor.ACCESSIBLE_TO_USER_CONDITION;
+
+    /**
+     * SQL to get the passwords a user can access which were stored before expiry
+     * dates were held outside of the encrypted data, a page at a time in ID order.
+     */
+
+    private static final String GET_UNKNOWN_EXPIRY_PASSWORDS_SQL =
+    	"SELECT " + PasswordBase.PASSWORD_BASE_FIELDS + " FROM passwords pass "
+    	+ " WHERE pass.expiry_l IS NULL AND pass.password_id > ? AND " + PasswordProcessor.ACCESSIBLE_TO_USER_CONDITION
+    	+ " ORDER BY pass.password_id";
+
+    /**
+     * SQL to record the expiry date of a password.
+     */
+
+    private static final String SET_EXPIRY_SQL =
+    	"UPDATE passwords SET expiry_l = ? WHERE password_id = ?";
+
+    /**
+     * The number of passwords with an unknown expiry date which are decrypted together.
+     */
+
+    static final int UNKNOWN_EXPIRY_BATCH_SIZE = 500;
 
 	/**
 	 * private constructor to prevent instantiation.
@@ -185,7 +212,9 @@ public final class PasswordDAO
         write(thePassword, gac);
 
         gacDAO.write(adminGroup, gac);
-        return UserAccessControlDAO.getInstance().create(creator, thePassword, true, true);
+        UserAccessControl uac = UserAccessControlDAO.getInstance().create(creator, thePassword, true, true);
+        PasswordSearchIndex.passwordCreated(thePassword);
+        return uac;
 	}
 
     public String getSummaryById(AccessControl ac, final String id)
@@ -355,6 +384,8 @@ public final class PasswordDAO
             ps.setInt(idx++, password.getRaBlockers());
             ps.setInt(idx++, password.getPasswordType());
             ps.setString(idx++, LocationDAO.getInstance().getId(password.getLocation()));
+            ps.setLong(idx++, password.getExpiry());
+            ps.setInt(idx++, PasswordUtils.PAYLOAD_FORMAT);
             ps.setBytes(idx, PasswordUtils.encrypt(password, ac));
 
             ps.executeUpdate();
@@ -408,13 +439,87 @@ public final class PasswordDAO
         }
         long expiryWarningDate = expiryCal.getTimeInMillis();
 
-        for(Password password : getMultiple(user, GET_EXPIRY_DETAILS_SQL)) {
-            if( password.getExpiry() < expiryWarningDate) {
-                return true;
+        // Fill in any unknown dates first so they're recorded even if another password is expiring.
+        if (recordUnknownExpiryDates(user, expiryWarningDate)) {
+            return true;
+        }
+
+        try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(HAS_EXPIRING_PASSWORDS_SQL)) {
+            ps.setLong(1, expiryWarningDate);
+            ps.setString(2, user.getUserId());
+            ps.setString(3, user.getUserId());
+            ps.setMaxRows(1);
+            try(ResultSet rs = ps.executeQuery()) {
+                return rs.next();
             }
         }
+    }
+
+    /**
+     * Records the expiry dates of the passwords a user can access which were stored
+     * before the dates were held outside of the encrypted data. The dates can only be
+     * read by decrypting the passwords, so they are filled in as users who can access
+     * them log in. Passwords which can't be read are left unrecorded and skipped over.
+     *
+     * @param user The user whose passwords should be checked.
+     * @param expiryWarningDate The date before which passwords are considered to be expiring.
+     *
+     * @return true if any of the passwords are expiring, false if not.
+     */
+
+    private boolean recordUnknownExpiryDates(final User user, final long expiryWarningDate)
+            throws SQLException, GeneralSecurityException, IOException {
+        AccessControlDAO acDAO = AccessControlDAO.getInstance();
+        Map<String, Group> decryptedGroups = new HashMap<>();
+        boolean expiring = false;
+        String lastPasswordId = "";
+        while (true) {
+            Map<String, byte[]> unknown = new LinkedHashMap<>();
+            try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(GET_UNKNOWN_EXPIRY_PASSWORDS_SQL)) {
+                ps.setString(1, lastPasswordId);
+                ps.setString(2, user.getUserId());
+                ps.setString(3, user.getUserId());
+                ps.setMaxRows(UNKNOWN_EXPIRY_BATCH_SIZE);
+                try(ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        lastPasswordId = rs.getString(1);
+                        unknown.put(lastPasswordId, rs.getBytes(2));
+                    }
+                }
+            }
+            if (unknown.isEmpty()) {
+                return expiring;
+            }
 
-        return false;
+            Map<String, AccessControl> accessControls = acDAO.getAccessControls(user, unknown.keySet(), decryptedGroups);
+            try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(SET_EXPIRY_SQL)) {
+                for (Map.Entry<String, byte[]> entry : unknown.entrySet()) {
+                    AccessControl ac = accessControls.get(entry.getKey());
+                    if (ac == null) {
+                        continue;
+                    }
+
+                    long expiry;
+                    try {
+                        expiry = new Password(entry.getKey(), entry.getValue(), ac).getExpiry();
+                    } catch (GeneralSecurityException | IOException | RuntimeException e) {
+                        Logger.getAnonymousLogger().log(Level.WARNING, "Unable to read the expiry date of "+entry.getKey(), e);
+                        continue;
+                    }
+                    ps.setLong(1, expiry);
+                    ps.setString(2, entry.getKey());
+                    ps.executeUpdate();
+                    if (expiry < expiryWarningDate) {
+                        expiring = true;
+                    }
+                }
+            }
+
+            // Later pages start after the last ID read, so passwords which couldn't be read aren't fetched again.
+            if (unknown.size() < UNKNOWN_EXPIRY_BATCH_SIZE) {
+                return expiring;
+            }
+        }
     }
 
     /**
@@ -431,7 +536,7 @@ public final class PasswordDAO
     public ExpiringAccessiblePasswords getExpiringPasswords(final User user)
             throws Exception {
         ExpiringAccessiblePasswordsAction expiryTester = new ExpiringAccessiblePasswordsAction(user);
-        new PasswordProcessor().processAllPasswords(user, expiryTester);
+        new PasswordProcessor().processPasswordsExpiringBefore(user, expiryTester.getExpiryWarning(), expiryTester);
         return expiryTester;
     }
 
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.enterprisepasswordsafe.engine.utils.PasswordUtils;
+
+/**
+ * Rewrites password data stored in the original java.util.Properties text format in
+ * the current payload format.
+ *
+ * The data can only be rewritten by someone who holds the modify key for a password,
+ * so, when enabled by the administrator, the passwords a user can modify are converted
+ * in the background after they log in. Only a limited number of users are queued, and
+ * a user is not queued again while they're waiting or being converted; anyone left out
+ * is converted on a later login. Passwords which are never converted can still
+ * be read, and are converted whenever they're next changed. Password history entries
+ * are left in the format they were written in.
+ */
+public final class PasswordPayloadReencoder {
+
+    /**
+     * The number of passwords fetched and converted together.
+     */
+
+    private static final int BATCH_SIZE = 250;
+
+    /**
+     * The SQL to get the next batch of passwords a user can access which are in the
+     * original format.
+     */
+
+    private static final String GET_UNCONVERTED_PASSWORDS_SQL =
+            "SELECT " + PasswordBase.PASSWORD_BASE_FIELDS + " FROM passwords pass "
+        + " WHERE pass.data_format IS NULL AND pass.password_id > ? "
+        + "   AND " + PasswordProcessor.ACCESSIBLE_TO_USER_CONDITION
+        + " ORDER BY pass.password_id";
+
+    /**
+     * The SQL to store the converted data, as long as the password hasn't been
+     * rewritten since it was read.
+     */
+
+    private static final String STORE_CONVERTED_PASSWORD_SQL =
+            "UPDATE passwords SET data_format = ?, password_data = ? "
+        + " WHERE password_id = ? AND data_format IS NULL";
+
+    /**
+     * The maximum number of users waiting for their passwords to be converted.
+     */
+
+    private static final int MAXIMUM_QUEUED_USERS = 32;
+
+    /**
+     * The thread used to convert passwords when users log in.
+     */
+
+    private static final ExecutorService REENCODE_EXECUTOR = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAXIMUM_QUEUED_USERS), runnable -> {
+                Thread thread = new Thread(runnable, "EPS password data converter");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * The IDs of the users who are waiting for, or having, their passwords converted.
+     */
+
+    private static final Set<String> QUEUED_USERS = ConcurrentHashMap.newKeySet();
+
+    private PasswordPayloadReencoder() {
+        super();
+    }
+
+    /**
+     * Check if the conversion has been enabled by the administrator.
+     *
+     * @return true if passwords should be converted, false if not.
+     */
+
+    public static boolean isEnabled() {
+        try {
+            return "Y".equalsIgnoreCase(ConfigurationDAO.getValue(ConfigurationOption.PASSWORD_DATA_REENCODE));
+        } catch (SQLException e) {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Unable to determine if password conversion is enabled", e);
+            return false;
+        }
+    }
+
+    /**
+     * Convert the passwords a user can modify on a background thread. The request is
+     * dropped if the user is already queued or the queue is full.
+     *
+     * @param user The user, with their access key decrypted.
+     */
+
+    public static void reencodeInBackground(final User user) {
+        final String userId = user.getUserId();
+        if (!QUEUED_USERS.add(userId)) {
+            return;
+        }
+
+        try {
+            REENCODE_EXECUTOR.execute(() -> {
+                try {
+                    int converted = reencode(user);
+                    if (converted > 0) {
+                        Logger.getAnonymousLogger().log(Level.INFO,
+                                "Converted " + converted + " passwords for " + user.getUserName());
+                    }
+                } catch (Exception e) {
+                    Logger.getAnonymousLogger().log(Level.WARNING, "Unable to convert passwords for " + user.getUserName(), e);
+                } finally {
+                    QUEUED_USERS.remove(userId);
+                    BOMFactory.closeCurrent();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            QUEUED_USERS.remove(userId);
+            Logger.getAnonymousLogger().log(Level.FINE, "Password conversion queue is full, skipping " + user.getUserName());
+        }
+    }
+
+    /**
+     * Convert the passwords a user can modify.
+     *
+     * @param user The user, with their access key decrypted.
+     *
+     * @return The number of passwords converted.
+     *
+     * @throws SQLException Thrown if there is a problem accessing the database.
+     * @throws GeneralSecurityException Thrown if there is a problem decrypting the access controls.
+     * @throws IOException Thrown if there is a problem decrypting the access controls.
+     */
+
+    static int reencode(final User user)
+            throws SQLException, GeneralSecurityException, IOException {
+        AccessControlDAO acDAO = AccessControlDAO.getInstance();
+        Map<String, Group> decryptedGroups = new HashMap<>();
+        String lastId = "";
+        int converted = 0;
+        while (true) {
+            Map<String, byte[]> batch = new LinkedHashMap<>();
+            try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(GET_UNCONVERTED_PASSWORDS_SQL)) {
+                ps.setString(1, lastId);
+                ps.setString(2, user.getUserId());
+                ps.setString(3, user.getUserId());
+                ps.setMaxRows(BATCH_SIZE);
+                try(ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        lastId = rs.getString(1);
+                        batch.put(lastId, rs.getBytes(2));
+                    }
+                }
+            }
+            if (batch.isEmpty()) {
+                return converted;
+            }
+
+            Map<String, AccessControl> accessControls = acDAO.getAccessControls(user, batch.keySet(), decryptedGroups);
+            try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(STORE_CONVERTED_PASSWORD_SQL)) {
+                for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+                    AccessControl ac = accessControls.get(entry.getKey());
+                    if (ac == null || ac.getModifyKey() == null) {
+                        continue;
+                    }
+
+                    byte[] data;
+                    try {
+                        data = PasswordUtils.reencode(ac, entry.getValue());
+                    } catch (GeneralSecurityException | IOException e) {
+                        Logger.getAnonymousLogger().log(Level.WARNING, "Unable to convert "+entry.getKey(), e);
+                        continue;
+                    }
+                    ps.setInt(1, PasswordUtils.PAYLOAD_FORMAT);
+                    ps.setBytes(2, data == null ? entry.getValue() : data);
+                    ps.setString(3, entry.getKey());
+                    converted += ps.executeUpdate();
+                }
+            }
+
+            if (batch.size() < BATCH_SIZE) {
+                return converted;
+            }
+        }
+    }
+}
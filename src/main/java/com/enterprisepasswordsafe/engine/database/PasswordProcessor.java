@@ -2,55 +2,72 @@ package com.enterprisepasswordsafe.engine.database;
 
 import com.enterprisepasswordsafe.engine.database.actions.PasswordAction;
 import com.enterprisepasswordsafe.engine.users.UserClassifier;
-import com.enterprisepasswordsafe.engine.utils.DatabaseConnectionUtils;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.util.ArrayList;
-import java.util.List;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class PasswordProcessor {
 
     /**
-     * The SQL to get all the active passwords to be acted on.
+     * The number of rows fetched from the database at a time, which is also the number
+     * of passwords whose access controls are fetched together.
      */
 
-    private static final String GET_ALL_PASSWORDS_FOR_ACTION_BY_USER_SQL =
-            "SELECT " + PasswordDAO.PASSWORD_FIELDS + " FROM passwords pass, user_access_control uac "
-        + " WHERE uac.user_id = ? AND uac.item_id = pass.password_id AND (pass.enabled is null OR pass.enabled = 'Y')";
+    private static final int FETCH_SIZE = 500;
 
     /**
-     * The SQL to get all the active passwords to be acted on.
+     * The condition limiting a query on the passwords table to the passwords a user
+     * can access. The users ID is needed for both parameters.
      */
 
-    private static final String GET_ALL_PASSWORDS_FOR_ACTION_BY_GROUP_SQL =
-            "SELECT " + PasswordDAO.PASSWORD_FIELDS + "  FROM passwords pass, group_access_control gac, membership mem "
-         + " WHERE mem.user_id  = ? AND mem.group_id    = gac.group_id AND gac.item_id = pass.password_id "
-         + " AND (pass.enabled is null OR pass.enabled = 'Y')";
-
+    static final String ACCESSIBLE_TO_USER_CONDITION =
+              "(pass.password_id IN (SELECT uac.item_id FROM user_access_control uac "
+        + "                           WHERE uac.user_id = ? AND uac.rkey IS NOT NULL) "
+        + "  OR pass.password_id IN (SELECT gac.item_id FROM group_access_control gac, membership mem "
+        + "                           WHERE mem.user_id = ? AND mem.group_id = gac.group_id "
+        + "                             AND gac.rkey IS NOT NULL))";
 
     /**
-     * The SQL to get all the active passwords to be acted on.
+     * The SQL to get all the active passwords a user can access.
      */
 
-    private static final String GET_ALL_PASSWORDS_FOR_ACTION_BY_USER_EVEN_IF_DISABLED_SQL =
-            "SELECT " + PasswordDAO.PASSWORD_FIELDS + "  FROM passwords pass, user_access_control uac "
-        + " WHERE uac.user_id = ?AND uac.item_id = pass.password_id";
+    private static final String GET_ALL_PASSWORDS_FOR_ACTION_SQL =
+            "SELECT " + PasswordBase.PASSWORD_BASE_FIELDS
+        + "  FROM passwords pass "
+        + " WHERE (pass.enabled is null OR pass.enabled = 'Y') "
+        + "   AND " + ACCESSIBLE_TO_USER_CONDITION;
 
     /**
-     * The SQL to get all the active passwords to be acted on.
+     * The SQL to get all the passwords a user can access, including disabled ones.
      */
 
-    private static final String GET_ALL_PASSWORDS_FOR_ACTION_BY_GROUP_EVEN_IF_DISABLED_SQL =
-            "SELECT " + PasswordDAO.PASSWORD_FIELDS + " FROM passwords pass, group_access_control gac, membership  mem "
-                    + " WHERE mem.user_id = ? AND mem.group_id    = gac.group_id AND gac.item_id = pass.password_id ";
+    private static final String GET_ALL_PASSWORDS_FOR_ACTION_EVEN_IF_DISABLED_SQL =
+            "SELECT " + PasswordBase.PASSWORD_BASE_FIELDS
+        + "  FROM passwords pass "
+        + " WHERE " + ACCESSIBLE_TO_USER_CONDITION;
+
+    /**
+     * The extra condition to limit passwords to those which expire before a given
+     * date, or whose expiry date hasn't been recorded outside of the encrypted data.
+     */
 
+    private static final String EXPIRES_BEFORE_CONDITION =
+            "   AND (pass.expiry_l IS NULL OR pass.expiry_l < ?)";
 
     private UserClassifier userClassifier = new UserClassifier();
 
     /**
      * Performs an action on all passwords stored in the database.
      *
+     * The passwords are read in batches and the access controls for each batch are
+     * fetched together, using the configured precedence between user and group access
+     * controls. Each group is only decrypted once however many passwords it gives
+     * access to.
+     *
      * @param user The user performing the action.
      * @param action The object which will act on each password.
      *
@@ -58,49 +75,82 @@ public class PasswordProcessor {
      */
 
     public void processAllPasswords(final User user, final PasswordAction action) throws Exception {
-        List<String> processedIds = new ArrayList<>();
-        if (userClassifier.isAdministrator(user)) {
-            processAllPasswordsWork(user, action, GET_ALL_PASSWORDS_FOR_ACTION_BY_USER_EVEN_IF_DISABLED_SQL, processedIds);
-            processAllPasswordsWork(user, action, GET_ALL_PASSWORDS_FOR_ACTION_BY_GROUP_EVEN_IF_DISABLED_SQL, processedIds);
-        } else {
-            processAllPasswordsWork(user, action, GET_ALL_PASSWORDS_FOR_ACTION_BY_USER_SQL, processedIds);
-            processAllPasswordsWork(user, action, GET_ALL_PASSWORDS_FOR_ACTION_BY_GROUP_SQL, processedIds);
-        }
+        processPasswords(user, action, getBaseSQL(user), null);
     }
 
     /**
-     * Performs an action on all passwords stored in the database.
+     * Performs an action on the passwords a user can access which expire before a given
+     * date. Passwords whose expiry date is only held in the encrypted data are included
+     * so the action can check them.
      *
      * @param user The user performing the action.
+     * @param expiresBefore The date the passwords must expire before.
      * @param action The object which will act on each password.
-     * @param sql The SQL to use to get the passwords.
-     * @param processedIds The List of IDs which have been processed
      *
      * @throws Exception Any exception can be thrown during the processing of passwords.
      */
 
-    public void processAllPasswordsWork(final User user,
-                                        final PasswordAction action, final String sql,
-                                        final List<String> processedIds)
-            throws Exception {
+    public void processPasswordsExpiringBefore(final User user, final long expiresBefore,
+                                               final PasswordAction action) throws Exception {
+        processPasswords(user, action, getBaseSQL(user) + EXPIRES_BEFORE_CONDITION, expiresBefore);
+    }
+
+    private String getBaseSQL(final User user)
+            throws SQLException {
+        return userClassifier.isAdministrator(user) ?
+                GET_ALL_PASSWORDS_FOR_ACTION_EVEN_IF_DISABLED_SQL : GET_ALL_PASSWORDS_FOR_ACTION_SQL;
+    }
+
+    private void processPasswords(final User user, final PasswordAction action, final String sql,
+                                  final Long expiresBefore) throws Exception {
+        AccessControlDAO acDAO = AccessControlDAO.getInstance();
+        Map<String, Group> decryptedGroups = new HashMap<>();
+        Map<String, byte[]> batch = new LinkedHashMap<>();
         try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(sql)) {
+            ps.setFetchSize(FETCH_SIZE);
             ps.setString(1, user.getUserId());
+            ps.setString(2, user.getUserId());
+            if (expiresBefore != null) {
+                ps.setLong(3, expiresBefore);
+            }
             try (ResultSet rs = ps.executeQuery()){
-                AccessControlDAO acDAO = AccessControlDAO.getInstance();
                 while (rs.next()) {
-                    final String id = rs.getString(1);
-                    if (processedIds.contains(id)) {
-                        continue;
-                    }
-                    final AccessControl ac = acDAO.getAccessControl(user, id);
-                    if( ac == null ) {
-                        continue;
+                    batch.put(rs.getString(1), rs.getBytes(2));
+                    if (batch.size() == FETCH_SIZE) {
+                        processBatch(user, action, acDAO, batch, decryptedGroups);
                     }
-                    final Password thisPassword = new Password(id, rs.getBytes(2), ac);
-                    action.process(null, thisPassword);
-                    processedIds.add(id);
                 }
             }
         }
+        processBatch(user, action, acDAO, batch, decryptedGroups);
+    }
+
+    /**
+     * Performs an action on a batch of passwords and empties the batch.
+     *
+     * @param user The user performing the action.
+     * @param action The object which will act on each password.
+     * @param acDAO The DAO to get the access controls from.
+     * @param batch The encrypted data for each password, keyed on password ID.
+     * @param decryptedGroups The groups already decrypted for the user.
+     *
+     * @throws Exception Any exception can be thrown during the processing of passwords.
+     */
+
+    private void processBatch(final User user, final PasswordAction action, final AccessControlDAO acDAO,
+                              final Map<String, byte[]> batch, final Map<String, Group> decryptedGroups)
+            throws Exception {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Map<String, AccessControl> accessControls = acDAO.getAccessControls(user, batch.keySet(), decryptedGroups);
+        for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+            AccessControl ac = accessControls.get(entry.getKey());
+            if (ac != null) {
+                action.process(null, new Password(entry.getKey(), entry.getValue(), ac));
+            }
+        }
+        batch.clear();
     }
 }
@@ -1,5 +1,6 @@
 package com.enterprisepasswordsafe.engine.database;
 
+import com.enterprisepasswordsafe.engine.database.actions.search.PasswordSearchIndex;
 import com.enterprisepasswordsafe.engine.utils.DatabaseConnectionUtils;
 import com.enterprisepasswordsafe.engine.utils.PasswordUtils;
 
@@ -19,7 +20,7 @@ public abstract class PasswordStoreManipulator
      * The fields needed to create a Password object from a ResultSet.
      */
 
-    static final String PASSWORD_FIELDS = PasswordBase.PASSWORD_BASE_FIELDS
+    public static final String PASSWORD_FIELDS = PasswordBase.PASSWORD_BASE_FIELDS
             + ", pass.enabled, pass.audited, pass.history_stored, pass.restriction_id, "
             + "pass.ra_enabled, pass.ra_approvers, pass.ra_blockers, pass.ptype";
 
@@ -29,7 +30,7 @@ public abstract class PasswordStoreManipulator
 
     private static final String UPDATE_PASSWORD_SQL = "UPDATE passwords SET enabled = ?, audited = ?, " +
         "history_stored = ?, restriction_id = ?, ra_enabled = ?, ra_approvers = ?, ra_blockers = ?, " +
-        "ptype = ?, password_data = ? WHERE password_id = ?";
+        "ptype = ?, expiry_l = ?, data_format = ?, password_data = ? WHERE password_id = ?";
 
 
     /**
@@ -170,10 +171,14 @@ public abstract class PasswordStoreManipulator
             ps.setInt(idx++, password.getRaApprovers());
             ps.setInt(idx++, password.getRaBlockers());
             ps.setInt(idx++, password.getPasswordType());
+            ps.setLong(idx++, password.getExpiry());
+            ps.setInt(idx++, PasswordUtils.PAYLOAD_FORMAT);
             ps.setBytes(idx++, PasswordUtils.encrypt(password, ac));
 
             ps.setString(idx, password.getId());
             ps.executeUpdate();
+
+            PasswordSearchIndex.passwordUpdated(password);
         } finally {
             DatabaseConnectionUtils.close(ps);
         }
@@ -190,6 +195,8 @@ public abstract class PasswordStoreManipulator
             ps.setString(1, password.getId());
             ps.executeUpdate();
 
+            PasswordSearchIndex.passwordDeleted(password.getId());
+
             if( password.getPasswordType() != Password.TYPE_PERSONAL ) {
                 boolean sendEmail = ((password.getAuditLevel() & Password.AUDITING_EMAIL_ONLY)!=0);
                 TamperproofEventLogDAO.getInstance().create(TamperproofEventLog.LOG_LEVEL_OBJECT_MANIPULATION,
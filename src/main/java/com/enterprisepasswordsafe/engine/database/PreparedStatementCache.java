@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.enterprisepasswordsafe.engine.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.enterprisepasswordsafe.engine.utils.DatabaseConnectionUtils;
+
+/**
+ * Cache of prepared statements for a single connection keyed on the SQL text.
+ *
+ * The connection handed out by {@link #wrap(Connection)} returns cached statements
+ * from prepareStatement(String). When a DAO closes a cached statement it is returned
+ * to the cache instead of being closed, so the next use of the same SQL during the
+ * lifetime of the connection skips the parse/plan round trip.
+ */
+final class PreparedStatementCache {
+
+    /**
+     * The maximum number of idle statements held for a connection.
+     */
+
+    private static final int MAXIMUM_CACHED_STATEMENTS = 64;
+
+    /**
+     * Methods which leave a statement in a state which would affect the next user,
+     * statements on which these are called are closed rather than returned to the cache.
+     */
+
+    private static final Set<String> STATE_ALTERING_METHODS = new HashSet<>(
+            Arrays.asList("setMaxRows", "setLargeMaxRows", "setFetchSize", "setFetchDirection",
+                    "setQueryTimeout", "setMaxFieldSize", "setEscapeProcessing", "setPoolable",
+                    "addBatch", "closeOnCompletion", "setCursorName"));
+
+    /**
+     * Hit and miss counts across all caches.
+     */
+
+    private static final AtomicLong TOTAL_HITS = new AtomicLong();
+    private static final AtomicLong TOTAL_MISSES = new AtomicLong();
+
+    /**
+     * The idle statements, least recently used first.
+     */
+
+    private final Map<String, PreparedStatement> idleStatements =
+            new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > MAXIMUM_CACHED_STATEMENTS) {
+                        DatabaseConnectionUtils.close(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    /**
+     * The connection statements are prepared on.
+     */
+
+    private final Connection connection;
+
+    /**
+     * The wrapped connection handed to callers.
+     */
+
+    private final Connection wrappedConnection;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    private PreparedStatementCache(final Connection connection) {
+        this.connection = connection;
+        wrappedConnection = (Connection) Proxy.newProxyInstance(
+                PreparedStatementCache.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new ConnectionHandler());
+    }
+
+    /**
+     * Wrap a connection so that single argument prepareStatement calls are served from
+     * a statement cache.
+     *
+     * @param connection The connection to wrap.
+     *
+     * @return The cache for the connection.
+     */
+
+    static PreparedStatementCache wrap(final Connection connection) {
+        return new PreparedStatementCache(connection);
+    }
+
+    /**
+     * @return The connection which should be handed to DAOs.
+     */
+
+    Connection getConnection() {
+        return wrappedConnection;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of cache hits across all connections.
+     */
+
+    static long getTotalHits() {
+        return TOTAL_HITS.get();
+    }
+
+    /**
+     * @return The number of cache misses across all connections.
+     */
+
+    static long getTotalMisses() {
+        return TOTAL_MISSES.get();
+    }
+
+    /**
+     * Close all the idle statements.
+     */
+
+    synchronized void clear() {
+        for(Iterator<PreparedStatement> iter = idleStatements.values().iterator(); iter.hasNext(); ) {
+            DatabaseConnectionUtils.close(iter.next());
+            iter.remove();
+        }
+    }
+
+    private synchronized PreparedStatement checkout(final String sql)
+            throws SQLException {
+        PreparedStatement statement = idleStatements.remove(sql);
+        if (statement != null) {
+            hits++;
+            TOTAL_HITS.incrementAndGet();
+            return statement;
+        }
+
+        misses++;
+        TOTAL_MISSES.incrementAndGet();
+        return connection.prepareStatement(sql);
+    }
+
+    private synchronized void release(final String sql, final PreparedStatement statement) {
+        if (idleStatements.containsKey(sql)) {
+            DatabaseConnectionUtils.close(statement);
+            return;
+        }
+
+        try {
+            statement.clearParameters();
+            idleStatements.put(sql, statement);
+        } catch (SQLException e) {
+            DatabaseConnectionUtils.close(statement);
+        }
+    }
+
+    private static Object invoke(final Object target, final Method method, final Object[] args)
+            throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Handler which redirects single argument prepareStatement calls to the cache and
+     * clears the cache when the connection is closed.
+     */
+
+    private final class ConnectionHandler implements InvocationHandler {
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args)
+                throws Throwable {
+            String name = method.getName();
+            if ("prepareStatement".equals(name) && args.length == 1) {
+                String sql = (String) args[0];
+                return createStatementProxy(sql, checkout(sql));
+            }
+            if ("close".equals(name)) {
+                clear();
+            } else if ("equals".equals(name)) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            return PreparedStatementCache.invoke(connection, method, args);
+        }
+    }
+
+    private PreparedStatement createStatementProxy(final String sql, final PreparedStatement statement) {
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatementCache.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                new StatementHandler(sql, statement));
+    }
+
+    /**
+     * Handler for a single checkout of a statement. Closing returns the statement to
+     * the cache and any further use of the handle is rejected.
+     */
+
+    private final class StatementHandler implements InvocationHandler {
+
+        private final String sql;
+
+        private final PreparedStatement statement;
+
+        private ResultSet lastResultSet;
+
+        private boolean reusable = true;
+
+        private boolean closed = false;
+
+        StatementHandler(final String sql, final PreparedStatement statement) {
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args)
+                throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        DatabaseConnectionUtils.close(lastResultSet);
+                        if (reusable) {
+                            release(sql, statement);
+                        } else {
+                            DatabaseConnectionUtils.close(statement);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || statement.isClosed();
+                case "getConnection":
+                    return wrappedConnection;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+
+            if (closed) {
+                throw new SQLException("Statement has been closed");
+            }
+            if (STATE_ALTERING_METHODS.contains(name)) {
+                reusable = false;
+            }
+
+            Object result = PreparedStatementCache.invoke(statement, method, args);
+            if (result instanceof ResultSet) {
+                lastResultSet = (ResultSet) result;
+            }
+            return result;
+        }
+    }
+}
@@ -137,6 +137,22 @@ public final class TamperproofEventLog
         }
     }
 
+    /**
+     * Creates an instance for an entry read from the event log archive.
+     *
+     * @param storedUserId The user ID as it was stored, which is the dummy user ID if
+     *  no user was involved.
+     */
+
+    TamperproofEventLog(final long newDatetime, final String storedUserId, final String newItemId,
+                        final String newEvent, final byte[] newTamperStamp) {
+        datetime = newDatetime;
+        userId = DUMMY_USER_ID.equals(storedUserId) ? null : storedUserId;
+        itemId = newItemId;
+        event = newEvent;
+        tamperStamp = newTamperStamp;
+    }
+
     /**
      * Returns whether or not this entry has a tamperproof stamp.
      *
@@ -21,11 +21,14 @@ import java.security.GeneralSecurityException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.*;
 
 import com.enterprisepasswordsafe.engine.logging.LogEventHasher;
 import com.enterprisepasswordsafe.engine.logging.LogEventMailer;
+import com.enterprisepasswordsafe.engine.utils.DatabaseConnectionUtils;
 import com.enterprisepasswordsafe.engine.utils.DateFormatter;
+import com.enterprisepasswordsafe.engine.utils.PasswordUtils;
 import com.enterprisepasswordsafe.proguard.ExternalInterface;
 import com.enterprisepasswordsafe.proguard.JavaBean;
 
@@ -39,58 +42,54 @@ public class TamperproofEventLogDAO
 	implements ExternalInterface {
 
     /**
-     * SQL Statement to get all the log entries for a given date.
+     * SQL Statement to get the log entries from a point in a date range. The conditions
+     * limiting the user and item are added before the ordering when needed.
      */
 
     private static final String GET_BY_DATE_RANGE_SQL =
-        	"SELECT evl.dt_l, evl.user_id, evl.item_id, evl.event, evl.stamp_b, usr.user_name, pass.password_data, pass.history_stored"
+              "SELECT evl.dt_l, evl.user_id, evl.item_id, evl.event, evl.stamp_b, usr.user_name"
             + "  FROM event_log evl "
             + "  LEFT OUTER JOIN application_users usr ON evl.user_id = usr.user_id"
-            + "  LEFT OUTER JOIN passwords pass        ON evl.item_id = pass.password_id"
-            + " WHERE evl.dt_l >= ? AND evl.dt_l <= ? ORDER BY evl.dt_l ASC";
+            + " WHERE evl.dt_l >= ? AND evl.dt_l <= ?";
+
+    private static final String USER_CONDITION = " AND evl.user_id = ?";
+
+    private static final String ITEM_CONDITION = " AND evl.item_id = ?";
+
+    private static final String DATE_ORDER = " ORDER BY evl.dt_l ASC";
 
     /**
-     * SQL Statement to get all the log entries for a given date for a given
-     * user.
+     * SQL To get the data needed to describe a set of passwords. The placeholders for the
+     * password IDs are added when the statement is prepared.
      */
 
-    private static final String GET_BY_DATE_RANGE_AND_USER_SQL =
-              "SELECT evl.dt_l, evl.user_id, evl.item_id, evl.event, evl.stamp_b, usr.user_name, pass.password_data, pass.history_stored"
-            + "  FROM event_log evl "
-            + "  LEFT OUTER JOIN application_users usr ON evl.user_id = usr.user_id"
-            + "  LEFT OUTER JOIN passwords pass        ON evl.item_id = pass.password_id"
-            + " WHERE evl.dt_l >= ? AND evl.dt_l <= ? AND evl.user_id = ? ORDER BY evl.dt_l ASC";
+    private static final String GET_PASSWORD_DATA_FOR_ITEMS_SQL =
+              "SELECT pass.password_id, pass.password_data, pass.history_stored"
+            + "  FROM passwords pass"
+            + " WHERE pass.password_id IN (";
 
     /**
-     * SQL Statement to get all the log entries for a given date for a given
-     * item.
+     * The limits on the number of entries shown on each page of the event log.
      */
 
-    private static final String GET_BY_DATE_RANGE_AND_ITEM_SQL =
-    		  "SELECT evl.dt_l, evl.user_id, evl.item_id, evl.event, evl.stamp_b, usr.user_name, pass.password_data, pass.history_stored"
-            + "  FROM event_log evl"
-            + "  LEFT OUTER JOIN application_users usr ON evl.user_id = usr.user_id"
-            + "  LEFT OUTER JOIN passwords pass        ON evl.item_id = pass.password_id"
-            + " WHERE evl.dt_l >= ? AND evl.dt_l <= ? AND evl.item_id = ? ORDER BY evl.datetime ASC";
+    private static final int MINIMUM_PAGE_SIZE = 10,
+                             MAXIMUM_PAGE_SIZE = 5000;
 
     /**
-     * SQL Statement to get all the log entries for a given date for a given
-     * user.
+     * SQL statement to write the event to the log.
      */
 
-    private static final String GET_BY_DATE_RANGE_AND_USER_AND_ITEM_SQL =
-		    "SELECT evl.dt_l, evl.user_id, evl.item_id, evl.event, evl.stamp_b, usr.user_name, pass.password_data, pass.history_stored"
-            + "  FROM event_log evl "
-            + "  LEFT OUTER JOIN application_users usr ON evl.user_id = usr.user_id"
-            + "  LEFT OUTER JOIN passwords pass        ON evl.item_id = pass.password_id"
-            + " WHERE evl.dt_l >= ? AND evl.dt_l <= ? AND evl.user_id = ? AND evl.item_id = ? ORDER BY evl.datetime ASC";
+    static final String WRITE_SQL =
+              "INSERT INTO event_log(dt_l, item_id, event, user_id, stamp_b, chain_seq_l, chain_b) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?)";
 
     /**
-     * SQL statement to write the event to the log.
+     * The maximum time a reader waits for queued entries to be written before reading the log.
      */
 
-    private static final String WRITE_SQL =
-              "INSERT INTO event_log(dt_l, item_id, event, user_id, stamp_b) VALUES (?, ?, ?, ?, ?)";
+    private static final long READ_FLUSH_TIMEOUT_MILLIS = 5000;
+
+    private final LogEventMailer logEventMailer = new LogEventMailer();
 
 	/**
 	 * Private constructor to prevent instantiation.
@@ -130,57 +129,63 @@ public class TamperproofEventLogDAO
 	}
 
     /**
-     * Write a log entry to the log.
+     * Queue a log entry to be written to the log and, if needed, an Email to be sent about it.
      *
      * @param logLevel The log level for the event.
      * @param eventLogEntry The entry to write.
      *
-     * @throws SQLException Thrown if there is a storing retrieving the information.
+     * @throws SQLException Thrown if the entry can not be accepted by the writer, in which
+     *  case the action being logged must not go ahead.
      */
 
     private void write(final String logLevel, TamperproofEventLog eventLogEntry,
     		final AccessControledObject item, boolean sendEmail)
-            throws SQLException, GeneralSecurityException, UnsupportedEncodingException {
-        String userId = eventLogEntry.getUserId();
-        if (userId == null) {
-        	userId = TamperproofEventLog.DUMMY_USER_ID;
-        }
-
-        try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(WRITE_SQL)) {
-            if (sendEmail) {
-                sendEmail(ps, logLevel, eventLogEntry, item);
-            }
-            writeEntry(ps, userId, eventLogEntry);
+            throws SQLException {
+        TamperproofEventLogWriter.getInstance().submit(eventLogEntry);
+        if (sendEmail && isEmailEnabled(logLevel)) {
+            logEventMailer.sendEmail(logLevel, eventLogEntry, item);
         }
     }
 
-    private void sendEmail(final PreparedStatement writePreparedStatement, final String logLevel,
-                           TamperproofEventLog eventLogEntry, final AccessControledObject item )
-            throws SQLException, GeneralSecurityException, UnsupportedEncodingException {
+    private boolean isEmailEnabled(final String logLevel)
+            throws SQLException {
         String sendEmails =
                 ConfigurationDAO.getValue(
                         ConfigurationOption.SMTP_ENABLED + "." + logLevel, null);
-        if(sendEmails == null || sendEmails.charAt(0) != 'N') {
-            try {
-                new LogEventMailer().sendEmail(logLevel, eventLogEntry, item);
-            } catch (Exception ex) {
-                TamperproofEventLog log = new TamperproofEventLog(null,null,
-                        "Unable to send audit Email (Reason:"+ex.getMessage()+")",
-                        false);
-                writeEntry(writePreparedStatement, TamperproofEventLog.DUMMY_USER_ID, log);
-            }
-        }
+        return sendEmails == null || sendEmails.charAt(0) != 'N';
     }
 
-    private void writeEntry(PreparedStatement ps, String userId, TamperproofEventLog eventLogEntry)
+    /**
+     * Sets the parameters of the WRITE_SQL statement for an entry.
+     *
+     * @param link The entry's position in the event log hash chain, or null if it is not chained.
+     */
+
+    static void bindEntry(PreparedStatement ps, TamperproofEventLog eventLogEntry, EventLogChain.Link link)
             throws SQLException {
         int idx = 1;
         ps.setLong(idx++, eventLogEntry.getDateTime());
         ps.setString(idx++, eventLogEntry.getItemId());
         ps.setString(idx++, eventLogEntry.getEvent());
-        ps.setString(idx++, userId);
-        ps.setBytes(idx, eventLogEntry.getTamperStamp());
-        ps.executeUpdate();
+        ps.setString(idx++, getStoredUserId(eventLogEntry));
+        ps.setBytes(idx++, eventLogEntry.getTamperStamp());
+        if (link == null) {
+            ps.setNull(idx++, Types.BIGINT);
+            ps.setNull(idx, Types.BLOB);
+        } else {
+            ps.setLong(idx++, link.getSequence());
+            ps.setBytes(idx, link.getHash());
+        }
+    }
+
+    /**
+     * Gets the user ID stored for an entry, which is the dummy user ID for entries
+     * which did not involve a user.
+     */
+
+    static String getStoredUserId(TamperproofEventLog eventLogEntry) {
+        String userId = eventLogEntry.getUserId();
+        return userId == null ? TamperproofEventLog.DUMMY_USER_ID : userId;
     }
 
 
@@ -199,86 +204,487 @@ public class TamperproofEventLogDAO
         return Arrays.equals(tamperStamp, calculatedTamperstamp);
     }
 
-    public List<EventsForDay> getEventsForDateRange(final long startDate,
-            final long endDate, final String userIdLimit, final String itemIdLimit,
-            final User fetchingUser, final boolean includePersonal,
-            final boolean validateTamperstamp)
-            throws 	SQLException,
-            		UnsupportedEncodingException,
-            		GeneralSecurityException {
-    	Group adminGroup = GroupDAO.getInstance().getAdminGroup(fetchingUser);
-
-        try (PreparedStatement ps =
-                     BOMFactory.getCurrentConntection().prepareStatement(getSQLStatement(userIdLimit, itemIdLimit))) {
-            int idx = 1;
-            ps.setLong(idx++, startDate);
-            ps.setLong(idx++, endDate);
+    /**
+     * Gets a page of the events in a date range.
+     *
+     * Pages are fetched using the time of the last entry shown and the number of entries
+     * at that time which have already been read, so each page only reads its own rows
+     * however far through the range it is. Entries logged at the same time are put in
+     * order of their details, so the count always refers to the same entries. The items
+     * involved are described once per page, so memory use depends on the page size
+     * rather than the size of the range.
+     * Archived events are merged with those still in the event log.
+     *
+     * @param startDate The start of the range.
+     * @param endDate The end of the range.
+     * @param userIdLimit The user to limit the events to, or null for all users.
+     * @param itemIdLimit The item to limit the events to, or null for all items.
+     * @param fetchingUser The user viewing the events.
+     * @param includePersonal Whether to include events for personal items.
+     * @param validateTamperstamp Whether to check the tamperstamp of each event.
+     * @param cursor The cursor from the previous page, or null for the first page.
+     *
+     * @return The page of events.
+     */
 
-            if (userIdLimit != null) {
-                ps.setString(idx++, userIdLimit);
-            }
-            if (itemIdLimit != null) {
-                ps.setString(idx, itemIdLimit);
-            }
+    public EventLogPage getEventsPage(final long startDate, final long endDate, final String userIdLimit,
+            final String itemIdLimit, final User fetchingUser, final boolean includePersonal,
+            final boolean validateTamperstamp, final String cursor)
+            throws SQLException, UnsupportedEncodingException, GeneralSecurityException {
+        // Make sure recent events, such as those from the user's own actions, are visible.
+        TamperproofEventLogWriter.getInstance().flush(READ_FLUSH_TIMEOUT_MILLIS);
+
+        PageReader reader = new PageReader(startDate, endDate, userIdLimit, itemIdLimit, fetchingUser,
+                includePersonal, validateTamperstamp);
+        return reader.read(cursor, getPageSize());
+    }
 
-            try (ResultSet rs = ps.executeQuery()) {
-                return processResults(rs, fetchingUser, adminGroup, includePersonal, validateTamperstamp);
+    /**
+     * Passes every event in a date range to a listener, a page at a time, so the whole
+     * range is never held in memory.
+     *
+     * @param startDate The start of the range.
+     * @param endDate The end of the range.
+     * @param userIdLimit The user to limit the events to, or null for all users.
+     * @param itemIdLimit The item to limit the events to, or null for all items.
+     * @param fetchingUser The user viewing the events.
+     * @param includePersonal Whether to include events for personal items.
+     * @param validateTamperstamp Whether to check the tamperstamp of each event.
+     * @param listener The listener to pass each event to.
+     */
+
+    public void processEventsForDateRange(final long startDate, final long endDate, final String userIdLimit,
+            final String itemIdLimit, final User fetchingUser, final boolean includePersonal,
+            final boolean validateTamperstamp, final EventListener listener)
+            throws Exception {
+        TamperproofEventLogWriter.getInstance().flush(READ_FLUSH_TIMEOUT_MILLIS);
+
+        PageReader reader = new PageReader(startDate, endDate, userIdLimit, itemIdLimit, fetchingUser,
+                includePersonal, validateTamperstamp);
+        int pageSize = getPageSize();
+        String cursor = null;
+        do {
+            EventLogPage page = reader.read(cursor, pageSize);
+            for (EventsForDay day : page.getDays()) {
+                for (ExpandedTamperproofEventLogEntry entry : day.getEvents()) {
+                    listener.event(entry);
+                }
             }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+    }
+
+    /**
+     * Get the number of entries shown on each page of the event log.
+     *
+     * @return The page size.
+     */
+
+    public static int getPageSize() {
+        Long pageSize = ConfigurationDAO.getLongValue(ConfigurationOption.EVENT_LOG_PAGE_SIZE);
+        if (pageSize == null) {
+            return Integer.parseInt(ConfigurationOption.EVENT_LOG_PAGE_SIZE.getDefaultValue());
         }
+        return (int) Math.max(MINIMUM_PAGE_SIZE, Math.min(MAXIMUM_PAGE_SIZE, pageSize));
     }
 
-    private String getSQLStatement(final String userIdLimit, final String itemIdLimit) {
-        String sql;
-        if (userIdLimit != null && itemIdLimit != null) {
-            sql = GET_BY_DATE_RANGE_AND_USER_AND_ITEM_SQL;
-        } else if (userIdLimit != null) {
-            sql = GET_BY_DATE_RANGE_AND_USER_SQL;
-        } else if (itemIdLimit != null) {
-            sql = GET_BY_DATE_RANGE_AND_ITEM_SQL;
-        } else {
-            sql = GET_BY_DATE_RANGE_SQL;
+    /**
+     * An entry read from the event log.
+     */
+
+    private static final class LogRow {
+
+        /**
+         * The order entries logged at the same time are shown in.
+         */
+
+        private static final Comparator<LogRow> ORDER =
+                Comparator.comparing((LogRow row) -> row.userId, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                        .thenComparing(row -> row.itemId, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                        .thenComparing(row -> row.event, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                        .thenComparing(row -> row.stamp, Comparator.nullsFirst(LogRow::compareStamps));
+
+        private final long dateTime;
+
+        private final String userId;
+
+        private final String itemId;
+
+        private final String event;
+
+        private final byte[] stamp;
+
+        private final String username;
+
+        private LogRow(final ResultSet rs)
+                throws SQLException {
+            dateTime = rs.getLong(1);
+            userId = rs.getString(2);
+            itemId = rs.getString(3);
+            event = rs.getString(4);
+            stamp = rs.getBytes(5);
+            username = rs.getString(6);
+        }
+
+        private static int compareStamps(final byte[] first, final byte[] second) {
+            int length = Math.min(first.length, second.length);
+            for (int i = 0; i < length; i++) {
+                int result = Integer.compare(first[i] & 0xff, second[i] & 0xff);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return Integer.compare(first.length, second.length);
         }
-        return sql;
     }
 
-    private List<EventsForDay> processResults(final ResultSet rs, User fetchingUser, Group adminGroup,
-                                             final boolean includePersonal, final boolean validateTamperstamp)
-            throws SQLException, UnsupportedEncodingException, GeneralSecurityException {
-        List<EventsForDay> events = new ArrayList<>();
-
-        List<ExpandedTamperproofEventLogEntry> daysEvents = new ArrayList<>();
-        long currentDate = Long.MIN_VALUE;
-        while (rs.next()) {
-            long newDate = DateFormatter.stripTime(rs.getLong(1));
-            if (currentDate != Long.MIN_VALUE && currentDate != newDate) {
-                EventsForDay eventsForDay = new EventsForDay(currentDate, daysEvents);
-                events.add(eventsForDay);
-                daysEvents = new ArrayList<>();
+    /**
+     * Receives each event as it is read.
+     */
+
+    public interface EventListener {
+        void event(ExpandedTamperproofEventLogEntry entry) throws Exception;
+    }
+
+    /**
+     * Reads pages of events for a query from the event log and the event log archive.
+     * The decrypted users and groups are kept between pages so each is only decrypted once.
+     */
+
+    private static final class PageReader {
+
+        private final long startDate;
+
+        private final long endDate;
+
+        private final String userIdLimit;
+
+        private final String itemIdLimit;
+
+        private final User fetchingUser;
+
+        private final boolean includePersonal;
+
+        private final boolean validateTamperstamp;
+
+        private final Group adminGroup;
+
+        private final Map<String, User> decryptedUsers = new HashMap<>();
+
+        private final Map<String, Group> decryptedGroups = new HashMap<>();
+
+        private final Map<String, String> usernames = new HashMap<>();
+
+        private Boolean excludeEntriesWithoutItems;
+
+        private PageReader(final long newStartDate, final long newEndDate, final String newUserIdLimit,
+                           final String newItemIdLimit, final User newFetchingUser,
+                           final boolean newIncludePersonal, final boolean newValidateTamperstamp)
+                throws SQLException, GeneralSecurityException, UnsupportedEncodingException {
+            startDate = newStartDate;
+            endDate = newEndDate;
+            userIdLimit = newUserIdLimit;
+            itemIdLimit = newItemIdLimit;
+            fetchingUser = newFetchingUser;
+            includePersonal = newIncludePersonal;
+            validateTamperstamp = newValidateTamperstamp;
+            adminGroup = GroupDAO.getInstance().getAdminGroup(fetchingUser);
+        }
+
+        private EventLogPage read(final String cursor, final int pageSize)
+                throws SQLException, UnsupportedEncodingException, GeneralSecurityException {
+            long from = startDate;
+            int skip = 0;
+            if (cursor != null) {
+                String[] parts = cursor.split("\\.");
+                try {
+                    if (parts.length == 2) {
+                        from = Math.max(startDate, Long.parseLong(parts[0]));
+                        skip = Math.max(0, Integer.parseInt(parts[1]));
+                    }
+                } catch (NumberFormatException e) {
+                    from = startDate;
+                    skip = 0;
+                }
             }
 
-            processResult(rs, daysEvents, fetchingUser, adminGroup, includePersonal, validateTamperstamp);
+            List<ExpandedTamperproofEventLogEntry> entries = new ArrayList<>(pageSize);
+            long lastDate = from;
+            int readAtLastDate = 0;
+            boolean hasMore = false;
+            EventLogArchive.Reader archive =
+                    EventLogArchive.getInstance().openReader(from, endDate, userIdLimit, itemIdLimit);
+            EventLogArchive.Entry archived = archive.next();
+            try (LogRows rows = new LogRows(from, skip + pageSize + 1)) {
+                int read = 0;
+                // Archived entries are older than those in the event log, so they come
+                // first if both hold entries for the same time.
+                LogRow row = rows.next();
+                while (row != null || archived != null) {
+                    boolean useArchived = archived != null && (row == null || archived.getDateTime() <= row.dateTime);
+                    long dateTime = useArchived ? archived.getDateTime() : row.dateTime;
+                    if (dateTime == from && skip > 0) {
+                        skip--;
+                        readAtLastDate++;
+                    } else {
+                        skip = 0;
+                        if (read == pageSize) {
+                            hasMore = true;
+                            break;
+                        }
+
+                        if (dateTime != lastDate) {
+                            lastDate = dateTime;
+                            readAtLastDate = 0;
+                        }
+                        readAtLastDate++;
+                        read++;
+
+                        if (useArchived && isIncluded(archived.getItemId())) {
+                            entries.add(createEntry(archived));
+                        } else if (!useArchived && isIncluded(row.itemId)) {
+                            entries.add(new ExpandedTamperproofEventLogEntry(dateTime, row.userId, row.itemId,
+                                    row.event, row.stamp, row.username, adminGroup, validateTamperstamp,
+                                    decryptedUsers));
+                        }
+                    }
+
+                    if (useArchived) {
+                        archived = archive.next();
+                    } else {
+                        row = rows.next();
+                    }
+                }
+            }
 
-            currentDate = newDate;
+            describeItems(entries);
+            return new EventLogPage(groupByDay(entries), hasMore ? lastDate + "." + readAtLastDate : null);
         }
 
-        if (daysEvents.size() > 0) {
-            EventsForDay eventsForDay = new EventsForDay(currentDate, daysEvents);
-            events.add(eventsForDay);
+        /**
+         * Prepares the query for the entries in part of the range.
+         */
+
+        private PreparedStatement prepare(final long from, final long to)
+                throws SQLException {
+            PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(getSQL());
+            try {
+                int idx = 1;
+                ps.setLong(idx++, from);
+                ps.setLong(idx++, to);
+                if (userIdLimit != null) {
+                    ps.setString(idx++, userIdLimit);
+                }
+                if (itemIdLimit != null) {
+                    ps.setString(idx, itemIdLimit);
+                }
+                return ps;
+            } catch (SQLException | RuntimeException e) {
+                ps.close();
+                throw e;
+            }
         }
 
-        return events;
-    }
+        /**
+         * Reads the entries in the event log a time at a time, putting the entries
+         * logged at each time in order.
+         */
 
-    private void processResult(ResultSet rs, List<ExpandedTamperproofEventLogEntry> daysEvents, User fetchingUser,
-                               Group adminGroup, final boolean includePersonal, final boolean validateTamperstamp)
-            throws SQLException, UnsupportedEncodingException, GeneralSecurityException {
-        String itemId = rs.getString(3);
-        if (!includePersonal && (rs.wasNull() || itemId == null)
-            && HierarchyNodeDAO.getInstance().isPersonalByName(itemId)) {
-            return;
+        private final class LogRows
+            implements AutoCloseable {
+
+            private final int maxRows;
+
+            private final PreparedStatement ps;
+
+            private final ResultSet rs;
+
+            private int rowsRead = 0;
+
+            private boolean hasRow;
+
+            private final List<LogRow> group = new ArrayList<>();
+
+            private int groupIndex = 0;
+
+            private LogRows(final long from, final int newMaxRows)
+                    throws SQLException {
+                maxRows = newMaxRows;
+                ps = prepare(from, endDate);
+                try {
+                    // Limit the rows sent by drivers which would otherwise read the whole result.
+                    ps.setMaxRows(maxRows);
+                    ps.setFetchSize(Math.min(maxRows, MAXIMUM_PAGE_SIZE));
+                    rs = ps.executeQuery();
+                    hasRow = advance();
+                } catch (SQLException | RuntimeException e) {
+                    ps.close();
+                    throw e;
+                }
+            }
+
+            private LogRow next()
+                    throws SQLException {
+                if (groupIndex == group.size()) {
+                    group.clear();
+                    groupIndex = 0;
+                    if (!hasRow) {
+                        return null;
+                    }
+
+                    long dateTime = rs.getLong(1);
+                    while (hasRow && rs.getLong(1) == dateTime) {
+                        group.add(new LogRow(rs));
+                        hasRow = advance();
+                    }
+                    if (!hasRow && rowsRead == maxRows) {
+                        // The row limit may have cut the last time short, so read all of it.
+                        group.clear();
+                        try (PreparedStatement all = prepare(dateTime, dateTime);
+                             ResultSet allRows = all.executeQuery()) {
+                            while (allRows.next()) {
+                                group.add(new LogRow(allRows));
+                            }
+                        }
+                    }
+                    group.sort(LogRow.ORDER);
+                }
+                return group.get(groupIndex++);
+            }
+
+            private boolean advance()
+                    throws SQLException {
+                boolean more = rs.next();
+                if (more) {
+                    rowsRead++;
+                }
+                return more;
+            }
+
+            @Override
+            public void close()
+                    throws SQLException {
+                try {
+                    rs.close();
+                } finally {
+                    ps.close();
+                }
+            }
+        }
+
+        private String getSQL() {
+            StringBuilder sql = new StringBuilder(GET_BY_DATE_RANGE_SQL);
+            if (userIdLimit != null) {
+                sql.append(USER_CONDITION);
+            }
+            if (itemIdLimit != null) {
+                sql.append(ITEM_CONDITION);
+            }
+            sql.append(DATE_ORDER);
+            return sql.toString();
+        }
+
+        private boolean isIncluded(final String itemId)
+                throws SQLException {
+            if (includePersonal || itemId != null) {
+                return true;
+            }
+            if (excludeEntriesWithoutItems == null) {
+                excludeEntriesWithoutItems = HierarchyNodeDAO.getInstance().isPersonalByName(null);
+            }
+            return !excludeEntriesWithoutItems;
         }
 
-        daysEvents.add( new ExpandedTamperproofEventLogEntry( rs, fetchingUser, adminGroup, validateTamperstamp));
+        private ExpandedTamperproofEventLogEntry createEntry(final EventLogArchive.Entry archived)
+                throws SQLException, UnsupportedEncodingException, GeneralSecurityException {
+            String userId = archived.getStoredUserId();
+            if (userId != null && !usernames.containsKey(userId)) {
+                User user = UserDAO.getInstance().getById(userId);
+                usernames.put(userId, user == null ? null : user.getUserName());
+            }
+            return new ExpandedTamperproofEventLogEntry(archived.getDateTime(), userId, archived.getItemId(),
+                    archived.getEvent(), archived.getTamperStamp(), usernames.get(userId), adminGroup,
+                    validateTamperstamp, decryptedUsers);
+        }
+
+        /**
+         * Describes the items involved in a page of entries. Each password is only fetched
+         * and decrypted once however many entries on the page involve it.
+         */
+
+        private void describeItems(final List<ExpandedTamperproofEventLogEntry> entries)
+                throws SQLException, UnsupportedEncodingException, GeneralSecurityException {
+            Set<String> itemIds = new HashSet<>();
+            for (ExpandedTamperproofEventLogEntry entry : entries) {
+                if (entry.getItemId() != null) {
+                    itemIds.add(entry.getItemId());
+                }
+            }
+            if (itemIds.isEmpty()) {
+                return;
+            }
+
+            Map<String, AccessControl> accessControls =
+                    AccessControlDAO.getInstance().getAccessControls(fetchingUser, itemIds, decryptedGroups);
+            Map<String, String> descriptions = new HashMap<>();
+            Set<String> historyStored = new HashSet<>();
+            List<String> ids = new ArrayList<>(accessControls.keySet());
+            for (int start = 0; start < ids.size(); start += AccessControlDAO.MAXIMUM_ITEMS_PER_QUERY) {
+                List<String> batch = ids.subList(start, Math.min(ids.size(), start + AccessControlDAO.MAXIMUM_ITEMS_PER_QUERY));
+                String sql = GET_PASSWORD_DATA_FOR_ITEMS_SQL + DatabaseConnectionUtils.createParameterList(batch.size()) + ")";
+                try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(sql)) {
+                    int idx = 1;
+                    for (String itemId : batch) {
+                        ps.setString(idx++, itemId);
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            String itemId = rs.getString(1);
+                            descriptions.put(itemId, describe(accessControls.get(itemId), rs.getBytes(2)));
+                            if ("Y".equals(rs.getString(3))) {
+                                historyStored.add(itemId);
+                            }
+                        }
+                    }
+                }
+            }
+
+            for (ExpandedTamperproofEventLogEntry entry : entries) {
+                String itemId = entry.getItemId();
+                if (itemId != null && descriptions.containsKey(itemId)) {
+                    entry.setItem(descriptions.get(itemId), historyStored.contains(itemId));
+                }
+            }
+        }
+
+        private String describe(final AccessControl ac, final byte[] passwordData) {
+            try {
+                Password pass = new Password();
+                PasswordUtils.decrypt(pass, ac, passwordData);
+                return pass.getUsername() + " @ " + pass.getLocation();
+            } catch (Exception e) {
+                return "";
+            }
+        }
+
+        private List<EventsForDay> groupByDay(final List<ExpandedTamperproofEventLogEntry> entries) {
+            List<EventsForDay> days = new ArrayList<>();
+            List<ExpandedTamperproofEventLogEntry> daysEvents = new ArrayList<>();
+            long currentDate = Long.MIN_VALUE;
+            for (ExpandedTamperproofEventLogEntry entry : entries) {
+                long newDate = DateFormatter.stripTime(entry.getDateTime());
+                if (currentDate != Long.MIN_VALUE && currentDate != newDate) {
+                    days.add(new EventsForDay(currentDate, daysEvents));
+                    daysEvents = new ArrayList<>();
+                }
+                daysEvents.add(entry);
+                currentDate = newDate;
+            }
+            if (!daysEvents.isEmpty()) {
+                days.add(new EventsForDay(currentDate, daysEvents));
+            }
+            return days;
+        }
     }
 
     /**
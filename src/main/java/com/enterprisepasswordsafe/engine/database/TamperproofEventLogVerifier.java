@@ -0,0 +1,624 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Mac;
+
+import com.enterprisepasswordsafe.engine.logging.EventLogChainKey;
+import com.enterprisepasswordsafe.engine.logging.LogEventHasher;
+import com.enterprisepasswordsafe.engine.users.UserClassifier;
+import com.enterprisepasswordsafe.engine.utils.CryptoPrimitives;
+import com.enterprisepasswordsafe.engine.utils.DateFormatter;
+import com.enterprisepasswordsafe.proguard.JavaBean;
+
+/**
+ * Verifies the tamperstamps of every event in a date range, including events which
+ * have been moved to the event log archive.
+ *
+ * Each day is verified as a separate task on a shared pool of worker threads, with
+ * only a few days queued ahead of the one being reported, and the decrypted key for
+ * each user is only fetched once per run. Results are passed back a day at a time, in
+ * date order, as soon as each day has been checked.
+ *
+ * When a day has been verified without finding any invalid entries a checkpoint is
+ * stored recording how far through the day the log was verified, how many entries
+ * were covered, and an HMAC of those entries, keyed with the server audit key and
+ * sealed with the admin group key. Later runs only check the tamperstamps of entries
+ * after the checkpoint, and confirm the entries covered by it are unchanged by
+ * recomputing the HMAC. If the HMAC or the entry count no longer match the whole day
+ * is verified again.
+ */
+
+public final class TamperproofEventLogVerifier {
+
+    /**
+     * The number of threads verifying days.
+     */
+
+    private static final int THREAD_POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The number of rows fetched from the database at a time.
+     */
+
+    private static final int FETCH_SIZE = 500;
+
+    /**
+     * The maximum time to wait for queued events to be written before verifying.
+     */
+
+    private static final long FLUSH_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * The number of days which can be waiting to be verified ahead of the day
+     * currently being reported.
+     */
+
+    private static final int MAX_QUEUED_DAYS = THREAD_POOL_SIZE * 2;
+
+    /**
+     * The algorithm used to digest each entry covered by a checkpoint.
+     */
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * The version stored at the start of a checkpoint digest. Checkpoints stored
+     * in an earlier format are ignored and the day is verified again.
+     */
+
+    private static final byte CHECKPOINT_VERSION = 1;
+
+    /**
+     * The label mixed into checkpoint HMACs so they can't be confused with the
+     * other uses of the server audit key.
+     */
+
+    private static final byte[] CHECKPOINT_LABEL = "eps-verifier-checkpoint".getBytes(StandardCharsets.UTF_8);
+
+    private static final String GET_ENTRIES_SQL =
+            "SELECT dt_l, user_id, item_id, event, stamp_b FROM event_log WHERE dt_l >= ? AND dt_l <= ?";
+
+    private static final String GET_CHECKPOINT_SQL =
+            "SELECT verified_to_l, entry_count, unverifiable_count, seal_b FROM event_log_checkpoints WHERE day_l = ?";
+
+    private static final String DELETE_CHECKPOINT_SQL =
+            "DELETE FROM event_log_checkpoints WHERE day_l = ?";
+
+    private static final String INSERT_CHECKPOINT_SQL =
+            "INSERT INTO event_log_checkpoints(day_l, verified_to_l, entry_count, unverifiable_count, seal_b) "
+            + "VALUES (?, ?, ?, ?, ?)";
+
+    /**
+     * Receives the results for each day as they become available.
+     */
+
+    public interface DayListener {
+        void dayVerified(DayResult result) throws Exception;
+    }
+
+    private TamperproofEventLogVerifier() {
+        super();
+    }
+
+    /**
+     * Verifies all of the events between two dates.
+     *
+     * @param validatingUser The administrator performing the verification.
+     * @param startDate The start of the range.
+     * @param endDate The end of the range.
+     * @param listener The listener to pass each day's results to, or null.
+     *
+     * @return The results for every day in the range, in date order.
+     */
+
+    public List<DayResult> verify(final User validatingUser, final long startDate, final long endDate,
+                                  final DayListener listener)
+            throws Exception {
+        TamperproofEventLogWriter.getInstance().flush(FLUSH_TIMEOUT_MILLIS);
+
+        final Group adminGroup = GroupDAO.getInstance().getAdminGroup(validatingUser);
+        final UserKeyCache userKeys = new UserKeyCache(adminGroup);
+
+        List<long[]> ranges = new ArrayList<>();
+        Calendar day = Calendar.getInstance();
+        day.setTimeInMillis(DateFormatter.stripTime(startDate));
+        while (day.getTimeInMillis() <= endDate) {
+            final long dayStart = day.getTimeInMillis();
+            day.add(Calendar.DAY_OF_MONTH, 1);
+            final long dayEnd = day.getTimeInMillis() - 1;
+            ranges.add(new long[] {dayStart, dayEnd});
+        }
+
+        List<DayResult> results = new ArrayList<>(ranges.size());
+        Deque<Future<DayResult>> queued = new ArrayDeque<>(MAX_QUEUED_DAYS);
+        int nextDay = 0;
+        try {
+            while (nextDay < ranges.size() || !queued.isEmpty()) {
+                while (nextDay < ranges.size() && queued.size() < MAX_QUEUED_DAYS) {
+                    long[] range = ranges.get(nextDay++);
+                    queued.add(submitDay(range[0], range[1], startDate, endDate, adminGroup, userKeys));
+                }
+                DayResult result = queued.removeFirst().get();
+                results.add(result);
+                if (listener != null) {
+                    listener.dayVerified(result);
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        } finally {
+            for (Future<DayResult> future : queued) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    private Future<DayResult> submitDay(final long dayStart, final long dayEnd, final long startDate,
+                                        final long endDate, final Group adminGroup, final UserKeyCache userKeys) {
+        final long from = Math.max(dayStart, startDate);
+        final long to = Math.min(dayEnd, endDate);
+        final boolean wholeDay = from == dayStart && to == dayEnd;
+        return PoolHolder.POOL.submit(() -> {
+            try {
+                return verifyDay(dayStart, from, to, wholeDay, adminGroup, userKeys);
+            } finally {
+                BOMFactory.closeCurrent();
+            }
+        });
+    }
+
+    private DayResult verifyDay(final long dayStart, final long from, final long to, final boolean wholeDay,
+                                final Group adminGroup, final UserKeyCache userKeys)
+            throws SQLException, GeneralSecurityException, UnsupportedEncodingException {
+        Checkpoint checkpoint = wholeDay ? getCheckpoint(dayStart, adminGroup) : null;
+
+        DayResult result = new DayResult(dayStart);
+        DayScan scan = new DayScan(checkpoint, userKeys, result);
+
+        EventLogArchive.Reader archive = EventLogArchive.getInstance().openReader(from, to, null, null);
+        EventLogArchive.Entry archived;
+        while ((archived = archive.next()) != null) {
+            scan.add(archived.toEventLog());
+        }
+
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(GET_ENTRIES_SQL)) {
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setLong(1, from);
+            ps.setLong(2, to);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    scan.add(new TamperproofEventLog(rs, 1));
+                }
+            }
+        }
+
+        if (checkpoint != null) {
+            if (scan.checkpointedCount == checkpoint.entryCount
+                    && MessageDigest.isEqual(scan.checkpointedDigest(dayStart), checkpoint.digest)) {
+                result.checkpointedCount = scan.checkpointedCount;
+                result.unverifiableCount += checkpoint.unverifiableCount;
+            } else {
+                result.checkpointMismatch = true;
+                for (TamperproofEventLog entry : scan.checkpointedEntries) {
+                    verifyEntry(entry, userKeys, result);
+                }
+            }
+        }
+
+        if (wholeDay && result.invalidCount == 0 && result.getEntryCount() > 0
+                && (checkpoint == null || result.getEntryCount() != scan.checkpointedCount || result.checkpointMismatch)) {
+            storeCheckpoint(dayStart, scan.lastEntry, result.getEntryCount(), result.unverifiableCount,
+                    scan.dayDigest(dayStart), adminGroup);
+        }
+
+        return result;
+    }
+
+    /**
+     * The state built up while reading the entries for a day, which may come from both
+     * the event log archive and the event log.
+     *
+     * The entries can arrive in any order, so a digest of each is kept and the
+     * checkpoint HMAC is calculated over them in (dt_l, entry digest) order once
+     * the whole day has been read.
+     */
+
+    private final class DayScan {
+
+        private final Checkpoint checkpoint;
+
+        private final UserKeyCache userKeys;
+
+        private final DayResult result;
+
+        private final MessageDigest digester;
+
+        private final List<EntryDigest> checkpointedDigests = new ArrayList<>();
+
+        private final List<EntryDigest> dayDigests = new ArrayList<>();
+
+        private int checkpointedCount = 0;
+
+        private long lastEntry = Long.MIN_VALUE;
+
+        private final List<TamperproofEventLog> checkpointedEntries = new ArrayList<>();
+
+        private DayScan(final Checkpoint newCheckpoint, final UserKeyCache newUserKeys, final DayResult newResult)
+                throws GeneralSecurityException {
+            checkpoint = newCheckpoint;
+            userKeys = newUserKeys;
+            result = newResult;
+            digester = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }
+
+        private void add(final TamperproofEventLog entry)
+                throws SQLException, GeneralSecurityException, UnsupportedEncodingException {
+            EntryDigest entryDigest = new EntryDigest(entry.getDateTime(), digest(digester, entry));
+            dayDigests.add(entryDigest);
+            lastEntry = Math.max(lastEntry, entry.getDateTime());
+
+            if (checkpoint != null && entry.getDateTime() <= checkpoint.verifiedTo) {
+                checkpointedDigests.add(entryDigest);
+                checkpointedCount++;
+                checkpointedEntries.add(entry);
+            } else {
+                verifyEntry(entry, userKeys, result);
+            }
+        }
+
+        private byte[] checkpointedDigest(final long day)
+                throws GeneralSecurityException, SQLException {
+            return seal(day, checkpointedDigests);
+        }
+
+        private byte[] dayDigest(final long day)
+                throws GeneralSecurityException, SQLException {
+            return seal(day, dayDigests);
+        }
+    }
+
+    /**
+     * Calculate the checkpoint HMAC for a set of entries.
+     */
+
+    private byte[] seal(final long day, final List<EntryDigest> entries)
+            throws GeneralSecurityException, SQLException {
+        Collections.sort(entries);
+        Mac mac = CryptoPrimitives.getMac(EventLogChainKey.ALGORITHM);
+        mac.init(EventLogChainKey.get());
+        mac.update(CHECKPOINT_LABEL);
+        mac.update(ByteBuffer.allocate(Long.BYTES).putLong(day).array());
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        for (EntryDigest entry : entries) {
+            buffer.clear();
+            mac.update(buffer.putLong(entry.dateTime).array());
+            mac.update(entry.digest);
+        }
+        byte[] hmac = mac.doFinal();
+        byte[] versioned = new byte[hmac.length + 1];
+        versioned[0] = CHECKPOINT_VERSION;
+        System.arraycopy(hmac, 0, versioned, 1, hmac.length);
+        return versioned;
+    }
+
+    private void verifyEntry(final TamperproofEventLog entry, final UserKeyCache userKeys, final DayResult result)
+            throws SQLException, GeneralSecurityException, UnsupportedEncodingException {
+        byte[] tamperstamp = entry.getTamperStamp();
+        if (tamperstamp == null) {
+            result.unverifiableCount++;
+            return;
+        }
+
+        User eventUser = null;
+        if (entry.getUserId() != null) {
+            eventUser = userKeys.get(entry.getUserId());
+            if (eventUser == null) {
+                result.unverifiableCount++;
+                return;
+            }
+        }
+
+        byte[] calculated = new LogEventHasher().createTamperstamp(eventUser, entry.getDateTime(),
+                entry.getEvent(), entry.getItemId(), entry.getUserId());
+        if (Arrays.equals(tamperstamp, calculated)) {
+            result.validCount++;
+        } else {
+            result.invalidCount++;
+            result.invalidEntries.add(entry);
+        }
+    }
+
+    private byte[] digest(final MessageDigest digester, final TamperproofEventLog entry) {
+        digester.reset();
+        digester.update(Long.toString(entry.getDateTime()).getBytes(StandardCharsets.UTF_8));
+        update(digester, entry.getUserId());
+        update(digester, entry.getItemId());
+        update(digester, entry.getEvent());
+        if (entry.getTamperStamp() != null) {
+            digester.update(entry.getTamperStamp());
+        }
+        return digester.digest();
+    }
+
+    private void update(final MessageDigest digester, final String value) {
+        digester.update((byte) 0);
+        if (value != null) {
+            digester.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private Checkpoint getCheckpoint(final long day, final Group adminGroup)
+            throws SQLException {
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(GET_CHECKPOINT_SQL)) {
+            ps.setLong(1, day);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                long verifiedTo = rs.getLong(1);
+                int entryCount = rs.getInt(2);
+                int unverifiableCount = rs.getInt(3);
+                try {
+                    byte[] digest = adminGroup.decrypt(rs.getBytes(4));
+                    if (digest == null || digest.length == 0 || digest[0] != CHECKPOINT_VERSION) {
+                        return null;
+                    }
+                    return new Checkpoint(verifiedTo, entryCount, unverifiableCount, digest);
+                } catch (GeneralSecurityException e) {
+                    // A seal which can't be opened can't be trusted, so verify the whole day.
+                    return null;
+                }
+            }
+        }
+    }
+
+    private void storeCheckpoint(final long day, final long verifiedTo, final int entryCount,
+                                 final int unverifiableCount, final byte[] digest, final Group adminGroup)
+            throws SQLException, GeneralSecurityException {
+        byte[] seal = adminGroup.encrypt(digest);
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(DELETE_CHECKPOINT_SQL)) {
+            ps.setLong(1, day);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(INSERT_CHECKPOINT_SQL)) {
+            int idx = 1;
+            ps.setLong(idx++, day);
+            ps.setLong(idx++, verifiedTo);
+            ps.setInt(idx++, entryCount);
+            ps.setInt(idx++, unverifiableCount);
+            ps.setBytes(idx, seal);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * The verification results for a single day.
+     */
+
+    public static final class DayResult
+        implements JavaBean {
+
+        private final long day;
+
+        private int validCount = 0;
+
+        private int invalidCount = 0;
+
+        private int unverifiableCount = 0;
+
+        private int checkpointedCount = 0;
+
+        private boolean checkpointMismatch = false;
+
+        private final List<TamperproofEventLog> invalidEntries = new ArrayList<>();
+
+        private DayResult(final long newDay) {
+            day = newDay;
+        }
+
+        public long getDay() {
+            return day;
+        }
+
+        public String getHumanReadableDate() {
+            return DateFormatter.convertToString(day);
+        }
+
+        public int getEntryCount() {
+            return validCount + invalidCount + unverifiableCount + checkpointedCount;
+        }
+
+        public int getValidCount() {
+            return validCount;
+        }
+
+        public int getInvalidCount() {
+            return invalidCount;
+        }
+
+        /**
+         * Get the number of entries which can't be verified, either because they
+         * have no tamperstamp or because the user's key isn't available.
+         */
+
+        public int getUnverifiableCount() {
+            return unverifiableCount;
+        }
+
+        /**
+         * Get the number of entries which were verified by an earlier run.
+         */
+
+        public int getCheckpointedCount() {
+            return checkpointedCount;
+        }
+
+        /**
+         * Whether the entries covered by the day's checkpoint had changed.
+         */
+
+        public boolean isCheckpointMismatch() {
+            return checkpointMismatch;
+        }
+
+        public List<TamperproofEventLog> getInvalidEntries() {
+            return Collections.unmodifiableList(invalidEntries);
+        }
+    }
+
+    /**
+     * The details of a day's checkpoint.
+     */
+
+    private static final class Checkpoint {
+
+        private final long verifiedTo;
+
+        private final int entryCount;
+
+        private final int unverifiableCount;
+
+        private final byte[] digest;
+
+        private Checkpoint(final long newVerifiedTo, final int newEntryCount, final int newUnverifiableCount,
+                           final byte[] newDigest) {
+            verifiedTo = newVerifiedTo;
+            entryCount = newEntryCount;
+            unverifiableCount = newUnverifiableCount;
+            digest = newDigest;
+        }
+    }
+
+    /**
+     * The time and digest of a single entry, ordered by time and then digest so
+     * entries are always combined in the same order.
+     */
+
+    private static final class EntryDigest
+        implements Comparable<EntryDigest> {
+
+        private final long dateTime;
+
+        private final byte[] digest;
+
+        private EntryDigest(final long newDateTime, final byte[] newDigest) {
+            dateTime = newDateTime;
+            digest = newDigest;
+        }
+
+        @Override
+        public int compareTo(final EntryDigest other) {
+            int result = Long.compare(dateTime, other.dateTime);
+            for (int i = 0; result == 0 && i < digest.length; i++) {
+                result = Integer.compare(digest[i] & 0xff, other.digest[i] & 0xff);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The users whose keys have been decrypted during a run. Users who can't be found,
+     * or whose keys can't be checked, are held as empty values so they're only looked
+     * up once.
+     */
+
+    private static final class UserKeyCache {
+
+        private final Group adminGroup;
+
+        private final Map<String, Optional<User>> users = new ConcurrentHashMap<>();
+
+        private final UserClassifier userClassifier = new UserClassifier();
+
+        private UserKeyCache(final Group newAdminGroup) {
+            adminGroup = newAdminGroup;
+        }
+
+        User get(final String userId)
+                throws SQLException, GeneralSecurityException, UnsupportedEncodingException {
+            Optional<User> user = users.get(userId);
+            if (user == null) {
+                User decryptedUser = UserDAO.getInstance().getByIdDecrypted(userId, adminGroup);
+                if (decryptedUser != null && userClassifier.isMasterAdmin(decryptedUser)) {
+                    decryptedUser = null;
+                }
+                user = Optional.ofNullable(decryptedUser);
+                users.putIfAbsent(userId, user);
+            }
+            return user.orElse(null);
+        }
+    }
+
+    private static final class PoolHolder {
+        static final ExecutorService POOL;
+
+        static {
+            final AtomicInteger threadNumber = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(THREAD_POOL_SIZE, THREAD_POOL_SIZE,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "EPS-EventLogVerifier-"+threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            POOL = pool;
+        }
+    }
+
+    //------------------------
+
+    private static final class InstanceHolder {
+        static final TamperproofEventLogVerifier INSTANCE = new TamperproofEventLogVerifier();
+    }
+
+    public static TamperproofEventLogVerifier getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+}
@@ -0,0 +1,473 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import java.security.GeneralSecurityException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.enterprisepasswordsafe.engine.dbpool.DatabasePoolFactory;
+import com.enterprisepasswordsafe.engine.utils.LatencyHistogram;
+
+/**
+ * Writes event log entries to the database from a background thread so requests
+ * do not wait for the audit trail to be stored.
+ *
+ * Entries are held in a bounded queue and written in JDBC batches. A batch stays with
+ * the writer until it has been stored; failed writes are retried, and once a batch has
+ * failed repeatedly the writer refuses new entries, so the actions being audited are
+ * refused too, until the batch is stored. New entries are also refused if the queue
+ * stays full, so an action is never allowed to go ahead without its audit entry.
+ *
+ * When the event log hash chain is enabled each write holds the chain from linking
+ * its entries until they are committed.
+ */
+
+public final class TamperproofEventLogWriter {
+
+    /**
+     * The maximum number of entries waiting to be written.
+     */
+
+    private static final int QUEUE_CAPACITY = 10000;
+
+    /**
+     * The maximum number of entries written in a single batch.
+     */
+
+    private static final int BATCH_SIZE = 250;
+
+    /**
+     * The time a caller will wait for space in a full queue before the entry is refused.
+     */
+
+    private static final long ENQUEUE_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * The number of times a batch is tried before new entries are refused.
+     */
+
+    private static final int MAX_WRITE_ATTEMPTS = 5;
+
+    /**
+     * The delay before the first retry of a failed batch. It doubles with each attempt.
+     */
+
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 500;
+
+    /**
+     * The longest delay between retries of a failed batch.
+     */
+
+    private static final long MAX_RETRY_DELAY_MILLIS = 30000;
+
+    /**
+     * The maximum time to wait for the queue to drain when shutting down.
+     */
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 30000;
+
+    private final BlockingQueue<TamperproofEventLog> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    /**
+     * The time taken to write each batch.
+     */
+
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+
+    private final AtomicLong submittedCount = new AtomicLong();
+
+    private final AtomicLong writtenCount = new AtomicLong();
+
+    private final AtomicLong batchCount = new AtomicLong();
+
+    private final AtomicLong failedWriteCount = new AtomicLong();
+
+    private final AtomicLong abandonedCount = new AtomicLong();
+
+    private final AtomicLong directWriteCount = new AtomicLong();
+
+    /**
+     * The number of submitted entries which have been dealt with, used to wait for a flush.
+     */
+
+    private long completedCount = 0;
+
+    private final Object progressLock = new Object();
+
+    private Thread writerThread;
+
+    private volatile boolean running = false;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Set while a batch has failed repeatedly and new entries are being refused.
+     */
+
+    private volatile boolean failing = false;
+
+    private TamperproofEventLogWriter() {
+        super();
+    }
+
+    /**
+     * Queues an entry to be written.
+     *
+     * @param entry The entry to write.
+     *
+     * @throws SQLException Thrown if the entry can not be accepted, either because earlier
+     *  entries can not be stored, the queue has stayed full, or the entry had to be written
+     *  directly and that failed.
+     */
+
+    public void submit(final TamperproofEventLog entry)
+            throws SQLException {
+        if (failing) {
+            throw new SQLException("The event log can not currently be written to.");
+        }
+        if (!ensureRunning()) {
+            writeDirectly(entry);
+            return;
+        }
+
+        boolean queued;
+        try {
+            queued = queue.offer(entry, ENQUEUE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writeDirectly(entry);
+            return;
+        }
+        if (!queued) {
+            throw new SQLException("The event log writer is not keeping up, the entry has been refused.");
+        }
+
+        submittedCount.incrementAndGet();
+        // If the writer was shut down while the entry was being queued it may have
+        // already stopped, in which case the entry is written here.
+        if (closed && queue.remove(entry)) {
+            try {
+                writeDirectly(entry);
+            } finally {
+                markCompleted(1);
+            }
+        }
+    }
+
+    /**
+     * Waits until every entry submitted before this call has been dealt with.
+     *
+     * @param timeoutMillis The maximum time to wait.
+     *
+     * @return true if the entries were dealt with, false if the wait timed out.
+     */
+
+    public boolean flush(final long timeoutMillis) {
+        final long target = submittedCount.get();
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (progressLock) {
+            while (completedCount < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    progressLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops the background writer once the queued entries have been written. Any entries
+     * submitted afterwards are written directly.
+     */
+
+    public void shutdown() {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            running = false;
+            thread = writerThread;
+            writerThread = null;
+        }
+
+        if (thread == null) {
+            return;
+        }
+
+        try {
+            thread.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            Logger.getAnonymousLogger().log(Level.SEVERE,
+                    queue.size()+" event log entries were not written before shutdown.");
+        }
+    }
+
+    private synchronized boolean ensureRunning() {
+        if (closed) {
+            return false;
+        }
+        if (writerThread == null) {
+            running = true;
+            writerThread = new Thread(this::processQueue, "EPS-EventLogWriter");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+        return true;
+    }
+
+    private void processQueue() {
+        List<TamperproofEventLog> batch = new ArrayList<>(BATCH_SIZE);
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    TamperproofEventLog first = queue.poll(1, TimeUnit.SECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                }
+                writeWithRetry(batch);
+                markCompleted(batch.size());
+                batch.clear();
+            } catch (InterruptedException e) {
+                // Nothing in the writer interrupts this thread, so the interrupt came from outside,
+                // such as a container stopping its threads. The batch is kept and tried again so
+                // no entries are lost; the loop ends when shutdown() clears running.
+            }
+        }
+    }
+
+    /**
+     * Writes a batch, retrying until it has been stored. The batch is only given up on
+     * when the writer is shutting down and the retries have been exhausted.
+     */
+
+    private void writeWithRetry(final List<TamperproofEventLog> batch)
+            throws InterruptedException {
+        long delay = INITIAL_RETRY_DELAY_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                writeBatch(batch);
+                writeLatency.record(System.nanoTime() - start);
+                writtenCount.addAndGet(batch.size());
+                batchCount.incrementAndGet();
+                if (failing) {
+                    failing = false;
+                    Logger.getAnonymousLogger().log(Level.INFO, "The event log is being written again.");
+                }
+                return;
+            } catch (SQLException | RuntimeException e) {
+                failedWriteCount.incrementAndGet();
+                if (attempt >= MAX_WRITE_ATTEMPTS) {
+                    if (!running) {
+                        abandon(batch, e);
+                        return;
+                    }
+                    if (!failing) {
+                        failing = true;
+                        Logger.getAnonymousLogger().log(Level.SEVERE,
+                                "Unable to write the event log, new entries will be refused until it can be written", e);
+                    }
+                }
+                Logger.getAnonymousLogger().log(Level.WARNING,
+                        "Unable to write event log batch, retrying in "+delay+"ms", e);
+            } finally {
+                BOMFactory.closeCurrent();
+            }
+            Thread.sleep(delay);
+            delay = Math.min(delay * 2, MAX_RETRY_DELAY_MILLIS);
+        }
+    }
+
+    private void writeBatch(final List<TamperproofEventLog> batch)
+            throws SQLException {
+        if (!EventLogChain.isEnabled()) {
+            writeBatch(BOMFactory.getCurrentConntection(), batch, null);
+            return;
+        }
+
+        EventLogChain chain = EventLogChain.getInstance();
+        synchronized (chain) {
+            Connection connection = BOMFactory.getCurrentConntection();
+            List<EventLogChain.Link> links = createLinks(chain, connection, batch);
+            writeBatch(connection, batch, links);
+            chain.advance(links);
+        }
+    }
+
+    private void writeBatch(final Connection connection, final List<TamperproofEventLog> batch,
+                            final List<EventLogChain.Link> links)
+            throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        boolean committed = false;
+        try {
+            try (PreparedStatement ps = connection.prepareStatement(TamperproofEventLogDAO.WRITE_SQL)) {
+                for (int i = 0; i < batch.size(); i++) {
+                    TamperproofEventLogDAO.bindEntry(ps, batch.get(i), links == null ? null : links.get(i));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            connection.commit();
+            committed = true;
+        } finally {
+            if (!committed) {
+                connection.rollback();
+            }
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Writes an entry on the caller's thread. A chained entry is written on its own
+     * connection so it is committed before the chain is released, whatever the
+     * caller's transaction does.
+     */
+
+    private void writeDirectly(final TamperproofEventLog entry)
+            throws SQLException {
+        directWriteCount.incrementAndGet();
+        if (!EventLogChain.isEnabled()) {
+            try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(TamperproofEventLogDAO.WRITE_SQL)) {
+                TamperproofEventLogDAO.bindEntry(ps, entry, null);
+                ps.executeUpdate();
+            }
+            return;
+        }
+
+        EventLogChain chain = EventLogChain.getInstance();
+        List<TamperproofEventLog> entries = Collections.singletonList(entry);
+        synchronized (chain) {
+            try (Connection connection = DatabasePoolFactory.getConnection()) {
+                List<EventLogChain.Link> links = createLinks(chain, connection, entries);
+                writeBatch(connection, entries, links);
+                chain.advance(links);
+            }
+        }
+    }
+
+    private List<EventLogChain.Link> createLinks(final EventLogChain chain, final Connection connection,
+                                                 final List<TamperproofEventLog> entries)
+            throws SQLException {
+        try {
+            return chain.createLinks(connection, entries);
+        } catch (GeneralSecurityException e) {
+            throw new SQLException("Unable to link event log entries into the chain", e);
+        }
+    }
+
+    /**
+     * Records the entries which could not be stored before shutdown in the server log
+     * so the details are not lost entirely.
+     */
+
+    private void abandon(final List<TamperproofEventLog> batch, final Exception cause) {
+        abandonedCount.addAndGet(batch.size());
+        Logger logger = Logger.getAnonymousLogger();
+        logger.log(Level.SEVERE, "Unable to write "+batch.size()+" event log entries", cause);
+        for (TamperproofEventLog entry : batch) {
+            logger.log(Level.SEVERE, "Unwritten event log entry: "+entry.getDateTime()+" user="
+                    +entry.getUserId()+" item="+entry.getItemId()+" event="+entry.getEvent());
+        }
+    }
+
+    private void markCompleted(final int count) {
+        if (count == 0) {
+            return;
+        }
+        synchronized (progressLock) {
+            completedCount += count;
+            progressLock.notifyAll();
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getQueueCapacity() {
+        return QUEUE_CAPACITY;
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getFailedWriteCount() {
+        return failedWriteCount.get();
+    }
+
+    /**
+     * Check if new entries are being refused because earlier ones can not be stored.
+     *
+     * @return true if entries are being refused.
+     */
+
+    public boolean isFailing() {
+        return failing;
+    }
+
+    public long getAbandonedCount() {
+        return abandonedCount.get();
+    }
+
+    public long getDirectWriteCount() {
+        return directWriteCount.get();
+    }
+
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    //------------------------
+
+    private static final class InstanceHolder {
+        static final TamperproofEventLogWriter INSTANCE = new TamperproofEventLogWriter();
+    }
+
+    public static TamperproofEventLogWriter getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+}
@@ -30,9 +30,11 @@ import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
 import com.enterprisepasswordsafe.engine.UserAccessControlDecryptor;
+import com.enterprisepasswordsafe.engine.database.actions.search.PasswordSearchIndex;
 import com.enterprisepasswordsafe.engine.users.UserAccessKeyEncryptionHandler;
 import com.enterprisepasswordsafe.engine.users.UserClassifier;
 import com.enterprisepasswordsafe.engine.users.UserPasswordEncryptionHandler;
+import com.enterprisepasswordsafe.engine.utils.CryptoPrimitives;
 import com.enterprisepasswordsafe.engine.utils.IDGenerator;
 import com.enterprisepasswordsafe.engine.utils.KeyUtils;
 import com.enterprisepasswordsafe.proguard.ExternalInterface;
@@ -182,6 +184,19 @@ public final class User
 
     private boolean disabled;
 
+    /**
+     * The cache of decoded access control keys. Created when first needed so
+     * that only users held in a session build one up.
+     */
+
+    private AccessControlKeyCache accessControlKeyCache;
+
+    /**
+     * The index used to speed up searches performed by this user.
+     */
+
+    private PasswordSearchIndex searchIndex;
+
     private static ThreadLocal<Cipher> sEncryptionCipherThreadLocal = new ThreadLocal<Cipher>();
 
     /**
@@ -209,7 +224,7 @@ public final class User
 
         setLoginPassword(newPassword);
 
-        KeyGenerator kgen = KeyGenerator.getInstance(USER_KEY_ALGORITHM);
+        KeyGenerator kgen = CryptoPrimitives.getKeyGenerator(USER_KEY_ALGORITHM);
         kgen.init(USER_KEY_SIZE);
         accessKey = kgen.generateKey();
     }
@@ -338,7 +353,7 @@ public final class User
 
     private byte[] createHash(final byte[] salt, final String userPassword)
             throws NoSuchAlgorithmException, UnsupportedEncodingException {
-        MessageDigest digester = MessageDigest.getInstance(PASSWORD_HASH_ALGORITHM);
+        MessageDigest digester = CryptoPrimitives.getMessageDigest(PASSWORD_HASH_ALGORITHM);
 
         byte[] passwordBytes = userPassword.getBytes();
         if(salt != null) {
@@ -365,8 +380,7 @@ public final class User
     public void setLoginPassword(final String newPassword)
             throws NoSuchAlgorithmException, UnsupportedEncodingException {
         byte[] salt = new byte[4];
-        SecureRandom sr = new SecureRandom();
-        sr.nextBytes(salt);
+        CryptoPrimitives.getSecureRandom().nextBytes(salt);
 
         byte[] hash = createHash(salt, newPassword);
 
@@ -671,6 +685,33 @@ public final class User
         }
     }
 
+    /**
+     * Gets the cache of decoded access control keys for this user.
+     *
+     * @return The cache.
+     */
+
+    @Override
+    public synchronized AccessControlKeyCache getAccessControlKeyCache() {
+        if (accessControlKeyCache == null) {
+            accessControlKeyCache = new AccessControlKeyCache();
+        }
+        return accessControlKeyCache;
+    }
+
+    /**
+     * Gets the in-memory search index for this user, creating it if needed.
+     *
+     * @return The search index.
+     */
+
+    public synchronized PasswordSearchIndex getSearchIndex() {
+        if (searchIndex == null) {
+            searchIndex = new PasswordSearchIndex(getUserId());
+        }
+        return searchIndex;
+    }
+
     /**
      * Gets the decryptor for this user which uses the admin key.
      *
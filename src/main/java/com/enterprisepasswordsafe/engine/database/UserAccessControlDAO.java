@@ -24,7 +24,10 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.logging.Level;
@@ -74,6 +77,18 @@ public final class UserAccessControlDAO
             + "   AND uac.rkey is not null";
 
 
+    /**
+     * The SQL statement to get the uacs for a user and a set of items. The
+     * placeholders for the item IDs are added when the statement is prepared.
+     */
+
+    private static final String GET_UACS_FOR_ITEMS_SQL =
+            "SELECT " + UAC_FIELDS
+            + "  FROM user_access_control uac "
+            + " WHERE uac.user_id = ? "
+            + "   AND uac.rkey is not null"
+            + "   AND uac.item_id IN (";
+
     /**
      * The SQL statement to get the uac for a given username/item
      * combination.
@@ -220,6 +235,8 @@ public final class UserAccessControlDAO
         } finally {
         	ps.close();
         }
+        AccessControlKeyCache.invalidate(uac.getUserId(), uac.getItemId());
+        HierarchyAccessibilityCache.getInstance().invalidateFolderContents();
 	}
 
     /**
@@ -290,6 +307,47 @@ public final class UserAccessControlDAO
         }
     }
 
+    /**
+     * Gets the user access controls for a user and a set of items.
+     *
+     * @param user The user for whom the UACs are active.
+     * @param itemIds The IDs of the items to get the UACs for.
+     *
+     * @return The user access controls, keyed on item ID. Items the user has no UAC for are not included.
+     *
+     * @throws SQLException Thrown if there is a problem accessing the database.
+     * @throws GeneralSecurityException Thrown if there is a problem decrypting the data.
+     * @throws UnsupportedEncodingException
+     */
+
+    public Map<String, UserAccessControl> getUacs(final User user, final Collection<String> itemIds)
+        throws SQLException, GeneralSecurityException, UnsupportedEncodingException {
+        Map<String, UserAccessControl> results = new HashMap<>();
+        if (user == null || itemIds.isEmpty()) {
+            return results;
+        }
+
+        List<String> ids = new ArrayList<>(itemIds);
+        for (int start = 0; start < ids.size(); start += AccessControlDAO.MAXIMUM_ITEMS_PER_QUERY) {
+            List<String> batch = ids.subList(start, Math.min(ids.size(), start + AccessControlDAO.MAXIMUM_ITEMS_PER_QUERY));
+            String sql = GET_UACS_FOR_ITEMS_SQL + DatabaseConnectionUtils.createParameterList(batch.size()) + ")";
+            try(PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(sql)) {
+                int idx = 1;
+                ps.setString(idx++, user.getUserId());
+                for (String itemId : batch) {
+                    ps.setString(idx++, itemId);
+                }
+                try(ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        UserAccessControl uac = new UserAccessControl(rs, 1, user);
+                        results.put(uac.getItemId(), uac);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
     /**
      * Delete this access control.
      *
@@ -308,6 +366,8 @@ public final class UserAccessControlDAO
         } finally {
         	DatabaseConnectionUtils.close(ps);
         }
+        AccessControlKeyCache.invalidate(uac.getUserId(), uac.getItemId());
+        HierarchyAccessibilityCache.getInstance().invalidateFolderContents();
     }
 
     /**
@@ -327,6 +387,8 @@ public final class UserAccessControlDAO
         } finally {
         	DatabaseConnectionUtils.close(ps);
         }
+        AccessControlKeyCache.invalidateItem(aco.getId());
+        HierarchyAccessibilityCache.getInstance().invalidateFolderContents();
     }
 
     /**
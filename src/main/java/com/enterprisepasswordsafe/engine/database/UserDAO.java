@@ -35,6 +35,7 @@ import com.enterprisepasswordsafe.engine.jaas.WebLoginCallbackHandler;
 import com.enterprisepasswordsafe.engine.users.UserAccessKeyEncryptionHandler;
 import com.enterprisepasswordsafe.engine.users.UserClassifier;
 import com.enterprisepasswordsafe.engine.users.UserPasswordEncryptionHandler;
+import com.enterprisepasswordsafe.engine.utils.CryptoPrimitives;
 import com.enterprisepasswordsafe.engine.utils.KeyUtils;
 import com.enterprisepasswordsafe.proguard.ExternalInterface;
 
@@ -220,6 +221,7 @@ public final class UserDAO extends StoredObjectManipulator<User> implements Exte
                 ps.executeUpdate();
             }
         }
+        HierarchyAccessibilityCache.getInstance().invalidateUser(userId);
     }
 
     /**
@@ -273,7 +275,7 @@ public final class UserDAO extends StoredObjectManipulator<User> implements Exte
 	    	if( userClassifier.isMasterAdmin(theUser) ) {
 	    		Group adminGroup = GroupDAO.getInstance().getAdminGroup(theUser);
 
-	            KeyGenerator kgen = KeyGenerator.getInstance(User.USER_KEY_ALGORITHM);
+	            KeyGenerator kgen = CryptoPrimitives.getKeyGenerator(User.USER_KEY_ALGORITHM);
 	            kgen.init(User.USER_KEY_SIZE);
 	            SecretKey accessKey = kgen.generateKey();
 
@@ -21,7 +21,6 @@ import java.security.GeneralSecurityException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -35,21 +34,6 @@ import com.enterprisepasswordsafe.proguard.ExternalInterface;
 public final class UserIPZoneRestrictionDAO
     implements ExternalInterface {
 
-    /**
-     * SQL to get a restriction based on an ip address and user id.
-     */
-
-    private static final String GET_BY_USER_ID_AND_IP_SQL =
-        "SELECT uipz.ip_zone_id, uipz.user_id, uipz.setting "
-        + "  FROM user_ip_zones uipz, "
-        + "       ip_zones ipz "
-        + " WHERE ipz.ip_version = ? "
-        + "   AND ipz.ip_start <= ? "
-        + "   AND ipz.ip_end   >= ? "
-        + "   AND ipz.ip_zone_id = uipz.ip_zone_id "
-        + "   AND uipz.user_id = ?";
-
-
     /**
      * SQL to get a restriction by it's zone and user id.
      */
@@ -132,36 +116,7 @@ public final class UserIPZoneRestrictionDAO
     public final List<UserIPZoneRestriction> getApplicable( final String id, final String ip )
         throws SQLException, UnknownHostException, GeneralSecurityException {
 
-    	int ipVersion;
-    	String dbString;
-    	if( ip.indexOf('.') == -1 && ip.indexOf(':') != -1 ) {
-    		ipVersion = 6;
-    		dbString = IPZone.convertIP6ToDBString(ip);
-    	} else {
-    		ipVersion = 4;
-    		dbString = IPZone.convertIP4ToDBString(ip);
-    	}
-
-        PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(GET_BY_USER_ID_AND_IP_SQL);
-        try {
-            ps.setInt    (1, ipVersion);
-            ps.setString (2, dbString);
-            ps.setString (3, dbString);
-            ps.setString (4, id);
-            ResultSet rs = ps.executeQuery();
-            try {
-	            List<UserIPZoneRestriction> results = new ArrayList<UserIPZoneRestriction>();
-	            while(rs.next()) {
-	                results.add(new UserIPZoneRestriction(rs));
-	            }
-
-	            return results;
-            } finally {
-            	DatabaseConnectionUtils.close(rs);
-            }
-        } finally {
-            DatabaseConnectionUtils.close(ps);
-        }
+        return IPZoneRestrictionCache.getInstance().getMatcher().getApplicable(id, ip);
     }
 
 
@@ -182,6 +137,7 @@ public final class UserIPZoneRestrictionDAO
         } finally {
             DatabaseConnectionUtils.close(ps);
         }
+        IPZoneRestrictionCache.getInstance().invalidate();
     }
 
 
@@ -202,6 +158,7 @@ public final class UserIPZoneRestrictionDAO
         } finally {
             DatabaseConnectionUtils.close(ps);
         }
+        IPZoneRestrictionCache.getInstance().invalidate();
     }
 
     /**
@@ -220,6 +177,7 @@ public final class UserIPZoneRestrictionDAO
         } finally {
             DatabaseConnectionUtils.close(ps);
         }
+        IPZoneRestrictionCache.getInstance().invalidate();
     }
 
 
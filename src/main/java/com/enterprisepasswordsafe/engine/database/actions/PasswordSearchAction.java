@@ -17,20 +17,25 @@
 package com.enterprisepasswordsafe.engine.database.actions;
 
 import com.enterprisepasswordsafe.engine.database.*;
+import com.enterprisepasswordsafe.engine.database.actions.search.PasswordSearchIndex;
 import com.enterprisepasswordsafe.engine.database.actions.search.SearchTest;
 import com.enterprisepasswordsafe.engine.database.derived.HierarchyNodeSummary;
 import com.enterprisepasswordsafe.engine.users.UserClassifier;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * PasswordAction to handle password search requests.
+ * PasswordAction to handle password search requests. Passwords may be processed
+ * from several threads at once.
  */
 public class PasswordSearchAction implements NodeObjectAction {
 
@@ -50,10 +55,22 @@ public class PasswordSearchAction implements NodeObjectAction {
      * The number of matches for the search
      */
 
-    private int resultCount;
+    private final AtomicInteger resultCount;
 
     private boolean userIsAdministrator;
 
+    /**
+     * The users search index, or null if the index is not in use.
+     */
+
+    private final PasswordSearchIndex searchIndex;
+
+    /**
+     * The passwords the index says could match, or null if the index can't help.
+     */
+
+    private final PasswordSearchIndex.Query indexQuery;
+
     /**
      * Constructor. Stores the user performing the search and the search chain
      * to be matched.
@@ -67,9 +84,14 @@ public class PasswordSearchAction implements NodeObjectAction {
     public PasswordSearchAction( final User theUser, final List<SearchTest> testList)
             throws SQLException {
         tests = testList;
-        results = new HashMap<>();
-        resultCount = 0;
+        results = new ConcurrentHashMap<>();
+        resultCount = new AtomicInteger();
         userIsAdministrator = new UserClassifier().isAdministrator(theUser);
+        searchIndex = PasswordSearchIndex.isEnabled() ? theUser.getSearchIndex() : null;
+        if (searchIndex != null) {
+            PasswordSearchIndex.buildInBackground(theUser);
+        }
+        indexQuery = searchIndex == null ? null : searchIndex.query(testList);
     }
 
     @Override
@@ -79,6 +101,14 @@ public class PasswordSearchAction implements NodeObjectAction {
         }
 
         Password password = (Password) aco;
+        if (indexQuery != null && indexQuery.excludes(password.getId())) {
+            return;
+        }
+
+        if (searchIndex != null && !searchIndex.contains(password.getId())) {
+            searchIndex.add(password);
+        }
+
         if (!userIsAdministrator && !password.isEnabled()) {
         	return;
         }
@@ -90,10 +120,10 @@ public class PasswordSearchAction implements NodeObjectAction {
         }
 
         String nodeId = node.getNodeId();
-        List<Password> theList = results.computeIfAbsent(nodeId, k -> new ArrayList<>());
+        List<Password> theList = results.computeIfAbsent(nodeId, k -> Collections.synchronizedList(new ArrayList<>()));
         theList.add(password);
 
-        resultCount++;
+        resultCount.incrementAndGet();
     }
 
     public final Map<HierarchyNodeSummary,List<Password>> getResults() {
@@ -113,6 +143,6 @@ public class PasswordSearchAction implements NodeObjectAction {
     }
 
     public final int getResultCount() {
-    	return resultCount;
+    	return resultCount.get();
     }
 }
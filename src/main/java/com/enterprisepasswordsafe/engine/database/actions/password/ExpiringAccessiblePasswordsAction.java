@@ -92,12 +92,22 @@ public class ExpiringAccessiblePasswordsAction
         }
     }
 
+    /**
+     * Gets the date before which passwords are reported as expiring.
+     *
+     * @return The date in milliseconds.
+     */
+
+    public long getExpiryWarning() {
+        return expiryWarning;
+    }
+
     /**
      * Analyse a specific password and handle its expiry state.
      *
      * @param testPassword
-     *            The password to analyse
-     *
+     *            The password to analyse, which must already have been decrypted
+     *            with the users access control.
      *
      * @throws ParseException Thrown if there is a problem parsing the expiry date.
      * @throws GeneralSecurityException Thrown if there is a problm accessing the data.
@@ -111,11 +121,6 @@ public class ExpiringAccessiblePasswordsAction
             return;
         }
 
-        AccessControl ac = AccessControlDAO.getInstance().getReadAccessControl(user,testPassword.getId());
-        if (ac == null) {
-            return;
-        }
-
         // Check that the password is not a personal password
         HierarchyNodeDAO hnDAO = HierarchyNodeDAO.getInstance();
         String ultimateParentId = hnDAO.getByName(testPassword.getId()).getNodeId();
@@ -135,7 +140,6 @@ public class ExpiringAccessiblePasswordsAction
         	return;
         }
 
-        testPassword.decrypt(ac);
         long expiryDate = testPassword.getExpiry();
         if (expiryDate < now) {
             getExpired().add(testPassword);
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database.actions.search;
+
+/**
+ * Interface implemented by search tests which can be narrowed down using a
+ * PasswordSearchIndex. A password can only match the test if the field being
+ * tested contains the indexed text.
+ */
+public interface IndexedSearchTest extends SearchTest {
+    /**
+     * Get the field the test examines.
+     *
+     * @return The field.
+     */
+
+    PasswordSearchIndex.Field getIndexedField();
+
+    /**
+     * Get the text which must appear in the field for the test to match.
+     *
+     * @return The text.
+     */
+
+    String getIndexedText();
+}
@@ -21,7 +21,7 @@ import com.enterprisepasswordsafe.engine.database.Password;
 /**
  * Class to handle the search for a notes field containing another string.
  */
-public final class NotesContainsSearchTest implements SearchTest {
+public final class NotesContainsSearchTest implements IndexedSearchTest {
     /**
      * The string to test for.
      */
@@ -57,4 +57,13 @@ public final class NotesContainsSearchTest implements SearchTest {
     	}
     }
 
+    @Override
+    public PasswordSearchIndex.Field getIndexedField() {
+        return PasswordSearchIndex.Field.NOTES;
+    }
+
+    @Override
+    public String getIndexedText() {
+        return testSearchString;
+    }
 }
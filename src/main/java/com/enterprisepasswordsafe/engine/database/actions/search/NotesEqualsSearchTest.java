@@ -21,7 +21,7 @@ import com.enterprisepasswordsafe.engine.database.Password;
 /**
  * Object representing a search for a specific system.
  */
-public final class NotesEqualsSearchTest implements SearchTest {
+public final class NotesEqualsSearchTest implements IndexedSearchTest {
     /**
      * The string to test for.
      */
@@ -57,4 +57,13 @@ public final class NotesEqualsSearchTest implements SearchTest {
     	}
     }
 
+    @Override
+    public PasswordSearchIndex.Field getIndexedField() {
+        return PasswordSearchIndex.Field.NOTES;
+    }
+
+    @Override
+    public String getIndexedText() {
+        return testSearchString;
+    }
 }
@@ -0,0 +1,460 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database.actions.search;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.enterprisepasswordsafe.engine.database.AccessControl;
+import com.enterprisepasswordsafe.engine.database.AccessControledObject;
+import com.enterprisepasswordsafe.engine.database.BOMFactory;
+import com.enterprisepasswordsafe.engine.database.ConfigurationDAO;
+import com.enterprisepasswordsafe.engine.database.ConfigurationOption;
+import com.enterprisepasswordsafe.engine.database.HierarchyNode;
+import com.enterprisepasswordsafe.engine.database.HierarchyNodeDAO;
+import com.enterprisepasswordsafe.engine.database.Password;
+import com.enterprisepasswordsafe.engine.database.User;
+import com.enterprisepasswordsafe.engine.database.actions.NodeObjectAction;
+import com.enterprisepasswordsafe.engine.utils.CryptoPrimitives;
+
+/**
+ * In-memory index of the searchable fields of the passwords a user has access to.
+ *
+ * The index holds salted hashes of the trigrams in the username, location and
+ * notes of each password, never the text itself, and is never written to disk.
+ * It is only used to rule entries out; any entry it can not rule out is still
+ * checked against the real search tests, and the entries being searched are
+ * always those the database says the user can currently access, so a stale
+ * entry can never expose a password to the wrong user.
+ */
+public final class PasswordSearchIndex {
+
+    /**
+     * The fields which can be indexed.
+     */
+
+    public enum Field { USERNAME, LOCATION, NOTES }
+
+    /**
+     * The length of the character sequences indexed.
+     */
+
+    static final int GRAM_LENGTH = 3;
+
+    /**
+     * Rough per-entry overheads used when estimating the memory used by the index.
+     */
+
+    private static final int BYTES_PER_POSTING = 48,
+                             BYTES_PER_KEY = 64,
+                             BYTES_PER_ENTRY = 96;
+
+    /**
+     * All the live indexes, used to keep them up to date when passwords change.
+     */
+
+    private static final Set<PasswordSearchIndex> ALL_INDEXES =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<PasswordSearchIndex, Boolean>()));
+
+    /**
+     * The maximum number of builds waiting for the build thread. Requests beyond this
+     * are dropped and the user's searches run without the index until a later search
+     * asks for a build again.
+     */
+
+    private static final int MAXIMUM_QUEUED_BUILDS = 16;
+
+    /**
+     * The thread used to build indexes when users first search.
+     */
+
+    private static final ExecutorService BUILD_EXECUTOR = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAXIMUM_QUEUED_BUILDS), runnable -> {
+                Thread thread = new Thread(runnable, "EPS search index builder");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * The salt mixed into the gram hashes.
+     */
+
+    private final int salt;
+
+    /**
+     * The ID of the user the index is for.
+     */
+
+    private final String userId;
+
+    /**
+     * Whether a build has been queued, is running, or has completed.
+     */
+
+    private final AtomicBoolean buildRequested = new AtomicBoolean(false);
+
+    /**
+     * The password IDs containing each gram, keyed on the field and gram hash.
+     */
+
+    private final Map<Long, Set<String>> postings = new HashMap<>();
+
+    /**
+     * The gram keys indexed for each password ID.
+     */
+
+    private final Map<String, long[]> entries = new HashMap<>();
+
+    private int postingCount = 0;
+
+    private long buildTimeMillis = -1;
+
+    public PasswordSearchIndex(final String userId) {
+        salt = CryptoPrimitives.getSecureRandom().nextInt();
+        this.userId = userId;
+        ALL_INDEXES.add(this);
+    }
+
+    /**
+     * Check if the search index has been enabled by the administrator.
+     *
+     * @return true if the index should be used, false if not.
+     */
+
+    public static boolean isEnabled() {
+        try {
+            return "Y".equalsIgnoreCase(ConfigurationDAO.getValue(ConfigurationOption.SEARCH_INDEX_ENABLED));
+        } catch (SQLException e) {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Unable to determine if the search index is enabled", e);
+            return false;
+        }
+    }
+
+    /**
+     * Add, or replace, the entry for a password.
+     *
+     * @param password The password to index.
+     */
+
+    public void add(final Password password) {
+        Set<Long> keys = new HashSet<>();
+        addKeys(keys, Field.USERNAME, password.getUsername());
+        addKeys(keys, Field.LOCATION, password.getLocation());
+        addKeys(keys, Field.NOTES, password.getNotes());
+
+        long[] keyArray = new long[keys.size()];
+        int i = 0;
+        for (Long key : keys) {
+            keyArray[i++] = key;
+        }
+
+        String id = password.getId();
+        synchronized (this) {
+            remove(id);
+            for (long key : keyArray) {
+                postings.computeIfAbsent(key, k -> new HashSet<>()).add(id);
+            }
+            entries.put(id, keyArray);
+            postingCount += keyArray.length;
+        }
+    }
+
+    /**
+     * Remove the entry for a password.
+     *
+     * @param passwordId The ID of the password to remove.
+     */
+
+    public synchronized void remove(final String passwordId) {
+        long[] keys = entries.remove(passwordId);
+        if (keys == null) {
+            return;
+        }
+
+        for (long key : keys) {
+            Set<String> ids = postings.get(key);
+            if (ids != null && ids.remove(passwordId) && ids.isEmpty()) {
+                postings.remove(key);
+            }
+        }
+        postingCount -= keys.length;
+    }
+
+    public synchronized boolean contains(final String passwordId) {
+        return entries.containsKey(passwordId);
+    }
+
+    /**
+     * Work out which indexed passwords could match a set of search tests.
+     *
+     * @param tests The tests being performed.
+     *
+     * @return The query result, or null if the index can not narrow down the search.
+     */
+
+    public synchronized Query query(final List<SearchTest> tests) {
+        Set<String> candidates = null;
+        for (SearchTest test : tests) {
+            if (!(test instanceof IndexedSearchTest)) {
+                continue;
+            }
+            IndexedSearchTest indexedTest = (IndexedSearchTest) test;
+            String text = indexedTest.getIndexedText();
+            if (text == null || text.length() < GRAM_LENGTH) {
+                continue;
+            }
+
+            Set<Long> keys = new HashSet<>();
+            addKeys(keys, indexedTest.getIndexedField(), text);
+            for (Long key : keys) {
+                Set<String> ids = postings.get(key);
+                if (ids == null) {
+                    candidates = new HashSet<>();
+                    break;
+                }
+                if (candidates == null) {
+                    candidates = new HashSet<>(ids);
+                } else {
+                    candidates.retainAll(ids);
+                }
+            }
+        }
+
+        if (candidates == null) {
+            return null;
+        }
+        return new Query(new HashSet<>(entries.keySet()), candidates);
+    }
+
+    /**
+     * Populate the index with every password the user can access.
+     *
+     * @param user The user the index is for.
+     */
+
+    public void build(final User user)
+            throws Exception {
+        long start = System.currentTimeMillis();
+        HierarchyNodeDAO hnDAO = HierarchyNodeDAO.getInstance();
+        hnDAO.processObjectNodes(hnDAO.getById(HierarchyNode.ROOT_NODE_ID), user, new IndexingAction(), true);
+        synchronized (this) {
+            buildTimeMillis = System.currentTimeMillis() - start;
+        }
+        Logger.getAnonymousLogger().log(Level.INFO,
+                "Built search index for " + user.getUserName() + " in " + buildTimeMillis + "ms, "
+                        + getEntryCount() + " entries, approximately "
+                        + getApproximateSizeInBytes() + " bytes.");
+    }
+
+    /**
+     * Build the index for a user on a background thread unless a build for it has
+     * already been queued or completed. Searches are allowed to run while the build
+     * is in progress; entries which have not been indexed yet are never ruled out.
+     *
+     * @param user The user to build the index for.
+     */
+
+    public static void buildInBackground(final User user) {
+        final PasswordSearchIndex index = user.getSearchIndex();
+        if (!index.buildRequested.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            BUILD_EXECUTOR.execute(() -> {
+                try {
+                    index.build(user);
+                } catch (Exception e) {
+                    index.buildRequested.set(false);
+                    Logger.getAnonymousLogger().log(Level.WARNING, "Unable to build search index for " + user.getUserName(), e);
+                } finally {
+                    BOMFactory.closeCurrent();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            index.buildRequested.set(false);
+            Logger.getAnonymousLogger().log(Level.FINE, "Search index build queue is full, skipping " + user.getUserName());
+        }
+    }
+
+    /**
+     * Refresh the entry for a password in all of the indexes which hold it.
+     *
+     * @param password The updated password.
+     */
+
+    public static void passwordUpdated(final Password password) {
+        for (PasswordSearchIndex index : getAllIndexes()) {
+            if (index.contains(password.getId())) {
+                index.add(password);
+            }
+        }
+    }
+
+    /**
+     * Add a newly created password to the indexes of the users who can access it.
+     *
+     * @param password The new password.
+     */
+
+    public static void passwordCreated(final Password password)
+            throws SQLException {
+        if (getAllIndexes().length == 0) {
+            return;
+        }
+        passwordCreated(password, AccessControl.getUserIDsWithAccess(BOMFactory.getCurrentConntection(), password.getId()));
+    }
+
+    static void passwordCreated(final Password password, final Set<String> userIdsWithAccess) {
+        for (PasswordSearchIndex index : getAllIndexes()) {
+            if (userIdsWithAccess.contains(index.userId)) {
+                index.add(password);
+            }
+        }
+    }
+
+    /**
+     * Remove a password from all of the indexes.
+     *
+     * @param passwordId The ID of the deleted password.
+     */
+
+    public static void passwordDeleted(final String passwordId) {
+        for (PasswordSearchIndex index : getAllIndexes()) {
+            index.remove(passwordId);
+        }
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized int getPostingCount() {
+        return postingCount;
+    }
+
+    /**
+     * Gets the time taken for the last full build of the index.
+     *
+     * @return The build time in milliseconds, or -1 if the index has not been built.
+     */
+
+    public synchronized long getBuildTimeMillis() {
+        return buildTimeMillis;
+    }
+
+    /**
+     * Gets an estimate of the memory used by the index.
+     *
+     * @return The approximate size in bytes.
+     */
+
+    public synchronized long getApproximateSizeInBytes() {
+        return (long) postingCount * (BYTES_PER_POSTING + Long.BYTES)
+                + (long) postings.size() * BYTES_PER_KEY
+                + (long) entries.size() * BYTES_PER_ENTRY;
+    }
+
+    private void addKeys(final Set<Long> keys, final Field field, final String value) {
+        if (value == null || value.length() < GRAM_LENGTH) {
+            return;
+        }
+
+        String lowerCaseValue = value.toLowerCase();
+        long fieldBits = ((long) field.ordinal()) << 32;
+        for (int i = 0; i + GRAM_LENGTH <= lowerCaseValue.length(); i++) {
+            keys.add(fieldBits | (hashGram(lowerCaseValue, i) & 0xffffffffL));
+        }
+    }
+
+    private int hashGram(final String value, final int offset) {
+        int hash = salt;
+        for (int i = offset; i < offset + GRAM_LENGTH; i++) {
+            hash = (hash ^ value.charAt(i)) * 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    private static PasswordSearchIndex[] getAllIndexes() {
+        synchronized (ALL_INDEXES) {
+            return ALL_INDEXES.toArray(new PasswordSearchIndex[ALL_INDEXES.size()]);
+        }
+    }
+
+    /**
+     * The result of looking up a set of search tests in the index.
+     */
+
+    public static final class Query {
+
+        private final Set<String> indexedIds;
+
+        private final Set<String> candidates;
+
+        Query(final Set<String> indexedIds, final Set<String> candidates) {
+            this.indexedIds = indexedIds;
+            this.candidates = candidates;
+        }
+
+        /**
+         * Check if a password can be ruled out without examining it.
+         *
+         * @param passwordId The ID of the password.
+         *
+         * @return true if the password can not match the search, false if it needs testing.
+         */
+
+        public boolean excludes(final String passwordId) {
+            return indexedIds.contains(passwordId) && !candidates.contains(passwordId);
+        }
+    }
+
+    /**
+     * Action used to add every object found in the hierarchy to the index.
+     */
+
+    private final class IndexingAction implements NodeObjectAction {
+        @Override
+        public void process(final HierarchyNode node, final AccessControledObject aco) {
+            if (aco instanceof Password) {
+                try {
+                    add((Password) aco);
+                } catch (Password.DeferredDecryptionException e) {
+                    Logger.getAnonymousLogger().log(Level.WARNING, e.getMessage(), e.getCause());
+                }
+            }
+        }
+    }
+}
@@ -21,7 +21,7 @@ import com.enterprisepasswordsafe.engine.database.Password;
 /**
  * Object representing a search for a specific system.
  */
-public final class SystemContainsSearchTest implements SearchTest {
+public final class SystemContainsSearchTest implements IndexedSearchTest {
     /**
      * The system to test for.
      */
@@ -53,4 +53,13 @@ public final class SystemContainsSearchTest implements SearchTest {
         return (location != null && location.toLowerCase().indexOf(testSystem) != -1);
     }
 
+    @Override
+    public PasswordSearchIndex.Field getIndexedField() {
+        return PasswordSearchIndex.Field.LOCATION;
+    }
+
+    @Override
+    public String getIndexedText() {
+        return testSystem;
+    }
 }
@@ -21,7 +21,7 @@ import com.enterprisepasswordsafe.engine.database.Password;
 /**
  * Object representing a search for a specific system.
  */
-public final class SystemEqualsSearchTest implements SearchTest {
+public final class SystemEqualsSearchTest implements IndexedSearchTest {
     /**
      * The system to test for.
      */
@@ -52,4 +52,14 @@ public final class SystemEqualsSearchTest implements SearchTest {
         String location = password.getLocation();
         return (location != null && location.equalsIgnoreCase(testSystem));
     }
+
+    @Override
+    public PasswordSearchIndex.Field getIndexedField() {
+        return PasswordSearchIndex.Field.LOCATION;
+    }
+
+    @Override
+    public String getIndexedText() {
+        return testSystem;
+    }
 }
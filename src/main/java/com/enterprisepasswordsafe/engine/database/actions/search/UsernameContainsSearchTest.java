@@ -21,7 +21,7 @@ import com.enterprisepasswordsafe.engine.database.Password;
 /**
  * Interface implemented by all classes which represent test criteria.
  */
-public final class UsernameContainsSearchTest implements SearchTest {
+public final class UsernameContainsSearchTest implements IndexedSearchTest {
     /**
      * The username to test for.
      */
@@ -57,4 +57,13 @@ public final class UsernameContainsSearchTest implements SearchTest {
     	}
     }
 
+    @Override
+    public PasswordSearchIndex.Field getIndexedField() {
+        return PasswordSearchIndex.Field.USERNAME;
+    }
+
+    @Override
+    public String getIndexedText() {
+        return testUsername;
+    }
 }
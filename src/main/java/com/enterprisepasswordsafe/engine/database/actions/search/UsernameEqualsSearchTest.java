@@ -21,7 +21,7 @@ import com.enterprisepasswordsafe.engine.database.Password;
 /**
  * Interface implemented by all classes which represent test criteria.
  */
-public final class UsernameEqualsSearchTest implements SearchTest {
+public final class UsernameEqualsSearchTest implements IndexedSearchTest {
     /**
      * The username to test for.
      */
@@ -57,4 +57,13 @@ public final class UsernameEqualsSearchTest implements SearchTest {
     	}	        
     }
 
+    @Override
+    public PasswordSearchIndex.Field getIndexedField() {
+        return PasswordSearchIndex.Field.USERNAME;
+    }
+
+    @Override
+    public String getIndexedText() {
+        return testUsername;
+    }
 }
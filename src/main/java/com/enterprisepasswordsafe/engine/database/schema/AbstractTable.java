@@ -21,6 +21,8 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.enterprisepasswordsafe.engine.database.BOMFactory;
 import com.enterprisepasswordsafe.engine.dbabstraction.ColumnSpecification;
@@ -99,6 +101,20 @@ public abstract class AbstractTable {
 		}
 	}
 
+	/**
+	 * Adds an index to an existing table. A failure is logged rather than thrown
+	 * because the most likely cause is the index already existing.
+	 */
+
+	void addIndex(final IndexSpecification index) {
+		try {
+			BOMFactory.getDatabaseAbstractionLayer().addIndex(index);
+		} catch(Exception ex) {
+			Logger.getAnonymousLogger().log(Level.WARNING,
+					"Unable to add "+index.getIndexName()+" to "+getTableName()+", it may already exist.", ex);
+		}
+	}
+
 	/**
 	 * Checks if the table exists by checking for an ID column, if the ID column does not exist
 	 * the table is created.
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database.schema;
+
+import java.sql.SQLException;
+
+import com.enterprisepasswordsafe.engine.dbabstraction.ColumnSpecification;
+import com.enterprisepasswordsafe.engine.dbabstraction.IndexSpecification;
+
+public final class EventLogArchiveTable
+	extends AbstractTable{
+
+	/**
+	 * The name of this table
+	 */
+
+	private static final String TABLE_NAME = "event_log_archive";
+
+	/**
+	 * The column information
+	 */
+
+	private static final ColumnSpecification SEGMENT_COLUMN = new ColumnSpecification("segment_l", ColumnSpecification.TYPE_LONG);
+	private static final ColumnSpecification START_DT_COLUMN = new ColumnSpecification("start_dt_l", ColumnSpecification.TYPE_LONG);
+	private static final ColumnSpecification END_DT_COLUMN = new ColumnSpecification("end_dt_l", ColumnSpecification.TYPE_LONG);
+	private static final ColumnSpecification ENTRY_COUNT_COLUMN = new ColumnSpecification("entry_count", ColumnSpecification.TYPE_INT);
+	private static final ColumnSpecification DATA_COLUMN = new ColumnSpecification("data_b", ColumnSpecification.TYPE_BLOB);
+	private static final ColumnSpecification CHAIN_SEQUENCE_COLUMN = new ColumnSpecification("chain_seq_l", ColumnSpecification.TYPE_LONG);
+	private static final ColumnSpecification CHAIN_COLUMN = new ColumnSpecification("chain_b", ColumnSpecification.TYPE_BLOB);
+	private static final ColumnSpecification SEAL_COLUMN = new ColumnSpecification("seal_b", ColumnSpecification.TYPE_BLOB);
+
+	private static final ColumnSpecification[] COLUMNS = {
+		SEGMENT_COLUMN, START_DT_COLUMN, END_DT_COLUMN, ENTRY_COUNT_COLUMN, DATA_COLUMN,
+		CHAIN_SEQUENCE_COLUMN, CHAIN_COLUMN, SEAL_COLUMN
+	};
+
+	/**
+	 * The index information
+	 */
+
+    private static final IndexSpecification SEGMENT_INDEX = new IndexSpecification("ela_seg", TABLE_NAME, SEGMENT_COLUMN);
+    private static final IndexSpecification END_DT_INDEX = new IndexSpecification("ela_end", TABLE_NAME, END_DT_COLUMN);
+
+	private static final IndexSpecification[] INDEXES = {
+		SEGMENT_INDEX, END_DT_INDEX
+	};
+
+	/**
+	 * Get the name of this table
+	 */
+
+	@Override
+	public String getTableName() {
+		return TABLE_NAME;
+	}
+
+	/**
+	 * Get all of the columns in the table
+	 */
+
+	@Override
+	ColumnSpecification[] getAllColumns() {
+		return COLUMNS;
+	}
+
+	/**
+	 * Get all of the indexes in the table
+	 */
+
+	@Override
+	IndexSpecification[] getAllIndexes() {
+		return INDEXES;
+	}
+
+	/**
+	 * Update the current schema to the latest version
+	 */
+
+	@Override
+	public void updateSchema(final long schemaID)
+		throws SQLException {
+		if(schemaID >= SchemaVersion.CURRENT_SCHEMA)
+			return;
+
+		if(schemaID < SchemaVersion.SCHEMA_202702) {
+			createTableIfNotPresent(SEGMENT_COLUMN);
+		}
+	}
+
+	/**
+	 * Gets an instance of this table schema
+	 */
+
+	protected static EventLogArchiveTable getInstance() {
+		return new EventLogArchiveTable();
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.enterprisepasswordsafe.engine.database.schema;
+
+import java.sql.SQLException;
+
+import com.enterprisepasswordsafe.engine.dbabstraction.ColumnSpecification;
+import com.enterprisepasswordsafe.engine.dbabstraction.IndexSpecification;
+
+public final class EventLogCheckpointsTable
+	extends AbstractTable{
+
+	/**
+	 * The name of this table
+	 */
+
+	private static final String TABLE_NAME = "event_log_checkpoints";
+
+	/**
+	 * The column information
+	 */
+
+	private static final ColumnSpecification DAY_COLUMN = new ColumnSpecification("day_l", ColumnSpecification.TYPE_LONG);
+	private static final ColumnSpecification VERIFIED_TO_COLUMN = new ColumnSpecification("verified_to_l", ColumnSpecification.TYPE_LONG);
+	private static final ColumnSpecification ENTRY_COUNT_COLUMN = new ColumnSpecification("entry_count", ColumnSpecification.TYPE_INT);
+	private static final ColumnSpecification UNVERIFIABLE_COUNT_COLUMN = new ColumnSpecification("unverifiable_count", ColumnSpecification.TYPE_INT);
+	private static final ColumnSpecification SEAL_COLUMN = new ColumnSpecification("seal_b", ColumnSpecification.TYPE_BLOB);
+
+	private static final ColumnSpecification[] COLUMNS = {
+		DAY_COLUMN, VERIFIED_TO_COLUMN, ENTRY_COUNT_COLUMN, UNVERIFIABLE_COUNT_COLUMN, SEAL_COLUMN
+	};
+
+	/**
+	 * The index information
+	 */
+
+    private static final IndexSpecification DAY_INDEX = new IndexSpecification("elc_day", TABLE_NAME, DAY_COLUMN);
+
+	private static final IndexSpecification[] INDEXES = {
+		DAY_INDEX
+	};
+
+	/**
+	 * Get the name of this table
+	 */
+
+	@Override
+	public String getTableName() {
+		return TABLE_NAME;
+	}
+
+	/**
+	 * Get all of the columns in the table
+	 */
+
+	@Override
+	ColumnSpecification[] getAllColumns() {
+		return COLUMNS;
+	}
+
+	/**
+	 * Get all of the indexes in the table
+	 */
+
+	@Override
+	IndexSpecification[] getAllIndexes() {
+		return INDEXES;
+	}
+
+	/**
+	 * Update the current schema to the latest version
+	 */
+
+	@Override
+	public void updateSchema(final long schemaID)
+		throws SQLException {
+		if(schemaID >= SchemaVersion.CURRENT_SCHEMA)
+			return;
+
+		if(schemaID < SchemaVersion.SCHEMA_202610) {
+			createTableIfNotPresent(DAY_COLUMN);
+		}
+	}
+
+	/**
+	 * Gets an instance of this table schema
+	 */
+
+	protected static EventLogCheckpointsTable getInstance() {
+		return new EventLogCheckpointsTable();
+	}
+}
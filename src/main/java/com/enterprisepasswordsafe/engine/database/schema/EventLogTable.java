@@ -40,10 +40,12 @@ public final class EventLogTable
 	private static final ColumnSpecification DT_COLUMN = new ColumnSpecification("dt_l", ColumnSpecification.TYPE_LONG);
 	private static final ColumnSpecification EVENT_COLUMN = new ColumnSpecification("event", ColumnSpecification.TYPE_LONG_STRING);
 	private static final ColumnSpecification STAMP_COLUMN = new ColumnSpecification("stamp_b", ColumnSpecification.TYPE_BLOB);
-
+	private static final ColumnSpecification CHAIN_SEQUENCE_COLUMN = new ColumnSpecification("chain_seq_l", ColumnSpecification.TYPE_LONG);
+	private static final ColumnSpecification CHAIN_COLUMN = new ColumnSpecification("chain_b", ColumnSpecification.TYPE_BLOB);
 
     private static final ColumnSpecification[] COLUMNS = {
-    	USER_ID_COLUMN, ITEM_ID_COLUMN, ITEM_DT_COLUMN, DT_COLUMN, EVENT_COLUMN, STAMP_COLUMN
+    	USER_ID_COLUMN, ITEM_ID_COLUMN, ITEM_DT_COLUMN, DT_COLUMN, EVENT_COLUMN, STAMP_COLUMN,
+    	CHAIN_SEQUENCE_COLUMN, CHAIN_COLUMN
     };
 
     /**
@@ -53,9 +55,10 @@ public final class EventLogTable
     private static final IndexSpecification DT_INDEX = new IndexSpecification("el_dt", TABLE_NAME, DT_COLUMN);
     private static final IndexSpecification UID_INDEX = new IndexSpecification("el_uid", TABLE_NAME, USER_ID_COLUMN);
     private static final IndexSpecification IID_INDEX = new IndexSpecification("el_iid", TABLE_NAME, ITEM_ID_COLUMN);
+    private static final IndexSpecification CHAIN_SEQUENCE_INDEX = new IndexSpecification("el_chain", TABLE_NAME, CHAIN_SEQUENCE_COLUMN);
 
     private static final IndexSpecification[] INDEXES = {
-    	DT_INDEX, UID_INDEX, IID_INDEX
+    	DT_INDEX, UID_INDEX, IID_INDEX, CHAIN_SEQUENCE_INDEX
     };
 
 	/**
@@ -100,6 +103,14 @@ public final class EventLogTable
 			createIfNotPresent(DT_COLUMN);
 			createIfNotPresent(STAMP_COLUMN);
 		}
+
+		// Existing entries are left out of the chain and are still checked using
+		// their tamperstamps alone.
+		if(schemaID < SchemaVersion.SCHEMA_202701) {
+			createIfNotPresent(CHAIN_SEQUENCE_COLUMN);
+			createIfNotPresent(CHAIN_COLUMN);
+			addIndex(CHAIN_SEQUENCE_INDEX);
+		}
 	}
 
 	/**
@@ -54,12 +54,14 @@ public final class PasswordsTable
 	private static final ColumnSpecification LOCATION_ID_COLUMN = new ColumnSpecification("location_id", ColumnSpecification.TYPE_ID);
 	private static final ColumnSpecification TYPE_COLUMN = new ColumnSpecification("ptype", ColumnSpecification.TYPE_INT);
 	private static final ColumnSpecification LAST_CHANGED_COLUMN = new ColumnSpecification("last_changed_l", ColumnSpecification.TYPE_LONG);
+	private static final ColumnSpecification EXPIRY_L_COLUMN = new ColumnSpecification("expiry_l", ColumnSpecification.TYPE_LONG);
+	private static final ColumnSpecification DATA_FORMAT_COLUMN = new ColumnSpecification("data_format", ColumnSpecification.TYPE_INT);
 	private static final ColumnSpecification DATA_COLUMN = new ColumnSpecification("password_data", ColumnSpecification.TYPE_BLOB);
 
 	private static final ColumnSpecification[] COLUMNS = {
 		ID_COLUMN, LOCATION_COLUMN, EXPIRY_COLUMN, ENABLED_COLUMN, TYPE_COLUMN, AUDITED_COLUMN,
 		HISTORY_COLUMN, RESTRICTION_COLUMN, RA_ENABLED_COLUMN, RA_APPROVERS_COLUMN,
-		RA_BLOCKERS_COLUMN, LAST_CHANGED_COLUMN, LOCATION_ID_COLUMN, DATA_COLUMN
+		RA_BLOCKERS_COLUMN, LAST_CHANGED_COLUMN, LOCATION_ID_COLUMN, EXPIRY_L_COLUMN, DATA_FORMAT_COLUMN, DATA_COLUMN
 	};
 
 	/**
@@ -67,9 +69,10 @@ public final class PasswordsTable
 	 */
 
 	private static final IndexSpecification ID_INDEX = new IndexSpecification("pw_pidx", TABLE_NAME, ID_COLUMN);
+	private static final IndexSpecification EXPIRY_INDEX = new IndexSpecification("pw_expidx", TABLE_NAME, EXPIRY_L_COLUMN);
 
 	private static final IndexSpecification[] INDEXES = {
-		ID_INDEX
+		ID_INDEX, EXPIRY_INDEX
 	};
 
 	/**
@@ -152,6 +155,19 @@ public final class PasswordsTable
 				Logger.getAnonymousLogger().log(Level.SEVERE, "Database password types not migrated successfully", ex);
 			}
 		}
+
+		// The expiry dates are held in the encrypted password data, so the new column is
+		// left empty here and filled in as users who can decrypt each password log in.
+		if(schemaID < SchemaVersion.SCHEMA_202611) {
+			createIfNotPresent(EXPIRY_L_COLUMN);
+			addIndex(EXPIRY_INDEX);
+		}
+
+		// Existing rows are left without a format, which marks them as holding the
+		// original java.util.Properties text.
+		if(schemaID < SchemaVersion.SCHEMA_202612) {
+			createIfNotPresent(DATA_FORMAT_COLUMN);
+		}
 	}
 
 	   /**
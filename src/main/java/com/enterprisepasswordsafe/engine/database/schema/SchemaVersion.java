@@ -40,11 +40,41 @@ public class SchemaVersion {
 
     public static final long SCHEMA_201212 = 201212;
 
+    /**
+     * The schema adding event log verification checkpoints
+     */
+
+    public static final long SCHEMA_202610 = 202610;
+
+    /**
+     * The schema adding the unencrypted password expiry dates
+     */
+
+    public static final long SCHEMA_202611 = 202611;
+
+    /**
+     * The schema recording the format of the encrypted password data
+     */
+
+    public static final long SCHEMA_202612 = 202612;
+
+    /**
+     * The schema adding the keyed hash chain to the event log
+     */
+
+    public static final long SCHEMA_202701 = 202701;
+
+    /**
+     * The schema adding the event log archive
+     */
+
+    public static final long SCHEMA_202702 = 202702;
+
     /**
 	 * The current schema
 	 */
 
-	public static final long CURRENT_SCHEMA = SCHEMA_201212;
+	public static final long CURRENT_SCHEMA = SCHEMA_202702;
 
 	/**
 	 * The configuration property which stores the current schema version
@@ -57,6 +87,8 @@ public class SchemaVersion {
 		AuthenticationSourcesTable.getInstance().create();
 		ConfigurationTable.getInstance().create();
 		EventLogTable.getInstance().create();
+		EventLogCheckpointsTable.getInstance().create();
+		EventLogArchiveTable.getInstance().create();
 		GroupAccessControlTable.getInstance().create();
 		GroupAccessRolesTable.getInstance().create();
 		GroupsTable.getInstance().create();
@@ -112,6 +144,8 @@ public class SchemaVersion {
 		AuthenticationSourcesTable.getInstance().updateSchema(currentSchema);
 		ConfigurationTable.getInstance().updateSchema(currentSchema);
 		EventLogTable.getInstance().updateSchema(currentSchema);
+		EventLogCheckpointsTable.getInstance().updateSchema(currentSchema);
+		EventLogArchiveTable.getInstance().updateSchema(currentSchema);
 		GroupsTable.getInstance().updateSchema(currentSchema);
 		GroupAccessControlTable.getInstance().updateSchema(currentSchema);
 		GroupAccessRolesTable.getInstance().updateSchema(currentSchema);
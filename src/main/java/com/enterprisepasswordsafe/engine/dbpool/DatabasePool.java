@@ -21,23 +21,51 @@ import com.enterprisepasswordsafe.engine.configuration.JDBCConfiguration;
 import java.io.UnsupportedEncodingException;
 import java.security.GeneralSecurityException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.sql.DataSource;
+
 import com.enterprisepasswordsafe.engine.database.schema.SchemaVersion;
 import com.enterprisepasswordsafe.engine.dbabstraction.DALFactory;
 import com.enterprisepasswordsafe.engine.dbabstraction.DALInterface;
+import com.enterprisepasswordsafe.engine.utils.LatencyHistogram;
 import com.enterprisepasswordsafe.proguard.ExternalInterface;
 import org.apache.commons.dbcp2.*;
-import org.apache.commons.pool2.ObjectPool;
 import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 
 public final class DatabasePool implements ExternalInterface, AutoCloseable {
 
     private JDBCConfiguration mJdbcConfiguration = null;
 
+    /**
+     * The pool of connections.
+     */
+
+    private final GenericObjectPool<PoolableConnection> connectionPool;
+
+    /**
+     * The DataSource handing out connections from the pool.
+     */
+
+    private final PoolingDataSource<PoolableConnection> dataSource;
+
+    /**
+     * The time taken for callers to obtain a connection.
+     */
+
+    private final LatencyHistogram borrowLatency = new LatencyHistogram();
+
+    /**
+     * The number of requests which gave up waiting for a connection.
+     */
+
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+
     public DatabasePool(final JDBCConfiguration conf) throws ClassNotFoundException, SQLException {
         Class.forName(conf.getDriver());
 
@@ -45,24 +73,37 @@ public final class DatabasePool implements ExternalInterface, AutoCloseable {
                 new DriverManagerConnectionFactory(conf.getURL(), conf.getUsername(), conf.getPassword());
         PoolableConnectionFactory poolableConnectionFactory =
                 new PoolableConnectionFactory(connectionFactory, null);
-        ObjectPool<PoolableConnection> connectionPool =
-                new GenericObjectPool<>(poolableConnectionFactory);
-        poolableConnectionFactory.setPool(connectionPool);
+        poolableConnectionFactory.setValidationQuery(conf.getPoolValidationQuery());
+        poolableConnectionFactory.setValidationQueryTimeout(conf.getPoolValidationTimeoutSeconds());
 
-        Class.forName("org.apache.commons.dbcp2.PoolingDriver");
-        PoolingDriver driver = (PoolingDriver) DriverManager.getDriver("jdbc:apache:commons:dbcp:");
-        driver.registerPool("pwsafe", connectionPool);
+        connectionPool = new GenericObjectPool<>(poolableConnectionFactory, createPoolConfig(conf));
+        poolableConnectionFactory.setPool(connectionPool);
+        dataSource = new PoolingDataSource<>(connectionPool);
 
         mJdbcConfiguration = conf;
     }
 
+    private static GenericObjectPoolConfig createPoolConfig(final JDBCConfiguration conf) {
+        GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
+        poolConfig.setMaxTotal(conf.getPoolMaxTotal());
+        poolConfig.setMaxIdle(conf.getPoolMaxIdle());
+        poolConfig.setMinIdle(conf.getPoolMinIdle());
+        poolConfig.setBlockWhenExhausted(true);
+        poolConfig.setMaxWaitMillis(conf.getPoolMaxWaitMillis());
+        poolConfig.setTestOnBorrow(true);
+        poolConfig.setTestWhileIdle(true);
+        poolConfig.setTimeBetweenEvictionRunsMillis(conf.getPoolEvictionIntervalMillis());
+        poolConfig.setMinEvictableIdleTimeMillis(conf.getPoolMinEvictableIdleMillis());
+        poolConfig.setJmxEnabled(false);
+        return poolConfig;
+    }
+
     @Override
     public void close() {
     	try {
-	        PoolingDriver driver = (PoolingDriver) DriverManager.getDriver("jdbc:apache:commons:dbcp:");
-	        driver.closePool("pwsafe");
-    	} catch(SQLException sqle) {
-    		Logger.getAnonymousLogger().log(Level.WARNING, "Error shutting database pool", sqle);
+	        connectionPool.close();
+    	} catch(Exception e) {
+    		Logger.getAnonymousLogger().log(Level.WARNING, "Error shutting database pool", e);
     	}
     }
 
@@ -85,8 +126,48 @@ public final class DatabasePool implements ExternalInterface, AutoCloseable {
         return mJdbcConfiguration.equals(otherPool.mJdbcConfiguration);
     }
 
+    /**
+     * Get a connection from the pool. If the pool is exhausted this will wait for
+     * the configured maximum time and then fail rather than blocking indefinitely.
+     *
+     * @return A pooled connection which is returned to the pool when closed.
+     */
+
     public Connection getConnection() throws SQLException {
-        return DriverManager.getConnection("jdbc:apache:commons:dbcp:pwsafe");
+        long start = System.nanoTime();
+        try {
+            return dataSource.getConnection();
+        } catch (SQLException e) {
+            if (e.getCause() instanceof NoSuchElementException) {
+                borrowTimeouts.incrementAndGet();
+                Logger.getAnonymousLogger().log(Level.WARNING, "Database pool exhausted : " + getStatistics());
+            }
+            throw e;
+        } finally {
+            borrowLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Get the DataSource backed by this pool.
+     *
+     * @return The DataSource for this pool.
+     */
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Get a snapshot of the current pool counters.
+     *
+     * @return The current pool statistics.
+     */
+
+    public DatabasePoolStatistics getStatistics() {
+        return new DatabasePoolStatistics(connectionPool.getNumActive(), connectionPool.getNumIdle(),
+                connectionPool.getNumWaiters(), connectionPool.getMaxTotal(), borrowTimeouts.get(),
+                borrowLatency);
     }
 
     public boolean isUsingConfiguration(JDBCConfiguration configuration) {
@@ -94,12 +175,7 @@ public final class DatabasePool implements ExternalInterface, AutoCloseable {
     }
 
     public boolean isConfigured() {
-        try {
-            PoolingDriver driver = (PoolingDriver) DriverManager.getDriver("jdbc:apache:commons:dbcp:");
-            return driver.getConnectionPool("pwsafe") != null;
-        } catch(SQLException sqle) {
-            return false;
-        }
+        return !connectionPool.isClosed();
     }
 
     public void initialiseDatabase() throws SQLException,
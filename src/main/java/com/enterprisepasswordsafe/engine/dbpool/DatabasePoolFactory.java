@@ -19,6 +19,7 @@ package com.enterprisepasswordsafe.engine.dbpool;
 import com.enterprisepasswordsafe.engine.configuration.JDBCConfiguration;
 import com.enterprisepasswordsafe.proguard.ExternalInterface;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 
 public final class DatabasePoolFactory implements ExternalInterface {
@@ -36,7 +37,8 @@ public final class DatabasePoolFactory implements ExternalInterface {
 
     public static synchronized void setConfiguration(JDBCConfiguration configuration)
             throws SQLException, ClassNotFoundException {
-        if (mSharedInstance != null && mSharedInstance.isUsingConfiguration(configuration)) {
+        if (mSharedInstance != null && mSharedInstance.isConfigured()
+                && mSharedInstance.isUsingConfiguration(configuration)) {
             return;
         }
 
@@ -45,12 +47,27 @@ public final class DatabasePoolFactory implements ExternalInterface {
 
     public static synchronized DatabasePool getInstance()
             throws SQLException, ClassNotFoundException {
-        if(mSharedInstance == null) {
+        if(mSharedInstance == null || !mSharedInstance.isConfigured()) {
             setConfiguration(JDBCConfiguration.getConfiguration());
         }
         return mSharedInstance;
     }
 
+    /**
+     * Get a connection from the shared pool.
+     *
+     * @return A pooled connection.
+     */
+
+    public static Connection getConnection()
+            throws SQLException {
+        try {
+            return getInstance().getConnection();
+        } catch(ClassNotFoundException e) {
+            throw new SQLException("Database driver unavailable", e);
+        }
+    }
+
     public static boolean isConfigured() {
         return mSharedInstance != null && mSharedInstance.isConfigured();
     }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.enterprisepasswordsafe.engine.dbpool;
+
+import com.enterprisepasswordsafe.engine.utils.LatencyHistogram;
+
+/**
+ * Point in time snapshot of the counters for a database pool.
+ */
+public final class DatabasePoolStatistics {
+
+    private final int active;
+
+    private final int idle;
+
+    private final int waiters;
+
+    private final int maxTotal;
+
+    private final long borrowTimeouts;
+
+    private final LatencyHistogram borrowLatency;
+
+    DatabasePoolStatistics(final int active, final int idle, final int waiters, final int maxTotal,
+                           final long borrowTimeouts, final LatencyHistogram borrowLatency) {
+        this.active = active;
+        this.idle = idle;
+        this.waiters = waiters;
+        this.maxTotal = maxTotal;
+        this.borrowTimeouts = borrowTimeouts;
+        this.borrowLatency = borrowLatency;
+    }
+
+    /**
+     * @return The number of connections currently handed out.
+     */
+
+    public int getActive() {
+        return active;
+    }
+
+    /**
+     * @return The number of connections sitting idle in the pool.
+     */
+
+    public int getIdle() {
+        return idle;
+    }
+
+    /**
+     * @return The number of threads blocked waiting for a connection.
+     */
+
+    public int getWaiters() {
+        return waiters;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    /**
+     * @return The number of borrow attempts which failed because the pool was exhausted.
+     */
+
+    public long getBorrowTimeouts() {
+        return borrowTimeouts;
+    }
+
+    /**
+     * @return The histogram of the time taken to obtain a connection.
+     */
+
+    public LatencyHistogram getBorrowLatency() {
+        return borrowLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "active=" + active +
+                ", idle=" + idle +
+                ", waiters=" + waiters +
+                ", maxTotal=" + maxTotal +
+                ", borrowTimeouts=" + borrowTimeouts +
+                ", borrowLatency=[" + borrowLatency + "]";
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.logging;
+
+import com.enterprisepasswordsafe.engine.database.BOMFactory;
+import com.enterprisepasswordsafe.engine.utils.CryptoPrimitives;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+/**
+ * The server audit key used to link event log entries into a hash chain.
+ *
+ * The key is kept with the database connection settings in the Java preferences
+ * store rather than in the database, so someone who can alter the event_log table
+ * can not recompute the chain to hide their changes. Every server writing to the
+ * same database must share the same key.
+ *
+ * A key is only generated while there are no chained entries. If the key is missing
+ * once the chain has been started it has to be restored; generating a new one would
+ * make every existing entry appear to have been tampered with.
+ */
+
+public final class EventLogChainKey {
+
+    /**
+     * The algorithm used to link entries.
+     */
+
+    public static final String ALGORITHM = "HmacSHA256";
+
+    /**
+     * The name of the preference holding the key.
+     */
+
+    private static final String KEY_PARAMETER = "eps.audit_chain_key";
+
+    /**
+     * The size of generated keys in bits.
+     */
+
+    private static final int KEY_SIZE = 256;
+
+    /**
+     * The SQL to check if any entries, current or archived, have been linked into the chain.
+     */
+
+    private static final String[] HAS_CHAINED_ENTRIES_SQL = {
+        "SELECT chain_seq_l FROM event_log WHERE chain_seq_l IS NOT NULL",
+        "SELECT chain_seq_l FROM event_log_archive WHERE chain_seq_l IS NOT NULL"
+    };
+
+    private static volatile SecretKey key;
+
+    private EventLogChainKey() {
+        super();
+    }
+
+    /**
+     * Get the server audit key, generating and storing one if none exists and the
+     * chain has not been started.
+     *
+     * @return The key.
+     *
+     * @throws GeneralSecurityException Thrown if the key is missing for an existing chain,
+     *  or a new key can not be generated and stored.
+     * @throws SQLException Thrown if the event log can not be checked for chained entries.
+     */
+
+    public static SecretKey get()
+            throws GeneralSecurityException, SQLException {
+        SecretKey current = key;
+        if (current == null) {
+            synchronized (EventLogChainKey.class) {
+                current = key;
+                if (current == null) {
+                    current = loadOrCreate();
+                    key = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static SecretKey loadOrCreate()
+            throws GeneralSecurityException, SQLException {
+        Preferences prefs = Preferences.userRoot();
+        byte[] keyBytes = prefs.getByteArray(KEY_PARAMETER, null);
+        if (keyBytes == null) {
+            keyBytes = Preferences.systemNodeForPackage(EventLogChainKey.class).getByteArray(KEY_PARAMETER, null);
+        }
+        if (keyBytes != null) {
+            return new SecretKeySpec(keyBytes, ALGORITHM);
+        }
+
+        if (hasChainedEntries()) {
+            throw new GeneralSecurityException("The event log chain key ("+KEY_PARAMETER+") is missing but the "
+                    + "event log has already been chained. The key must be restored before the log can be written.");
+        }
+
+        KeyGenerator generator = CryptoPrimitives.getKeyGenerator(ALGORITHM);
+        generator.init(KEY_SIZE, CryptoPrimitives.getSecureRandom());
+        SecretKey newKey = generator.generateKey();
+        prefs.putByteArray(KEY_PARAMETER, newKey.getEncoded());
+        try {
+            prefs.flush();
+        } catch (BackingStoreException e) {
+            // A key which hasn't been stored would be lost on restart, taking the chain with it.
+            prefs.remove(KEY_PARAMETER);
+            throw new GeneralSecurityException("Unable to store the event log chain key", e);
+        }
+        return newKey;
+    }
+
+    private static boolean hasChainedEntries()
+            throws SQLException {
+        for (String sql : HAS_CHAINED_ENTRIES_SQL) {
+            try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(sql)) {
+                ps.setMaxRows(1);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
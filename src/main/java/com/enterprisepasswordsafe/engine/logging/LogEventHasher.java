@@ -2,8 +2,13 @@ package com.enterprisepasswordsafe.engine.logging;
 
 import com.enterprisepasswordsafe.engine.database.TamperproofEventLog;
 import com.enterprisepasswordsafe.engine.database.User;
+import com.enterprisepasswordsafe.engine.utils.CryptoPrimitives;
 
+import javax.crypto.Mac;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.security.Key;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -11,6 +16,12 @@ public class LogEventHasher {
 
     private static final String TAMPERSTAMP_HASH_ALGORITHM = "SHA-256";
 
+    /**
+     * The length of the links in the event log hash chain.
+     */
+
+    private static final int CHAIN_LINK_LENGTH = 32;
+
     public byte[] createTamperstamp(User theUser, TamperproofEventLog event)
             throws GeneralSecurityException {
         String tamperStampData = createTamperstampString(event.getDateTime(),
@@ -35,10 +46,60 @@ public class LogEventHasher {
         return stampHash;
     }
 
+    /**
+     * Create the link for an entry in the event log hash chain, which is the HMAC of the
+     * previous link followed by the entry as it is stored. Each field is length prefixed
+     * so values can not be moved between fields without changing the link, and null and
+     * empty strings are treated the same because some databases do not distinguish them.
+     *
+     * @param chainKey The server audit key.
+     * @param previousLink The link of the preceding entry, or the chain start for the first.
+     * @param sequence The position of the entry in the chain.
+     * @param datetime The time of the event.
+     * @param event The event text.
+     * @param itemId The ID of the item involved, if any.
+     * @param userId The ID of the user stored with the entry.
+     * @param tamperstamp The entry's tamperstamp.
+     *
+     * @return The link for the entry.
+     */
+
+    public byte[] createChainLink(final Key chainKey, final byte[] previousLink, final long sequence,
+                                  final long datetime, final String event, final String itemId,
+                                  final String userId, final byte[] tamperstamp)
+            throws GeneralSecurityException {
+        Mac mac = CryptoPrimitives.getMac(EventLogChainKey.ALGORITHM);
+        mac.init(chainKey);
+        mac.update(previousLink);
+        mac.update(ByteBuffer.allocate(Long.BYTES * 2).putLong(sequence).putLong(datetime).array());
+        updateWithField(mac, event == null ? null : event.getBytes(StandardCharsets.UTF_8));
+        updateWithField(mac, itemId == null ? null : itemId.getBytes(StandardCharsets.UTF_8));
+        updateWithField(mac, userId == null ? null : userId.getBytes(StandardCharsets.UTF_8));
+        updateWithField(mac, tamperstamp);
+        return mac.doFinal();
+    }
+
+    /**
+     * Get the value used as the previous link for the first entry in the chain.
+     *
+     * @return The start of the chain.
+     */
+
+    public static byte[] getChainStart() {
+        return new byte[CHAIN_LINK_LENGTH];
+    }
+
+    private static void updateWithField(final Mac mac, final byte[] value) {
+        int length = value == null ? 0 : value.length;
+        mac.update(ByteBuffer.allocate(Integer.BYTES).putInt(length).array());
+        if (length > 0) {
+            mac.update(value);
+        }
+    }
 
     private byte[] createHash(final String value)
             throws NoSuchAlgorithmException {
-        MessageDigest digester = MessageDigest.getInstance(TAMPERSTAMP_HASH_ALGORITHM);
+        MessageDigest digester = CryptoPrimitives.getMessageDigest(TAMPERSTAMP_HASH_ALGORITHM);
         digester.update(value.getBytes());
         return digester.digest();
     }
@@ -2,16 +2,15 @@ package com.enterprisepasswordsafe.engine.logging;
 
 import com.enterprisepasswordsafe.engine.database.*;
 
-import javax.mail.Message;
-import javax.mail.MessagingException;
-import javax.mail.Session;
-import javax.mail.Transport;
-import javax.mail.internet.AddressException;
-import javax.mail.internet.InternetAddress;
-import javax.mail.internet.MimeMessage;
+import com.enterprisepasswordsafe.engine.mail.MailService;
+import com.enterprisepasswordsafe.engine.mail.OutgoingMail;
+
 import java.sql.SQLException;
-import java.util.Properties;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.StringTokenizer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class LogEventMailer {
 
@@ -26,20 +25,35 @@ public class LogEventMailer {
     }
 
     /**
-     * Sends an Email to to register an event.
+     * Queues an Email to register an event. The Email is created by the mail service so
+     * looking up the recipients does not hold up the thread logging the event. If the
+     * Email can not be sent an entry recording the failure is added to the event log.
+     *
+     * @param logLevel The log level for the event.
+     * @param eventLogEntry The log entry to email a message for.
+     * @param item The item relating to the event log entry.
+     */
+
+    public void sendEmail(final String logLevel, final TamperproofEventLog eventLogEntry,
+                          final AccessControledObject item) {
+        MailService.getInstance().send(() -> createMail(logLevel, eventLogEntry, item), this::recordFailure);
+    }
+
+    /**
+     * Creates the Email to register an event.
      *
      * @param logLevel The log level for the event.
      * @param eventLogEntry The log entry to email a message for.
      * @param item The item relating to the event log entry.
      *
+     * @return The Email, or null if Emails are not sent for the event's log level.
+     *
      * @throws SQLException Thrown if there is a storing retrieving the information.
-     * @throws AddressException Thrown if there is a problem sending the event Email.
-     * @throws MessagingException Thrown if there is a problem sending the event Email.
      */
 
-    public void sendEmail(final String logLevel, final TamperproofEventLog eventLogEntry,
-                           final AccessControledObject item)
-            throws SQLException, MessagingException {
+    OutgoingMail createMail(final String logLevel, final TamperproofEventLog eventLogEntry,
+                            final AccessControledObject item)
+            throws SQLException {
         // Check email has been enabled
         StringBuilder emailProperty = new StringBuilder(ConfigurationOption.SMTP_ENABLED.getPropertyName());
         if( logLevel != null ) {
@@ -49,42 +63,36 @@ public class LogEventMailer {
         String smtpEnabled = ConfigurationDAO.getValue(emailProperty.toString(), null);
         if (smtpEnabled == null) {
             smtpEnabled = ConfigurationDAO.getValue(ConfigurationOption.SMTP_ENABLED);
-            if( smtpEnabled.charAt(0) == 'N') {
-                return;
+            if( smtpEnabled == null || smtpEnabled.charAt(0) == 'N') {
+                return null;
             }
         }
 
-        Transport.send(constructMessage(eventLogEntry, item));
-    }
-
-    private MimeMessage constructMessage(final TamperproofEventLog eventLogEntry,
-                                         final AccessControledObject item)
-            throws SQLException, MessagingException {
-        Properties props = new Properties();
-        props.put("mail.smtp.host", ConfigurationDAO.getValue(ConfigurationOption.SMTP_HOST));
-        Session s = Session.getInstance(props, null);
-
-        MimeMessage message = new MimeMessage(s);
-
-        InternetAddress from = new InternetAddress(ConfigurationDAO.getValue(ConfigurationOption.SMTP_FROM));
-        message.setFrom(from);
-
-        String recipient = determineRecipients(eventLogEntry);
-        StringTokenizer recipientTokenizer = new StringTokenizer(recipient, ";");
+        List<String> recipients = new ArrayList<>();
+        StringTokenizer recipientTokenizer = new StringTokenizer(determineRecipients(eventLogEntry), ";");
         while (recipientTokenizer.hasMoreTokens()) {
-            InternetAddress to = new InternetAddress(recipientTokenizer.nextToken());
-            message.addRecipient(Message.RecipientType.TO, to);
+            recipients.add(recipientTokenizer.nextToken());
         }
 
-        message.setSubject(logEventParser.getParsedMessage(eventLogEntry.getEvent()));
-        message.setText(logEventParser.getFullMessage(eventLogEntry, item));
+        return new OutgoingMail(null, recipients, logEventParser.getParsedMessage(eventLogEntry.getEvent()),
+                logEventParser.getFullMessage(eventLogEntry, item), true);
+    }
 
-        return message;
+    private void recordFailure(final String reason) {
+        try {
+            TamperproofEventLogDAO.getInstance().create(null, null,
+                    "Unable to send audit Email (Reason:"+reason+")", false, null, false);
+        } catch (Exception e) {
+            Logger.getAnonymousLogger().log(Level.SEVERE, "Unable to record audit Email failure", e);
+        }
     }
 
     private String determineRecipients(final TamperproofEventLog eventLogEntry)
             throws SQLException {
         String recipient = ConfigurationDAO.getValue(ConfigurationOption.SMTP_TO_PROPERTY);
+        if (recipient == null) {
+            recipient = "";
+        }
         String includeUser = ConfigurationDAO.getValue(ConfigurationOption.INCLUDE_USER_ON_AUDIT_EMAIL);
         if (includeUser != null && includeUser.equalsIgnoreCase("Y")) {
             User theUser = UserDAO.getInstance().getById(eventLogEntry.getUserId());
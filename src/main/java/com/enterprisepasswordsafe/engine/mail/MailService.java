@@ -0,0 +1,706 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.mail;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import com.enterprisepasswordsafe.engine.database.BOMFactory;
+import com.enterprisepasswordsafe.engine.database.ConfigurationDAO;
+import com.enterprisepasswordsafe.engine.database.ConfigurationOption;
+
+/**
+ * Sends Email from a small pool of background threads.
+ *
+ * Each thread keeps its connection to the SMTP server open between messages, so a
+ * burst of Emails does not need a new connection and handshake for each one. Where
+ * the recipients don't need to see each other the message is sent once to many of
+ * them as blind copies, unless batching has been turned off in the configuration.
+ *
+ * Notifications can be held for a short time so that several for the same recipient
+ * are combined into a single digest. Failed sends are retried with an increasing delay.
+ */
+
+public final class MailService {
+
+    /**
+     * The number of threads sending Email.
+     */
+
+    private static final int WORKER_COUNT = 2;
+
+    /**
+     * The maximum number of Emails waiting to be sent, including those waiting to be retried.
+     */
+
+    private static final int MAX_PENDING = 1000;
+
+    /**
+     * The maximum number of blind copy recipients for a single message.
+     */
+
+    private static final int MAX_RECIPIENTS_PER_MESSAGE = 50;
+
+    /**
+     * The number of times an Email is tried before it is abandoned.
+     */
+
+    private static final int MAX_ATTEMPTS = 4;
+
+    /**
+     * The delay before the first retry. It doubles with each attempt.
+     */
+
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 2000;
+
+    /**
+     * The time after which an unused connection is replaced rather than reused, which
+     * avoids using a connection the server may have already dropped.
+     */
+
+    private static final long CONNECTION_IDLE_MILLIS = 30000;
+
+    /**
+     * The connection and read timeouts for the SMTP server.
+     */
+
+    private static final String CONNECTION_TIMEOUT_MILLIS = "30000",
+                                READ_TIMEOUT_MILLIS = "60000";
+
+    /**
+     * The maximum time to wait for queued Emails to be sent when shutting down.
+     */
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * Opens the connections to the SMTP server.
+     */
+
+    private final ConnectionFactory connectionFactory;
+
+    /**
+     * The delay before the first retry.
+     */
+
+    private final long initialRetryDelay;
+
+    private final ThreadLocal<Connection> connections = new ThreadLocal<>();
+
+    private final Set<Connection> openConnections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The digests waiting to be sent, keyed on subject.
+     */
+
+    private final Map<String, Digest> digests = new LinkedHashMap<>();
+
+    /**
+     * The Emails waiting to be retried, so they can be abandoned when shutting down
+     * without also dropping the Emails queued to be sent straight away.
+     */
+
+    private final Map<Delivery, ScheduledFuture<?>> retries = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final AtomicLong sentMessageCount = new AtomicLong();
+
+    private final AtomicLong sentRecipientCount = new AtomicLong();
+
+    private final AtomicLong retryCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final AtomicLong connectionCount = new AtomicLong();
+
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    private MailService() {
+        this(SmtpConnection::new, INITIAL_RETRY_DELAY_MILLIS);
+    }
+
+    /**
+     * Constructor for a service using its own connections and retry delay, for testing.
+     */
+
+    MailService(final ConnectionFactory newConnectionFactory, final long newInitialRetryDelay) {
+        connectionFactory = newConnectionFactory;
+        initialRetryDelay = newInitialRetryDelay;
+        executor = new ScheduledThreadPoolExecutor(WORKER_COUNT, runnable -> {
+            Thread thread = new Thread(runnable, "EPS-Mailer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Queues an Email. Failures are logged.
+     *
+     * @param mail The Email to send.
+     */
+
+    public void send(final OutgoingMail mail) {
+        send(() -> mail, null);
+    }
+
+    /**
+     * Queues an Email which will be created when it is about to be sent.
+     *
+     * @param source The source of the Email.
+     * @param listener The listener to tell if the Email can't be sent, or null.
+     */
+
+    public void send(final OutgoingMail.Source source, final FailureListener listener) {
+        if (pendingCount.incrementAndGet() > MAX_PENDING) {
+            pendingCount.decrementAndGet();
+            fail(listener, "the mail queue is full", null);
+            return;
+        }
+
+        try {
+            executor.execute(new Delivery(source, listener));
+        } catch (RejectedExecutionException e) {
+            pendingCount.decrementAndGet();
+            fail(listener, "the mail service has been shut down", null);
+        }
+    }
+
+    /**
+     * Queues a notification to be combined with any others with the same subject sent
+     * to the same recipient during the configured digest window. Notifications are only
+     * sent if Email has been enabled.
+     *
+     * @param recipients The addresses to send the notification to.
+     * @param subject The subject of the notification.
+     * @param line The text of the notification.
+     */
+
+    public void sendDigest(final Collection<String> recipients, final String subject, final String line) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        long window = getDigestWindowSeconds();
+        if (window <= 0) {
+            send(new OutgoingMail(null, recipients, subject, line, false));
+            return;
+        }
+
+        synchronized (digests) {
+            Digest digest = digests.get(subject);
+            if (digest == null) {
+                digest = new Digest();
+                try {
+                    digest.timer = executor.schedule(() -> sendDigest(subject), window, TimeUnit.SECONDS);
+                } catch (RejectedExecutionException e) {
+                    fail(null, "the mail service has been shut down", null);
+                    return;
+                }
+                digests.put(subject, digest);
+            }
+            for (String recipient : recipients) {
+                if (recipient != null && !recipient.trim().isEmpty()) {
+                    digest.add(recipient.trim(), line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the digest for a subject. Recipients who have been sent the same
+     * notifications are sent a single message between them.
+     */
+
+    private void sendDigest(final String subject) {
+        Digest digest;
+        synchronized (digests) {
+            digest = digests.remove(subject);
+        }
+        if (digest == null) {
+            return;
+        }
+        digest.timer.cancel(false);
+
+        Map<List<String>, List<String>> recipientsByLines = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : digest.linesByRecipient.entrySet()) {
+            recipientsByLines.computeIfAbsent(entry.getValue(), lines -> new ArrayList<>()).add(entry.getKey());
+        }
+        for (Map.Entry<List<String>, List<String>> entry : recipientsByLines.entrySet()) {
+            List<String> lines = entry.getKey();
+            if (lines.size() == 1) {
+                send(new OutgoingMail(null, entry.getValue(), subject, lines.get(0), false));
+            } else {
+                StringBuilder text = new StringBuilder();
+                text.append("There have been ").append(lines.size()).append(" notifications;\n");
+                for (String line : lines) {
+                    text.append('\n').append(line);
+                }
+                send(new OutgoingMail(null, entry.getValue(), subject + " (" + lines.size() + ")", text.toString(),
+                        false));
+            }
+        }
+    }
+
+    /**
+     * Sends any waiting digests, waits for queued Emails to be sent, and closes the
+     * connections to the SMTP server. Pending retries are abandoned.
+     */
+
+    public void shutdown() {
+        List<String> subjects;
+        synchronized (digests) {
+            subjects = new ArrayList<>(digests.keySet());
+        }
+        for (String subject : subjects) {
+            sendDigest(subject);
+        }
+
+        executor.shutdown();
+        for (Map.Entry<Delivery, ScheduledFuture<?>> retry : retries.entrySet()) {
+            if (retry.getValue().cancel(false)) {
+                pendingCount.decrementAndGet();
+                fail(retry.getKey().listener, "the mail service has been shut down", null);
+            }
+        }
+        retries.clear();
+        try {
+            executor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Connection connection : openConnections) {
+            connection.close();
+        }
+        openConnections.clear();
+    }
+
+    /**
+     * Whether sending Email has been enabled.
+     *
+     * @return true if Email is enabled.
+     */
+
+    public static boolean isEnabled() {
+        try {
+            return "Y".equals(ConfigurationDAO.getValue(ConfigurationOption.SMTP_ENABLED));
+        } catch (SQLException e) {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Unable to check if Email is enabled", e);
+            return false;
+        }
+    }
+
+    private static boolean isBatchingAllowed() {
+        try {
+            return !"N".equals(ConfigurationDAO.getValue(ConfigurationOption.SMTP_BATCH_RECIPIENTS));
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private static long getDigestWindowSeconds() {
+        Long window = ConfigurationDAO.getLongValue(ConfigurationOption.SMTP_DIGEST_WINDOW);
+        return window == null ? 0 : window;
+    }
+
+    private void fail(final FailureListener listener, final String reason, final Exception cause) {
+        failedCount.incrementAndGet();
+        if (listener != null) {
+            listener.failed(reason);
+        } else {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Unable to send Email (Reason:" + reason + ")", cause);
+        }
+    }
+
+    private Connection getConnection(final String host)
+            throws MessagingException {
+        Connection connection = connections.get();
+        if (connection != null && connection.isUsable(host)) {
+            return connection;
+        }
+        closeConnection();
+
+        connection = connectionFactory.open(host);
+        connections.set(connection);
+        openConnections.add(connection);
+        connectionCount.incrementAndGet();
+        return connection;
+    }
+
+    private void closeConnection() {
+        Connection connection = connections.get();
+        if (connection != null) {
+            connections.remove();
+            openConnections.remove(connection);
+            connection.close();
+        }
+    }
+
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public long getSentMessageCount() {
+        return sentMessageCount.get();
+    }
+
+    public long getSentRecipientCount() {
+        return sentRecipientCount.get();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Get the number of connections made to the SMTP server.
+     */
+
+    public long getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public int getOpenConnectionCount() {
+        return openConnections.size();
+    }
+
+    /**
+     * Get the number of notifications which were combined into a digest with an earlier one.
+     */
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Receives the reason an Email could not be sent.
+     */
+
+    public interface FailureListener {
+        void failed(String reason);
+    }
+
+    /**
+     * A connection to an SMTP server which is reused by a worker thread.
+     */
+
+    interface Connection {
+
+        /**
+         * Whether the connection can still be used to send to a host.
+         */
+
+        boolean isUsable(String currentHost);
+
+        void send(String from, List<InternetAddress> recipients, OutgoingMail mail)
+                throws MessagingException;
+
+        void close();
+    }
+
+    /**
+     * Opens connections to an SMTP server.
+     */
+
+    interface ConnectionFactory {
+        Connection open(String host) throws MessagingException;
+    }
+
+    /**
+     * An Email which is to be sent, along with the state needed to retry it.
+     */
+
+    private final class Delivery implements Runnable {
+
+        private final OutgoingMail.Source source;
+
+        private final FailureListener listener;
+
+        private OutgoingMail mail;
+
+        /**
+         * The valid recipient addresses, parsed when the Email is created.
+         */
+
+        private List<InternetAddress> recipients;
+
+        /**
+         * The number of recipients the Email has been sent to, so a retry doesn't
+         * send it to them again.
+         */
+
+        private int delivered = 0;
+
+        private int attempt = 0;
+
+        private long retryDelay;
+
+        private Delivery(final OutgoingMail.Source newSource, final FailureListener newListener) {
+            source = newSource;
+            listener = newListener;
+            retryDelay = initialRetryDelay;
+        }
+
+        @Override
+        public void run() {
+            retries.remove(this);
+            attempt++;
+            try {
+                if (mail == null) {
+                    mail = source.create();
+                    if (mail != null) {
+                        recipients = parseRecipients();
+                    }
+                }
+                if (mail != null) {
+                    deliver();
+                }
+                pendingCount.decrementAndGet();
+            } catch (Exception ex) {
+                closeConnection();
+                if (attempt >= MAX_ATTEMPTS || !scheduleRetry()) {
+                    pendingCount.decrementAndGet();
+                    fail(listener, ex.getMessage(), ex);
+                }
+            } finally {
+                BOMFactory.closeCurrent();
+            }
+        }
+
+        /**
+         * Schedules the next attempt.
+         *
+         * @return true if the attempt was scheduled, false if the service has been shut down.
+         */
+
+        private boolean scheduleRetry() {
+            if (executor.isShutdown()) {
+                return false;
+            }
+            try {
+                retries.put(this, executor.schedule(this, retryDelay, TimeUnit.MILLISECONDS));
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
+            retryCount.incrementAndGet();
+            retryDelay *= 2;
+            return true;
+        }
+
+        /**
+         * Parses the recipient addresses, which may hold several addresses separated
+         * by semicolons. Invalid addresses are reported and skipped so they don't stop
+         * the Email being sent to the other recipients.
+         */
+
+        private List<InternetAddress> parseRecipients() {
+            List<InternetAddress> addresses = new ArrayList<>();
+            for (String recipient : mail.getRecipients()) {
+                StringTokenizer recipientTokenizer = new StringTokenizer(recipient, ";");
+                while (recipientTokenizer.hasMoreTokens()) {
+                    String address = recipientTokenizer.nextToken().trim();
+                    if (address.isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        addresses.add(new InternetAddress(address, true));
+                    } catch (AddressException e) {
+                        fail(listener, "the address " + address + " is not valid", e);
+                    }
+                }
+            }
+            return addresses;
+        }
+
+        private void deliver()
+                throws SQLException, MessagingException {
+            if (delivered >= recipients.size()) {
+                return;
+            }
+
+            String host = ConfigurationDAO.getValue(ConfigurationOption.SMTP_HOST);
+            if (host == null || host.isEmpty()) {
+                throw new MessagingException("An SMTP Server has not been specified");
+            }
+            String from = mail.getFrom();
+            if (from == null) {
+                from = ConfigurationDAO.getValue(ConfigurationOption.SMTP_FROM);
+            }
+
+            int batchSize = 1;
+            if (mail.isRecipientsVisible()) {
+                batchSize = recipients.size();
+            } else if (isBatchingAllowed()) {
+                batchSize = MAX_RECIPIENTS_PER_MESSAGE;
+            }
+
+            Connection connection = getConnection(host);
+            while (delivered < recipients.size()) {
+                List<InternetAddress> batch = recipients.subList(delivered, Math.min(recipients.size(), delivered + batchSize));
+                try {
+                    connection.send(from, batch, mail);
+                } catch (SendFailedException e) {
+                    Address[] sent = e.getValidSentAddresses();
+                    if (sent == null || sent.length == 0) {
+                        throw e;
+                    }
+                    // The server has accepted the message for some recipients, so the
+                    // rejected addresses are reported rather than retried.
+                    failedCount.incrementAndGet();
+                    Logger.getAnonymousLogger().log(Level.WARNING, "Email was rejected for some recipients", e);
+                }
+                delivered += batch.size();
+                sentMessageCount.incrementAndGet();
+                sentRecipientCount.addAndGet(batch.size());
+            }
+        }
+    }
+
+    /**
+     * A connection to an SMTP server using JavaMail.
+     */
+
+    private static final class SmtpConnection
+        implements Connection {
+
+        private final String host;
+
+        private final Session session;
+
+        private final Transport transport;
+
+        private long lastUsed;
+
+        private SmtpConnection(final String newHost)
+                throws MessagingException {
+            host = newHost;
+            Properties props = new Properties();
+            props.put("mail.smtp.host", host);
+            props.put("mail.smtp.sendpartial", "true");
+            props.put("mail.smtp.connectiontimeout", CONNECTION_TIMEOUT_MILLIS);
+            props.put("mail.smtp.timeout", READ_TIMEOUT_MILLIS);
+            session = Session.getInstance(props, null);
+            transport = session.getTransport("smtp");
+            transport.connect();
+            lastUsed = System.currentTimeMillis();
+        }
+
+        @Override
+        public boolean isUsable(final String currentHost) {
+            return host.equals(currentHost)
+                    && System.currentTimeMillis() - lastUsed < CONNECTION_IDLE_MILLIS
+                    && transport.isConnected();
+        }
+
+        @Override
+        public void send(final String from, final List<InternetAddress> recipients, final OutgoingMail mail)
+                throws MessagingException {
+            MimeMessage message = new MimeMessage(session);
+            if (from != null) {
+                message.setFrom(new InternetAddress(from));
+            }
+            Message.RecipientType type = mail.isRecipientsVisible() ? Message.RecipientType.TO : Message.RecipientType.BCC;
+            for (InternetAddress recipient : recipients) {
+                message.addRecipient(type, recipient);
+            }
+            message.setSubject(mail.getSubject());
+            message.setText(mail.getText());
+            message.saveChanges();
+
+            transport.sendMessage(message, message.getAllRecipients());
+            lastUsed = System.currentTimeMillis();
+        }
+
+        @Override
+        public void close() {
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                // The connection is being discarded, so there is nothing more to do.
+            }
+        }
+    }
+
+    /**
+     * The notifications with the same subject waiting to be sent to each recipient.
+     */
+
+    private final class Digest {
+
+        private final Map<String, List<String>> linesByRecipient = new LinkedHashMap<>();
+
+        /**
+         * The task which sends the digest at the end of the window.
+         */
+
+        private ScheduledFuture<?> timer;
+
+        private void add(final String recipient, final String line) {
+            List<String> lines = linesByRecipient.computeIfAbsent(recipient, key -> new ArrayList<>());
+            if (!lines.isEmpty()) {
+                coalescedCount.incrementAndGet();
+            }
+            lines.add(line);
+        }
+    }
+
+    //------------------------
+
+    private static final class InstanceHolder {
+        static final MailService INSTANCE = new MailService();
+    }
+
+    public static MailService getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+}
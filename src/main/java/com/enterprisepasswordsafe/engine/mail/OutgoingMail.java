@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.mail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An Email waiting to be sent by the mail service.
+ */
+
+public final class OutgoingMail {
+
+    /**
+     * The sender, or null to use the configured sender.
+     */
+
+    private final String from;
+
+    private final List<String> recipients;
+
+    private final String subject;
+
+    private final String text;
+
+    /**
+     * Whether the recipients are listed in the message. If not they are sent the
+     * message as blind copies, which allows one message to be sent to many of them.
+     */
+
+    private final boolean recipientsVisible;
+
+    /**
+     * Constructor. Empty recipient addresses are ignored.
+     *
+     * @param newFrom The sender, or null to use the configured sender.
+     * @param newRecipients The addresses to send the message to.
+     * @param newSubject The subject of the message.
+     * @param newText The text of the message.
+     * @param newRecipientsVisible true if the recipients should be listed in the message.
+     */
+
+    public OutgoingMail(final String newFrom, final Collection<String> newRecipients, final String newSubject,
+                        final String newText, final boolean newRecipientsVisible) {
+        from = newFrom;
+        List<String> addresses = new ArrayList<>(newRecipients.size());
+        for (String address : newRecipients) {
+            if (address != null && !address.trim().isEmpty()) {
+                addresses.add(address.trim());
+            }
+        }
+        recipients = Collections.unmodifiableList(addresses);
+        subject = newSubject;
+        text = newText;
+        recipientsVisible = newRecipientsVisible;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public List<String> getRecipients() {
+        return recipients;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isRecipientsVisible() {
+        return recipientsVisible;
+    }
+
+    /**
+     * Creates a message when it is about to be sent, so work such as looking up the
+     * recipients is done by the mail service rather than the thread queueing the message.
+     */
+
+    public interface Source {
+
+        /**
+         * Create the message.
+         *
+         * @return The message, or null if there is nothing to send.
+         */
+
+        OutgoingMail create() throws Exception;
+    }
+}
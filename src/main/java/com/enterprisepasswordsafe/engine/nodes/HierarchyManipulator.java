@@ -46,17 +46,7 @@ public abstract class HierarchyManipulator {
             return false;
         }
 
-        String currentParentId = child.getParentId();
-        while(!currentParentId.equals(HierarchyNode.ROOT_NODE_ID)) {
-            final HierarchyNode thisParent = hierarchyNodeDAO.getById(currentParentId);
-            final String thisParentId = thisParent.getNodeId();
-            if( thisParentId.equals(parentId)) {
-                return true;
-            }
-            currentParentId = thisParentId;
-        }
-
-        return false;
+        return hierarchyNodeDAO.isAncestor(parentId, child.getNodeId());
     }
 
 
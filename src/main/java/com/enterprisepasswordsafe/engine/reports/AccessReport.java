@@ -17,37 +17,55 @@
 package com.enterprisepasswordsafe.engine.reports;
 
 import com.enterprisepasswordsafe.engine.database.*;
-import com.enterprisepasswordsafe.engine.utils.DatabaseConnectionUtils;
 import com.enterprisepasswordsafe.proguard.ExternalInterface;
+import org.apache.commons.csv.CSVPrinter;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.security.GeneralSecurityException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * Sends the access rule report to a PrintWriter
+ * Sends the access rule report to a CSVPrinter
  */
 
 public class AccessReport
     implements ExternalInterface {
 
+    /**
+     * The number of rows fetched from the database at a time.
+     */
+
+    private static final int FETCH_SIZE = 500;
+
+    /**
+     * The number of rows written between each flush of the output.
+     */
+
+    private static final int FLUSH_INTERVAL = 500;
+
     /**
      * The query to get the passwords a user has direct access to.
      */
 
     private static final String GET_ACCESSIBLE_PASSWORDS_FOR_USER_SQL =
-            "SELECT item_id FROM user_access_control WHERE user_id = ?";
+            "SELECT " + UserAccessControlDAO.UAC_FIELDS + ", " + PasswordDAO.PASSWORD_FIELDS
+            + "  FROM user_access_control uac, passwords pass "
+            + " WHERE uac.user_id = ? AND pass.password_id = uac.item_id";
 
     /**
      * The query to get the passwords a user has access to via GACs.
      */
 
     private static final String GET_ACCESSIBLE_PASSWORDS_FOR_USER_VIA_GAC_SQL =
-            "SELECT gac.group_id, gac.item_id FROM membership m, group_access_control gac "
-            + " WHERE m.user_id = ? AND m.group_id = gac.group_id AND gac.rkey is not null ";
+            "SELECT " + GroupAccessControlDAO.GAC_FIELDS + ", " + PasswordDAO.PASSWORD_FIELDS
+            + "  FROM membership m, group_access_control gac, passwords pass "
+            + " WHERE m.user_id = ? AND m.group_id = gac.group_id AND gac.rkey is not null "
+            + "   AND pass.password_id = gac.item_id";
 
     /**
      * Private constructor to prevent instantiation
@@ -60,107 +78,144 @@ public class AccessReport
     /**
      * Generate the user access report.
      *
+     * The access controls are read in the same query as the passwords they protect.
+     * Where a users direct access may be overridden by a group the effective access
+     * controls are fetched in batches, and each group is only decrypted once per user.
+     * The output is flushed periodically so the report is streamed to the client as
+     * it is generated.
+     *
      * @param user The user requesting the report.
-     * @param printWriter The PrintWriter to send the report to.
-     * @param separator The separator to use between elements on a line.
+     * @param printer The CSVPrinter to send the report to.
+     *
+     * @return The number of access rules reported.
      */
-    public void generateReport(final User user, final PrintWriter printWriter, final String separator)
+    public int generateReport(final User user, final CSVPrinter printer)
             throws SQLException, GeneralSecurityException, IOException {
         GroupDAO gDAO = GroupDAO.getInstance();
         Group adminGroup = gDAO.getAdminGroup(user);
+        AccessControlDAO acDAO = AccessControlDAO.getInstance();
+        boolean userPrecedence = acDAO instanceof AccessControlDAOUserPrecedent;
 
-        PreparedStatement uacPS =
-                BOMFactory.getCurrentConntection().prepareStatement(GET_ACCESSIBLE_PASSWORDS_FOR_USER_SQL);
-        try {
+        int rowCount = 0;
+        try(PreparedStatement uacPS =
+                    BOMFactory.getCurrentConntection().prepareStatement(GET_ACCESSIBLE_PASSWORDS_FOR_USER_SQL);
             PreparedStatement gacPS =
-                    BOMFactory.getCurrentConntection().prepareStatement(GET_ACCESSIBLE_PASSWORDS_FOR_USER_VIA_GAC_SQL);
-            try {
-// TODO Look for more efficient algorithm
-                PasswordDAO pDAO = PasswordDAO.getInstance();
-                GroupAccessControlDAO gacDAO = GroupAccessControlDAO.getInstance();
-
-                for(User thisUser : UserDAO.getInstance().getAll()) {
-                    thisUser.decryptAdminAccessKey(adminGroup);
-
-                    uacPS.setString(1, thisUser.getUserId());
-                    ResultSet rsPasswords = uacPS.executeQuery();
-                    try {
-                        while (rsPasswords.next()) {
-                            String passwordId = rsPasswords.getString(1);
-
-                            Password thisPassword = pDAO.getById(thisUser, passwordId);
-                            if( thisPassword == null )
-                                continue;
-                            printWriter.println(constructDetails( thisUser, thisPassword, null,	separator));
+                    BOMFactory.getCurrentConntection().prepareStatement(GET_ACCESSIBLE_PASSWORDS_FOR_USER_VIA_GAC_SQL)) {
+            uacPS.setFetchSize(FETCH_SIZE);
+            gacPS.setFetchSize(FETCH_SIZE);
+
+            for(User thisUser : UserDAO.getInstance().getAll()) {
+                thisUser.decryptAdminAccessKey(adminGroup);
+                Map<String, Group> decryptedGroups = new HashMap<>();
+
+                Map<String, byte[]> unresolved = new LinkedHashMap<>();
+                uacPS.setString(1, thisUser.getUserId());
+                try (ResultSet rsPasswords = uacPS.executeQuery()) {
+                    while (rsPasswords.next()) {
+                        String passwordId = rsPasswords.getString(UserAccessControlDAO.UAC_FIELD_COUNT + 1);
+                        byte[] passwordData = rsPasswords.getBytes(UserAccessControlDAO.UAC_FIELD_COUNT + 2);
+
+                        UserAccessControl uac = new UserAccessControl(rsPasswords, 1, thisUser);
+                        if (userPrecedence && uac.getReadKey() != null) {
+                            printDetails(printer, thisUser, new Password(passwordId, passwordData, uac), null);
+                            rowCount = flushIfNeeded(printer, rowCount);
+                        } else {
+                            // The effective access may come from elsewhere, so look it up with the rest of the batch.
+                            unresolved.put(passwordId, passwordData);
+                            if (unresolved.size() == FETCH_SIZE) {
+                                rowCount = printResolved(printer, acDAO, thisUser, unresolved, decryptedGroups, rowCount);
+                            }
                         }
-                    } finally {
-                        DatabaseConnectionUtils.close(rsPasswords);
                     }
+                }
+                rowCount = printResolved(printer, acDAO, thisUser, unresolved, decryptedGroups, rowCount);
+
+                gacPS.setString(1, thisUser.getUserId());
+                try (ResultSet rsPasswords = gacPS.executeQuery()) {
+                    while (rsPasswords.next()) {
+                        String groupId = rsPasswords.getString(4);
+                        if( groupId.equals(Group.ADMIN_GROUP_ID)
+                                ||  groupId.equals(Group.SUBADMIN_GROUP_ID) ) {
+                            continue;
+                        }
 
-                    gacPS.setString(1, thisUser.getUserId());
-                    rsPasswords = gacPS.executeQuery();
-                    try {
-                        while (rsPasswords.next()) {
-                            int idx = 1;
-                            String groupId = rsPasswords.getString(idx++);
-                            if( groupId.equals(Group.ADMIN_GROUP_ID)
-                                    ||  groupId.equals(Group.SUBADMIN_GROUP_ID) ) {
-                                continue;
-                            }
-
-                            Group group = gDAO.getById(groupId);
-                            if( group == null )
-                                continue;
-
-                            String passwordId = rsPasswords.getString(idx);
-
-                            AccessControl ac = gacDAO.getGac(thisUser, group, passwordId);
-                            if( ac == null )
-                                continue;
+                        Group group = decryptedGroups.get(groupId);
+                        if (group == null && !decryptedGroups.containsKey(groupId)) {
+                            group = gDAO.getByIdDecrypted(groupId, thisUser);
+                            decryptedGroups.put(groupId, group);
+                        }
+                        if( group == null )
+                            continue;
 
-                            Password password = pDAO.getById(passwordId, ac);
-                            if( password == null )
-                                continue;
+                        String passwordId = rsPasswords.getString(GroupAccessControlDAO.GAC_FIELD_COUNT + 1);
+                        AccessControl ac = new GroupAccessControl(rsPasswords, 1, group);
+                        Password password = new Password(passwordId,
+                                rsPasswords.getBytes(GroupAccessControlDAO.GAC_FIELD_COUNT + 2), ac);
 
-                            printWriter.println(constructDetails(thisUser, password, group, separator));
-                        }
-                    } finally {
-                        DatabaseConnectionUtils.close(rsPasswords);
+                        printDetails(printer, thisUser, password, group);
+                        rowCount = flushIfNeeded(printer, rowCount);
                     }
                 }
-            } finally {
-                DatabaseConnectionUtils.close(gacPS);
             }
-        } finally {
-            DatabaseConnectionUtils.close(uacPS);
         }
+        printer.flush();
 
+        return rowCount;
     }
 
-    private String constructDetails(final User user, final Password password,
-                                    final Group group,  final String separator) {
-        final StringBuilder details = new StringBuilder();
-        details.append(user.getUserName());
-        details.append(separator);
-        details.append(password.getUsername());
-        details.append('@');
-        details.append(password.getLocation());
-        details.append(separator);
-        if (group == null) {
-            details.append("None");
-        } else {
-            details.append(group.getGroupName());
+    /**
+     * Print the details of a batch of passwords using the effective access control the
+     * user has for each of them, and empty the batch.
+     */
+
+    private int printResolved(final CSVPrinter printer, final AccessControlDAO acDAO, final User user,
+                              final Map<String, byte[]> passwords, final Map<String, Group> decryptedGroups,
+                              final int rowCount)
+            throws SQLException, GeneralSecurityException, IOException {
+        if (passwords.isEmpty()) {
+            return rowCount;
         }
-        details.append(separator);
+
+        int newRowCount = rowCount;
+        Map<String, AccessControl> accessControls = acDAO.getAccessControls(user, passwords.keySet(), decryptedGroups);
+        for (Map.Entry<String, byte[]> entry : passwords.entrySet()) {
+            AccessControl ac = accessControls.get(entry.getKey());
+            if (ac == null) {
+                continue;
+            }
+            printDetails(printer, user, new Password(entry.getKey(), entry.getValue(), ac), null);
+            newRowCount = flushIfNeeded(printer, newRowCount);
+        }
+        passwords.clear();
+        return newRowCount;
+    }
+
+    private int flushIfNeeded(final CSVPrinter printer, final int rowCount)
+            throws IOException {
+        int newRowCount = rowCount + 1;
+        if (newRowCount % FLUSH_INTERVAL == 0) {
+            printer.flush();
+        }
+        return newRowCount;
+    }
+
+    private void printDetails(final CSVPrinter printer, final User user, final Password password,
+                              final Group group)
+            throws IOException {
+        String access;
         if (password.getReadKey() == null) {
-            details.append("NONE");
+            access = "NONE";
         } else if (password.getModifyKey() == null ) {
-            details.append("Read-Only");
+            access = "Read-Only";
         } else {
-            details.append("Read-Write");
+            access = "Read-Write";
         }
 
-        return details.toString();
+        printer.printRecord(
+                user.getUserName(),
+                password.getUsername() + '@' + password.getLocation(),
+                group == null ? "None" : group.getGroupName(),
+                access);
     }
 
     //------ Singleton
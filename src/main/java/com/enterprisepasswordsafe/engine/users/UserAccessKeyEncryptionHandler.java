@@ -2,13 +2,11 @@ package com.enterprisepasswordsafe.engine.users;
 
 import com.enterprisepasswordsafe.engine.database.Decrypter;
 import com.enterprisepasswordsafe.engine.database.Encrypter;
+import com.enterprisepasswordsafe.engine.utils.CryptoPrimitives;
 
 import javax.crypto.Cipher;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import java.security.GeneralSecurityException;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
 
 public class UserAccessKeyEncryptionHandler implements Encrypter, Decrypter {
 
@@ -31,7 +29,7 @@ public class UserAccessKeyEncryptionHandler implements Encrypter, Decrypter {
     @Override
     public byte[] encrypt(byte[] data)
             throws GeneralSecurityException {
-        Cipher pbeCipher = Cipher.getInstance(ACCESS_KEY_ENCRYPTION_ALGORITHM);
+        Cipher pbeCipher = CryptoPrimitives.getCipher(ACCESS_KEY_ENCRYPTION_ALGORITHM);
         pbeCipher.init(Cipher.ENCRYPT_MODE, key);
         return pbeCipher.doFinal(data);
     }
@@ -47,7 +45,7 @@ public class UserAccessKeyEncryptionHandler implements Encrypter, Decrypter {
     @Override
     public byte[] decrypt(byte[] data)
             throws GeneralSecurityException {
-        Cipher pbeCipher = Cipher.getInstance(ACCESS_KEY_ENCRYPTION_ALGORITHM);
+        Cipher pbeCipher = CryptoPrimitives.getCipher(ACCESS_KEY_ENCRYPTION_ALGORITHM);
         pbeCipher.init(Cipher.DECRYPT_MODE, key);
         return pbeCipher.doFinal(data);
     }
@@ -2,20 +2,16 @@ package com.enterprisepasswordsafe.engine.users;
 
 import com.enterprisepasswordsafe.engine.database.*;
 import com.enterprisepasswordsafe.engine.database.derived.UserSummary;
+import com.enterprisepasswordsafe.engine.mail.MailService;
+import com.enterprisepasswordsafe.engine.mail.OutgoingMail;
 import com.enterprisepasswordsafe.engine.utils.PasswordGenerator;
 import org.apache.commons.csv.CSVRecord;
 
-import javax.mail.Message;
-import javax.mail.MessagingException;
-import javax.mail.Session;
-import javax.mail.Transport;
-import javax.mail.internet.InternetAddress;
-import javax.mail.internet.MimeMessage;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.Properties;
 
 public class UserImporter {
 
@@ -31,7 +27,7 @@ public class UserImporter {
 
     public void importData(final User theImporter, final Group adminGroup,
                              final PasswordGenerator passwordGenerator, CSVRecord record)
-            throws SQLException, GeneralSecurityException, IOException, MessagingException {
+            throws SQLException, GeneralSecurityException, IOException {
         Iterator<String> values = record.iterator();
         if (!values.hasNext()) {
             return;
@@ -107,7 +103,7 @@ public class UserImporter {
     }
 
     private void sendUserCreationEmailToUserIfNeccessary(User createdUser, String password)
-            throws SQLException, MessagingException {
+            throws SQLException {
         String usersEmailAddress = createdUser.getEmail();
         if( usersEmailAddress == null || usersEmailAddress.isEmpty()) {
             return;
@@ -126,19 +122,7 @@ public class UserImporter {
                         "Password : " + password + "\n\n" +
                         "Please do not disclose this information to anyone else.";
 
-        Properties props = new Properties();
-        props.put("mail.smtp.host", smtpHost);
-        Session s = Session.getInstance(props, null);
-
-        String smtpSenderString = ConfigurationDAO.getValue(ConfigurationOption.SMTP_FROM);
-        MimeMessage mimeMessage = new MimeMessage(s);
-        mimeMessage.setFrom(new InternetAddress(smtpSenderString));
-        InternetAddress to = new InternetAddress(usersEmailAddress);
-        mimeMessage.addRecipient(Message.RecipientType.TO, to);
-
-        mimeMessage.setSubject("Enterprise Password Safe Account");
-        mimeMessage.setText(message);
-
-        Transport.send(mimeMessage);
+        MailService.getInstance().send(new OutgoingMail(null, Collections.singletonList(usersEmailAddress),
+                "Enterprise Password Safe Account", message, true));
     }
 }
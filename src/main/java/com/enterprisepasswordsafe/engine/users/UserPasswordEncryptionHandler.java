@@ -1,6 +1,7 @@
 package com.enterprisepasswordsafe.engine.users;
 
 import com.enterprisepasswordsafe.engine.database.Encrypter;
+import com.enterprisepasswordsafe.engine.utils.CryptoPrimitives;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
@@ -24,7 +25,7 @@ public class UserPasswordEncryptionHandler implements Encrypter {
     public UserPasswordEncryptionHandler(final String password)
             throws GeneralSecurityException {
         PBEKeySpec pbeKeySpec = new PBEKeySpec(password.toCharArray());
-        SecretKeyFactory keyFac = SecretKeyFactory.getInstance(PBE_ALGORITHM);
+        SecretKeyFactory keyFac = CryptoPrimitives.getSecretKeyFactory(PBE_ALGORITHM);
         encryptionKey = keyFac.generateSecret(pbeKeySpec);
     }
 
@@ -32,7 +33,7 @@ public class UserPasswordEncryptionHandler implements Encrypter {
     public byte[] encrypt(byte[] data)
             throws GeneralSecurityException {
         PBEParameterSpec pbeParamSpec = new PBEParameterSpec(PBE_SALT, PBE_ITERATIONS);
-        Cipher pbeCipher = Cipher.getInstance(PBE_ALGORITHM);
+        Cipher pbeCipher = CryptoPrimitives.getCipher(PBE_ALGORITHM);
         pbeCipher.init(Cipher.ENCRYPT_MODE, encryptionKey, pbeParamSpec);
         return pbeCipher.doFinal(data);
     }
@@ -40,7 +41,7 @@ public class UserPasswordEncryptionHandler implements Encrypter {
     public byte[] decrypt(byte[] data)
             throws GeneralSecurityException {
         PBEParameterSpec pbeParamSpec = new PBEParameterSpec(PBE_SALT, PBE_ITERATIONS);
-        Cipher pbeCipher = Cipher.getInstance(PBE_ALGORITHM);
+        Cipher pbeCipher = CryptoPrimitives.getCipher(PBE_ALGORITHM);
         pbeCipher.init(Cipher.DECRYPT_MODE, encryptionKey, pbeParamSpec);
         return pbeCipher.doFinal(data);
     }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.utils;
+
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKeyFactory;
+
+/**
+ * Per-thread instances of the cryptographic primitives used on every request.
+ *
+ * Looking up an algorithm through the JCE providers is synchronized, so creating a new
+ * instance for every operation causes contention with many concurrent users. The
+ * instances returned here belong to the calling thread and are reused, so callers must
+ * initialise them before each use and finish with them before asking for another
+ * instance of the same algorithm.
+ */
+public final class CryptoPrimitives {
+
+    private static final ThreadLocal<Map<String, Cipher>> CIPHERS = ThreadLocal.withInitial(HashMap::new);
+
+    private static final ThreadLocal<Map<String, KeyFactory>> KEY_FACTORIES = ThreadLocal.withInitial(HashMap::new);
+
+    private static final ThreadLocal<Map<String, SecretKeyFactory>> SECRET_KEY_FACTORIES =
+            ThreadLocal.withInitial(HashMap::new);
+
+    private static final ThreadLocal<Map<String, KeyGenerator>> KEY_GENERATORS = ThreadLocal.withInitial(HashMap::new);
+
+    private static final ThreadLocal<Map<String, MessageDigest>> MESSAGE_DIGESTS = ThreadLocal.withInitial(HashMap::new);
+
+    private static final ThreadLocal<Map<String, Mac>> MACS = ThreadLocal.withInitial(HashMap::new);
+
+    private static final ThreadLocal<SecureRandom> SECURE_RANDOMS = ThreadLocal.withInitial(SecureRandom::new);
+
+    private CryptoPrimitives() {
+        super();
+    }
+
+    /**
+     * Get the calling threads Cipher for a transformation. It must be initialised before use.
+     *
+     * @param transformation The transformation the Cipher performs.
+     *
+     * @return The Cipher.
+     */
+
+    public static Cipher getCipher(final String transformation)
+            throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Map<String, Cipher> ciphers = CIPHERS.get();
+        Cipher cipher = ciphers.get(transformation);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            ciphers.put(transformation, cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Get the calling threads KeyFactory for an algorithm.
+     *
+     * @param algorithm The key algorithm.
+     *
+     * @return The KeyFactory.
+     */
+
+    public static KeyFactory getKeyFactory(final String algorithm)
+            throws NoSuchAlgorithmException {
+        Map<String, KeyFactory> factories = KEY_FACTORIES.get();
+        KeyFactory factory = factories.get(algorithm);
+        if (factory == null) {
+            factory = KeyFactory.getInstance(algorithm);
+            factories.put(algorithm, factory);
+        }
+        return factory;
+    }
+
+    /**
+     * Get the calling threads SecretKeyFactory for an algorithm.
+     *
+     * @param algorithm The key algorithm.
+     *
+     * @return The SecretKeyFactory.
+     */
+
+    public static SecretKeyFactory getSecretKeyFactory(final String algorithm)
+            throws NoSuchAlgorithmException {
+        Map<String, SecretKeyFactory> factories = SECRET_KEY_FACTORIES.get();
+        SecretKeyFactory factory = factories.get(algorithm);
+        if (factory == null) {
+            factory = SecretKeyFactory.getInstance(algorithm);
+            factories.put(algorithm, factory);
+        }
+        return factory;
+    }
+
+    /**
+     * Get the calling threads KeyGenerator for an algorithm. It must be initialised before use.
+     *
+     * @param algorithm The key algorithm.
+     *
+     * @return The KeyGenerator.
+     */
+
+    public static KeyGenerator getKeyGenerator(final String algorithm)
+            throws NoSuchAlgorithmException {
+        Map<String, KeyGenerator> generators = KEY_GENERATORS.get();
+        KeyGenerator generator = generators.get(algorithm);
+        if (generator == null) {
+            generator = KeyGenerator.getInstance(algorithm);
+            generators.put(algorithm, generator);
+        }
+        return generator;
+    }
+
+    /**
+     * Get the calling threads MessageDigest for an algorithm, reset ready for use.
+     *
+     * @param algorithm The digest algorithm.
+     *
+     * @return The MessageDigest.
+     */
+
+    public static MessageDigest getMessageDigest(final String algorithm)
+            throws NoSuchAlgorithmException {
+        Map<String, MessageDigest> digests = MESSAGE_DIGESTS.get();
+        MessageDigest digest = digests.get(algorithm);
+        if (digest == null) {
+            digest = MessageDigest.getInstance(algorithm);
+            digests.put(algorithm, digest);
+        } else {
+            digest.reset();
+        }
+        return digest;
+    }
+
+    /**
+     * Get the calling threads Mac for an algorithm. It must be initialised before use.
+     *
+     * @param algorithm The MAC algorithm.
+     *
+     * @return The Mac.
+     */
+
+    public static Mac getMac(final String algorithm)
+            throws NoSuchAlgorithmException {
+        Map<String, Mac> macs = MACS.get();
+        Mac mac = macs.get(algorithm);
+        if (mac == null) {
+            mac = Mac.getInstance(algorithm);
+            macs.put(algorithm, mac);
+        }
+        return mac;
+    }
+
+    /**
+     * Get the calling threads SecureRandom.
+     *
+     * @return The SecureRandom.
+     */
+
+    public static SecureRandom getSecureRandom() {
+        return SECURE_RANDOMS.get();
+    }
+}
@@ -90,4 +90,24 @@ public final class DatabaseConnectionUtils {
         }
     }
 
+    /**
+     * Creates the placeholders for the values in an SQL IN clause.
+     *
+     * @param count
+     *            The number of values in the clause.
+     *
+     * @return The placeholders, e.g. "?, ?, ?" for three values.
+     */
+
+    public static String createParameterList(final int count) {
+        StringBuilder placeholders = new StringBuilder(count * 3);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                placeholders.append(", ");
+            }
+            placeholders.append('?');
+        }
+        return placeholders.toString();
+    }
+
 }
@@ -14,9 +14,11 @@
  * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
  */
 
+
 package com.enterprisepasswordsafe.engine.utils;
 
 import com.enterprisepasswordsafe.engine.database.AccessControledObject;
+import com.enterprisepasswordsafe.engine.database.BOMFactory;
 import com.enterprisepasswordsafe.engine.database.HierarchyNode;
 import com.enterprisepasswordsafe.engine.database.HierarchyNodeDAO;
 import com.enterprisepasswordsafe.engine.database.User;
@@ -25,60 +27,171 @@ import com.enterprisepasswordsafe.engine.database.actions.NodeObjectAction;
 import java.io.UnsupportedEncodingException;
 import java.security.GeneralSecurityException;
 import java.sql.SQLException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Performs actions on the objects in a hierarchy using a bounded, application wide,
+ * pool of worker threads.
+ *
+ * The calling thread walks the hierarchy and hands each object to the pool. Each
+ * search may only use a limited number of workers at once so a single large search
+ * can not starve the others, and searches which overrun their timeout, or whose
+ * calling thread is interrupted, are cancelled. Any database connection a worker
+ * picks up is returned to the pool when the worker runs out of objects to process
+ * for the search.
+ */
+
 public class HierarchySearcher {
 
-    private static final int THREAD_POOL_SIZE = 10;
+    /**
+     * The number of worker threads shared by all searches.
+     */
 
-    public void searchHierarchy(final HierarchyNodeDAO hnDAO, final HierarchyNode node, final User theUser,
-                                final NodeObjectAction action, final boolean recurse) {
-        ExecutorService executorService = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+    private static final int THREAD_POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
 
-        if(recurse) {
-            submitChildObjectsToExecutor(executorService, hnDAO, node, theUser, action);
-        } else {
-            submitNodeChildrenToExecutor(executorService, hnDAO, node, theUser, action);
-        }
+    /**
+     * The maximum number of searches waiting for a worker before the submitting
+     * thread processes its own objects.
+     */
+
+    private static final int QUEUE_CAPACITY = 1000;
+
+    /**
+     * The number of objects a search may have queued for each of its workers.
+     */
+
+    private static final int QUEUED_OBJECTS_PER_WORKER = 16;
+
+    /**
+     * The time an idle worker thread is kept for.
+     */
+
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * The default number of objects a single search may have in progress.
+     */
+
+    public static final int DEFAULT_MAX_PARALLELISM = 4;
+
+    /**
+     * The default time a search is allowed to run for.
+     */
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 60 * 1000;
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicInteger activeSearches = new AtomicInteger();
+
+    private final AtomicLong objectsProcessed = new AtomicLong();
+
+    private final AtomicInteger queuedObjects = new AtomicInteger();
+
+    private final AtomicLong timedOutSearches = new AtomicLong();
+
+    private final AtomicLong cancelledSearches = new AtomicLong();
+
+    private final LatencyHistogram searchLatency = new LatencyHistogram();
+
+    HierarchySearcher() {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(THREAD_POOL_SIZE, THREAD_POOL_SIZE,
+                WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "EPS hierarchy search " + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
 
-        executorService.shutdown();
+    /**
+     * Perform an action on the objects in a node, and optionally its children, using
+     * the default parallelism and timeout.
+     *
+     * @return true if the search completed, false if it was cancelled or timed out.
+     */
+
+    public boolean searchHierarchy(final HierarchyNodeDAO hnDAO, final HierarchyNode node, final User theUser,
+                                   final NodeObjectAction action, final boolean recurse) {
+        return searchHierarchy(hnDAO, node, theUser, action, recurse, DEFAULT_MAX_PARALLELISM, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Perform an action on the objects in a node, and optionally its children.
+     *
+     * @param hnDAO The DAO to fetch nodes and objects with.
+     * @param node The node to start from.
+     * @param theUser The user performing the search.
+     * @param action The action to perform on each object. This may be called from several threads at once.
+     * @param recurse Whether or not to include the objects in child nodes.
+     * @param maxParallelism The maximum number of objects from this search to process at once.
+     * @param timeoutMillis The maximum time the search may take.
+     *
+     * @return true if the search completed, false if it was cancelled or timed out.
+     */
+
+    public boolean searchHierarchy(final HierarchyNodeDAO hnDAO, final HierarchyNode node, final User theUser,
+                                   final NodeObjectAction action, final boolean recurse,
+                                   final int maxParallelism, final long timeoutMillis) {
+        long start = System.nanoTime();
+        Search search = new Search(Math.max(1, maxParallelism), start + timeoutMillis * NANOS_PER_MILLI);
+        activeSearches.incrementAndGet();
         try {
-            executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            // Do nothing.
+            if (recurse) {
+                submitChildObjectsToExecutor(search, hnDAO, node, theUser, action);
+            } else {
+                submitNodeChildrenToExecutor(search, hnDAO, node, theUser, action);
+            }
+            return search.awaitCompletion();
+        } finally {
+            activeSearches.decrementAndGet();
+            searchLatency.record(System.nanoTime() - start);
         }
     }
 
-    private void submitChildObjectsToExecutor(final ExecutorService service, final HierarchyNodeDAO hnDAO,
+    private void submitChildObjectsToExecutor(final Search search, final HierarchyNodeDAO hnDAO,
                                               final HierarchyNode node, final User theUser, final NodeObjectAction action) {
-        submitNodeChildrenToExecutor(service, hnDAO, node, theUser, action);
+        submitNodeChildrenToExecutor(search, hnDAO, node, theUser, action);
         try {
             for (HierarchyNode thisNode : hnDAO.getChildrenContainerNodesForUser(node, theUser, true, null)) {
-                submitChildObjectsToExecutor(service, hnDAO, thisNode, theUser, action);
+                if (search.isCancelled()) {
+                    return;
+                }
+                submitChildObjectsToExecutor(search, hnDAO, thisNode, theUser, action);
             }
         } catch(SQLException | GeneralSecurityException ex) {
             reportException(node, ex);
         }
     }
 
-    private void submitNodeChildrenToExecutor(final ExecutorService service, final HierarchyNodeDAO hnDAO,
+    private void submitNodeChildrenToExecutor(final Search search, final HierarchyNodeDAO hnDAO,
                                               final HierarchyNode node, final User theUser, final NodeObjectAction action) {
         try {
-            for (final AccessControledObject aco : hnDAO.getAllChildrenObjects(node, theUser, null)) {
-                Runnable nodeProcessor = new Runnable() {
-                    public void run() {
-                        try {
-                            action.process(node, aco);
-                        } catch (Exception ex) {
-                            reportException(node, ex);
-                        }
+            for (final AccessControledObject aco : hnDAO.getAllChildrenObjectsUnsorted(node, theUser)) {
+                boolean submitted = search.submit(() -> {
+                    try {
+                        action.process(node, aco);
+                    } catch (Exception ex) {
+                        reportException(node, ex);
                     }
-                };
-                service.execute(nodeProcessor);
+                });
+                if (!submitted) {
+                    return;
+                }
             }
         } catch (SQLException | GeneralSecurityException | UnsupportedEncodingException e) {
             reportException(node, e);
@@ -89,6 +202,213 @@ public class HierarchySearcher {
         Logger.getAnonymousLogger().log(Level.SEVERE, "Problem processing node "+node.getNodeId(), ex);
     }
 
+    public int getActiveSearches() {
+        return activeSearches.get();
+    }
+
+    public long getObjectsProcessed() {
+        return objectsProcessed.get();
+    }
+
+    public long getTimedOutSearches() {
+        return timedOutSearches.get();
+    }
+
+    public long getCancelledSearches() {
+        return cancelledSearches.get();
+    }
+
+    public int getActiveWorkers() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueuedObjects() {
+        return queuedObjects.get();
+    }
+
+    public LatencyHistogram getSearchLatency() {
+        return searchLatency;
+    }
+
+    /**
+     * The state of a single search.
+     *
+     * Objects are queued on the search and up to maxParallelism workers from the pool
+     * drain the queue. A worker keeps any database connection it picks up until the
+     * queue is empty, so the connection, and the statements cached on it, are reused
+     * for every object the worker processes rather than being returned after each one.
+     */
+
+    private final class Search {
+
+        private final int maxParallelism;
+
+        private final BlockingQueue<Runnable> pending;
+
+        private final AtomicInteger workers = new AtomicInteger();
+
+        private final long deadlineNanos;
+
+        private final Thread callingThread;
+
+        /**
+         * The number of objects submitted which have not yet been processed or discarded.
+         */
+
+        private int outstanding = 0;
+
+        private volatile boolean cancelled = false;
+
+        Search(final int maxParallelism, final long deadlineNanos) {
+            this.maxParallelism = maxParallelism;
+            this.pending = new ArrayBlockingQueue<>(maxParallelism * QUEUED_OBJECTS_PER_WORKER);
+            this.deadlineNanos = deadlineNanos;
+            this.callingThread = Thread.currentThread();
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Queue an object for the workers, waiting if the search already has the
+         * maximum number of objects queued.
+         *
+         * @return true if the object was queued, false if the search has been cancelled.
+         */
+
+        boolean submit(final Runnable task) {
+            if (cancelled) {
+                return false;
+            }
+
+            synchronized (this) {
+                outstanding++;
+            }
+            try {
+                long remaining = deadlineNanos - System.nanoTime();
+                if (remaining <= 0 || !pending.offer(task, remaining, TimeUnit.NANOSECONDS)) {
+                    completed();
+                    cancel(true);
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                completed();
+                cancel(false);
+                return false;
+            }
+            queuedObjects.incrementAndGet();
+
+            if (reserveWorker()) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    workers.decrementAndGet();
+                    cancel(false);
+                    discardPending();
+                    Logger.getAnonymousLogger().log(Level.SEVERE, "Search rejected by the worker pool", e);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean reserveWorker() {
+            int current;
+            do {
+                current = workers.get();
+                if (current >= maxParallelism) {
+                    return false;
+                }
+            } while (!workers.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        /**
+         * Process queued objects until there are none left.
+         */
+
+        private void drain() {
+            try {
+                do {
+                    Runnable task;
+                    while ((task = pending.poll()) != null) {
+                        queuedObjects.decrementAndGet();
+                        try {
+                            if (!cancelled) {
+                                task.run();
+                                objectsProcessed.incrementAndGet();
+                            }
+                        } finally {
+                            completed();
+                        }
+                    }
+                    workers.decrementAndGet();
+                    // An object queued after the poll above may have found every worker busy.
+                } while (!pending.isEmpty() && reserveWorker());
+            } finally {
+                // The calling thread's connection belongs to its request, so it's left alone.
+                if (Thread.currentThread() != callingThread) {
+                    BOMFactory.closeCurrent();
+                }
+            }
+        }
+
+        private void discardPending() {
+            while (pending.poll() != null) {
+                queuedObjects.decrementAndGet();
+                completed();
+            }
+        }
+
+        private synchronized void completed() {
+            outstanding--;
+            if (outstanding == 0) {
+                notifyAll();
+            }
+        }
+
+        /**
+         * Wait for all the objects submitted to be processed.
+         *
+         * @return true if the search completed, false if it was cancelled or timed out.
+         */
+
+        boolean awaitCompletion() {
+            if (cancelled) {
+                return false;
+            }
+            try {
+                synchronized (this) {
+                    long remaining;
+                    while (outstanding > 0 && (remaining = deadlineNanos - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    }
+                    if (outstanding == 0) {
+                        return !cancelled;
+                    }
+                }
+                cancel(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel(false);
+            }
+            return false;
+        }
+
+        private void cancel(final boolean timedOut) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            if (timedOut) {
+                timedOutSearches.incrementAndGet();
+            } else {
+                cancelledSearches.incrementAndGet();
+            }
+        }
+    }
 
     private static class InstanceHolder {
         final static HierarchySearcher INSTANCE = new HierarchySearcher();
@@ -47,7 +47,9 @@ public final class KeyUtils {
         if(key == null) {
             return null;
         }
-        return keyEncrypter.encrypt(key.getEncoded());
+        byte[] encryptedKey = keyEncrypter.encrypt(key.getEncoded());
+        RequestMetrics.recordAesOperation();
+        return encryptedKey;
     }
 
 
@@ -66,6 +68,7 @@ public final class KeyUtils {
             return null;
         }
     	byte[] key = keyDecrypter.decrypt(encryptedKey);
+        RequestMetrics.recordAesOperation();
 		return new SecretKeySpec(key, "AES");
     }
 
@@ -81,8 +84,9 @@ public final class KeyUtils {
     public static PrivateKey decryptPrivateKey(final byte[] encryptedKey, final Decrypter keyDecrypter)
     	throws SQLException, GeneralSecurityException {
     	byte[] decryptedKeyBytes = keyDecrypter.decrypt(encryptedKey);
+        RequestMetrics.recordAesOperation();
         PKCS8EncodedKeySpec skeySpec = new PKCS8EncodedKeySpec(decryptedKeyBytes);
-        KeyFactory factory = KeyFactory.getInstance("RSA");
+        KeyFactory factory = CryptoPrimitives.getKeyFactory("RSA");
         return factory.generatePrivate(skeySpec);
     }
 
@@ -98,8 +102,9 @@ public final class KeyUtils {
     public static PublicKey decryptPublicKey(final byte[] encryptedKey, final Decrypter keyDecrypter)
     	throws SQLException, GeneralSecurityException {
     	byte[] decryptedKeyBytes = keyDecrypter.decrypt(encryptedKey);
+        RequestMetrics.recordAesOperation();
         X509EncodedKeySpec keySpec = new X509EncodedKeySpec(decryptedKeyBytes);
-        KeyFactory factory = KeyFactory.getInstance("RSA");
+        KeyFactory factory = CryptoPrimitives.getKeyFactory("RSA");
         return factory.generatePublic(keySpec);
     }
 }
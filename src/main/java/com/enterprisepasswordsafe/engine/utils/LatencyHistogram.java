@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.enterprisepasswordsafe.engine.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of operation latencies using fixed millisecond buckets.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * The upper bound (inclusive) of each bucket in milliseconds. The final bucket
+     * holds everything above the last bound.
+     */
+
+    private static final long[] BUCKET_BOUNDS_MILLIS =
+            { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+    /**
+     * The number of nanoseconds in a millisecond.
+     */
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /**
+     * The count of samples in each bucket.
+     */
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+
+    /**
+     * The total number of samples recorded.
+     */
+
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * The total time of all samples recorded.
+     */
+
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    /**
+     * The longest sample recorded.
+     */
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Record a sample.
+     *
+     * @param nanos The duration of the operation in nanoseconds.
+     */
+
+    public void record(final long nanos) {
+        long millis = nanos / NANOS_PER_MILLI;
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MILLIS.length && millis > BUCKET_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+
+        long currentMax;
+        do {
+            currentMax = maxNanos.get();
+        } while (nanos > currentMax && !maxNanos.compareAndSet(currentMax, nanos));
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMeanMillis() {
+        long samples = count.get();
+        return samples == 0 ? 0 : (double) totalNanos.get() / samples / NANOS_PER_MILLI;
+    }
+
+    public double getMaxMillis() {
+        return (double) maxNanos.get() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Get an estimate of a percentile latency. The estimate is the upper bound
+     * of the bucket the percentile falls in.
+     *
+     * @param percentile The percentile required (e.g. 95 or 99.9).
+     *
+     * @return The upper bound, in milliseconds, of the bucket holding the percentile.
+     */
+
+    public long getPercentileMillis(final double percentile) {
+        long samples = count.get();
+        if (samples == 0) {
+            return 0;
+        }
+
+        long threshold = (long) Math.ceil(samples * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            seen += buckets.get(i);
+            if (seen >= threshold) {
+                return BUCKET_BOUNDS_MILLIS[i];
+            }
+        }
+        return (long) Math.ceil(getMaxMillis());
+    }
+
+    /**
+     * Get the bucket upper bounds. The counts array has one more entry than this
+     * for the overflow bucket.
+     *
+     * @return The bucket bounds in milliseconds.
+     */
+
+    public static long[] getBucketBoundsMillis() {
+        return BUCKET_BOUNDS_MILLIS.clone();
+    }
+
+    /**
+     * Get a copy of the current bucket counts.
+     *
+     * @return The count of samples in each bucket.
+     */
+
+    public long[] getBucketCounts() {
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() +
+                ", mean=" + String.format("%.2f", getMeanMillis()) + "ms" +
+                ", p95=" + getPercentileMillis(95) + "ms" +
+                ", p99=" + getPercentileMillis(99) + "ms" +
+                ", max=" + String.format("%.2f", getMaxMillis()) + "ms";
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The binary format used to hold the values of a password before it is encrypted.
+ *
+ * The payload starts with a magic byte and a format version followed by the number of
+ * entries. Each entry is a key and a value, with the key given either as the index of
+ * one of the well known keys or as a length prefixed UTF-8 string, and the value as a
+ * length prefixed UTF-8 string. Lengths and counts are unsigned variable length
+ * integers with seven bits per byte.
+ *
+ * Payloads written by earlier versions are the text form of a java.util.Properties
+ * object, which always starts with a comment line, so they can't be mistaken for
+ * this format.
+ */
+final class PasswordPayload {
+
+    /**
+     * The first byte of every binary payload. It's not valid as the first byte of
+     * a Properties text payload, which is always ASCII.
+     */
+
+    static final byte MAGIC = (byte) 0xEB;
+
+    /**
+     * The version of the format written by this class.
+     */
+
+    static final int CURRENT_VERSION = 1;
+
+    /**
+     * The keys which are written as their index in this array plus one. The order must
+     * not change because it is part of the stored format; new keys go at the end.
+     */
+
+    private static final String[] KNOWN_KEYS = {
+        PasswordUtils.ENABLED_PROPERTY, PasswordUtils.USERNAME_PROPERTY, PasswordUtils.LOCATION_PROPERTY,
+        PasswordUtils.PASSWORD_PROPERTY, PasswordUtils.NOTES_PROPERTY, PasswordUtils.EXPIRY_PROPERTY
+    };
+
+    /**
+     * The key index used for keys which are not in the known key list.
+     */
+
+    private static final int NAMED_KEY = 0;
+
+    private PasswordPayload() {
+        super();
+    }
+
+    /**
+     * Check whether some decrypted data is a binary payload.
+     *
+     * @param data The decrypted data.
+     *
+     * @return true if the data is in this format, false if it is a Properties payload.
+     */
+
+    static boolean isBinary(final byte[] data) {
+        return data.length > 0 && data[0] == MAGIC;
+    }
+
+    /**
+     * Encode a set of values. Entries with a null value are skipped.
+     *
+     * @param values The values to encode.
+     *
+     * @return The encoded payload.
+     */
+
+    static byte[] encode(final Map<String, String> values) {
+        int count = 0;
+        for (String value : values.values()) {
+            if (value != null) {
+                count++;
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(MAGIC);
+        out.write(CURRENT_VERSION);
+        writeLength(out, count);
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+            int keyIndex = getKeyIndex(entry.getKey());
+            writeLength(out, keyIndex);
+            if (keyIndex == NAMED_KEY) {
+                writeString(out, entry.getKey());
+            }
+            writeString(out, entry.getValue());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode a binary payload. The strings are read straight out of the
+     * decrypted data without any intermediate copies.
+     *
+     * @param data The payload.
+     * @param values The properties to put the decoded values into.
+     *
+     * @throws IOException Thrown if the payload is corrupt or from an unknown version.
+     */
+
+    static void decode(final byte[] data, final Properties values)
+            throws IOException {
+        if (!isBinary(data) || data.length < 2) {
+            throw new IOException("The password data is not in a binary format");
+        }
+        int version = data[1] & 0xFF;
+        if (version != CURRENT_VERSION) {
+            throw new IOException("Unsupported password data version " + version);
+        }
+
+        Decoder decoder = new Decoder(data, 2);
+        int count = decoder.readLength();
+        for (int i = 0; i < count; i++) {
+            int keyIndex = decoder.readLength();
+            String key;
+            if (keyIndex == NAMED_KEY) {
+                key = decoder.readString();
+            } else if (keyIndex <= KNOWN_KEYS.length) {
+                key = KNOWN_KEYS[keyIndex - 1];
+            } else {
+                throw new IOException("Unknown key in password data");
+            }
+            values.put(key, decoder.readString());
+        }
+    }
+
+    private static int getKeyIndex(final String key) {
+        for (int i = 0; i < KNOWN_KEYS.length; i++) {
+            if (KNOWN_KEYS[i].equals(key)) {
+                return i + 1;
+            }
+        }
+        return NAMED_KEY;
+    }
+
+    private static void writeString(final ByteArrayOutputStream out, final String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeLength(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeLength(final ByteArrayOutputStream out, final int length) {
+        int remaining = length;
+        while ((remaining & ~0x7F) != 0) {
+            out.write((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.write(remaining);
+    }
+
+    /**
+     * Reads values from a payload, keeping track of the current position.
+     */
+
+    private static final class Decoder {
+
+        private final byte[] data;
+
+        private int position;
+
+        Decoder(final byte[] data, final int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        int readLength()
+                throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                if (position >= data.length) {
+                    throw new IOException("Truncated password data");
+                }
+                int b = data[position++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) {
+                        break;
+                    }
+                    return value;
+                }
+            }
+            throw new IOException("Invalid length in password data");
+        }
+
+        String readString()
+                throws IOException {
+            int length = readLength();
+            if (length > data.length - position) {
+                throw new IOException("Truncated password data");
+            }
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
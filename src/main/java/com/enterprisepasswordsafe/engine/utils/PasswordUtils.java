@@ -18,9 +18,9 @@ package com.enterprisepasswordsafe.engine.utils;
 
 import java.io.IOException;
 import java.io.StringReader;
-import java.io.StringWriter;
 import java.security.GeneralSecurityException;
 import java.util.IllegalFormatException;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 
@@ -39,37 +39,44 @@ public final class PasswordUtils {
 	 * The property name used to store the username
 	 */
 
-	private static final String USERNAME_PROPERTY = "_username";
+	static final String USERNAME_PROPERTY = "_username";
 
 	/**
 	 * The property name used to store the location
 	 */
 
-	private static final String LOCATION_PROPERTY = "_location";
+	static final String LOCATION_PROPERTY = "_location";
 
 	/**
 	 * The property name used to store the password
 	 */
 
-	private static final String PASSWORD_PROPERTY = "_password";
+	static final String PASSWORD_PROPERTY = "_password";
 
 	/**
 	 * The property name used to store the notes
 	 */
 
-	private static final String NOTES_PROPERTY = "_notes";
+	static final String NOTES_PROPERTY = "_notes";
 
 	/**
 	 * The property name used to store the notes
 	 */
 
-	private static final String ENABLED_PROPERTY = "_enabled";
+	static final String ENABLED_PROPERTY = "_enabled";
 
     /**
      * The property name used to store the notes
      */
 
-    private static final String EXPIRY_PROPERTY = "_expiry";
+    static final String EXPIRY_PROPERTY = "_expiry";
+
+    /**
+     * The payload format written by encrypt. Passwords stored before this format was
+     * introduced have no format recorded and hold java.util.Properties text.
+     */
+
+    public static final int PAYLOAD_FORMAT = PasswordPayload.CURRENT_VERSION;
 
 	/**
 	 * Encrypt the data in a password
@@ -84,31 +91,51 @@ public final class PasswordUtils {
 	 */
 	public static byte[] encrypt(final PasswordBase password, final AccessControl ac)
 		throws IOException, GeneralSecurityException {
-    	Properties passwordProperties = new Properties();
-        passwordProperties.setProperty(ENABLED_PROPERTY, Boolean.toString(password.isEnabled()));
-    	passwordProperties.setProperty(USERNAME_PROPERTY, password.getUsername());
-    	passwordProperties.setProperty(LOCATION_PROPERTY, password.getLocation());
-    	passwordProperties.setProperty(PASSWORD_PROPERTY, password.getPassword());
-    	passwordProperties.setProperty(NOTES_PROPERTY,    password.getNotes());
+    	Map<String,String> passwordProperties = new LinkedHashMap<>();
+        passwordProperties.put(ENABLED_PROPERTY, Boolean.toString(password.isEnabled()));
+    	passwordProperties.put(USERNAME_PROPERTY, password.getUsername());
+    	passwordProperties.put(LOCATION_PROPERTY, password.getLocation());
+    	passwordProperties.put(PASSWORD_PROPERTY, password.getPassword());
+    	passwordProperties.put(NOTES_PROPERTY,    password.getNotes());
     	if(password.getExpiry() != Long.MAX_VALUE) {
-    		passwordProperties.setProperty(EXPIRY_PROPERTY,   Long.toString(password.getExpiry()));
+    		passwordProperties.put(EXPIRY_PROPERTY,   Long.toString(password.getExpiry()));
     	}
 
         Map<String,String> customFields = password.getAllCustomFields();
         if(customFields != null) {
-	        for(Map.Entry<String, String> entry : customFields.entrySet()) {
-	        	passwordProperties.setProperty(entry.getKey(), entry.getValue());
-	        }
+        	passwordProperties.putAll(customFields);
         }
 
-    	StringWriter sw = new StringWriter();
-    	try {
-    		passwordProperties.store(sw, null);
+        return ac.encrypt(PasswordPayload.encode(passwordProperties));
+	}
 
-    		return ac.encrypt(sw.toString());
-    	} finally {
-    		sw.close();
-    	}
+	/**
+	 * Re-encrypt password data held in the java.util.Properties text format in the
+	 * current payload format. All of the stored values are carried over, including
+	 * any which are no longer written.
+	 *
+	 * @param ac The access control to use. It must hold the modify key.
+	 * @param data The encrypted password data.
+	 *
+	 * @return The re-encrypted data, or null if the data is already in the current format.
+	 *
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 */
+	public static byte[] reencode(final AccessControl ac, final byte[] data)
+		throws IOException, GeneralSecurityException {
+		byte[] decrypted = ac.decryptToBinary(data);
+		if(PasswordPayload.isBinary(decrypted)) {
+			return null;
+		}
+
+		Properties passwordProperties = new Properties();
+		passwordProperties.load(new StringReader(new String(decrypted, Constants.STRING_CODING_FORMAT)));
+		Map<String,String> values = new LinkedHashMap<>();
+		for(String propertyName : passwordProperties.stringPropertyNames()) {
+			values.put(propertyName, passwordProperties.getProperty(propertyName));
+		}
+		return ac.encrypt(PasswordPayload.encode(values));
 	}
 
 	/**
@@ -156,8 +183,12 @@ public final class PasswordUtils {
                                      final byte[] data, final Properties passwordProperties)
 		throws IOException, GeneralSecurityException {
         password.decrypt(ac);
-		String propertiesString = ac.decrypt(data);
-		passwordProperties.load(new StringReader(propertiesString));
+		byte[] decrypted = ac.decryptToBinary(data);
+		if(PasswordPayload.isBinary(decrypted)) {
+			PasswordPayload.decode(decrypted, passwordProperties);
+		} else {
+			passwordProperties.load(new StringReader(new String(decrypted, Constants.STRING_CODING_FORMAT)));
+		}
 
         password.setEnabled(Boolean.parseBoolean(passwordProperties.getProperty(ENABLED_PROPERTY,"true")));
 		password.setUsername(passwordProperties.getProperty(USERNAME_PROPERTY));
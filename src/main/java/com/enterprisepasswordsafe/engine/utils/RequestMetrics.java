@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts the database and cryptographic work done while handling a single request.
+ *
+ * Collection is started and finished by the thread handling the request, and the
+ * recording methods do nothing on threads which aren't collecting, so background
+ * work and code run outside of a request are unaffected.
+ */
+public final class RequestMetrics {
+
+    /**
+     * The SQL used to group statements once the number of distinct statements for
+     * a request reaches the maximum tracked.
+     */
+
+    public static final String OTHER_STATEMENTS = "(other statements)";
+
+    /**
+     * The maximum number of distinct SQL statements tracked for a request.
+     */
+
+    private static final int MAXIMUM_TRACKED_STATEMENTS = 100;
+
+    private static final ThreadLocal<RequestMetrics> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, StatementMetrics> statements = new HashMap<>();
+
+    private int queryCount;
+
+    private long rowsFetched;
+
+    private long databaseNanos;
+
+    private int rsaOperations;
+
+    private int aesOperations;
+
+    private RequestMetrics() {
+        super();
+    }
+
+    /**
+     * Start collecting metrics for the current thread.
+     *
+     * @return The metrics being collected.
+     */
+
+    public static RequestMetrics start() {
+        RequestMetrics metrics = new RequestMetrics();
+        CURRENT.set(metrics);
+        return metrics;
+    }
+
+    /**
+     * Stop collecting metrics for the current thread.
+     *
+     * @return The metrics collected, or null if collection wasn't started.
+     */
+
+    public static RequestMetrics finish() {
+        RequestMetrics metrics = CURRENT.get();
+        CURRENT.remove();
+        return metrics;
+    }
+
+    /**
+     * @return true if metrics are being collected for the current thread.
+     */
+
+    public static boolean isCollecting() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Record the execution of an SQL statement.
+     *
+     * @param sql The SQL executed.
+     * @param nanos The time taken to execute it.
+     */
+
+    public static void recordExecution(final String sql, final long nanos) {
+        RequestMetrics metrics = CURRENT.get();
+        if (metrics == null) {
+            return;
+        }
+        metrics.queryCount++;
+        metrics.databaseNanos += nanos;
+        StatementMetrics statement = metrics.getStatement(sql);
+        statement.executions++;
+        statement.nanos += nanos;
+    }
+
+    /**
+     * Record the fetching of a row from a result set.
+     *
+     * @param sql The SQL which produced the result set.
+     * @param nanos The time taken to fetch the row.
+     */
+
+    public static void recordFetch(final String sql, final long nanos) {
+        RequestMetrics metrics = CURRENT.get();
+        if (metrics == null) {
+            return;
+        }
+        metrics.rowsFetched++;
+        metrics.databaseNanos += nanos;
+        StatementMetrics statement = metrics.getStatement(sql);
+        statement.rows++;
+        statement.nanos += nanos;
+    }
+
+    /**
+     * Record an RSA encryption or decryption.
+     */
+
+    public static void recordRsaOperation() {
+        RequestMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.rsaOperations++;
+        }
+    }
+
+    /**
+     * Record an AES encryption or decryption.
+     */
+
+    public static void recordAesOperation() {
+        RequestMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.aesOperations++;
+        }
+    }
+
+    private StatementMetrics getStatement(final String sql) {
+        String key = sql == null ? OTHER_STATEMENTS : sql;
+        StatementMetrics statement = statements.get(key);
+        if (statement == null) {
+            if (statements.size() >= MAXIMUM_TRACKED_STATEMENTS) {
+                key = OTHER_STATEMENTS;
+                statement = statements.get(key);
+            }
+            if (statement == null) {
+                statement = new StatementMetrics(key);
+                statements.put(key, statement);
+            }
+        }
+        return statement;
+    }
+
+    public int getQueryCount() {
+        return queryCount;
+    }
+
+    public long getRowsFetched() {
+        return rowsFetched;
+    }
+
+    public long getDatabaseNanos() {
+        return databaseNanos;
+    }
+
+    public double getDatabaseMillis() {
+        return databaseNanos / 1000000.0;
+    }
+
+    public int getRsaOperations() {
+        return rsaOperations;
+    }
+
+    public int getAesOperations() {
+        return aesOperations;
+    }
+
+    /**
+     * @return The statements executed, most executed first.
+     */
+
+    public List<StatementMetrics> getStatements() {
+        List<StatementMetrics> sorted = new ArrayList<>(statements.values());
+        sorted.sort((first, second) -> Integer.compare(second.executions, first.executions));
+        return sorted;
+    }
+
+    @Override
+    public String toString() {
+        return "queries=" + queryCount +
+                ", rows=" + rowsFetched +
+                ", db=" + String.format("%.2f", getDatabaseMillis()) + "ms" +
+                ", rsa=" + rsaOperations +
+                ", aes=" + aesOperations;
+    }
+
+    /**
+     * The work done for a single SQL statement during a request.
+     */
+
+    public static final class StatementMetrics {
+
+        private final String sql;
+
+        private int executions;
+
+        private long rows;
+
+        private long nanos;
+
+        StatementMetrics(final String sql) {
+            this.sql = sql;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public int getExecutions() {
+            return executions;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Aggregates the metrics collected for each request by the servlet which handled
+ * it, and the statements executed across all requests.
+ */
+public final class RequestMetricsRegistry {
+
+    /**
+     * The path used for requests once the number of distinct paths reaches the
+     * maximum tracked, to stop requests for made-up URLs using up memory.
+     */
+
+    public static final String OTHER_PATHS = "(other)";
+
+    private static final int MAXIMUM_TRACKED_PATHS = 500;
+
+    private static final int MAXIMUM_TRACKED_STATEMENTS = 1000;
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final ConcurrentMap<String, ServletSummary> servlets = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, StatementSummary> statements = new ConcurrentHashMap<>();
+
+    private RequestMetricsRegistry() {
+        super();
+    }
+
+    /**
+     * Add the metrics for a request.
+     *
+     * @param path The servlet path the request was for.
+     * @param requestNanos The time taken to handle the request.
+     * @param metrics The metrics collected while handling the request.
+     */
+
+    public void record(final String path, final long requestNanos, final RequestMetrics metrics) {
+        getSummary(servlets, path, OTHER_PATHS, MAXIMUM_TRACKED_PATHS, ServletSummary::new)
+                .add(requestNanos, metrics);
+        for (RequestMetrics.StatementMetrics statement : metrics.getStatements()) {
+            getSummary(statements, statement.getSql(), RequestMetrics.OTHER_STATEMENTS, MAXIMUM_TRACKED_STATEMENTS,
+                    StatementSummary::new).add(statement);
+        }
+    }
+
+    private static <T> T getSummary(final ConcurrentMap<String, T> summaries, final String key,
+                                    final String overflowKey, final int maximumSize,
+                                    final Function<String, T> factory) {
+        T summary = summaries.get(key);
+        if (summary != null) {
+            return summary;
+        }
+        return summaries.computeIfAbsent(summaries.size() < maximumSize ? key : overflowKey, factory);
+    }
+
+    /**
+     * @return The summary for each servlet, the one with the most total time spent first.
+     */
+
+    public List<ServletSummary> getServletSummaries() {
+        List<ServletSummary> sorted = new ArrayList<>(servlets.values());
+        sorted.sort((first, second) -> Long.compare(second.totalNanos.sum(), first.totalNanos.sum()));
+        return sorted;
+    }
+
+    /**
+     * Get the statements which have taken the most time.
+     *
+     * @param count The maximum number of statements to return.
+     *
+     * @return The statements, the one with the most total time spent first.
+     */
+
+    public List<StatementSummary> getTopStatements(final int count) {
+        List<StatementSummary> sorted = new ArrayList<>(statements.values());
+        sorted.sort((first, second) -> Long.compare(second.nanos.sum(), first.nanos.sum()));
+        return sorted.size() > count ? new ArrayList<>(sorted.subList(0, count)) : sorted;
+    }
+
+    /**
+     * Discard everything recorded so far.
+     */
+
+    public void reset() {
+        servlets.clear();
+        statements.clear();
+    }
+
+    /**
+     * The aggregated metrics for requests to a single servlet.
+     */
+
+    public static final class ServletSummary {
+
+        private final String path;
+
+        private final LatencyHistogram requestLatency = new LatencyHistogram();
+
+        private final LatencyHistogram databaseLatency = new LatencyHistogram();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private final LongAdder queries = new LongAdder();
+
+        private final LongAdder rows = new LongAdder();
+
+        private final LongAdder rsaOperations = new LongAdder();
+
+        private final LongAdder aesOperations = new LongAdder();
+
+        private final AtomicLong maxQueries = new AtomicLong();
+
+        ServletSummary(final String path) {
+            this.path = path;
+        }
+
+        void add(final long requestNanos, final RequestMetrics metrics) {
+            requestLatency.record(requestNanos);
+            databaseLatency.record(metrics.getDatabaseNanos());
+            totalNanos.add(requestNanos);
+            queries.add(metrics.getQueryCount());
+            rows.add(metrics.getRowsFetched());
+            rsaOperations.add(metrics.getRsaOperations());
+            aesOperations.add(metrics.getAesOperations());
+
+            long currentMax;
+            do {
+                currentMax = maxQueries.get();
+            } while (metrics.getQueryCount() > currentMax
+                    && !maxQueries.compareAndSet(currentMax, metrics.getQueryCount()));
+        }
+
+        private double perRequest(final LongAdder total) {
+            long requests = requestLatency.getCount();
+            return requests == 0 ? 0 : (double) total.sum() / requests;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getRequests() {
+            return requestLatency.getCount();
+        }
+
+        public double getMeanMillis() {
+            return requestLatency.getMeanMillis();
+        }
+
+        public long getP50Millis() {
+            return requestLatency.getPercentileMillis(50);
+        }
+
+        public long getP90Millis() {
+            return requestLatency.getPercentileMillis(90);
+        }
+
+        public long getP99Millis() {
+            return requestLatency.getPercentileMillis(99);
+        }
+
+        public double getMaxMillis() {
+            return requestLatency.getMaxMillis();
+        }
+
+        public double getMeanDatabaseMillis() {
+            return databaseLatency.getMeanMillis();
+        }
+
+        public long getP99DatabaseMillis() {
+            return databaseLatency.getPercentileMillis(99);
+        }
+
+        public double getMeanQueries() {
+            return perRequest(queries);
+        }
+
+        public long getMaxQueries() {
+            return maxQueries.get();
+        }
+
+        public double getMeanRows() {
+            return perRequest(rows);
+        }
+
+        public double getMeanRsaOperations() {
+            return perRequest(rsaOperations);
+        }
+
+        public double getMeanAesOperations() {
+            return perRequest(aesOperations);
+        }
+    }
+
+    /**
+     * The aggregated metrics for a single SQL statement.
+     */
+
+    public static final class StatementSummary {
+
+        private final String sql;
+
+        private final LongAdder executions = new LongAdder();
+
+        private final LongAdder rows = new LongAdder();
+
+        private final LongAdder nanos = new LongAdder();
+
+        StatementSummary(final String sql) {
+            this.sql = sql;
+        }
+
+        void add(final RequestMetrics.StatementMetrics statement) {
+            executions.add(statement.getExecutions());
+            rows.add(statement.getRows());
+            nanos.add(statement.getNanos());
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getExecutions() {
+            return executions.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public double getTotalMillis() {
+            return nanos.sum() / NANOS_PER_MILLI;
+        }
+    }
+
+    //------------------------
+
+    private static class InstanceHolder {
+        final static RequestMetricsRegistry INSTANCE = new RequestMetricsRegistry();
+    }
+
+    public static RequestMetricsRegistry getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+}
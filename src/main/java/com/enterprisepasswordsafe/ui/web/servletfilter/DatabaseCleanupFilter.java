@@ -37,9 +37,12 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 
 import com.enterprisepasswordsafe.engine.database.BOMFactory;
+import com.enterprisepasswordsafe.engine.database.EventLogArchiver;
+import com.enterprisepasswordsafe.engine.database.TamperproofEventLogWriter;
 import com.enterprisepasswordsafe.engine.database.exceptions.DatabaseUnavailableException;
 import com.enterprisepasswordsafe.engine.dbpool.DatabasePool;
 import com.enterprisepasswordsafe.engine.dbpool.DatabasePoolFactory;
+import com.enterprisepasswordsafe.engine.mail.MailService;
 
 /**
  * Filter to clean up any database connections.
@@ -53,7 +56,10 @@ public final class DatabaseCleanupFilter implements Filter {
 
     @Override
     public void destroy() {
-        // Do nothing
+        EventLogArchiver.getInstance().shutdown();
+        // Send any queued Emails first as audit Email failures are recorded in the event log.
+        MailService.getInstance().shutdown();
+        TamperproofEventLogWriter.getInstance().shutdown();
     }
 
     @Override
@@ -63,6 +69,8 @@ public final class DatabaseCleanupFilter implements Filter {
     		next.doFilter(request, response);
     	} finally {
             if(isPoolInitialised()) {
+                // The archiver needs the database, so it is started once the pool is configured.
+                EventLogArchiver.getInstance().start();
                 try {
                     Connection currentConnection = BOMFactory.getCurrentConntection();
                     if (currentConnection != null && !currentConnection.isClosed()) {
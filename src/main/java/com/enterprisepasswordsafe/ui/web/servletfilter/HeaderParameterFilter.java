@@ -150,7 +150,7 @@ public final class HeaderParameterFilter
 	@Override
 	public void configurationChange(String propertyName, String propertyValue) {
 		if	( propertyName.equals(ConfigurationOption.SESSION_TIMEOUT.getPropertyName()) ) {
-			setTimeout( propertyValue );
+			setTimeout( propertyValue == null ? ConfigurationOption.SESSION_TIMEOUT.getDefaultValue() : propertyValue );
 		}
 	}
 }
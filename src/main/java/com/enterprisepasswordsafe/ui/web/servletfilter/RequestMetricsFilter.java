@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.ui.web.servletfilter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import com.enterprisepasswordsafe.engine.utils.RequestMetrics;
+import com.enterprisepasswordsafe.engine.utils.RequestMetricsRegistry;
+
+/**
+ * Filter to collect the database and cryptographic work done for each request,
+ * log it, and add it to the metrics for the servlet which handled the request.
+ *
+ * This filter must be mapped before any other filter which uses the database so
+ * the connection for the request is instrumented.
+ */
+
+public final class RequestMetricsFilter implements Filter {
+
+    /**
+     * The number of queries above which the statements for a request are logged,
+     * as the request is likely to be performing a query per object.
+     */
+
+    private static final int HIGH_QUERY_COUNT = 100;
+
+    @Override
+	public void init(final FilterConfig config) {
+        // Do nothing
+    }
+
+    @Override
+    public void destroy() {
+        // Do nothing
+    }
+
+    @Override
+	public void doFilter(ServletRequest request, ServletResponse response,
+            FilterChain next) throws ServletException, IOException {
+        if (RequestMetrics.isCollecting()) {
+            next.doFilter(request, response);
+            return;
+        }
+
+        long start = System.nanoTime();
+        RequestMetrics.start();
+        try {
+            next.doFilter(request, response);
+        } finally {
+            long requestNanos = System.nanoTime() - start;
+            RequestMetrics metrics = RequestMetrics.finish();
+            String path = ((HttpServletRequest) request).getServletPath();
+            RequestMetricsRegistry.getInstance().record(path, requestNanos, metrics);
+            log(path, requestNanos, metrics);
+        }
+    }
+
+    private void log(final String path, final long requestNanos, final RequestMetrics metrics) {
+        Logger logger = Logger.getAnonymousLogger();
+        if (metrics.getQueryCount() >= HIGH_QUERY_COUNT) {
+            List<RequestMetrics.StatementMetrics> statements = metrics.getStatements();
+            RequestMetrics.StatementMetrics mostExecuted = statements.get(0);
+            logger.log(Level.INFO, path + " took " + requestNanos / 1000000 + "ms with " + metrics
+                    + ". Most executed (" + mostExecuted.getExecutions() + " times) : " + mostExecuted.getSql());
+        } else if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, path + " took " + requestNanos / 1000000 + "ms with " + metrics);
+        }
+    }
+}
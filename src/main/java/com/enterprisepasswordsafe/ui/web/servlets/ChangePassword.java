@@ -28,9 +28,9 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.enterprisepasswordsafe.engine.database.*;
+import com.enterprisepasswordsafe.engine.mail.MailService;
 import com.enterprisepasswordsafe.engine.users.UserClassifier;
 import com.enterprisepasswordsafe.ui.web.utils.DateFormatter;
-import com.enterprisepasswordsafe.ui.web.utils.EmailerThread;
 import com.enterprisepasswordsafe.ui.web.utils.SecurityUtils;
 import com.enterprisepasswordsafe.ui.web.utils.ServletUtils;
 
@@ -129,8 +129,7 @@ public final class ChangePassword extends HttpServlet {
                 try {
                     Set<String> emailAddresses = pDAO.getEmailsOfUsersWithAccess(password);
                     String message =  "The password for "+password+" has changed.";
-                    EmailerThread emailer = new EmailerThread(emailAddresses, "Change of password", message);
-                    emailer.start();
+                    MailService.getInstance().sendDigest(emailAddresses, "Change of password", message);
                 } catch (Exception excpt) {
                     log("Error attempting to send password change notifications.",
                             excpt);
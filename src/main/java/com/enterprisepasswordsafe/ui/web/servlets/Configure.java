@@ -35,6 +35,8 @@ public final class Configure extends HttpServlet {
     private static final ConfigurationOption[] OPTIONS = {
         ConfigurationOption.SMTP_HOST,
         ConfigurationOption.SMTP_FROM,
+        ConfigurationOption.SMTP_BATCH_RECIPIENTS,
+        ConfigurationOption.SMTP_DIGEST_WINDOW,
         ConfigurationOption.LOGIN_ATTEMPTS,
         ConfigurationOption.DEFAULT_LOGIN_ACCESS,
         ConfigurationOption.SESSION_TIMEOUT,
@@ -59,6 +61,11 @@ public final class Configure extends HttpServlet {
         ConfigurationOption.SUBADMINS_HAVE_HISTORY_ACCESS,
         ConfigurationOption.EDIT_USER_MINIMUM_USER_LEVEL,
         ConfigurationOption.VOTE_ON_OWN_RA_REQUESTS,
+        ConfigurationOption.SEARCH_INDEX_ENABLED,
+        ConfigurationOption.PASSWORD_DATA_REENCODE,
+        ConfigurationOption.EVENT_LOG_PAGE_SIZE,
+        ConfigurationOption.EVENT_LOG_RETENTION_DAYS,
+        ConfigurationOption.EVENT_LOG_HASH_CHAIN,
 	};
 
     @Override
@@ -129,6 +136,24 @@ public final class Configure extends HttpServlet {
             return false;
         }
 
+        String digestWindow = request.getParameter(ConfigurationOption.SMTP_DIGEST_WINDOW.getPropertyName());
+        if(!StringUtils.isNumber(digestWindow)) {
+            handleError(request, response, "The notification digest window must be an integer.");
+            return false;
+        }
+
+        String eventLogPageSize = request.getParameter(ConfigurationOption.EVENT_LOG_PAGE_SIZE.getPropertyName());
+        if(!StringUtils.isNumber(eventLogPageSize)) {
+            handleError(request, response, "The number of event log entries per page must be an integer.");
+            return false;
+        }
+
+        String eventLogRetention = request.getParameter(ConfigurationOption.EVENT_LOG_RETENTION_DAYS.getPropertyName());
+        if(!StringUtils.isNumber(eventLogRetention)) {
+            handleError(request, response, "The number of days to keep event log entries before archiving them must be an integer.");
+            return false;
+        }
+
         return true;
     }
 
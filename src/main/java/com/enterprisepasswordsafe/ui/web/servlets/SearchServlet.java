@@ -33,7 +33,9 @@ import com.enterprisepasswordsafe.engine.database.actions.search.NotesContainsSe
 import com.enterprisepasswordsafe.engine.database.actions.search.SearchTest;
 import com.enterprisepasswordsafe.engine.database.actions.search.SystemContainsSearchTest;
 import com.enterprisepasswordsafe.engine.database.actions.search.UsernameContainsSearchTest;
+import com.enterprisepasswordsafe.engine.utils.HierarchySearcher;
 import com.enterprisepasswordsafe.ui.web.utils.SecurityUtils;
+import com.enterprisepasswordsafe.ui.web.utils.ServletUtils;
 
 /**
  * Perform a search on the password database using the criteria supplied
@@ -77,7 +79,10 @@ public class SearchServlet extends HttpServlet {
                 node = hnDAO.getById(HierarchyNode.ROOT_NODE_ID);
             }
 
-            hnDAO.processObjectNodes(node, thisUser, search, true);
+            if (!HierarchySearcher.getInstance().searchHierarchy(hnDAO, node, thisUser, search, true)) {
+                ServletUtils.getInstance().generateErrorMessage(request,
+                        "The search took too long to complete, only some of the matching passwords are shown.");
+            }
 
             request.setAttribute("passwordmap", search.getResults());
             request.setAttribute("resultcount", Integer.toString(search.getResultCount()));
@@ -30,6 +30,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.enterprisepasswordsafe.engine.configuration.JDBCConfiguration;
+import com.enterprisepasswordsafe.engine.database.ConfigurationDAO;
+import com.enterprisepasswordsafe.engine.database.HierarchyNodeDAO;
 import com.enterprisepasswordsafe.engine.database.schema.SchemaVersion;
 import com.enterprisepasswordsafe.engine.dbabstraction.SupportedDatabase;
 import com.enterprisepasswordsafe.engine.dbpool.DatabasePool;
@@ -72,6 +74,8 @@ public class VerifyJDBCConfiguration extends HttpServlet {
                 verifiedConfiguration = jdbcConfig;
                 DatabasePoolFactory.setConfiguration(jdbcConfig);
                 updateSchema();
+                ConfigurationDAO.getInstance().invalidate();
+                HierarchyNodeDAO.getInstance().invalidateTree();
                 response.sendRedirect(request.getContextPath() + LOGIN_PAGE);
                 return;
             }
@@ -183,6 +183,9 @@ public final class VerifyLogin extends LoginAuthenticationServlet {
 
 			storeUserInformation(session, theUser);
 			storeTimeoutInformation(session);
+			if (PasswordPayloadReencoder.isEnabled()) {
+				PasswordPayloadReencoder.reencodeInBackground(theUser);
+			}
 			String redirect = response.encodeRedirectURL(request.getContextPath() + NEXT_PAGE_REDIRECT);
 			response.sendRedirect(redirect);
 		} catch (DatabaseUnavailableException e) {
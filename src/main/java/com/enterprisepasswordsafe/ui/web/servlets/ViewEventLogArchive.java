@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.ui.web.servlets;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.enterprisepasswordsafe.engine.database.EventLogArchive;
+import com.enterprisepasswordsafe.engine.database.EventLogArchiver;
+import com.enterprisepasswordsafe.engine.utils.DateFormatter;
+import com.enterprisepasswordsafe.ui.web.utils.ServletUtils;
+
+
+/**
+ * Servlet to show the state of the event log archive and start archiving or verification.
+ */
+
+public final class ViewEventLogArchive extends HttpServlet {
+
+    /**
+     * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+     */
+	@Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+    	throws IOException, ServletException {
+        try {
+            request.setAttribute("status", getStatus());
+        } catch (SQLException e) {
+            throw new ServletException("There was a problem obtaining the archive details.", e);
+        }
+        request.getRequestDispatcher("/admin/event_log_archive.jsp").forward(request, response);
+    }
+
+    /**
+     * Starts an archiving run, or verifies the archive and shows the results.
+     *
+     * @see javax.servlet.http.HttpServlet#doPost(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+     */
+    @Override
+    protected void doPost(final HttpServletRequest request, final HttpServletResponse response)
+        throws IOException, ServletException {
+        if ("verify".equals(request.getParameter("action"))) {
+            try {
+                request.setAttribute("verification", EventLogArchive.getInstance().verify());
+            } catch (SQLException | GeneralSecurityException e) {
+                throw new ServletException("There was a problem verifying the archive.", e);
+            }
+            doGet(request, response);
+            return;
+        }
+
+        ServletUtils servletUtils = ServletUtils.getInstance();
+        if (EventLogArchiver.getCutoff() == null) {
+            servletUtils.generateErrorMessage(request,
+                    "Archiving is disabled. Set the number of days to keep event log entries in the configuration.");
+        } else if (EventLogArchiver.getInstance().runNow()) {
+            servletUtils.generateMessage(request, "Archiving has been started.");
+        } else {
+            servletUtils.generateErrorMessage(request, "The archiver is not running.");
+        }
+        response.sendRedirect(request.getContextPath() + "/admin/EventLogArchive");
+    }
+
+    private Map<String, String> getStatus()
+            throws SQLException {
+        Map<String, String> status = new LinkedHashMap<>();
+        EventLogArchive.Summary summary = EventLogArchive.getInstance().getSummary();
+        status.put("Archived entries", Long.toString(summary.getEntryCount()));
+        status.put("Segments", Long.toString(summary.getSegmentCount()));
+        if (summary.getSegmentCount() > 0) {
+            status.put("Oldest archived entry", DateFormatter.convertToDateTimeString(summary.getOldestEntry()));
+            status.put("Newest archived entry", DateFormatter.convertToDateTimeString(summary.getNewestEntry()));
+        }
+
+        Long cutoff = EventLogArchiver.getCutoff();
+        status.put("Archiving entries before", cutoff == null ? "Disabled" : DateFormatter.convertToDateTimeString(cutoff));
+
+        EventLogArchiver archiver = EventLogArchiver.getInstance();
+        if (archiver.isRunning()) {
+            status.put("Current run", "archiving up to " + DateFormatter.convertToDateTimeString(archiver.getArchivingUpTo())
+                    + ", entries=" + archiver.getCurrentRunEntries() + ", segments=" + archiver.getCurrentRunSegments());
+        }
+        if (archiver.getLastRunTime() > 0) {
+            status.put("Last completed run", DateFormatter.convertToDateTimeString(archiver.getLastRunTime())
+                    + ", entries=" + archiver.getLastRunEntries());
+        }
+        if (archiver.getLastError() != null) {
+            status.put("Last error", archiver.getLastError());
+        }
+        return status;
+    }
+
+    /**
+     * @see javax.servlet.Servlet#getServletInfo()
+     */
+    @Override
+	public String getServletInfo() {
+        return "Servlet to show and manage the event log archive";
+    }
+}
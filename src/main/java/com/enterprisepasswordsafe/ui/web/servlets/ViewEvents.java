@@ -17,22 +17,20 @@
 package com.enterprisepasswordsafe.ui.web.servlets;
 
 import java.io.IOException;
+import java.net.URLEncoder;
 import java.security.GeneralSecurityException;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.List;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import com.enterprisepasswordsafe.engine.database.ConfigurationDAO;
-import com.enterprisepasswordsafe.engine.database.ConfigurationOption;
+import com.enterprisepasswordsafe.engine.database.EventLogPage;
 import com.enterprisepasswordsafe.engine.database.TamperproofEventLogDAO;
-import com.enterprisepasswordsafe.engine.database.TamperproofEventLogDAO.EventsForDay;
 import com.enterprisepasswordsafe.engine.database.User;
 import com.enterprisepasswordsafe.ui.web.utils.SecurityUtils;
 import com.enterprisepasswordsafe.ui.web.utils.ServletUtils;
@@ -40,13 +38,14 @@ import com.enterprisepasswordsafe.ui.web.utils.ServletUtils;
 public final class ViewEvents extends HttpServlet {
 
     private static final String WEB_UI_PAGE = "/admin/view_events.jsp";
-    private static final String CSV_EXPORT_PAGE = "/admin/export_events_csv.jsp";
+    private static final String CSV_EXPORT_URL = "/admin/EventLog.csv";
 
     private static final String DATE_FORMAT = "dd-MMM-yyyy";
 
     private static final String START_DATE_PARAMETER = "startdate";
     private static final String END_DATE_PARAMETER = "enddate";
     private static final String USER_LIMIT_PARAMETER = "ulimit";
+    private static final String CURSOR_PARAMETER = "cursor";
 
     @Override
     public void doGet(final HttpServletRequest request, final HttpServletResponse response)
@@ -70,24 +69,57 @@ public final class ViewEvents extends HttpServlet {
         User remoteUser =
                 getCurrentUserAndStoreInRequest(request);
 
+        if (isCSVExport(request)) {
+            redirectToExport(request, response, sdf, startDate, endDate, userLimit, passwordLimit);
+            return;
+        }
+
         try {
-            List<EventsForDay> events = TamperproofEventLogDAO.getInstance().
-                    getEventsForDateRange(
+            EventLogPage page = TamperproofEventLogDAO.getInstance().
+                    getEventsPage(
                             startDate.getTimeInMillis(),
                             endDate.getTimeInMillis(),
                             userLimit,
                             passwordLimit,
                             remoteUser,
                             false,
-                            true
+                            true,
+                            request.getParameter(CURSOR_PARAMETER)
                     );
-            request.setAttribute("events", events);
+            request.setAttribute("events", page.getDays());
+            request.setAttribute("nextCursor", page.getNextCursor());
         } catch (SQLException | GeneralSecurityException e) {
             throw new ServletException(e);
         }
 
-        String nextPage = determineNextPage(request);
-        request.getRequestDispatcher(nextPage).forward(request, response);
+        request.getRequestDispatcher(WEB_UI_PAGE).forward(request, response);
+    }
+
+    /**
+     * Sends the browser to the CSV export of the events, which streams the whole range
+     * rather than a single page.
+     */
+
+    private void redirectToExport(final HttpServletRequest request, final HttpServletResponse response,
+                                  final SimpleDateFormat sdf, final Calendar startDate, final Calendar endDate,
+                                  final String userLimit, final String passwordLimit)
+            throws IOException {
+        StringBuilder url = new StringBuilder(request.getContextPath());
+        url.append(CSV_EXPORT_URL);
+        url.append('?').append(START_DATE_PARAMETER).append('=').append(encode(sdf.format(startDate.getTime())));
+        url.append('&').append(END_DATE_PARAMETER).append('=').append(encode(sdf.format(endDate.getTime())));
+        if (userLimit != null) {
+            url.append('&').append(USER_LIMIT_PARAMETER).append('=').append(encode(userLimit));
+        }
+        if (passwordLimit != null) {
+            url.append('&').append(SharedParameterNames.PASSWORD_ID_PARAMETER).append('=').append(encode(passwordLimit));
+        }
+        response.sendRedirect(url.toString());
+    }
+
+    private String encode(final String value)
+            throws IOException {
+        return URLEncoder.encode(value, "UTF-8");
     }
 
     private User getCurrentUserAndStoreInRequest(HttpServletRequest request)
@@ -152,27 +184,8 @@ public final class ViewEvents extends HttpServlet {
         return cal;
     }
 
-    private String determineNextPage(HttpServletRequest request)
-        throws ServletException {
-        if( isCSVExport(request) ) {
-            prepareExport(request);
-            return CSV_EXPORT_PAGE;
-        }
-
-        return WEB_UI_PAGE;
-    }
-
     private boolean isCSVExport(final HttpServletRequest request) {
         String isExport = request.getParameter("export");
         return (isExport != null && !isExport.isEmpty() && isExport.charAt(0) == 'Y');
     }
-
-    private void prepareExport(HttpServletRequest request)
-        throws ServletException {
-        try {
-            request.setAttribute("delimiter", ConfigurationDAO.getInstance().get(ConfigurationOption.REPORT_SEPARATOR));
-        } catch (SQLException e) {
-            throw new ServletException(e);
-        }
-    }
 }
@@ -18,7 +18,6 @@ package com.enterprisepasswordsafe.ui.web.servlets;
 
 import java.security.GeneralSecurityException;
 import java.util.Calendar;
-import java.util.List;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -26,7 +25,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.enterprisepasswordsafe.engine.database.*;
-import com.enterprisepasswordsafe.engine.database.TamperproofEventLogDAO.EventsForDay;
 import com.enterprisepasswordsafe.engine.users.UserClassifier;
 import com.enterprisepasswordsafe.ui.web.utils.DateFormatter;
 import com.enterprisepasswordsafe.ui.web.utils.SecurityUtils;
@@ -90,13 +88,14 @@ public final class ViewObjectEvents extends HttpServlet {
 	    	request.setAttribute("object.name", thePassword.toString());
 
 
-	        List<EventsForDay> events = TamperproofEventLogDAO.getInstance().
-	        					getEventsForDateRange( startDate, endDate, null,
-	    							passwordLimit, remoteUser, true, false);
+	        EventLogPage page = TamperproofEventLogDAO.getInstance().
+	        					getEventsPage( startDate, endDate, null,
+	    							passwordLimit, remoteUser, true, false, request.getParameter("cursor"));
 
 	        request.setAttribute(SharedParameterNames.PASSWORD_ID_PARAMETER, passwordLimit);
 
-	        request.setAttribute("events", events);
+	        request.setAttribute("events", page.getDays());
+	        request.setAttribute("nextCursor", page.getNextCursor());
 	        request.setAttribute("viewing.user", remoteUser);
 
 	        Calendar cal = Calendar.getInstance();
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.ui.web.servlets;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.enterprisepasswordsafe.engine.database.DatabaseAccessManager;
+import com.enterprisepasswordsafe.engine.database.TamperproofEventLogWriter;
+import com.enterprisepasswordsafe.engine.dbpool.DatabasePoolFactory;
+import com.enterprisepasswordsafe.engine.mail.MailService;
+import com.enterprisepasswordsafe.engine.utils.HierarchySearcher;
+import com.enterprisepasswordsafe.engine.utils.RequestMetricsRegistry;
+
+
+/**
+ * Servlet to show the request metrics for each servlet and the background components.
+ */
+
+public final class ViewRequestMetrics extends HttpServlet {
+
+    /**
+     * The number of statements shown in the list of most expensive statements.
+     */
+
+    private static final int TOP_STATEMENT_COUNT = 25;
+
+    /**
+     * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+     */
+	@Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+    	throws IOException, ServletException {
+        RequestMetricsRegistry registry = RequestMetricsRegistry.getInstance();
+        request.setAttribute("servlets", registry.getServletSummaries());
+        request.setAttribute("statements", registry.getTopStatements(TOP_STATEMENT_COUNT));
+        try {
+            request.setAttribute("components", getComponentStatistics());
+        } catch (SQLException | ClassNotFoundException e) {
+            throw new ServletException("There was a problem obtaining the database pool statistics.", e);
+        }
+        request.getRequestDispatcher("/admin/request_metrics.jsp").forward(request, response);
+    }
+
+    /**
+     * Clears the metrics collected so far.
+     *
+     * @see javax.servlet.http.HttpServlet#doPost(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+     */
+    @Override
+    protected void doPost(final HttpServletRequest request, final HttpServletResponse response)
+        throws IOException {
+        RequestMetricsRegistry.getInstance().reset();
+        response.sendRedirect(request.getContextPath() + "/admin/RequestMetrics");
+    }
+
+    private Map<String, String> getComponentStatistics()
+            throws SQLException, ClassNotFoundException {
+        Map<String, String> components = new LinkedHashMap<>();
+        if (DatabasePoolFactory.isConfigured()) {
+            components.put("Database pool", DatabasePoolFactory.getInstance().getStatistics().toString());
+        }
+        components.put("Prepared statement cache", "hits=" + DatabaseAccessManager.getTotalStatementCacheHits()
+                + ", misses=" + DatabaseAccessManager.getTotalStatementCacheMisses());
+
+        TamperproofEventLogWriter writer = TamperproofEventLogWriter.getInstance();
+        components.put("Event log writer", "queued=" + writer.getQueueDepth() + "/" + writer.getQueueCapacity()
+                + ", written=" + writer.getWrittenCount() + ", batches=" + writer.getBatchCount()
+                + ", direct=" + writer.getDirectWriteCount() + ", failed=" + writer.getFailedWriteCount()
+                + ", abandoned=" + writer.getAbandonedCount() + (writer.isFailing() ? ", REFUSING ENTRIES" : ""));
+        components.put("Event log write latency", writer.getWriteLatency().toString());
+
+        MailService mailService = MailService.getInstance();
+        components.put("Mail service", "pending=" + mailService.getPendingCount()
+                + ", messages=" + mailService.getSentMessageCount()
+                + ", recipients=" + mailService.getSentRecipientCount()
+                + ", coalesced=" + mailService.getCoalescedCount() + ", retries=" + mailService.getRetryCount()
+                + ", failed=" + mailService.getFailedCount() + ", connections=" + mailService.getConnectionCount()
+                + ", open=" + mailService.getOpenConnectionCount());
+
+        HierarchySearcher searcher = HierarchySearcher.getInstance();
+        components.put("Hierarchy searches", "active=" + searcher.getActiveSearches()
+                + ", workers=" + searcher.getActiveWorkers() + ", queued=" + searcher.getQueuedObjects()
+                + ", objects=" + searcher.getObjectsProcessed() + ", timed out=" + searcher.getTimedOutSearches()
+                + ", cancelled=" + searcher.getCancelledSearches());
+        components.put("Hierarchy search latency", searcher.getSearchLatency().toString());
+        return components;
+    }
+
+    /**
+     * @see javax.servlet.Servlet#getServletInfo()
+     */
+    @Override
+	public String getServletInfo() {
+        return "Servlet to show the performance metrics for the system";
+    }
+}
@@ -16,8 +16,7 @@
 
 package com.enterprisepasswordsafe.ui.web.servlets.exporters;
 
-import java.io.PrintWriter;
-import java.sql.SQLException;
+import java.io.IOException;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -26,9 +25,16 @@ import javax.servlet.http.HttpServletResponse;
 import com.enterprisepasswordsafe.engine.database.*;
 import com.enterprisepasswordsafe.engine.database.actions.PasswordAction;
 import com.enterprisepasswordsafe.ui.web.utils.SecurityUtils;
+import org.apache.commons.csv.CSVPrinter;
 
 public final class AllPasswordsCSV extends BaseExporter {
 
+    /**
+     * The number of passwords written between each flush of the output.
+     */
+
+    private static final int FLUSH_INTERVAL = 500;
+
  	@Override
     protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
     	throws ServletException {
@@ -37,27 +43,21 @@ public final class AllPasswordsCSV extends BaseExporter {
 
         try {
 	        User user = SecurityUtils.getRemoteUser(request);
-	        TamperproofEventLogDAO.getInstance().create(
-					TamperproofEventLog.LOG_LEVEL_REPORTS,
-	        		user,
-	        		null,
-	                "Exported all the passwords using the CSV Report",
-	                true
-	    		);
-
-	        PrintWriter pw = response.getWriter();
-	        String separator = getSeparator();
-	        pw.print("Username");
-	        pw.print(separator);
-	        pw.print("Password");
-	        pw.print(separator);
-	        pw.print("Location");
-	        pw.print(separator);
-	        pw.print("Notes");
-	        pw.print(separator);
-	        pw.println("Status");
-	        PasswordDumper dumper = new PasswordDumper(pw);
-	        new PasswordProcessor().processAllPasswords(user, dumper);
+	        logExportStarted(user, "Exported all the passwords using the CSV Report");
+	        long start = System.nanoTime();
+	        PasswordDumper dumper = null;
+	        boolean completed = false;
+	        try {
+	            CSVPrinter printer = createPrinter(response);
+	            printer.printRecord("Username", "Password", "Location", "Notes", "Status");
+	            dumper = new PasswordDumper(printer);
+	            new PasswordProcessor().processAllPasswords(user, dumper);
+	            printer.flush();
+	            completed = true;
+	        } finally {
+	            logExport(user, "Exported all the passwords using the CSV Report",
+	                    dumper == null ? 0 : dumper.rowCount, start, completed);
+	        }
         } catch(Exception e) {
         	throw new ServletException("The passwords could not be exported due to an error.", e);
         }
@@ -68,53 +68,33 @@ public final class AllPasswordsCSV extends BaseExporter {
         return "Exports all of the passwords in a system.";
     }
 
-    private final class PasswordDumper implements PasswordAction {
+    private static final class PasswordDumper implements PasswordAction {
 
-        private final PrintWriter outputStream;
+        private final CSVPrinter printer;
 
-        private final String separator;
+        private int rowCount = 0;
 
-        private PasswordDumper(final PrintWriter newOutputStream) throws SQLException {
-            outputStream = newOutputStream;
-            separator = getSeparator();
+        private PasswordDumper(final CSVPrinter newPrinter) {
+            printer = newPrinter;
         }
 
         @Override
-		public void process(final HierarchyNode node, final Password password) throws Exception {
+		public void process(final HierarchyNode node, final Password password) throws IOException {
             if (password == null || password.getPasswordType() == Password.TYPE_PERSONAL) {
                 return;
             }
 
-            outputStream.print(password.getUsername());
-            outputStream.print(separator);
-            outputStream.print(password.getPassword());
-            outputStream.print(separator);
-            outputStream.print(password.getLocation());
-            outputStream.print(separator);
-
-            String notes = password.getNotes();
-            int notesSize = notes.length();
-            StringBuffer store = new StringBuffer(notesSize);
-            for (int i = 0; i < notesSize; i++) {
-                char thisChar = notes.charAt(i);
-                if (Character.isWhitespace(thisChar)) {
-                    store.append(' ');
-                } else if (thisChar == ',') {
-                    store.append(' ');
-                } else {
-                    store.append(thisChar);
-                }
-
-            }
+            printer.printRecord(
+                    password.getUsername(),
+                    password.getPassword(),
+                    password.getLocation(),
+                    password.getNotes(),
+                    password.isEnabled() ? "Enabled" : "Disabled");
 
-            outputStream.print(store.toString());
-            outputStream.print(separator);
-            if (password.isEnabled()) {
-                outputStream.print("Enabled");
-            } else {
-                outputStream.print("Disabled");
+            rowCount++;
+            if (rowCount % FLUSH_INTERVAL == 0) {
+                printer.flush();
             }
-            outputStream.println();
         }
     }
 }
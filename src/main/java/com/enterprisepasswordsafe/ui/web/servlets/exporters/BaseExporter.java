@@ -16,11 +16,24 @@
 
 package com.enterprisepasswordsafe.ui.web.servlets.exporters;
 
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
 import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletResponse;
 
 import com.enterprisepasswordsafe.engine.database.ConfigurationDAO;
 import com.enterprisepasswordsafe.engine.database.ConfigurationOption;
+import com.enterprisepasswordsafe.engine.database.TamperproofEventLog;
+import com.enterprisepasswordsafe.engine.database.TamperproofEventLogDAO;
+import com.enterprisepasswordsafe.engine.database.User;
 import com.enterprisepasswordsafe.ui.web.servlets.PasswordSafeBaseServlet;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
 
 public abstract class BaseExporter extends PasswordSafeBaseServlet {
 
@@ -28,4 +41,78 @@ public abstract class BaseExporter extends PasswordSafeBaseServlet {
 		throws SQLException {
 		return ConfigurationDAO.getValue(ConfigurationOption.REPORT_SEPARATOR);
 	}
+
+	/**
+	 * Create a CSVPrinter which writes to the response using the configured separator.
+	 * Separators longer than a single character can't be used by the RFC 4180 format,
+	 * so a comma is used in their place.
+	 */
+
+	protected CSVPrinter createPrinter(final HttpServletResponse response)
+		throws IOException, SQLException {
+		CSVFormat format = CSVFormat.RFC4180;
+		String separator = getSeparator();
+		if (separator != null && separator.length() == 1) {
+			format = format.withDelimiter(separator.charAt(0));
+		}
+		return new CSVPrinter(response.getWriter(), format);
+	}
+
+	/**
+	 * Record the start of an export in the event log. This must be called before any
+	 * data is sent so an export can not take place without being audited.
+	 *
+	 * @param user The user performing the export.
+	 * @param description The description of the export.
+	 *
+	 * @throws SQLException Thrown if the event could not be recorded, in which case the export must not proceed.
+	 */
+
+	protected void logExportStarted(final User user, final String description)
+		throws SQLException, GeneralSecurityException, UnsupportedEncodingException {
+		TamperproofEventLogDAO.getInstance().create(
+				TamperproofEventLog.LOG_LEVEL_REPORTS,
+				user,
+				null,
+				description + " (started)",
+				true
+		);
+	}
+
+	/**
+	 * Record the end of an export in the event log along with how much was exported
+	 * and how quickly. A failure to record the event is logged rather than thrown so
+	 * it does not hide any error which stopped the export.
+	 *
+	 * @param user The user who performed the export.
+	 * @param description The description of the export.
+	 * @param rowCount The number of rows exported.
+	 * @param startNanos The System.nanoTime() at which the export started.
+	 * @param completed Whether or not the export completed.
+	 */
+
+	protected void logExport(final User user, final String description, final int rowCount,
+							 final long startNanos, final boolean completed) {
+		long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+		StringBuilder message = new StringBuilder(description);
+		message.append(completed ? " (" : " (failed after ");
+		message.append(rowCount);
+		message.append(" rows in ");
+		message.append(elapsedMillis);
+		message.append("ms, ");
+		message.append(rowCount * 1000L / elapsedMillis);
+		message.append(" rows/s)");
+
+		try {
+			TamperproofEventLogDAO.getInstance().create(
+					TamperproofEventLog.LOG_LEVEL_REPORTS,
+					user,
+					null,
+					message.toString(),
+					true
+			);
+		} catch (SQLException | GeneralSecurityException | UnsupportedEncodingException | RuntimeException e) {
+			Logger.getAnonymousLogger().log(Level.SEVERE, "Unable to record the end of an export: " + message, e);
+		}
+	}
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.ui.web.servlets.exporters;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.enterprisepasswordsafe.engine.database.TamperproofEventLogDAO;
+import com.enterprisepasswordsafe.engine.database.User;
+import com.enterprisepasswordsafe.engine.utils.DateFormatter;
+import com.enterprisepasswordsafe.ui.web.servlets.SharedParameterNames;
+import com.enterprisepasswordsafe.ui.web.utils.SecurityUtils;
+import org.apache.commons.csv.CSVPrinter;
+
+/**
+ * Servlet to export the events in a date range. The events are written as they are
+ * read, a page at a time, so any size of range can be exported.
+ */
+
+public final class EventLogCSV extends BaseExporter {
+
+    private static final String DATE_FORMAT = "dd-MMM-yyyy";
+
+    private static final String START_DATE_PARAMETER = "startdate";
+    private static final String END_DATE_PARAMETER = "enddate";
+    private static final String USER_LIMIT_PARAMETER = "ulimit";
+
+    private static final String TIME_FORMAT = "HH:mm:ss";
+
+ 	@Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+    	throws ServletException {
+        response.setContentType("text/csv");
+        response.setHeader("Content-Disposition", "attachment; filename=\"EPS_Events.csv\"");
+
+        try {
+	        User user = SecurityUtils.getRemoteUser(request);
+	        long startDate = DateFormatter.stripTime(getDate(request, START_DATE_PARAMETER));
+	        Calendar endDate = Calendar.getInstance();
+	        endDate.setTimeInMillis(DateFormatter.stripTime(getDate(request, END_DATE_PARAMETER)));
+	        endDate.add(Calendar.DAY_OF_MONTH, 1);
+	        endDate.add(Calendar.MILLISECOND, -1);
+	        String userLimit = getLimit(request, USER_LIMIT_PARAMETER);
+	        String passwordLimit = getLimit(request, SharedParameterNames.PASSWORD_ID_PARAMETER);
+
+	        SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
+	        SimpleDateFormat timeFormat = new SimpleDateFormat(TIME_FORMAT);
+	        logExportStarted(user, "Exported the event log");
+	        long start = System.nanoTime();
+	        AtomicInteger rowCount = new AtomicInteger();
+	        boolean completed = false;
+	        try {
+	            CSVPrinter printer = createPrinter(response);
+	            printer.printRecord("Date", "Time", "Username", "Password", "Event", "Tamperstamp Status");
+	            TamperproofEventLogDAO.getInstance().processEventsForDateRange(startDate, endDate.getTimeInMillis(),
+	                    userLimit, passwordLimit, user, false, true, entry -> {
+	                        printer.printRecord(
+	                                dateFormat.format(entry.getDate()),
+	                                timeFormat.format(entry.getDate()),
+	                                entry.getUsername() == null ? " " : entry.getUsername(),
+	                                entry.getItem() == null ? "" : entry.getItem(),
+	                                entry.getHumanReadableMessage(),
+	                                getTamperstampStatus(entry.getTamperstampStatus()));
+	                        rowCount.incrementAndGet();
+	                    });
+	            printer.flush();
+	            completed = true;
+	        } finally {
+	            logExport(user, "Exported the event log", rowCount.get(), start, completed);
+	        }
+        } catch(Exception e) {
+        	throw new ServletException("The events could not be exported due to an error.", e);
+        }
+    }
+
+    private String getTamperstampStatus(final int status) {
+        switch (status) {
+            case -1:
+                return "Unavailable";
+            case 0:
+                return "Untampered";
+            default:
+                return "Tampered";
+        }
+    }
+
+    private String getLimit(final HttpServletRequest request, final String parameter) {
+        String value = request.getParameter(parameter);
+        if (value == null || value.isEmpty() || value.equals("-1")) {
+            return null;
+        }
+        return value;
+    }
+
+    private long getDate(final HttpServletRequest request, final String parameter) {
+        String value = request.getParameter(parameter);
+        if (value == null || value.isEmpty()) {
+            return DateFormatter.getNow();
+        }
+
+        try {
+            return new SimpleDateFormat(DATE_FORMAT).parse(value).getTime();
+        } catch (ParseException e) {
+            return DateFormatter.getNow();
+        }
+    }
+
+    @Override
+	public String getServletInfo() {
+        return "Exports the event log.";
+    }
+}
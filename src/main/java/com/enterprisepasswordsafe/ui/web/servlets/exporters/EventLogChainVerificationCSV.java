@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.ui.web.servlets.exporters;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.enterprisepasswordsafe.engine.database.EventLogChainVerifier;
+import com.enterprisepasswordsafe.engine.database.User;
+import com.enterprisepasswordsafe.engine.utils.DateFormatter;
+import com.enterprisepasswordsafe.ui.web.utils.SecurityUtils;
+import org.apache.commons.csv.CSVPrinter;
+
+/**
+ * Servlet to verify the event log hash chain and report any problems found.
+ */
+
+public final class EventLogChainVerificationCSV extends BaseExporter {
+
+    /**
+     * The parameter which, when set to Y, verifies the whole chain instead of starting
+     * from the last checkpoint.
+     */
+
+    private static final String FULL_PARAMETER = "full";
+
+ 	@Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+    	throws ServletException {
+        response.setContentType("text/csv");
+        response.setHeader("Content-Disposition", "attachment; filename=\"EventLogChainVerification.csv\"");
+
+        try {
+	        User user = SecurityUtils.getRemoteUser(request);
+	        boolean fromCheckpoint = !"Y".equalsIgnoreCase(request.getParameter(FULL_PARAMETER));
+
+	        long start = System.nanoTime();
+	        AtomicInteger rowCount = new AtomicInteger();
+	        boolean completed = false;
+	        try {
+	            CSVPrinter printer = createPrinter(response);
+	            printer.printRecord("Sequence", "Date", "Problem");
+	            EventLogChainVerifier.Result result = EventLogChainVerifier.getInstance().verify(fromCheckpoint,
+	                    problem -> {
+	                        printer.printRecord(
+	                                problem.getSequence(),
+	                                problem.getDateTime() == 0 ? "" : DateFormatter.convertToDateTimeString(problem.getDateTime()),
+	                                problem.getDescription());
+	                        printer.flush();
+	                        rowCount.incrementAndGet();
+	                    });
+	            printer.println();
+	            printer.printRecord("Started after entry",
+	                    result.getCheckpointSequence() == -1 ? "" : result.getCheckpointSequence());
+	            printer.printRecord("Last entry", result.getLastSequence() == -1 ? "" : result.getLastSequence());
+	            printer.printRecord("Entries verified", result.getVerifiedCount());
+	            printer.printRecord("Problems found", result.getProblemCount());
+	            printer.flush();
+	            completed = true;
+	        } finally {
+	            logExport(user, "Verified the event log hash chain", rowCount.get(), start, completed);
+	        }
+        } catch(Exception e) {
+        	throw new ServletException("The event log chain could not be verified due to an error.", e);
+        }
+    }
+
+    @Override
+	public String getServletInfo() {
+        return "Verifies the event log hash chain.";
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.ui.web.servlets.exporters;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.enterprisepasswordsafe.engine.database.TamperproofEventLog;
+import com.enterprisepasswordsafe.engine.database.TamperproofEventLogVerifier;
+import com.enterprisepasswordsafe.engine.database.User;
+import com.enterprisepasswordsafe.engine.utils.DateFormatter;
+import com.enterprisepasswordsafe.ui.web.utils.SecurityUtils;
+import org.apache.commons.csv.CSVPrinter;
+
+/**
+ * Servlet to verify the tamperstamps in the event log and report the results for each day.
+ */
+
+public final class EventLogVerificationCSV extends BaseExporter {
+
+    private static final String DATE_FORMAT = "dd-MMM-yyyy";
+
+    private static final String START_DATE_PARAMETER = "startdate";
+    private static final String END_DATE_PARAMETER = "enddate";
+
+    /**
+     * The number of days verified if no start date is given.
+     */
+
+    private static final int DEFAULT_DAYS = 30;
+
+ 	@Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+    	throws ServletException {
+        response.setContentType("text/csv");
+        response.setHeader("Content-Disposition", "attachment; filename=\"EventLogVerification.csv\"");
+
+        try {
+	        User user = SecurityUtils.getRemoteUser(request);
+	        Calendar endDate = Calendar.getInstance();
+	        endDate.setTimeInMillis(DateFormatter.stripTime(getDate(request, END_DATE_PARAMETER, DateFormatter.getNow())));
+	        endDate.add(Calendar.DAY_OF_MONTH, 1);
+	        endDate.add(Calendar.MILLISECOND, -1);
+	        long startDate = getDate(request, START_DATE_PARAMETER, DateFormatter.getDateInPast(DEFAULT_DAYS - 1));
+	        startDate = DateFormatter.stripTime(startDate);
+
+	        long start = System.nanoTime();
+	        AtomicInteger rowCount = new AtomicInteger();
+	        boolean completed = false;
+	        try {
+	            CSVPrinter printer = createPrinter(response);
+	            printer.printRecord("Date", "Entries", "Valid", "Invalid", "Unverifiable", "Previously Verified",
+	                    "Invalid Entries");
+	            TamperproofEventLogVerifier.getInstance().verify(user, startDate, endDate.getTimeInMillis(), result -> {
+	                StringBuilder invalidEntries = new StringBuilder();
+	                for (TamperproofEventLog entry : result.getInvalidEntries()) {
+	                    if (invalidEntries.length() > 0) {
+	                        invalidEntries.append("; ");
+	                    }
+	                    invalidEntries.append(DateFormatter.convertToDateTimeString(entry.getDateTime()));
+	                    invalidEntries.append(' ');
+	                    invalidEntries.append(entry.getEvent());
+	                }
+	                printer.printRecord(
+	                        result.getHumanReadableDate(),
+	                        result.getEntryCount(),
+	                        result.getValidCount(),
+	                        result.getInvalidCount(),
+	                        result.getUnverifiableCount(),
+	                        result.getCheckpointedCount(),
+	                        invalidEntries.toString());
+	                printer.flush();
+	                rowCount.incrementAndGet();
+	            });
+	            completed = true;
+	        } finally {
+	            logExport(user, "Verified the event log tamperstamps", rowCount.get(), start, completed);
+	        }
+        } catch(Exception e) {
+        	throw new ServletException("The event log could not be verified due to an error.", e);
+        }
+    }
+
+    private long getDate(final HttpServletRequest request, final String parameter, final long defaultValue) {
+        String value = request.getParameter(parameter);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            return new SimpleDateFormat(DATE_FORMAT).parse(value).getTime();
+        } catch (ParseException e) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+	public String getServletInfo() {
+        return "Verifies the tamperstamps in the event log.";
+    }
+}
@@ -16,17 +16,14 @@
 
 package com.enterprisepasswordsafe.ui.web.servlets.exporters;
 
-import java.io.PrintWriter;
-
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import com.enterprisepasswordsafe.engine.database.TamperproofEventLog;
-import com.enterprisepasswordsafe.engine.database.TamperproofEventLogDAO;
 import com.enterprisepasswordsafe.engine.database.User;
 import com.enterprisepasswordsafe.engine.reports.AccessReport;
 import com.enterprisepasswordsafe.ui.web.utils.SecurityUtils;
+import org.apache.commons.csv.CSVPrinter;
 
 /**
  * Servlet to generate the user access report.
@@ -45,28 +42,18 @@ public final class UserAccessCSV extends BaseExporter {
 
         try {
 	        User user = SecurityUtils.getRemoteUser(request);
-	        TamperproofEventLogDAO.getInstance().create(
-					TamperproofEventLog.LOG_LEVEL_REPORTS,
-	        		user,
-	        		null,
-	                "Exported all the access rules using the CSV Report",
-	                true
-	    		);
-
-	        PrintWriter pw = response.getWriter();
-
-	        String separator = getSeparator();
-	        pw.print("User");
-	        pw.print(separator);
-	        pw.print("Password");
-	        pw.print(separator);
-	        pw.print("Group");
-	        pw.print(separator);
-	        pw.print("Access");
-	        pw.println();
-
-            AccessReport.getInstance().generateReport(user, pw, separator);
-
+	        logExportStarted(user, "Exported all the access rules using the CSV Report");
+	        long start = System.nanoTime();
+	        int rowCount = 0;
+	        boolean completed = false;
+	        try {
+	            CSVPrinter printer = createPrinter(response);
+	            printer.printRecord("User", "Password", "Group", "Access");
+	            rowCount = AccessReport.getInstance().generateReport(user, printer);
+	            completed = true;
+	        } finally {
+	            logExport(user, "Exported all the access rules using the CSV Report", rowCount, start, completed);
+	        }
         } catch(Exception e) {
         	throw new ServletException("The access controls could not be exported due to an error.", e);
         }
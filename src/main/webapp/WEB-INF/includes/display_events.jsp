@@ -36,7 +36,7 @@ OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
 		<c:forEach var="eventsForDay" items="${requestScope.events}">
             <div class="row">
                 <div class="col-md-12">
-                    <h3><fmt:formatDate pattern="dd-MMM-yyyy" value="${thisEvent.date}" /></h3>
+                    <h3><c:out value="${pageScope.eventsForDay.humanReadableDate}" /></h3>
                 </div>
             </div>
             <c:forEach var="thisEvent" items="${pageScope.eventsForDay.events}" varStatus="status">
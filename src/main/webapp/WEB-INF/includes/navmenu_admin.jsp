@@ -30,6 +30,9 @@ OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
         <li class="divider"></li>
         <li class="dropdown-header">Reports</li>
         <li><a href="<c:url value='/admin/ViewEvents'/>">Event Log</a></li>
+        <li><a href="<c:url value='/admin/EventLogVerification.csv'/>" target="_blank">Event Log Verification</a></li>
+        <li><a href="<c:url value='/admin/EventLogChainVerification.csv'/>" target="_blank">Event Log Chain Verification</a></li>
+        <li><a href="<c:url value='/admin/EventLogArchive'/>">Event Log Archive</a></li>
         <li><a href="<c:url value='/admin/Passwords.csv'/>" target="_blank">All Passwords</a></li>
         <li><a href="<c:url value='/admin/UserAccess.csv'/>" target="_blank">User Access</a></li>
     </ul>
@@ -42,6 +45,7 @@ OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
         <li><a href="<c:url value='/admin/ViewGroups'/>">Groups</a></li>
         <li class="divider"></li>
         <li><a href="<c:url value='/admin/ViewSystem'/>">About This Installation</a></li>
+        <li><a href="<c:url value='/admin/RequestMetrics'/>">Request Metrics</a></li>
         <li><a href="<c:url value='/admin/CustomFields'/>">Custom Fields</a></li>
         <li><a href="<c:url value='/admin/Configure'/>">Configuration</a></li>
         <li><a href="<c:url value='/admin/SetupJDBCConfiguration'/>">Database</a></li>
@@ -39,6 +39,28 @@ OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
            value="<c:out value='${requestScope.smtpfrom}'/>" placeholder="someone@your.com"/>
 </div>
 
+<div class="form-group">
+    <label for="smtp.batch_recipients">Send one notification to many recipients as blind copies :</label>
+    <select name="smtp.batch_recipients" id="smtp.batch_recipients" class="form-control">
+        <c:choose>
+            <c:when test="${requestScope.smtp_batchRecipients == 'N'}">
+                <option value="Y">Yes</option>
+                <option value="N" selected="selected">No</option>
+            </c:when>
+            <c:otherwise>
+                <option value="Y" selected="selected">Yes</option>
+                <option value="N">No</option>
+            </c:otherwise>
+        </c:choose>
+    </select>
+</div>
+
+<div class="form-group">
+    <label for="smtp.digest_window">Seconds to combine notifications into a digest (0 to send each immediately) :</label>
+    <input type="text" name="smtp.digest_window" id="smtp.digest_window" class="form-control"
+           value="<c:out value='${requestScope.smtp_digestWindow}'/>"/>
+</div>
+
 
 <div class="row">
     <div class="col-md-12"><h3>User Logins and Sessions</h3></div>
@@ -424,6 +446,66 @@ OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
            value="<c:out value='${requestScope.report_separator}'/>"/>
 </div>
 
+<div class="form-group">
+    <label for="search.index_enabled">Keep an in-memory search index for each user :</label>
+    <select name="search.index_enabled" id="search.index_enabled" class="form-control">
+        <c:choose>
+            <c:when test="${requestScope.search_indexEnabled == 'Y'}">
+                <option value="Y" selected="selected">Yes</option>
+                <option value="N">No</option>
+            </c:when>
+            <c:otherwise>
+                <option value="Y">Yes</option>
+                <option value="N" selected="selected">No</option>
+            </c:otherwise>
+        </c:choose>
+    </select>
+</div>
+
+<div class="form-group">
+    <label for="password.reencode">Convert stored passwords to the compact format when users log in :</label>
+    <select name="password.reencode" id="password.reencode" class="form-control">
+        <c:choose>
+            <c:when test="${requestScope.password_reencode == 'Y'}">
+                <option value="Y" selected="selected">Yes</option>
+                <option value="N">No</option>
+            </c:when>
+            <c:otherwise>
+                <option value="Y">Yes</option>
+                <option value="N" selected="selected">No</option>
+            </c:otherwise>
+        </c:choose>
+    </select>
+</div>
+
+<div class="form-group">
+    <label for="eventlog.page_size">Event log entries shown per page :</label>
+    <input type="text" name="eventlog.page_size" id="eventlog.page_size" class="form-control"
+           value="<c:out value='${requestScope.eventlog_pageSize}'/>"/>
+</div>
+
+<div class="form-group">
+    <label for="eventlog.retention_days">Days to keep event log entries before archiving them (0 to never archive) :</label>
+    <input type="text" name="eventlog.retention_days" id="eventlog.retention_days" class="form-control"
+           value="<c:out value='${requestScope.eventlog_retentionDays}'/>"/>
+</div>
+
+<div class="form-group">
+    <label for="eventlog.hash_chain">Chain event log entries together with the server audit key :</label>
+    <select name="eventlog.hash_chain" id="eventlog.hash_chain" class="form-control">
+        <c:choose>
+            <c:when test="${requestScope.eventlog_hashChain == 'Y'}">
+                <option value="Y" selected="selected">Yes</option>
+                <option value="N">No</option>
+            </c:when>
+            <c:otherwise>
+                <option value="Y">Yes</option>
+                <option value="N" selected="selected">No</option>
+            </c:otherwise>
+        </c:choose>
+    </select>
+</div>
+
 <button type="submit" class="btn btn-primary">Update settings</button>
 
 </fieldset>
@@ -0,0 +1,63 @@
+<%@ page language="java" %>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
+<%--
+Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+
+Permission to use, copy, modify, and distribute this software for any
+purpose with or without fee is hereby granted, provided that the above
+copyright notice and this permission notice appear in all copies.
+
+THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+  --%>
+<html lang="en">
+<head>
+    <title>Event Log Archive</title>
+</head>
+<body>
+<div class="row">
+    <div class="col-md-12">
+        <h4>Event Log Archive</h4>
+    </div>
+</div>
+<c:forEach var="thisEntry" items="${requestScope.status}">
+    <div class="row">
+        <div class="col-md-4 text-right"><c:out value="${thisEntry.key}" /> :</div>
+        <div class="col-md-8 text-left"><c:out value="${thisEntry.value}" /></div>
+    </div>
+</c:forEach>
+<c:if test="${not empty requestScope.verification}">
+    <div class="row">&nbsp;</div>
+    <div class="row">
+        <div class="col-md-12">
+            <h4>Verification</h4>
+            <c:choose>
+                <c:when test="${requestScope.verification.valid}">
+                    <p>All <c:out value="${requestScope.verification.segmentCount}" /> segments, holding
+                        <c:out value="${requestScope.verification.entryCount}" /> entries, are intact.</p>
+                </c:when>
+                <c:otherwise>
+                    <p><c:out value="${requestScope.verification.problemCount}" /> problems were found in
+                        <c:out value="${requestScope.verification.segmentCount}" /> segments.</p>
+                    <ul>
+                    <c:forEach var="thisProblem" items="${requestScope.verification.problems}">
+                        <li><c:out value="${thisProblem}" /></li>
+                    </c:forEach>
+                    </ul>
+                </c:otherwise>
+            </c:choose>
+        </div>
+    </div>
+</c:if>
+<div class="row">&nbsp;</div>
+<form action="<c:url value='/admin/EventLogArchive'/>" method="POST" accept-charset="ISO-8859-1" role="form">
+    <button type="submit" name="action" value="run" class="btn btn-primary">Archive now</button>
+    <button type="submit" name="action" value="verify" class="btn btn-default">Verify archive</button>
+</form>
+</body>
+</html>
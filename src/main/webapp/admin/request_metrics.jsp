@@ -0,0 +1,89 @@
+<%@ page language="java" %>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/fmt" prefix="fmt" %>
+<%--
+Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+
+Permission to use, copy, modify, and distribute this software for any
+purpose with or without fee is hereby granted, provided that the above
+copyright notice and this permission notice appear in all copies.
+
+THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+  --%>
+<html lang="en">
+<head>
+    <title>Request Metrics</title>
+</head>
+<body>
+<div class="row">
+    <div class="col-md-12">
+        <h4>Requests</h4>
+        <table class="table">
+            <thead><tr><td>Path</td><td>Requests</td><td>Mean (ms)</td><td>p50 (ms)</td><td>p90 (ms)</td>
+                <td>p99 (ms)</td><td>Max (ms)</td><td>DB mean (ms)</td><td>DB p99 (ms)</td><td>Queries</td>
+                <td>Max Queries</td><td>Rows</td><td>RSA</td><td>AES</td></tr></thead>
+            <tbody class="table-striped">
+            <c:forEach var="thisServlet" items="${requestScope.servlets}">
+                <tr>
+                    <td><c:out value="${thisServlet.path}" /></td>
+                    <td><c:out value="${thisServlet.requests}" /></td>
+                    <td><fmt:formatNumber value="${thisServlet.meanMillis}" maxFractionDigits="1" /></td>
+                    <td><c:out value="${thisServlet.p50Millis}" /></td>
+                    <td><c:out value="${thisServlet.p90Millis}" /></td>
+                    <td><c:out value="${thisServlet.p99Millis}" /></td>
+                    <td><fmt:formatNumber value="${thisServlet.maxMillis}" maxFractionDigits="1" /></td>
+                    <td><fmt:formatNumber value="${thisServlet.meanDatabaseMillis}" maxFractionDigits="1" /></td>
+                    <td><c:out value="${thisServlet.p99DatabaseMillis}" /></td>
+                    <td><fmt:formatNumber value="${thisServlet.meanQueries}" maxFractionDigits="1" /></td>
+                    <td><c:out value="${thisServlet.maxQueries}" /></td>
+                    <td><fmt:formatNumber value="${thisServlet.meanRows}" maxFractionDigits="1" /></td>
+                    <td><fmt:formatNumber value="${thisServlet.meanRsaOperations}" maxFractionDigits="1" /></td>
+                    <td><fmt:formatNumber value="${thisServlet.meanAesOperations}" maxFractionDigits="1" /></td>
+                </tr>
+            </c:forEach>
+            </tbody>
+        </table>
+        <p>Queries, rows, RSA and AES are the mean per request.</p>
+    </div>
+</div>
+<div class="row">
+    <div class="col-md-12">
+        <h4>Most Expensive Statements</h4>
+        <table class="table">
+            <thead><tr><td>SQL</td><td>Executions</td><td>Rows</td><td>Total (ms)</td></tr></thead>
+            <tbody class="table-striped">
+            <c:forEach var="thisStatement" items="${requestScope.statements}">
+                <tr>
+                    <td><c:out value="${thisStatement.sql}" /></td>
+                    <td><c:out value="${thisStatement.executions}" /></td>
+                    <td><c:out value="${thisStatement.rows}" /></td>
+                    <td><fmt:formatNumber value="${thisStatement.totalMillis}" maxFractionDigits="1" /></td>
+                </tr>
+            </c:forEach>
+            </tbody>
+        </table>
+    </div>
+</div>
+<div class="row">
+    <div class="col-md-12">
+        <h4>Components</h4>
+    </div>
+</div>
+<c:forEach var="thisEntry" items="${requestScope.components}">
+    <div class="row">
+        <div class="col-md-4 text-right"><c:out value="${thisEntry.key}" /> :</div>
+        <div class="col-md-8 text-left"><c:out value="${thisEntry.value}" /></div>
+    </div>
+</c:forEach>
+<div class="row">&nbsp;</div>
+<form action="<c:url value='/admin/RequestMetrics'/>" method="POST" accept-charset="ISO-8859-1" role="form">
+    <button type="submit" class="btn btn-primary">Reset metrics</button>
+</form>
+</body>
+</html>
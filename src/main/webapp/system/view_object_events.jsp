@@ -34,6 +34,24 @@ OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
 </form>
 
 <jsp:include page="/WEB-INF/includes/display_events.jsp" />
+
+<c:if test="${not empty requestScope.nextCursor}">
+    <c:url var="nextPageLink" value="/system/ViewObjectEvents">
+        <c:param name="id" value="${requestScope.id}"/>
+        <c:param name="start_day" value="${param.start_day}"/>
+        <c:param name="start_month" value="${param.start_month}"/>
+        <c:param name="start_year" value="${param.start_year}"/>
+        <c:param name="end_day" value="${param.end_day}"/>
+        <c:param name="end_month" value="${param.end_month}"/>
+        <c:param name="end_year" value="${param.end_year}"/>
+        <c:param name="cursor" value="${requestScope.nextCursor}"/>
+    </c:url>
+    <div class="row">
+        <div class="col-md-12 text-center">
+            <a href="${nextPageLink}" class="btn btn-default">Next Page</a>
+        </div>
+    </div>
+</c:if>
 <script type="text/javascript" src="<c:url value='/js/eventviewer.js'/>"></script>
 </body>
 </html>
\ No newline at end of file
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.enterprisepasswordsafe.engine.database;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the bulk access control lookups.
+ */
+public class AccessControlDAOTests extends EmbeddedDatabaseTestBase {
+
+    /**
+     * The number of unknown IDs placed between the real ones so the lookups
+     * need more than one IN list.
+     */
+
+    private static final int PADDING_IDS = AccessControlDAO.MAXIMUM_ITEMS_PER_QUERY + 10;
+
+    @Test
+    public void testUserPrecedentPrefersUserAccessControls()
+            throws GeneralSecurityException, IOException, SQLException {
+        User admin = getAdminUser();
+        Password first = createPassword(admin);
+        Password second = createPassword(admin);
+        Password groupOnly = createPassword(admin);
+        removeUac(admin, groupOnly);
+
+        Map<String, AccessControl> results = AccessControlDAOUserPrecedent.getInstance()
+                .getAccessControls(admin, itemIds(first, second, groupOnly));
+
+        assertThat(results.size(), is(3));
+        assertThat(results.get(first.getId()) instanceof UserAccessControl, is(true));
+        assertThat(results.get(second.getId()) instanceof UserAccessControl, is(true));
+        assertThat(results.get(groupOnly.getId()) instanceof GroupAccessControl, is(true));
+    }
+
+    @Test
+    public void testGroupPrecedentPrefersGroupAccessControls()
+            throws GeneralSecurityException, IOException, SQLException {
+        User admin = getAdminUser();
+        Password first = createPassword(admin);
+        Password second = createPassword(admin);
+        Password userOnly = createPassword(admin);
+        Group adminGroup = GroupDAO.getInstance().getAdminGroup(admin);
+        GroupAccessControlDAO.getInstance().delete(
+                GroupAccessControlDAO.getInstance().getGac(adminGroup, userOnly.getId()));
+
+        Map<String, AccessControl> results = AccessControlDAOGroupPrecedent.getInstance()
+                .getAccessControls(admin, itemIds(first, second, userOnly));
+
+        assertThat(results.size(), is(3));
+        assertThat(results.get(first.getId()) instanceof GroupAccessControl, is(true));
+        assertThat(results.get(second.getId()) instanceof GroupAccessControl, is(true));
+        assertThat(results.get(userOnly.getId()) instanceof UserAccessControl, is(true));
+    }
+
+    @Test
+    public void testGetGacsPrefersGacsAllowingModification()
+            throws GeneralSecurityException, IOException, SQLException {
+        User admin = getAdminUser();
+        Group adminGroup = GroupDAO.getInstance().getAdminGroup(admin);
+        Group otherGroup = GroupDAO.getInstance().create(admin, "acl_" + System.nanoTime());
+        GroupAccessControlDAO gacDAO = GroupAccessControlDAO.getInstance();
+
+        // The admin group can modify the first password, the other group can only read it.
+        Password adminModifiable = createPassword(admin);
+        gacDAO.create(otherGroup, adminModifiable, true, false);
+
+        // The admin group can only read the second password, the other group can modify it.
+        Password otherModifiable = createPassword(admin);
+        gacDAO.update(adminGroup, gacDAO.create(adminGroup, otherModifiable, true, false, false));
+        gacDAO.create(otherGroup, otherModifiable, true, true);
+
+        Map<String, GroupAccessControl> results =
+                gacDAO.getGacs(admin, itemIds(adminModifiable, otherModifiable), new HashMap<String, Group>());
+
+        assertThat(results.size(), is(2));
+        GroupAccessControl adminGac = results.get(adminModifiable.getId());
+        assertThat(adminGac.getGroupId(), is(adminGroup.getGroupId()));
+        assertThat(adminGac.getModifyKey(), notNullValue());
+        GroupAccessControl otherGac = results.get(otherModifiable.getId());
+        assertThat(otherGac.getGroupId(), is(otherGroup.getGroupId()));
+        assertThat(otherGac.getModifyKey(), notNullValue());
+    }
+
+    private Password createPassword(final User admin)
+            throws GeneralSecurityException, IOException, SQLException {
+        String runId = Long.toString(System.nanoTime());
+        Password password = new Password("u" + runId, "p" + runId, "l" + runId, "n" + runId);
+        PasswordDAO.getInstance().storeNewPassword(password, admin);
+        return password;
+    }
+
+    private void removeUac(final User admin, final Password password)
+            throws GeneralSecurityException, IOException, SQLException {
+        UserAccessControlDAO uacDAO = UserAccessControlDAO.getInstance();
+        uacDAO.delete(uacDAO.getUac(admin, password.getId()));
+    }
+
+    /**
+     * Builds an ID list with the first password at the start of the first IN list and
+     * the rest after enough unknown IDs to push them into a later one.
+     */
+
+    private List<String> itemIds(final Password first, final Password... rest) {
+        List<String> ids = new ArrayList<>();
+        ids.add(first.getId());
+        for (int i = 0; i < PADDING_IDS; i++) {
+            ids.add("unknown-" + i);
+        }
+        for (Password password : rest) {
+            ids.add(password.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.enterprisepasswordsafe.engine.database;
+
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.sql.SQLException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test cases for the AccessControlKeyCache
+ */
+public class AccessControlKeyCacheTests {
+
+    /**
+     * Decrypter which returns its input so the encoded key is used as the "encrypted" form.
+     */
+
+    private static final Decrypter PASS_THROUGH_DECRYPTER = new Decrypter() {
+        @Override
+        public byte[] decrypt(byte[] encryptedData) {
+            return encryptedData.clone();
+        }
+    };
+
+    private static byte[] createEncodedPublicKey()
+            throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        KeyPair pair = generator.generateKeyPair();
+        return pair.getPublic().getEncoded();
+    }
+
+    @Test
+    public void testRepeatedLookupIsCached()
+            throws GeneralSecurityException, SQLException {
+        AccessControlKeyCache cache = new AccessControlKeyCache();
+        byte[] encodedKey = createEncodedPublicKey();
+
+        PublicKey first = cache.getReadKey("u1", "i1", encodedKey, PASS_THROUGH_DECRYPTER);
+        PublicKey second = cache.getReadKey("u1", "i1", encodedKey, PASS_THROUGH_DECRYPTER);
+
+        assertThat(first == second, is(true));
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.getMisses(), is(1L));
+    }
+
+    @Test
+    public void testChangedKeyIsNotServedFromCache()
+            throws GeneralSecurityException, SQLException {
+        AccessControlKeyCache cache = new AccessControlKeyCache();
+
+        PublicKey first = cache.getReadKey("u2", "i2", createEncodedPublicKey(), PASS_THROUGH_DECRYPTER);
+        byte[] replacementKey = createEncodedPublicKey();
+        PublicKey second = cache.getReadKey("u2", "i2", replacementKey, PASS_THROUGH_DECRYPTER);
+
+        assertThat(first.equals(second), is(false));
+        assertThat(second.getEncoded(), is(replacementKey));
+        assertThat(cache.getHits(), is(0L));
+    }
+
+    @Test
+    public void testInvalidation()
+            throws GeneralSecurityException, SQLException {
+        AccessControlKeyCache cache = new AccessControlKeyCache();
+        cache.getReadKey("u3", "i3", createEncodedPublicKey(), PASS_THROUGH_DECRYPTER);
+        cache.getReadKey("u3", "i4", createEncodedPublicKey(), PASS_THROUGH_DECRYPTER);
+        cache.getReadKey("u4", "i3", createEncodedPublicKey(), PASS_THROUGH_DECRYPTER);
+        assertThat(cache.size(), is(3));
+
+        AccessControlKeyCache.invalidate("u3", "i4");
+        assertThat(cache.size(), is(2));
+
+        AccessControlKeyCache.invalidateItem("i3");
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void testSizeIsBounded()
+            throws GeneralSecurityException, SQLException {
+        AccessControlKeyCache cache = new AccessControlKeyCache(2);
+        byte[] encodedKey = createEncodedPublicKey();
+        cache.getReadKey("u5", "i1", encodedKey, PASS_THROUGH_DECRYPTER);
+        cache.getReadKey("u5", "i2", encodedKey, PASS_THROUGH_DECRYPTER);
+        cache.getReadKey("u5", "i3", encodedKey, PASS_THROUGH_DECRYPTER);
+        assertThat(cache.size(), is(2));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the ConfigurationDAO
+ */
+public class ConfigurationDAOTests extends EmbeddedDatabaseTestBase {
+    @Test
+    public void testSetAndGet() throws SQLException {
+        String name = "test.set_" + System.currentTimeMillis();
+
+        ConfigurationDAO configurationDAO = ConfigurationDAO.getInstance();
+        assertThat(configurationDAO.get(name, "default"), is(equalTo("default")));
+        configurationDAO.set(name, "value");
+        assertThat(configurationDAO.get(name, "default"), is(equalTo("value")));
+        configurationDAO.set(name, "updated");
+        assertThat(configurationDAO.get(name, "default"), is(equalTo("updated")));
+    }
+
+    @Test
+    public void testDelete() throws SQLException {
+        String name = "test.delete_" + System.currentTimeMillis();
+
+        ConfigurationDAO configurationDAO = ConfigurationDAO.getInstance();
+        configurationDAO.set(name, "value");
+        configurationDAO.delete(name);
+        assertThat(configurationDAO.get(name, "default"), is(equalTo("default")));
+    }
+
+    @Test
+    public void testListenersAreNotified() throws SQLException {
+        String name = "test.listener_" + System.currentTimeMillis();
+        final List<String> changes = new ArrayList<>();
+        ConfigurationListenersDAO.addListener(name, (propertyName, propertyValue) -> changes.add(propertyValue));
+
+        ConfigurationDAO configurationDAO = ConfigurationDAO.getInstance();
+        configurationDAO.set(name, "value");
+        configurationDAO.delete(name);
+        assertThat(changes.size(), is(2));
+        assertThat(changes.get(0), is(equalTo("value")));
+        assertThat(changes.get(1), is(nullValue()));
+    }
+
+    @Test
+    public void testExternalChangesAreSeenAfterInvalidation() throws SQLException {
+        String name = "test.external_" + System.currentTimeMillis();
+
+        ConfigurationDAO configurationDAO = ConfigurationDAO.getInstance();
+        configurationDAO.set(name, "value");
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(
+                "UPDATE configuration SET property_value = ? WHERE property_name = ?")) {
+            ps.setString(1, "external");
+            ps.setString(2, name);
+            ps.executeUpdate();
+        }
+        assertThat(configurationDAO.get(name, "default"), is(equalTo("value")));
+        configurationDAO.invalidate();
+        assertThat(configurationDAO.get(name, "default"), is(equalTo("external")));
+    }
+
+    @Test
+    public void testChangesInARolledBackTransactionAreNotPublished() throws SQLException {
+        String name = "test.rollback_" + System.currentTimeMillis();
+
+        ConfigurationDAO configurationDAO = ConfigurationDAO.getInstance();
+        configurationDAO.set(name, "value");
+
+        Connection connection = BOMFactory.getCurrentConntection();
+        connection.setAutoCommit(false);
+        try {
+            configurationDAO.set(name, "uncommitted");
+            assertThat(configurationDAO.get(name, "default"), is(equalTo("value")));
+            connection.rollback();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        assertThat(configurationDAO.get(name, "default"), is(equalTo("value")));
+        configurationDAO.invalidate();
+        assertThat(configurationDAO.get(name, "default"), is(equalTo("value")));
+    }
+}
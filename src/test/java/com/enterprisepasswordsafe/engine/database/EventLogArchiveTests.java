@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for moving event log entries into the archive.
+ */
+public class EventLogArchiveTests extends EmbeddedDatabaseTestBase {
+
+    private static final long EVENT_TIME = 946684800000L;
+
+    @Test
+    public void testSegmentsCanBeReadBack()
+            throws Exception {
+        List<EventLogArchive.Entry> entries = Arrays.asList(
+                new EventLogArchive.Entry(EVENT_TIME, "user", "item", "event", new byte[]{1, 2}, 7L, new byte[]{3}),
+                new EventLogArchive.Entry(EVENT_TIME + 1, TamperproofEventLog.DUMMY_USER_ID, null, "other", null,
+                        null, null));
+
+        List<EventLogArchive.Entry> decoded = EventLogArchive.decode(EventLogArchive.encode(entries));
+
+        assertThat(decoded.size(), is(2));
+        assertThat(decoded.get(0).getStoredUserId(), is("user"));
+        assertThat(decoded.get(0).getTamperStamp(), is(new byte[]{1, 2}));
+        assertThat(decoded.get(1).getDateTime(), is(EVENT_TIME + 1));
+        assertThat(decoded.get(1).toEventLog().getUserId(), is((String) null));
+    }
+
+    @Test
+    public void testArchivedEntriesAreStillShown()
+            throws Exception {
+        String runId = "arc-" + System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            insertEntry(EVENT_TIME + (i % 2), runId, runId + "-" + i);
+        }
+
+        EventLogArchive archive = EventLogArchive.getInstance();
+        while (archive.archiveSegment(EVENT_TIME + 2) != null) {
+            // Archive everything before the cutoff.
+        }
+        assertThat(countLiveEntries(runId), is(0));
+
+        EventLogPage page = TamperproofEventLogDAO.getInstance().getEventsPage(EVENT_TIME, EVENT_TIME + 1,
+                null, runId, getAdminUser(), true, false, null);
+        int count = 0;
+        for (TamperproofEventLogDAO.EventsForDay day : page.getDays()) {
+            count += day.getEvents().size();
+        }
+        assertThat(count, is(5));
+        assertThat(archive.verify().isValid(), is(true));
+    }
+
+    @Test
+    public void testAlteredChainedEntryIsNotArchived()
+            throws Exception {
+        String runId = "archive-chain-test-" + System.currentTimeMillis();
+        ConfigurationDAO.getInstance().set(ConfigurationOption.EVENT_LOG_HASH_CHAIN, "Y");
+        try {
+            TamperproofEventLogWriter writer = TamperproofEventLogWriter.getInstance();
+            for (int i = 0; i < 3; i++) {
+                writer.submit(new TamperproofEventLog(null, null, runId + "-" + i, false));
+            }
+            assertThat(writer.flush(30000), is(true));
+
+            setEvent(runId + "-1", runId + "-altered");
+            try {
+                boolean refused = false;
+                try {
+                    EventLogArchive.getInstance().archiveSegment(System.currentTimeMillis() + 1);
+                } catch (GeneralSecurityException e) {
+                    refused = true;
+                }
+                assertThat(refused, is(true));
+                assertThat(countLiveEvents(runId + "-%"), is(3));
+            } finally {
+                setEvent(runId + "-altered", runId + "-1");
+            }
+        } finally {
+            ConfigurationDAO.getInstance().set(ConfigurationOption.EVENT_LOG_HASH_CHAIN, "N");
+        }
+    }
+
+    private int countLiveEntries(final String itemId) throws SQLException {
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(
+                "SELECT COUNT(*) FROM event_log WHERE item_id = ?")) {
+            ps.setString(1, itemId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private int countLiveEvents(final String eventPattern) throws SQLException {
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(
+                "SELECT COUNT(*) FROM event_log WHERE event LIKE ?")) {
+            ps.setString(1, eventPattern);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private void insertEntry(final long dateTime, final String itemId, final String event) throws SQLException {
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(
+                "INSERT INTO event_log(dt_l, item_id, event, user_id) VALUES (?, ?, ?, ?)")) {
+            ps.setLong(1, dateTime);
+            ps.setString(2, itemId);
+            ps.setString(3, event);
+            ps.setString(4, TamperproofEventLog.DUMMY_USER_ID);
+            ps.executeUpdate();
+        }
+    }
+
+    private void setEvent(final String oldEvent, final String newEvent) throws SQLException {
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(
+                "UPDATE event_log SET event = ? WHERE event = ?")) {
+            ps.setString(1, newEvent);
+            ps.setString(2, oldEvent);
+            ps.executeUpdate();
+        }
+    }
+}
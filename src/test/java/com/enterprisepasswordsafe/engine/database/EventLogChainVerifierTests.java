@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import org.junit.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the event log hash chain.
+ */
+public class EventLogChainVerifierTests extends EmbeddedDatabaseTestBase {
+
+    @Test
+    public void testAlteredEntryIsReported()
+            throws Exception {
+        String runId = "chain-test-" + System.currentTimeMillis();
+        ConfigurationDAO.getInstance().set(ConfigurationOption.EVENT_LOG_HASH_CHAIN, "Y");
+        try {
+            TamperproofEventLogWriter writer = TamperproofEventLogWriter.getInstance();
+            for (int i = 0; i < 10; i++) {
+                writer.submit(new TamperproofEventLog(null, null, runId, false));
+            }
+            assertThat(writer.flush(30000), is(true));
+
+            EventLogChainVerifier verifier = EventLogChainVerifier.getInstance();
+            EventLogChainVerifier.Result result = verifier.verify(false, null);
+            assertThat(result.isValid(), is(true));
+            assertThat(result.getVerifiedCount() >= 10, is(true));
+
+            setEvent(runId, runId + "-altered");
+            try {
+                result = verifier.verify(false, null);
+                assertThat(result.getProblemCount(), is(10L));
+            } finally {
+                setEvent(runId + "-altered", runId);
+            }
+        } finally {
+            ConfigurationDAO.getInstance().set(ConfigurationOption.EVENT_LOG_HASH_CHAIN, "N");
+        }
+    }
+
+    private void setEvent(final String oldEvent, final String newEvent) throws SQLException {
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(
+                "UPDATE event_log SET event = ? WHERE event = ?")) {
+            ps.setString(1, newEvent);
+            ps.setString(2, oldEvent);
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test cases for the GroupDAO
+ */
+public class GroupDAOTests extends EmbeddedDatabaseTestBase {
+
+    @Test
+    public void testDisablingAGroupDiscardsCachedAccessibility()
+            throws Exception {
+        User adminUser = getAdminUser();
+        Group group = GroupDAO.getInstance().create(adminUser, "grp-" + System.currentTimeMillis());
+
+        HierarchyAccessibilityCache cache = HierarchyAccessibilityCache.getInstance();
+        cache.getForUser(adminUser.getUserId()).put("node", true, HierarchyNodeAccessRuleDAO.ACCESIBILITY_ALLOWED);
+
+        group.setStatus(Group.STATUS_DISABLED);
+        GroupDAO.getInstance().update(group);
+
+        assertThat(cache.getForUser(adminUser.getUserId()).get("node", true), is(nullValue()));
+    }
+}
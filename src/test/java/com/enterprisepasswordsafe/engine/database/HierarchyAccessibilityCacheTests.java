@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the HierarchyAccessibilityCache
+ */
+public class HierarchyAccessibilityCacheTests {
+    @Test
+    public void testResultsAreCachedPerUser() {
+        HierarchyAccessibilityCache cache = HierarchyAccessibilityCache.getInstance();
+        String userId = "cache-user-" + System.nanoTime();
+
+        cache.getForUser(userId).put("node", true, HierarchyNodeAccessRuleDAO.ACCESIBILITY_DENIED);
+        assertThat(cache.getForUser(userId).get("node", true), is(HierarchyNodeAccessRuleDAO.ACCESIBILITY_DENIED_BYTE));
+        assertThat(cache.getForUser(userId).get("node", false), is(nullValue()));
+        assertThat(cache.getForUser(userId + "-other").get("node", true), is(nullValue()));
+    }
+
+    @Test
+    public void testInvalidateUser() {
+        HierarchyAccessibilityCache cache = HierarchyAccessibilityCache.getInstance();
+        String userId = "cache-user-" + System.nanoTime();
+        String otherUserId = userId + "-other";
+
+        cache.getForUser(userId).put("node", true, HierarchyNodeAccessRuleDAO.ACCESIBILITY_ALLOWED);
+        cache.getForUser(otherUserId).put("node", true, HierarchyNodeAccessRuleDAO.ACCESIBILITY_ALLOWED);
+        cache.invalidateUser(userId);
+        assertThat(cache.getForUser(userId).get("node", true), is(nullValue()));
+        assertThat(cache.getForUser(otherUserId).get("node", true), is(HierarchyNodeAccessRuleDAO.ACCESIBILITY_ALLOWED_BYTE));
+    }
+
+    @Test
+    public void testResultsCalculatedBeforeInvalidateAllAreNotStored() {
+        HierarchyAccessibilityCache cache = HierarchyAccessibilityCache.getInstance();
+        String userId = "cache-user-" + System.nanoTime();
+
+        HierarchyAccessibilityCache.UserAccessibility inProgress = cache.getForUser(userId);
+        cache.invalidateAll();
+        inProgress.put("node", true, HierarchyNodeAccessRuleDAO.ACCESIBILITY_ALLOWED);
+        assertThat(cache.getForUser(userId).get("node", true), is(nullValue()));
+    }
+}
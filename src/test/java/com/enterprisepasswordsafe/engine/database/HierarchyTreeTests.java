@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the HierarchyTree
+ */
+public class HierarchyTreeTests {
+
+    private HierarchyTree createTree() {
+        List<HierarchyNode> nodes = Arrays.asList(
+                new HierarchyNode("a", "A", HierarchyNode.ROOT_NODE_ID, HierarchyNode.CONTAINER_NODE),
+                new HierarchyNode("b", "B", "a", HierarchyNode.CONTAINER_NODE),
+                new HierarchyNode("c", "C", "b", HierarchyNode.CONTAINER_NODE),
+                new HierarchyNode("d", "D", HierarchyNode.ROOT_NODE_ID, HierarchyNode.CONTAINER_NODE));
+        return HierarchyTree.build(nodes);
+    }
+
+    @Test
+    public void testParentage() {
+        HierarchyTree tree = createTree();
+
+        assertThat(tree.getParentId("c"), is("b"));
+        assertThat(tree.getPath("c").size(), is(4));
+        assertThat(tree.getPath("c").get(0).getNodeId(), is(HierarchyNode.ROOT_NODE_ID));
+        assertThat(tree.getParentageText("c"), is("Top Level \\ A \\ B \\ C"));
+        assertThat(tree.getPath("unknown"), is(nullValue()));
+        assertThat(tree.getSubtreeIds("a"), is(Arrays.asList("a", "b", "c")));
+        assertThat(tree.isAncestor("a", "c"), is(true));
+        assertThat(tree.isAncestor("d", "c"), is(false));
+    }
+
+    @Test
+    public void testRebuiltTreeDoesNotReuseAVersion() {
+        HierarchyTree tree = createTree();
+        HierarchyTree moved = tree.with(new HierarchyNode("b", "B", "d", HierarchyNode.CONTAINER_NODE));
+        HierarchyTree rebuilt = createTree();
+
+        assertThat(rebuilt.getVersion() > moved.getVersion(), is(true));
+    }
+
+    @Test
+    public void testMoveCreatesNewVersion() {
+        HierarchyTree tree = createTree();
+        HierarchyTree moved = tree.with(new HierarchyNode("b", "B", "d", HierarchyNode.CONTAINER_NODE));
+
+        assertThat(moved.getVersion() > tree.getVersion(), is(true));
+        assertThat(moved.getParentageText("c"), is("Top Level \\ D \\ B \\ C"));
+        assertThat(moved.getSubtreeIds("a"), is(Arrays.asList("a")));
+        assertThat(moved.getChildren("d", HierarchyNode.CONTAINER_NODE).get(0).getNodeId(), is("b"));
+        assertThat(tree.getParentageText("c"), is("Top Level \\ A \\ B \\ C"));
+    }
+
+    @Test
+    public void testDeleteRemovesSubtree() {
+        HierarchyTree tree = createTree().without("b");
+
+        assertThat(tree.contains("b"), is(false));
+        assertThat(tree.contains("c"), is(false));
+        assertThat(tree.getChildren("a", HierarchyNode.CONTAINER_NODE).isEmpty(), is(true));
+        assertThat(tree.size(), is(3));
+    }
+
+    @Test
+    public void testFoldersWithContentIncludeAncestors() {
+        HierarchyTree tree = createTree();
+        Set<String> folders = tree.getFoldersWithContent(Collections.singletonList("c"));
+
+        assertThat(folders.contains("c"), is(true));
+        assertThat(folders.contains("b"), is(true));
+        assertThat(folders.contains("a"), is(true));
+        assertThat(folders.contains("d"), is(false));
+        assertThat(tree.hasChildren("a", HierarchyNode.CONTAINER_NODE), is(true));
+        assertThat(tree.hasChildren("c", HierarchyNode.CONTAINER_NODE), is(false));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the IPZoneMatcher
+ */
+public class IPZoneMatcherTests {
+    @Test
+    public void testIPv4ZonesMatchInclusiveRanges() throws Exception {
+        IPZoneMatcher.Builder builder = new IPZoneMatcher.Builder();
+        builder.add("z1", 4, IPZone.convertIP4ToDBString("10.0.0.0"), IPZone.convertIP4ToDBString("10.0.0.255"),
+                "user", UserIPZoneRestriction.DENY_INT);
+        IPZoneMatcher matcher = builder.build();
+
+        assertThat(matcher.getApplicable("user", "10.0.0.0").size(), is(1));
+        assertThat(matcher.getApplicable("user", "10.0.0.255").size(), is(1));
+        assertThat(matcher.getApplicable("user", "10.0.1.0").isEmpty(), is(true));
+        assertThat(matcher.getApplicable("user", "9.255.255.255").isEmpty(), is(true));
+        assertThat(matcher.getApplicable("other", "10.0.0.1").isEmpty(), is(true));
+    }
+
+    @Test
+    public void testOverlappingZonesAreAllFound() throws Exception {
+        IPZoneMatcher.Builder builder = new IPZoneMatcher.Builder();
+        builder.add("wide", 4, IPZone.convertIP4ToDBString("10.0.0.0"), IPZone.convertIP4ToDBString("10.255.255.255"),
+                "user", UserIPZoneRestriction.ALLOW_INT);
+        builder.add("narrow", 4, IPZone.convertIP4ToDBString("10.1.0.0"), IPZone.convertIP4ToDBString("10.1.0.255"),
+                "user", UserIPZoneRestriction.DENY_INT);
+        builder.add("later", 4, IPZone.convertIP4ToDBString("10.2.0.0"), IPZone.convertIP4ToDBString("10.2.0.255"),
+                "user", UserIPZoneRestriction.DENY_INT);
+        IPZoneMatcher matcher = builder.build();
+
+        assertThat(matcher.getApplicable("user", "10.1.0.7").size(), is(2));
+        assertThat(matcher.getApplicable("user", "10.3.0.1").size(), is(1));
+        List<UserIPZoneRestriction> restrictions = matcher.getApplicable("user", "10.3.0.1");
+        assertThat(restrictions.get(0).getZoneId(), is("wide"));
+        assertThat(restrictions.get(0).getRule(), is(UserIPZoneRestriction.ALLOW_INT));
+    }
+
+    @Test
+    public void testIPv6ZonesAreComparedAsUnsigned() throws Exception {
+        IPZoneMatcher.Builder builder = new IPZoneMatcher.Builder();
+        builder.add("z6", 6, IPZone.convertIP6ToDBString("fe80::"),
+                IPZone.convertIP6ToDBString("fe80::ffff:ffff:ffff:ffff"), "user", UserIPZoneRestriction.DENY_INT);
+        IPZoneMatcher matcher = builder.build();
+
+        assertThat(matcher.getApplicable("user", "fe80::1").size(), is(1));
+        assertThat(matcher.getApplicable("user", "fe81::1").isEmpty(), is(true));
+        assertThat(matcher.getApplicable("user", "::1").isEmpty(), is(true));
+        assertThat(matcher.getApplicable("user", "10.0.0.1").isEmpty(), is(true));
+    }
+
+    @Test
+    public void testInvalidZonesAreRejected() {
+        IPZoneMatcher.Builder builder = new IPZoneMatcher.Builder();
+        assertThat(builder.add("bad", 4, "1234", "999999999999", "user", UserIPZoneRestriction.DENY_INT), is(false));
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void testInvalidIPv4AddressIsRejected() throws Exception {
+        new IPZoneMatcher.Builder().build().getApplicable("user", "10.0.0");
+    }
+}
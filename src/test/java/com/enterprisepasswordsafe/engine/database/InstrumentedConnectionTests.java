@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import com.enterprisepasswordsafe.engine.utils.RequestMetrics;
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test cases for the request metrics collected through an instrumented connection.
+ */
+public class InstrumentedConnectionTests extends EmbeddedDatabaseTestBase {
+
+    /**
+     * Reads the admin user's row, which every test database has, so each execution
+     * fetches exactly one row.
+     */
+
+    private static final String TEST_SQL = "SELECT user_id FROM application_users WHERE user_name = ?";
+
+    private static final String ADMIN_USER_NAME = "admin";
+
+    @After
+    public void tearDown() {
+        BOMFactory.closeCurrent();
+        RequestMetrics.finish();
+    }
+
+    @Test
+    public void testQueriesAndRowsAreCounted()
+            throws SQLException {
+        BOMFactory.closeCurrent();
+        RequestMetrics.start();
+        Connection connection = BOMFactory.getCurrentConntection();
+        for (int i = 0; i < 3; i++) {
+            try (PreparedStatement ps = connection.prepareStatement(TEST_SQL)) {
+                ps.setString(1, ADMIN_USER_NAME);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        rs.getString(1);
+                    }
+                }
+            }
+        }
+
+        RequestMetrics metrics = RequestMetrics.finish();
+        assertThat(metrics.getQueryCount(), is(3));
+        assertThat(metrics.getRowsFetched(), is(3L));
+        assertThat(metrics.getStatements().get(0).getSql(), is(TEST_SQL));
+        assertThat(metrics.getStatements().get(0).getExecutions(), is(3));
+    }
+
+    @Test
+    public void testConnectionIsNotInstrumentedOutsideOfARequest()
+            throws SQLException {
+        BOMFactory.closeCurrent();
+        Connection connection = BOMFactory.getCurrentConntection();
+        RequestMetrics.start();
+        try (PreparedStatement ps = connection.prepareStatement(TEST_SQL)) {
+            ps.setString(1, ADMIN_USER_NAME);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+            }
+        }
+
+        assertThat(RequestMetrics.finish().getQueryCount(), is(0));
+    }
+}
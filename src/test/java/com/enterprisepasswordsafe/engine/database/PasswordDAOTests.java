@@ -16,11 +16,15 @@
 
 package com.enterprisepasswordsafe.engine.database;
 
+import com.enterprisepasswordsafe.engine.database.actions.search.PasswordSearchIndex;
 import com.enterprisepasswordsafe.engine.tests.utils.PasswordTestUtils;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Set;
@@ -47,6 +51,17 @@ public class PasswordDAOTests extends EmbeddedDatabaseTestBase {
         assertThat(retrieved.getNotes(),    is("n" + runId));
     }
 
+    @Test
+    public void testNewPasswordIsAddedToSearchIndex()
+            throws GeneralSecurityException, IOException, SQLException {
+        String runId = Long.toString(System.currentTimeMillis());
+        User adminUser = getAdminUser();
+        PasswordSearchIndex index = adminUser.getSearchIndex();
+        String passwordId = PasswordTestUtils.createPassword(runId, adminUser);
+        assertThat(index.contains(passwordId), is(true));
+        PasswordSearchIndex.passwordDeleted(passwordId);
+    }
+
     @Test
     public void testPerformRawAPISearch()
             throws GeneralSecurityException, IOException, SQLException {
@@ -86,4 +101,129 @@ public class PasswordDAOTests extends EmbeddedDatabaseTestBase {
         }
         assertThat(found, is(true));
     }
+
+    @Test
+    public void testNewPasswordsRecordTheirExpiry()
+            throws GeneralSecurityException, IOException, SQLException {
+        String runId = Long.toString(System.currentTimeMillis());
+        long expiry = System.currentTimeMillis() + 86400000L;
+        Password password = new Password("u" + runId, "p" + runId, "l" + runId, "n" + runId,
+                Password.AUDITING_FULL, false, expiry);
+        PasswordDAO.getInstance().storeNewPassword(password, getAdminUser());
+
+        assertThat(getRecordedExpiry(password.getId()), is(expiry));
+    }
+
+    @Test
+    public void testUpdatedPasswordsRecordTheirExpiry()
+            throws GeneralSecurityException, IOException, SQLException {
+        String runId = Long.toString(System.currentTimeMillis());
+        User adminUser = getAdminUser();
+        String passwordId = PasswordTestUtils.createPassword(runId, adminUser);
+
+        long expiry = System.currentTimeMillis() + 86400000L;
+        PasswordDAO pDAO = PasswordDAO.getInstance();
+        Password password = pDAO.getById(adminUser, passwordId);
+        password.setExpiry(expiry);
+        pDAO.update(password, adminUser);
+
+        assertThat(getRecordedExpiry(passwordId), is(expiry));
+    }
+
+    @Test
+    public void testUnknownExpiryDatesAreRecordedPastUnreadablePasswords()
+            throws GeneralSecurityException, IOException, SQLException {
+        String runId = Long.toString(System.currentTimeMillis());
+        User adminUser = getAdminUser();
+        long expiry = System.currentTimeMillis() - 86400000L;
+        Password password = new Password("u" + runId, "p" + runId, "l" + runId, "n" + runId,
+                Password.AUDITING_FULL, false, expiry);
+        PasswordDAO.getInstance().storeNewPassword(password, adminUser);
+
+        Connection conn = BOMFactory.getCurrentConntection();
+        try (PreparedStatement ps = conn.prepareStatement("UPDATE passwords SET expiry_l = NULL WHERE password_id = ?")) {
+            ps.setString(1, password.getId());
+            ps.executeUpdate();
+        }
+
+        // A full page of passwords which can't be decrypted, all read before the real one.
+        String unreadablePrefix = "!" + runId + "-";
+        copyWithUnreadableData(conn, password.getId(), unreadablePrefix, PasswordDAO.UNKNOWN_EXPIRY_BATCH_SIZE);
+        try {
+            assertThat(PasswordDAO.getInstance().hasExpiringPasswords(adminUser), is(true));
+            assertThat(getRecordedExpiry(password.getId()), is(expiry));
+        } finally {
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM user_access_control WHERE item_id LIKE ?")) {
+                ps.setString(1, unreadablePrefix + "%");
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM passwords WHERE password_id LIKE ?")) {
+                ps.setString(1, unreadablePrefix + "%");
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    private Long getRecordedExpiry(final String passwordId)
+            throws SQLException {
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(
+                "SELECT expiry_l FROM passwords WHERE password_id = ?")) {
+            ps.setString(1, passwordId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                long expiry = rs.getLong(1);
+                return rs.wasNull() ? null : expiry;
+            }
+        }
+    }
+
+    /**
+     * Copies a password and its user access controls under new IDs, with data which can't be decrypted
+     * and no recorded expiry date.
+     */
+
+    private void copyWithUnreadableData(final Connection conn, final String passwordId, final String idPrefix,
+                                        final int copies)
+            throws SQLException {
+        String columns = "enabled, audited, history_stored, restriction_id, ra_enabled, ra_approvers, "
+                + "ra_blockers, ptype, location_id, data_format";
+        try (PreparedStatement select = conn.prepareStatement(
+                "SELECT " + columns + " FROM passwords WHERE password_id = ?");
+             PreparedStatement insert = conn.prepareStatement(
+                "INSERT INTO passwords(password_id, " + columns + ", password_data) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            select.setString(1, passwordId);
+            try (ResultSet rs = select.executeQuery()) {
+                rs.next();
+                for (int i = 0; i < copies; i++) {
+                    insert.setString(1, idPrefix + i);
+                    for (int column = 1; column <= 10; column++) {
+                        insert.setObject(column + 1, rs.getObject(column), rs.getMetaData().getColumnType(column));
+                    }
+                    insert.setBytes(12, new byte[] {1, 2, 3, 4, 5});
+                    insert.addBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+
+        try (PreparedStatement select = conn.prepareStatement(
+                "SELECT user_id, rkey, mkey FROM user_access_control WHERE item_id = ?");
+             PreparedStatement insert = conn.prepareStatement(
+                "INSERT INTO user_access_control(user_id, item_id, rkey, mkey) VALUES (?, ?, ?, ?)")) {
+            select.setString(1, passwordId);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    for (int i = 0; i < copies; i++) {
+                        insert.setString(1, rs.getString(1));
+                        insert.setString(2, idPrefix + i);
+                        insert.setBytes(3, rs.getBytes(2));
+                        insert.setBytes(4, rs.getBytes(3));
+                        insert.addBatch();
+                    }
+                }
+            }
+            insert.executeBatch();
+        }
+    }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import com.enterprisepasswordsafe.engine.tests.utils.PasswordTestUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Test cases for the deferred decryption of Passwords
+ */
+public class PasswordTests extends EmbeddedDatabaseTestBase {
+
+    @Test
+    public void testDeferredDecryptionHappensOnFirstRead()
+            throws GeneralSecurityException, IOException, SQLException {
+        String runId = Long.toString(System.currentTimeMillis());
+        User adminUser = getAdminUser();
+        String passwordId = PasswordTestUtils.createPassword(runId, adminUser);
+        AccessControl ac = AccessControlDAO.getInstance().getReadAccessControl(adminUser, passwordId);
+
+        Password password = new Password(passwordId, getPasswordData(passwordId), ac, false);
+        assertThat(password.getUsername(), is("u" + runId));
+        assertThat(password.getPassword(), is("p" + runId));
+        assertThat(password.getLocation(), is("l" + runId));
+    }
+
+    @Test
+    public void testFailedDeferredDecryptionIsReportedOnEveryRead()
+            throws GeneralSecurityException, IOException, SQLException {
+        String runId = Long.toString(System.currentTimeMillis());
+        User adminUser = getAdminUser();
+        String passwordId = PasswordTestUtils.createPassword(runId, adminUser);
+        AccessControl ac = AccessControlDAO.getInstance().getReadAccessControl(adminUser, passwordId);
+
+        Password password = new Password(passwordId, new byte[] { 1, 2, 3, 4, 5 }, ac, false);
+        for (int i = 0; i < 2; i++) {
+            try {
+                password.getPassword();
+                fail("An undecryptable password returned a value");
+            } catch (Password.DeferredDecryptionException e) {
+                assertThat(e.getCause(), is(notNullValue()));
+            }
+        }
+        try {
+            password.getUsername();
+            fail("An undecryptable password returned a value");
+        } catch (Password.DeferredDecryptionException e) {
+            assertThat(e.getMessage().contains(passwordId), is(true));
+        }
+    }
+
+    private byte[] getPasswordData(final String passwordId)
+            throws SQLException {
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(
+                "SELECT password_data FROM passwords WHERE password_id = ?")) {
+            ps.setString(1, passwordId);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertThat(rs.next(), is(true));
+                return rs.getBytes(1);
+            }
+        }
+    }
+}
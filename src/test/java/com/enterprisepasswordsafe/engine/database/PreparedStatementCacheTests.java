@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.enterprisepasswordsafe.engine.database;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test cases for the per-connection prepared statement cache.
+ */
+public class PreparedStatementCacheTests extends EmbeddedDatabaseTestBase {
+
+    private static final String TEST_SQL = "SELECT node_id FROM hierarchy";
+
+    @Test
+    public void testClosedStatementIsReused()
+            throws SQLException {
+        DatabaseAccessManager bom = BOMFactory.getInstance();
+        Connection connection = bom.getConnection();
+        long hits = bom.getStatementCacheHits();
+        long misses = bom.getStatementCacheMisses();
+
+        String sql = TEST_SQL + " WHERE type >= 0";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+            }
+        }
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+            }
+        }
+
+        assertThat(bom.getStatementCacheMisses(), is(misses + 1));
+        assertThat(bom.getStatementCacheHits(), is(hits + 1));
+    }
+
+    @Test
+    public void testNestedUseGetsSeparateStatements()
+            throws SQLException {
+        Connection connection = BOMFactory.getCurrentConntection();
+        try (PreparedStatement outer = connection.prepareStatement(TEST_SQL);
+             PreparedStatement inner = connection.prepareStatement(TEST_SQL)) {
+            assertThat(outer == inner, is(false));
+            try (ResultSet outerRs = outer.executeQuery(); ResultSet innerRs = inner.executeQuery()) {
+                assertThat(outerRs.next(), is(innerRs.next()));
+            }
+        }
+    }
+
+    @Test
+    public void testAlteredStatementIsNotReturnedToCache()
+            throws SQLException {
+        DatabaseAccessManager bom = BOMFactory.getInstance();
+        Connection connection = bom.getConnection();
+        String sql = TEST_SQL + " WHERE node_id IS NOT NULL";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setMaxRows(1);
+        }
+
+        long misses = bom.getStatementCacheMisses();
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            assertThat(ps.getMaxRows(), is(0));
+        }
+        assertThat(bom.getStatementCacheMisses(), is(misses + 1));
+    }
+}
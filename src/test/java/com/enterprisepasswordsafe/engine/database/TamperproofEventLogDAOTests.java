@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import org.junit.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for reading the event log a page at a time.
+ */
+public class TamperproofEventLogDAOTests extends EmbeddedDatabaseTestBase {
+
+    private static final long EVENT_TIME = 978307200000L;
+
+    @Test
+    public void testPagesSplitEntriesWithTheSameTime()
+            throws Exception {
+        String runId = "pg-" + System.currentTimeMillis();
+        for (int i = 0; i < 25; i++) {
+            insertEntry(i < 12 ? EVENT_TIME : EVENT_TIME + 1, runId, runId + "-" + i);
+        }
+
+        ConfigurationDAO.getInstance().set(ConfigurationOption.EVENT_LOG_PAGE_SIZE, "10");
+        try {
+            User adminUser = getAdminUser();
+            TamperproofEventLogDAO dao = TamperproofEventLogDAO.getInstance();
+
+            EventLogPage page = dao.getEventsPage(EVENT_TIME, EVENT_TIME + 1, null, runId, adminUser,
+                    true, false, null);
+            assertThat(countEntries(page), is(10));
+            page = dao.getEventsPage(EVENT_TIME, EVENT_TIME + 1, null, runId, adminUser,
+                    true, false, page.getNextCursor());
+            assertThat(countEntries(page), is(10));
+            page = dao.getEventsPage(EVENT_TIME, EVENT_TIME + 1, null, runId, adminUser,
+                    true, false, page.getNextCursor());
+            assertThat(countEntries(page), is(5));
+            assertThat(page.getNextCursor(), is(nullValue()));
+
+            AtomicInteger streamed = new AtomicInteger();
+            dao.processEventsForDateRange(EVENT_TIME, EVENT_TIME + 1, null, runId, adminUser,
+                    true, false, entry -> streamed.incrementAndGet());
+            assertThat(streamed.get(), is(25));
+        } finally {
+            ConfigurationDAO.getInstance().set(ConfigurationOption.EVENT_LOG_PAGE_SIZE,
+                    ConfigurationOption.EVENT_LOG_PAGE_SIZE.getDefaultValue());
+        }
+    }
+
+    @Test
+    public void testEachEntryWithTheSameTimeIsShownOnce()
+            throws Exception {
+        String runId = "tie-" + System.currentTimeMillis();
+        // Inserted out of order so the database has no natural order to fall back on.
+        for (int i = 24; i >= 0; i--) {
+            insertEntry(EVENT_TIME + 2, runId, runId + "-" + (i * 7 % 25));
+        }
+
+        ConfigurationDAO.getInstance().set(ConfigurationOption.EVENT_LOG_PAGE_SIZE, "10");
+        try {
+            User adminUser = getAdminUser();
+            TamperproofEventLogDAO dao = TamperproofEventLogDAO.getInstance();
+
+            Set<String> seen = new HashSet<>();
+            int shown = 0;
+            String cursor = null;
+            do {
+                EventLogPage page = dao.getEventsPage(EVENT_TIME + 2, EVENT_TIME + 2, null, runId, adminUser,
+                        true, false, cursor);
+                for (TamperproofEventLogDAO.EventsForDay day : page.getDays()) {
+                    for (ExpandedTamperproofEventLogEntry entry : day.getEvents()) {
+                        seen.add(entry.getHumanReadableMessage());
+                        shown++;
+                    }
+                }
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+
+            assertThat(shown, is(25));
+            assertThat(seen.size(), is(25));
+        } finally {
+            ConfigurationDAO.getInstance().set(ConfigurationOption.EVENT_LOG_PAGE_SIZE,
+                    ConfigurationOption.EVENT_LOG_PAGE_SIZE.getDefaultValue());
+        }
+    }
+
+    private int countEntries(final EventLogPage page) {
+        int count = 0;
+        for (TamperproofEventLogDAO.EventsForDay day : page.getDays()) {
+            count += day.getEvents().size();
+        }
+        return count;
+    }
+
+    private void insertEntry(final long dateTime, final String itemId, final String event) throws SQLException {
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(
+                "INSERT INTO event_log(dt_l, item_id, event, user_id) VALUES (?, ?, ?, ?)")) {
+            ps.setLong(1, dateTime);
+            ps.setString(2, itemId);
+            ps.setString(3, event);
+            ps.setString(4, TamperproofEventLog.DUMMY_USER_ID);
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import com.enterprisepasswordsafe.engine.utils.DateFormatter;
+import org.junit.Test;
+
+import java.sql.PreparedStatement;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the TamperproofEventLogVerifier
+ */
+public class TamperproofEventLogVerifierTests extends EmbeddedDatabaseTestBase {
+    @Test
+    public void testCheckpointsAreUsedAndTamperingIsDetected() throws Exception {
+        String runId = "verifier-test-" + System.currentTimeMillis();
+        User admin = getAdminUser();
+
+        TamperproofEventLogWriter writer = TamperproofEventLogWriter.getInstance();
+        for (int i = 0; i < 3; i++) {
+            writer.submit(new TamperproofEventLog(null, null, runId, true));
+        }
+
+        long startOfDay = DateFormatter.stripTime(System.currentTimeMillis());
+        Calendar endOfDay = Calendar.getInstance();
+        endOfDay.setTimeInMillis(startOfDay);
+        endOfDay.add(Calendar.DAY_OF_MONTH, 1);
+        endOfDay.add(Calendar.MILLISECOND, -1);
+
+        TamperproofEventLogVerifier verifier = TamperproofEventLogVerifier.getInstance();
+        List<TamperproofEventLogVerifier.DayResult> first =
+                verifier.verify(admin, startOfDay, endOfDay.getTimeInMillis(), null);
+        assertThat(first.size(), is(1));
+        assertThat(first.get(0).getInvalidCount(), is(0));
+
+        List<TamperproofEventLogVerifier.DayResult> second =
+                verifier.verify(admin, startOfDay, endOfDay.getTimeInMillis(), null);
+        assertThat(second.get(0).getCheckpointedCount(), is(first.get(0).getEntryCount()));
+        assertThat(second.get(0).getValidCount(), is(0));
+
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(
+                "UPDATE event_log SET event = ? WHERE event = ?")) {
+            ps.setString(1, runId + "-altered");
+            ps.setString(2, runId);
+            ps.executeUpdate();
+        }
+
+        List<TamperproofEventLogVerifier.DayResult> third =
+                verifier.verify(admin, startOfDay, endOfDay.getTimeInMillis(), null);
+        assertThat(third.get(0).isCheckpointMismatch(), is(true));
+        assertThat(third.get(0).getInvalidCount(), is(3));
+
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(
+                "DELETE FROM event_log WHERE event = ?")) {
+            ps.setString(1, runId + "-altered");
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database;
+
+import org.junit.Test;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the TamperproofEventLogWriter
+ */
+public class TamperproofEventLogWriterTests extends EmbeddedDatabaseTestBase {
+    @Test
+    public void testQueuedEntriesAreWrittenOnFlush()
+            throws SQLException, GeneralSecurityException, UnsupportedEncodingException {
+        String runId = "writer-test-" + System.currentTimeMillis();
+
+        TamperproofEventLogWriter writer = TamperproofEventLogWriter.getInstance();
+        for (int i = 0; i < 600; i++) {
+            writer.submit(new TamperproofEventLog(null, null, runId, false));
+        }
+        assertThat(writer.flush(30000), is(true));
+        assertThat(countEntries(runId), is(600));
+        assertThat(writer.getQueueDepth(), is(0));
+    }
+
+    private int countEntries(final String event) throws SQLException {
+        try (PreparedStatement ps = BOMFactory.getCurrentConntection().prepareStatement(
+                "SELECT COUNT(*) FROM event_log WHERE event = ?")) {
+            ps.setString(1, event);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+}
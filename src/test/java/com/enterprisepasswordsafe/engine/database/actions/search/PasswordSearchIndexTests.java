@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.database.actions.search;
+
+import com.enterprisepasswordsafe.engine.database.Password;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test cases for the PasswordSearchIndex
+ */
+public class PasswordSearchIndexTests {
+
+    @Test
+    public void testNonMatchingEntriesAreExcluded() throws Exception {
+        PasswordSearchIndex index = new PasswordSearchIndex("user");
+        index.add(new Password("p1", "alice", "secret", "mailserver", "notes"));
+        index.add(new Password("p2", "bob", "secret", "webserver", "notes"));
+
+        PasswordSearchIndex.Query query = index.query(tests(new SystemContainsSearchTest("MAIL")));
+        assertThat(query.excludes("p1"), is(false));
+        assertThat(query.excludes("p2"), is(true));
+    }
+
+    @Test
+    public void testUnindexedEntriesAreNotExcluded() throws Exception {
+        PasswordSearchIndex index = new PasswordSearchIndex("user");
+        index.add(new Password("p1", "alice", "secret", "mailserver", "notes"));
+
+        PasswordSearchIndex.Query query = index.query(tests(new UsernameContainsSearchTest("carol")));
+        assertThat(query.excludes("p1"), is(true));
+        assertThat(query.excludes("p3"), is(false));
+    }
+
+    @Test
+    public void testShortSearchesAreNotIndexed() throws Exception {
+        PasswordSearchIndex index = new PasswordSearchIndex("user");
+        index.add(new Password("p1", "alice", "secret", "mailserver", "notes"));
+
+        assertThat(index.query(tests(new UsernameContainsSearchTest("al"))), is(nullValue()));
+    }
+
+    @Test
+    public void testUpdatesAndDeletesAreApplied() throws Exception {
+        PasswordSearchIndex index = new PasswordSearchIndex("user");
+        Password password = new Password("p1", "alice", "secret", "mailserver", "notes");
+        index.add(password);
+
+        password.setLocation("database");
+        PasswordSearchIndex.passwordUpdated(password);
+        assertThat(index.query(tests(new SystemContainsSearchTest("mail"))).excludes("p1"), is(true));
+        assertThat(index.query(tests(new SystemContainsSearchTest("data"))).excludes("p1"), is(false));
+
+        PasswordSearchIndex.passwordDeleted("p1");
+        assertThat(index.contains("p1"), is(false));
+        assertThat(index.getEntryCount(), is(0));
+        assertThat(index.getPostingCount(), is(0));
+    }
+
+    @Test
+    public void testNewPasswordsAreAddedForUsersWithAccess() throws Exception {
+        PasswordSearchIndex creatorIndex = new PasswordSearchIndex("creator");
+        PasswordSearchIndex otherIndex = new PasswordSearchIndex("other");
+        Password password = new Password("new1", "alice", "secret", "mailserver", "notes");
+
+        PasswordSearchIndex.passwordCreated(password, Collections.singleton("creator"));
+        assertThat(creatorIndex.contains("new1"), is(true));
+        assertThat(otherIndex.contains("new1"), is(false));
+        assertThat(creatorIndex.query(tests(new SystemContainsSearchTest("mail"))).excludes("new1"), is(false));
+        PasswordSearchIndex.passwordDeleted("new1");
+    }
+
+    private static List<SearchTest> tests(final SearchTest test) {
+        return new ArrayList<>(Collections.singletonList(test));
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.mail;
+
+import com.enterprisepasswordsafe.engine.database.ConfigurationDAO;
+import com.enterprisepasswordsafe.engine.database.ConfigurationOption;
+import com.enterprisepasswordsafe.engine.database.EmbeddedDatabaseTestBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetAddress;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for sending Email through the mail service.
+ */
+public class MailServiceTests extends EmbeddedDatabaseTestBase {
+
+    private static final long TIMEOUT_MILLIS = 30000;
+
+    private static final ConfigurationOption[] SETTINGS = {
+            ConfigurationOption.SMTP_ENABLED, ConfigurationOption.SMTP_HOST,
+            ConfigurationOption.SMTP_BATCH_RECIPIENTS, ConfigurationOption.SMTP_DIGEST_WINDOW
+    };
+
+    private final String[] previousSettings = new String[SETTINGS.length];
+
+    @Before
+    public void setUp()
+            throws SQLException {
+        for (int i = 0; i < SETTINGS.length; i++) {
+            previousSettings[i] = ConfigurationDAO.getValue(SETTINGS[i]);
+        }
+        ConfigurationDAO configuration = ConfigurationDAO.getInstance();
+        configuration.set(ConfigurationOption.SMTP_ENABLED, "Y");
+        configuration.set(ConfigurationOption.SMTP_HOST, "localhost");
+        configuration.set(ConfigurationOption.SMTP_BATCH_RECIPIENTS, "Y");
+        configuration.set(ConfigurationOption.SMTP_DIGEST_WINDOW, "60");
+    }
+
+    @After
+    public void tearDown()
+            throws SQLException {
+        ConfigurationDAO configuration = ConfigurationDAO.getInstance();
+        for (int i = 0; i < SETTINGS.length; i++) {
+            if (previousSettings[i] == null) {
+                configuration.delete(SETTINGS[i]);
+            } else {
+                configuration.set(SETTINGS[i], previousSettings[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testBlindCopiesAreBatchedAndInvalidAddressesSkipped() {
+        List<String> recipients = new ArrayList<>();
+        for (int i = 0; i < 110; i++) {
+            recipients.add("user" + i + "@example.com");
+        }
+        recipients.add("not an address");
+        recipients.add("first@example.com; second@example.com");
+
+        RecordingConnection connection = new RecordingConnection(-1);
+        MailService service = new MailService(host -> connection, 10);
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        service.send(() -> new OutgoingMail(null, recipients, "Batched", "text", false), failures::add);
+        service.shutdown();
+
+        assertThat(connection.getBatchSizes(), is(Arrays.asList(50, 50, 12)));
+        assertThat(connection.getDistinctRecipientCount(), is(112));
+        assertThat(connection.getAllRecipients().contains("second@example.com"), is(true));
+        assertThat(failures.size(), is(1));
+        assertThat(service.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void testDigestCombinesNotificationsForTheSameRecipient() {
+        RecordingConnection connection = new RecordingConnection(-1);
+        MailService service = new MailService(host -> connection, 10);
+        service.sendDigest(Collections.singletonList("one@example.com"), "Changed", "first");
+        service.sendDigest(Arrays.asList("one@example.com", "two@example.com"), "Changed", "second");
+        service.shutdown();
+
+        assertThat(service.getCoalescedCount(), is(1L));
+        assertThat(connection.getSubjects().size(), is(2));
+        assertThat(new HashSet<>(connection.getSubjects()), is(new HashSet<>(Arrays.asList("Changed (2)", "Changed"))));
+        assertThat(connection.getDistinctRecipientCount(), is(2));
+    }
+
+    @Test
+    public void testRetryIsNotSentToEarlierRecipients()
+            throws InterruptedException {
+        List<String> recipients = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            recipients.add("user" + i + "@example.com");
+        }
+
+        RecordingConnection connection = new RecordingConnection(1);
+        MailService service = new MailService(host -> connection, 10);
+        try {
+            service.send(new OutgoingMail(null, recipients, "Retried", "text", false));
+            long giveUpAt = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (service.getPendingCount() > 0 && System.currentTimeMillis() < giveUpAt) {
+                Thread.sleep(10);
+            }
+        } finally {
+            service.shutdown();
+        }
+
+        assertThat(service.getRetryCount(), is(1L));
+        assertThat(service.getFailedCount(), is(0L));
+        assertThat(connection.getBatchSizes(), is(Arrays.asList(50, 10)));
+        assertThat(connection.getAllRecipients().size(), is(60));
+        assertThat(connection.getDistinctRecipientCount(), is(60));
+    }
+
+    /**
+     * A connection which records the messages it is asked to send.
+     */
+
+    private static final class RecordingConnection
+        implements MailService.Connection {
+
+        private final List<List<String>> batches = new ArrayList<>();
+
+        private final List<String> subjects = new ArrayList<>();
+
+        /**
+         * The send which fails once, or -1 if none should fail.
+         */
+
+        private int failingSend;
+
+        private int sends = 0;
+
+        private RecordingConnection(final int newFailingSend) {
+            failingSend = newFailingSend;
+        }
+
+        @Override
+        public boolean isUsable(final String currentHost) {
+            return true;
+        }
+
+        @Override
+        public synchronized void send(final String from, final List<InternetAddress> recipients,
+                                      final OutgoingMail mail)
+                throws MessagingException {
+            if (sends++ == failingSend) {
+                failingSend = -1;
+                throw new MessagingException("Simulated failure");
+            }
+            List<String> addresses = new ArrayList<>();
+            for (InternetAddress recipient : recipients) {
+                addresses.add(recipient.getAddress());
+            }
+            batches.add(addresses);
+            subjects.add(mail.getSubject());
+        }
+
+        @Override
+        public void close() {
+            // Nothing to close.
+        }
+
+        private synchronized List<Integer> getBatchSizes() {
+            List<Integer> sizes = new ArrayList<>();
+            for (List<String> batch : batches) {
+                sizes.add(batch.size());
+            }
+            return sizes;
+        }
+
+        private synchronized List<String> getAllRecipients() {
+            List<String> all = new ArrayList<>();
+            for (List<String> batch : batches) {
+                all.addAll(batch);
+            }
+            return all;
+        }
+
+        private int getDistinctRecipientCount() {
+            return new HashSet<>(getAllRecipients()).size();
+        }
+
+        private synchronized List<String> getSubjects() {
+            return new ArrayList<>(subjects);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.enterprisepasswordsafe.engine.utils;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test cases for the LatencyHistogram
+ */
+public class LatencyHistogramTests {
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    @Test
+    public void testEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getCount(), is(0L));
+        assertThat(histogram.getPercentileMillis(99), is(0L));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(NANOS_PER_MILLI);
+        }
+        histogram.record(400 * NANOS_PER_MILLI);
+
+        assertThat(histogram.getCount(), is(100L));
+        assertThat(histogram.getPercentileMillis(50), is(1L));
+        assertThat(histogram.getPercentileMillis(99), is(1L));
+        assertThat(histogram.getPercentileMillis(100), is(500L));
+        assertThat(histogram.getMaxMillis(), is(400.0));
+    }
+
+    @Test
+    public void testOverflowBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(60000 * NANOS_PER_MILLI);
+
+        long[] counts = histogram.getBucketCounts();
+        assertThat(counts[counts.length - 1], is(1L));
+        assertThat(histogram.getPercentileMillis(50), is(60000L));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2017 Carbon Security Ltd. <opensource@carbonsecurity.co.uk>
+ *
+ * Permission to use, copy, modify, and distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.enterprisepasswordsafe.engine.utils;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test cases for the PasswordPayload
+ */
+public class PasswordPayloadTests {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put(PasswordUtils.USERNAME_PROPERTY, "admin");
+        values.put(PasswordUtils.PASSWORD_PROPERTY, "p\u00e4ss=w#rd\n\u4e2d");
+        values.put(PasswordUtils.NOTES_PROPERTY, "");
+        values.put(PasswordUtils.EXPIRY_PROPERTY, null);
+        values.put("Custom field", "value");
+
+        Properties decoded = new Properties();
+        PasswordPayload.decode(PasswordPayload.encode(values), decoded);
+
+        assertThat(decoded.size(), is(4));
+        assertThat(decoded.getProperty(PasswordUtils.USERNAME_PROPERTY), is("admin"));
+        assertThat(decoded.getProperty(PasswordUtils.PASSWORD_PROPERTY), is("p\u00e4ss=w#rd\n\u4e2d"));
+        assertThat(decoded.getProperty(PasswordUtils.NOTES_PROPERTY), is(""));
+        assertThat(decoded.getProperty(PasswordUtils.EXPIRY_PROPERTY), is(nullValue()));
+        assertThat(decoded.getProperty("Custom field"), is("value"));
+    }
+
+    @Test
+    public void testLongValues() throws IOException {
+        StringBuilder notes = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            notes.append((char) ('a' + (i % 26)));
+        }
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put(PasswordUtils.NOTES_PROPERTY, notes.toString());
+
+        Properties decoded = new Properties();
+        PasswordPayload.decode(PasswordPayload.encode(values), decoded);
+        assertThat(decoded.getProperty(PasswordUtils.NOTES_PROPERTY), is(notes.toString()));
+    }
+
+    @Test
+    public void testSmallerThanProperties() throws IOException {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put(PasswordUtils.ENABLED_PROPERTY, "true");
+        values.put(PasswordUtils.USERNAME_PROPERTY, "admin");
+        values.put(PasswordUtils.LOCATION_PROPERTY, "db01.example.com");
+        values.put(PasswordUtils.PASSWORD_PROPERTY, "s3cr3t");
+        values.put(PasswordUtils.NOTES_PROPERTY, "");
+
+        Properties properties = new Properties();
+        properties.putAll(values);
+        StringWriter sw = new StringWriter();
+        properties.store(sw, null);
+        byte[] legacy = sw.toString().getBytes(StandardCharsets.UTF_8);
+
+        byte[] binary = PasswordPayload.encode(values);
+        assertThat(PasswordPayload.isBinary(binary), is(true));
+        assertThat(PasswordPayload.isBinary(legacy), is(false));
+        assertThat(binary.length * 2 < legacy.length, is(true));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedPayload() throws IOException {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put(PasswordUtils.USERNAME_PROPERTY, "admin");
+        byte[] encoded = PasswordPayload.encode(values);
+        byte[] truncated = new byte[encoded.length - 1];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        PasswordPayload.decode(truncated, new Properties());
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownVersion() throws IOException {
+        byte[] encoded = PasswordPayload.encode(new LinkedHashMap<String, String>());
+        encoded[1] = (byte) (PasswordPayload.CURRENT_VERSION + 1);
+        PasswordPayload.decode(encoded, new Properties());
+    }
+}